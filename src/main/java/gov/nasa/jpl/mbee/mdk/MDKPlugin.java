@@ -15,6 +15,11 @@ import com.nomagic.magicdraw.uml.DiagramDescriptor;
 import com.nomagic.magicdraw.uml.DiagramTypeConstants;
 import gov.nasa.jpl.mbee.mdk.cli.AutomatedCommitter;
 import gov.nasa.jpl.mbee.mdk.cli.AutomatedViewGenerator;
+import gov.nasa.jpl.mbee.mdk.docgen.DiagramArtifactCache;
+import gov.nasa.jpl.mbee.mdk.emf.EMFExportCache;
+import gov.nasa.jpl.mbee.mdk.generator.ViewDependencyGraph;
+import gov.nasa.jpl.mbee.mdk.http.HttpClientPool;
+import gov.nasa.jpl.mbee.mdk.mms.MMSMetrics;
 import gov.nasa.jpl.mbee.mdk.mms.sync.status.SyncStatusConfigurator;
 import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.MDUtils;
@@ -66,6 +71,8 @@ public class MDKPlugin extends Plugin {
 
     @Override
     public boolean close() {
+        HttpClientPool.shutdown();
+        MMSMetrics.stopReporters();
         return true;
     }
 
@@ -81,6 +88,8 @@ public class MDKPlugin extends Plugin {
         // This somehow allows things to be loaded to evaluate opaque expressions or something.
         EvaluationConfigurator.getInstance().registerBinaryImplementers(this.getClass().getClassLoader());
 
+        MMSMetrics.startReporters();
+
         CommandLineActionManager.getInstance().addAction(new AutomatedViewGenerator());
         CommandLineActionManager.getInstance().addAction(new AutomatedCommitter());
 
@@ -106,6 +115,10 @@ public class MDKPlugin extends Plugin {
         EvaluationConfigurator.getInstance().registerBinaryImplementers(MDKPlugin.class.getClassLoader());
 
         MMSSyncPlugin.getInstance().init();
+        Application.getInstance().getProjectsManager().addProjectListener(new HttpClientPool.HttpClientPoolProjectEventListenerAdapter());
+        Application.getInstance().getProjectsManager().addProjectListener(new EMFExportCache.EMFExportCacheProjectEventListenerAdapter());
+        Application.getInstance().getProjectsManager().addProjectListener(new DiagramArtifactCache.DiagramArtifactCacheProjectEventListenerAdapter());
+        Application.getInstance().getProjectsManager().addProjectListener(new ViewDependencyGraph.ViewDependencyGraphProjectEventListenerAdapter());
 
         loadExtensionJars();
         configureEnvironmentOptions();
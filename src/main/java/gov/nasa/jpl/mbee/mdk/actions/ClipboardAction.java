@@ -6,6 +6,7 @@ import javax.annotation.CheckForNull;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
+import java.util.function.Supplier;
 
 /**
  * Created by igomes on 10/12/16.
@@ -13,15 +14,25 @@ import java.awt.event.ActionEvent;
 public class ClipboardAction extends MDAction {
     public static final String DEFAULT_ID = ClipboardAction.class.getSimpleName();
 
-    private final String text;
+    private final Supplier<String> textSupplier;
 
     public ClipboardAction(String name, String text) {
+        this(name, () -> text);
+    }
+
+    /**
+     * @param textSupplier supplies the text when the action is performed, for text that is expensive to build up front
+     */
+    public ClipboardAction(String name, Supplier<String> textSupplier) {
         super(DEFAULT_ID + "_" + name.replace(" ", ""), name, null, null);
-        this.text = text;
+        this.textSupplier = textSupplier;
     }
 
     @Override
     public void actionPerformed(@CheckForNull ActionEvent actionEvent) {
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+        String text = textSupplier.get();
+        if (text != null) {
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+        }
     }
 }
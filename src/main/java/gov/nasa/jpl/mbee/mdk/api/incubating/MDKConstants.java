@@ -32,6 +32,7 @@ public class MDKConstants {
             CONTENTS_KEY = DERIVED_KEY_PREFIX + "contents",
             DISPLAYED_ELEMENT_IDS_KEY = DERIVED_KEY_PREFIX + "displayedElement" + IDS_KEY_SUFFIX,
             DIAGRAM_TYPE_KEY = DERIVED_KEY_PREFIX + "diagramType",
+            GENERATION_FINGERPRINT_KEY = DERIVED_KEY_PREFIX + "generationFingerprint",
             CATEGORY_ID_KEY = "category" + ID_KEY_SUFFIX,
             MOUNTED_ELEMENT_ID_KEY = "mountedElement" + ID_KEY_SUFFIX,
             MOUNTED_ELEMENT_PROJECT_ID_KEY = "mountedElementProject" + ID_KEY_SUFFIX,
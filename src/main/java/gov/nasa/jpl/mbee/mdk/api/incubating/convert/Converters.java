@@ -6,6 +6,7 @@ import com.nomagic.magicdraw.core.Project;
 import com.nomagic.magicdraw.uml.BaseElement;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.*;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.emf.EMFExportCache;
 import gov.nasa.jpl.mbee.mdk.emf.EMFExporter;
 import gov.nasa.jpl.mbee.mdk.emf.EMFImporter;
 import org.apache.commons.lang.math.NumberUtils;
@@ -25,7 +26,7 @@ public class Converters {
 
     public static BiFunction<Element, Project, ObjectNode> getElementToJsonConverter() {
         if (ELEMENT_TO_JSON_CONVERTER == null) {
-            ELEMENT_TO_JSON_CONVERTER = new EMFExporter();
+            ELEMENT_TO_JSON_CONVERTER = new EMFExportCache(new EMFExporter());
         }
         return ELEMENT_TO_JSON_CONVERTER;
     }
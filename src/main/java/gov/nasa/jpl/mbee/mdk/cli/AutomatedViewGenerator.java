@@ -15,6 +15,7 @@ import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSMetrics;
 import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.MMSLoginAction;
 import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
@@ -221,10 +222,30 @@ public class AutomatedViewGenerator implements CommandLineAction {
                 e.printStackTrace();
             }
         }
+        reportMetrics();
         System.out.println(separator);
         return error;
     }
 
+    private void reportMetrics() {
+        List<String> summary = MMSMetrics.getSummary();
+        if (!summary.isEmpty()) {
+            System.out.println("[INFO] MMS request summary, by total time:");
+            summary.forEach(System.out::println);
+        }
+        File directory = MMSMetrics.getMetricsDirectory();
+        if (directory == null) {
+            return;
+        }
+        File file = new File(directory, "mms-metrics-" + System.currentTimeMillis() + ".json");
+        try {
+            MMSMetrics.writeJson(file);
+            System.out.println("[INFO] MMS metrics written to " + file.getAbsolutePath() + ".");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void loginTeamwork() throws IOException, InterruptedException {
         // disable all mdk popup warnings
         MDKHelper.setPopupsDisabled(true);
@@ -0,0 +1,424 @@
+package gov.nasa.jpl.mbee.mdk.docgen;
+
+import com.nomagic.ci.persistence.IProject;
+import com.nomagic.magicdraw.core.Application;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.core.ProjectUtilities;
+import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
+import com.nomagic.magicdraw.export.image.ImageExporter;
+import com.nomagic.magicdraw.uml.symbols.DiagramPresentationElement;
+import com.nomagic.magicdraw.uml.symbols.PresentationElement;
+import com.nomagic.magicdraw.uml.transaction.MDTransactionManager;
+import com.nomagic.uml2.ext.jmi.helpers.StereotypesHelper;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Diagram;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.EnumerationLiteral;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.InstanceSpecification;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Operation;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Parameter;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Property;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Slot;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.TypedElement;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.ValueSpecification;
+import com.nomagic.uml2.transaction.TransactionCommitListener;
+import gov.nasa.jpl.mbee.mdk.MDKPlugin;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.util.CacheUtils;
+import gov.nasa.jpl.mbee.mdk.util.MDUtils;
+import gov.nasa.jpl.mbee.mdk.util.Utils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.emf.common.util.URI;
+
+import javax.xml.transform.TransformerException;
+import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the SVG and PNG exports of diagrams on disk, so that diagrams are only exported again once they have changed.
+ * Artifacts are keyed by diagram id and a modification stamp, together with the export settings. The stamp counts the
+ * committed changes of the diagram's presentation elements, of the model elements shown on it and of the types and
+ * stereotypes those elements reference, which are tracked from the transaction events of the project.
+ * <p>
+ * Diagrams that have not changed since the project was opened are stamped with the state of the project files, or of the
+ * Teamwork Cloud versions, that were opened, so that their artifacts are also reused by later sessions on the same
+ * project state. Diagrams that have changed are stamped with the session, so their artifacts are never reused after it.
+ * Artifacts of other stamps are evicted once the project is closed, when files returned earlier can no longer be in use.
+ * PNG exports can be prefetched on a bounded pool while SVG exports, which set a system property during the export,
+ * stay on the calling thread. Different diagrams are exported in parallel, but each diagram only one format at a time.
+ */
+public class DiagramArtifactCache implements TransactionCommitListener {
+    private static final String CACHE_NAME = "diagram-artifacts";
+    private static final Map<Project, DiagramArtifactCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicInteger EXPORT_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXPORT_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "Diagram Export " + EXPORT_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Project project;
+    private final String projectStamp;
+    private final String sessionStamp = UUID.randomUUID().toString();
+    private final Map<Diagram, DiagramStamp> diagramStamps = new WeakHashMap<>();
+    private final Map<Element, Set<Diagram>> elementDiagrams = new WeakHashMap<>();
+    private final Set<Element> changedElements = Collections.newSetFromMap(new WeakHashMap<>());
+    private final Map<Diagram, Object> exportLocks = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<String, CompletableFuture<File>> exports = new ConcurrentHashMap<>();
+    private final Set<String> prefetchedPaths = ConcurrentHashMap.newKeySet();
+    private final Set<File> artifactDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hitCount = new AtomicLong(), missCount = new AtomicLong(), exportNanos = new AtomicLong();
+
+    private DiagramArtifactCache(Project project, String projectStamp) {
+        this.project = project;
+        this.projectStamp = projectStamp != null ? projectStamp : sessionStamp;
+    }
+
+    /**
+     * Returns the cache of the project. Projects that were not opened while MDK was loaded have no known stamp, so their
+     * artifacts are only reused within the session.
+     */
+    public static DiagramArtifactCache getCache(Project project) {
+        synchronized (CACHES) {
+            DiagramArtifactCache cache = CACHES.get(project);
+            if (cache == null) {
+                cache = register(project, null);
+            }
+            return cache;
+        }
+    }
+
+    private static DiagramArtifactCache register(Project project, String projectStamp) {
+        DiagramArtifactCache cache = new DiagramArtifactCache(project, projectStamp);
+        CACHES.put(project, cache);
+        ((MDTransactionManager) project.getRepository().getTransactionManager()).addTransactionCommitListenerIncludingUndoAndRedo(cache);
+        return cache;
+    }
+
+    /**
+     * Stops tracking the changes of the project. Stale artifacts are only evicted once the project is closed, as a cache
+     * that is replaced for the same project shares its directories with the new one.
+     */
+    private static void release(Project project, boolean evict) {
+        DiagramArtifactCache cache = CACHES.remove(project);
+        if (cache != null) {
+            project.getRepository().getTransactionManager().removeTransactionCommitListener(cache);
+            if (evict) {
+                EXPORT_EXECUTOR.execute(cache::evictStaleArtifacts);
+            }
+        }
+    }
+
+    /**
+     * Deletes the artifacts of the diagrams requested from this cache that do not match the project stamp, as the
+     * session stamps are never requested again. Exports that are still running are left alone.
+     */
+    private void evictStaleArtifacts() {
+        String stampPrefix = DigestUtils.md5Hex(projectStamp) + "-";
+        for (File directory : artifactDirectories) {
+            File[] staleFiles = directory.listFiles((parent, name) -> !name.startsWith(stampPrefix) && (name.endsWith(getExtension(ImageExporter.SVG)) || name.endsWith(getExtension(ImageExporter.PNG)))
+                    && !exports.containsKey(new File(parent, name).getPath()));
+            if (staleFiles != null) {
+                for (File staleFile : staleFiles) {
+                    staleFile.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the exported artifact of the diagram in the given {@link ImageExporter} format, exporting it on the calling
+     * thread if it is neither cached nor being prefetched. The returned file belongs to the cache and must not be
+     * modified.
+     */
+    public File getArtifact(DiagramPresentationElement diagramPresentationElement, int format) throws IOException, TransformerException {
+        File file = getFile(diagramPresentationElement, format);
+        CompletableFuture<File> export = exports.get(file.getPath());
+        if (export == null) {
+            if (file.isFile()) {
+                if (!prefetchedPaths.remove(file.getPath())) {
+                    hitCount.incrementAndGet();
+                }
+                return file;
+            }
+            CompletableFuture<File> newExport = new CompletableFuture<>();
+            export = exports.putIfAbsent(file.getPath(), newExport);
+            if (export == null) {
+                missCount.incrementAndGet();
+                export(diagramPresentationElement, format, file, export = newExport);
+            }
+        }
+        prefetchedPaths.remove(file.getPath());
+        return await(export);
+    }
+
+    /**
+     * Starts exporting the artifacts of the diagrams that are not cached yet in the background, so that subsequent calls
+     * to {@link #getArtifact(DiagramPresentationElement, int)} find them ready or in progress.
+     */
+    public void prefetch(Collection<DiagramPresentationElement> diagramPresentationElements, int format) {
+        for (DiagramPresentationElement diagramPresentationElement : diagramPresentationElements) {
+            File file;
+            try {
+                file = getFile(diagramPresentationElement, format);
+            } catch (IOException e) {
+                continue;
+            }
+            if (file.isFile()) {
+                continue;
+            }
+            CompletableFuture<File> export = new CompletableFuture<>();
+            if (exports.putIfAbsent(file.getPath(), export) == null) {
+                missCount.incrementAndGet();
+                prefetchedPaths.add(file.getPath());
+                EXPORT_EXECUTOR.execute(() -> export(diagramPresentationElement, format, file, export));
+            }
+        }
+    }
+
+    private void export(DiagramPresentationElement diagramPresentationElement, int format, File file, CompletableFuture<File> export) {
+        long start = System.nanoTime();
+        try {
+            File tempFile = File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+            try {
+                // the exporters lay out the symbols of the diagram, which is not safe to do from two threads at once
+                synchronized (exportLocks.computeIfAbsent(diagramPresentationElement.getDiagram(), key -> new Object())) {
+                    if (format == ImageExporter.SVG) {
+                        MDUtils.exportSVG(tempFile, diagramPresentationElement);
+                    }
+                    else {
+                        ImageExporter.export(diagramPresentationElement, format, tempFile, false, DocGenUtils.DOCGEN_DIAGRAM_DPI, DocGenUtils.DOCGEN_DIAGRAM_SCALE_PERCENT);
+                    }
+                }
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
+            }
+            export.complete(file);
+        } catch (Exception e) {
+            export.completeExceptionally(e);
+        } finally {
+            exportNanos.addAndGet(System.nanoTime() - start);
+            exports.remove(file.getPath(), export);
+        }
+    }
+
+    private static File await(Future<File> export) throws IOException, TransformerException {
+        try {
+            return export.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for diagram export.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TransformerException) {
+                throw (TransformerException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private File getFile(DiagramPresentationElement diagramPresentationElement, int format) throws IOException {
+        Diagram diagram = diagramPresentationElement.getDiagram();
+        String diagramId = Converters.getElementToIdConverter().apply(diagram);
+        String settings = format + ":" + DocGenUtils.DOCGEN_DIAGRAM_DPI + ":" + DocGenUtils.DOCGEN_DIAGRAM_SCALE_PERCENT
+                + ":" + Application.getInstance().getEnvironmentOptions().getGeneralOptions().isUseSVGTextTag() + ":" + MDKPlugin.getVersion();
+        File directory = CacheUtils.getCacheDirectory(CACHE_NAME, Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()), diagramId != null ? diagramId : diagramPresentationElement.getID());
+        artifactDirectories.add(directory);
+        // the stamp comes first, so that artifacts exported with other settings for the same stamp are kept
+        return new File(directory, DigestUtils.md5Hex(getDiagramStamp(diagram)) + "-" + DigestUtils.md5Hex(settings) + getExtension(format));
+    }
+
+    private static String getExtension(int format) {
+        return format == ImageExporter.SVG ? ".svg" : ".png";
+    }
+
+    /**
+     * Returns the modification stamp of the diagram, starting to track the elements shown on it the first time it is
+     * requested or after its presentation elements changed.
+     */
+    private synchronized String getDiagramStamp(Diagram diagram) {
+        DiagramStamp diagramStamp = diagramStamps.get(diagram);
+        if (diagramStamp == null) {
+            diagramStamps.put(diagram, diagramStamp = new DiagramStamp());
+            diagramStamp.changed = changedElements.contains(diagram);
+        }
+        if (!diagramStamp.tracked) {
+            for (Element element : getTrackedElements(diagram)) {
+                diagramStamp.changed |= changedElements.contains(element);
+                elementDiagrams.computeIfAbsent(element, key -> new HashSet<>()).add(diagram);
+            }
+            diagramStamp.tracked = true;
+        }
+        return diagramStamp.changed ? sessionStamp + ":" + diagramStamp.changeCount : projectStamp;
+    }
+
+    /**
+     * Returns the elements shown on the diagram, along with the types and applied stereotypes of them and of the elements
+     * they own, as symbols also show the names of these, e.g. in attribute compartments.
+     */
+    private static Set<Element> getTrackedElements(Diagram diagram) {
+        Set<Element> elements = new HashSet<>();
+        for (Element element : Utils.getElementsOnDiagram(diagram)) {
+            elements.add(element);
+            addReferencedElements(element, elements);
+            for (Element ownedElement : element.getOwnedElement()) {
+                addReferencedElements(ownedElement, elements);
+            }
+        }
+        return elements;
+    }
+
+    private static void addReferencedElements(Element element, Set<Element> elements) {
+        if (element instanceof TypedElement && ((TypedElement) element).getType() != null) {
+            elements.add(((TypedElement) element).getType());
+        }
+        elements.addAll(StereotypesHelper.getStereotypes(element));
+    }
+
+    @Override
+    public synchronized Runnable transactionCommited(Collection<PropertyChangeEvent> events) {
+        for (PropertyChangeEvent event : events) {
+            Object source = event.getSource();
+            if (source instanceof PresentationElement) {
+                DiagramPresentationElement diagramPresentationElement = ((PresentationElement) source).getDiagramPresentationElement();
+                if (diagramPresentationElement != null && diagramPresentationElement.getDiagram() != null) {
+                    Diagram diagram = diagramPresentationElement.getDiagram();
+                    changedElements.add(diagram);
+                    DiagramStamp diagramStamp = diagramStamps.get(diagram);
+                    if (diagramStamp != null) {
+                        diagramStamp.change();
+                        // symbols may have been added or removed, so the shown elements are collected again
+                        diagramStamp.tracked = false;
+                    }
+                }
+            }
+            else if (source instanceof Element) {
+                // changes of owned content, such as attributes or applied stereotype slots, are shown by the owner's symbol
+                for (Element element = (Element) source; element != null; element = isShownByOwner(element) ? element.getOwner() : null) {
+                    changedElements.add(element);
+                    Set<Diagram> diagrams = elementDiagrams.get(element);
+                    if (diagrams != null) {
+                        // the type or stereotypes referenced by the element may have changed, so they are collected again
+                        diagrams.stream().map(diagramStamps::get).filter(Objects::nonNull).forEach(diagramStamp -> {
+                            diagramStamp.change();
+                            diagramStamp.tracked = false;
+                        });
+                    }
+                    DiagramStamp diagramStamp = element instanceof Diagram ? diagramStamps.get(element) : null;
+                    if (diagramStamp != null) {
+                        diagramStamp.change();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the element is shown in the compartments or labels of its owner's symbol, as attributes, operations
+     * and their parameters, literals, slots, their values and applied stereotype instances are.
+     */
+    private static boolean isShownByOwner(Element element) {
+        if (element instanceof InstanceSpecification) {
+            return element.getOwner() != null && element.getOwner().getAppliedStereotypeInstance() == element;
+        }
+        return element instanceof Property || element instanceof Operation || element instanceof Parameter || element instanceof EnumerationLiteral
+                || element instanceof Slot || element instanceof ValueSpecification;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getExportTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(exportNanos.get());
+    }
+
+    /**
+     * Returns a summary of the cache activity since the given counts were taken, e.g. for logging after an export run.
+     */
+    public String getSummary(long previousHitCount, long previousMissCount, long previousExportTimeMillis) {
+        long hits = getHitCount() - previousHitCount, misses = getMissCount() - previousMissCount;
+        return "Diagram artifacts: " + hits + " cached, " + misses + " exported" + (hits + misses > 0 ? " (" + (100 * hits / (hits + misses)) + "% hit rate)" : "")
+                + " in " + String.format("%.1f", (getExportTimeMillis() - previousExportTimeMillis) / 1000.0) + " s of export time.";
+    }
+
+    /**
+     * Identifies the state of the opened project files, or Teamwork Cloud versions, of the project and its attached
+     * projects.
+     */
+    private static String getProjectStamp(Project project) {
+        List<IProject> projects = new ArrayList<>();
+        projects.add(project.getPrimaryProject());
+        projects.addAll(ProjectUtilities.getAttachedProjects(project.getPrimaryProject()));
+        StringBuilder stamp = new StringBuilder();
+        for (IProject iProject : projects) {
+            stamp.append(Converters.getIProjectToIdConverter().apply(iProject)).append('@');
+            URI location = iProject.getLocationURI();
+            if (location != null && location.isFile()) {
+                File file = new File(location.toFileString());
+                stamp.append(file.lastModified()).append('-').append(file.length());
+            }
+            else {
+                stamp.append(ProjectUtilities.getVersion(iProject).getName());
+            }
+            stamp.append(';');
+        }
+        return DigestUtils.md5Hex(stamp.toString());
+    }
+
+    private static class DiagramStamp {
+        private boolean tracked, changed;
+        private int changeCount;
+
+        private void change() {
+            changed = true;
+            changeCount++;
+        }
+    }
+
+    public static class DiagramArtifactCacheProjectEventListenerAdapter extends ProjectEventListenerAdapter {
+        @Override
+        public void projectOpened(Project project) {
+            String projectStamp;
+            try {
+                projectStamp = getProjectStamp(project);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                projectStamp = null;
+            }
+            synchronized (CACHES) {
+                release(project, false);
+                register(project, projectStamp);
+            }
+        }
+
+        @Override
+        public void projectClosed(Project project) {
+            release(project, true);
+        }
+
+        @Override
+        public void projectReplaced(Project oldProject, Project newProject) {
+            release(oldProject, true);
+        }
+    }
+}
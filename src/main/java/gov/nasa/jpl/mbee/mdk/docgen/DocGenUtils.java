@@ -11,7 +11,6 @@ import com.nomagic.magicdraw.uml.symbols.DiagramPresentationElement;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.*;
 import gov.nasa.jpl.mbee.mdk.docgen.docbook.DocumentElement;
 import gov.nasa.jpl.mbee.mdk.docgen.view.ViewElement;
-import gov.nasa.jpl.mbee.mdk.util.MDUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -22,6 +21,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -447,8 +448,9 @@ public class DocGenUtils {
         results.add(directory.getName() + "/" + svgFileName);
 
         try {
-            MDUtils.exportSVG(svgDiagramFile, diagramPresentationElement);
-            ImageExporter.export(diagramPresentationElement, ImageExporter.PNG, pngDiagramFile, false, DOCGEN_DIAGRAM_DPI, DOCGEN_DIAGRAM_SCALE_PERCENT);
+            DiagramArtifactCache diagramArtifactCache = DiagramArtifactCache.getCache(project);
+            Files.copy(diagramArtifactCache.getArtifact(diagramPresentationElement, ImageExporter.SVG).toPath(), svgDiagramFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(diagramArtifactCache.getArtifact(diagramPresentationElement, ImageExporter.PNG).toPath(), pngDiagramFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException | TransformerException e) {
             e.printStackTrace();
             return results;
@@ -6,12 +6,15 @@ import gov.nasa.jpl.mbee.mdk.model.docmeta.DocumentMeta;
 import gov.nasa.jpl.mbee.mdk.model.docmeta.Person;
 import gov.nasa.jpl.mbee.mdk.model.docmeta.Revision;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
 
 /**
  * visitor that serializes to docbook xml
+ * <p>
+ * The xml is written to the given writer as the book is visited, so that memory does not grow with the size of the
+ * document. Only the openings of the sections that are being visited are held back until their first content is
+ * written, as empty sections are skipped or get a placeholder paragraph instead.
  *
  * @author dlam
  */
@@ -19,28 +22,50 @@ public class DBSerializeVisitor extends DBAbstractVisitor {
 
     private File dir;
     private boolean genImage;
-    private StringBuilder out;
+    private SectionWriter out;
+    private StringWriter buffer;
     private Set<String> ids;
     private ProgressStatus ps;
 
     public DBSerializeVisitor(boolean genNewImages, File dir, ProgressStatus ps) {
-        genImage = genNewImages;
-        this.dir = dir;
-        out = new StringBuilder();
-        ids = new HashSet<String>();
-        this.ps = ps;
+        this(genNewImages, dir, new HashSet<String>(), ps);
     }
 
     public DBSerializeVisitor(boolean genNewImages, File dir, Set<String> ids, ProgressStatus ps) {
+        this(genNewImages, dir, ids, (Writer) null, ps);
+    }
+
+    public DBSerializeVisitor(boolean genNewImages, File dir, Writer writer, ProgressStatus ps) {
+        this(genNewImages, dir, new HashSet<String>(), writer, ps);
+    }
+
+    private DBSerializeVisitor(boolean genNewImages, File dir, Set<String> ids, Writer writer, ProgressStatus ps) {
         genImage = genNewImages;
         this.dir = dir;
-        out = new StringBuilder();
+        if (writer == null) {
+            writer = buffer = new StringWriter();
+        }
+        out = new SectionWriter(writer);
         this.ids = ids;
         this.ps = ps;
     }
 
+    /**
+     * Returns the serialized xml of visitors that were not given a writer to stream to.
+     */
     public String getOut() {
-        return out.toString();
+        out.flush();
+        return buffer != null ? buffer.toString() : null;
+    }
+
+    /**
+     * Flushes the serialized xml to the writer, failing if any of it could not be written.
+     */
+    public void flush() throws IOException {
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("Failed to write DocBook output.");
+        }
     }
 
     @Override
@@ -354,33 +379,17 @@ public class DBSerializeVisitor extends DBAbstractVisitor {
 
     @Override
     public void visit(DBSection section) {
-        DBSerializeVisitor inside = new DBSerializeVisitor(genImage, dir, ids, ps);
+        out.hold(section);
         for (DocumentElement de : section.getChildren()) {
-            de.accept(inside);
+            de.accept(this);
         }
-        String inString = inside.getOut();
-        if (inString.isEmpty()) {
+        if (out.release(section)) {
             if (section.isSkipIfEmpty()) {
                 return;
             }
-            inString = "<para>" + section.getStringIfEmpty() + "</para>\n";
-        }
-        String id = "";
-        if (section.getId() != null && !ids.contains(section.getId())) {
-            id = " xml:id=\"" + section.getId() + "\"";
-            ids.add(section.getId());
-        }
-        if (section.isAppendix()) {
-            out.append("<appendix" + id + ">\n");
-        }
-        else if (section.isChapter()) {
-            out.append("<chapter" + id + ">\n");
-        }
-        else {
-            out.append("<section" + id + ">\n");
+            out.append(getOpening(section));
+            out.append("<para>" + section.getStringIfEmpty() + "</para>\n");
         }
-        out.append("<info><title>" + DocGenUtils.fixString(section.getTitle()) + "</title></info>\n");
-        out.append(inString);
         if (section.isAppendix()) {
             out.append("</appendix>\n");
         }
@@ -499,4 +508,85 @@ public class DBSerializeVisitor extends DBAbstractVisitor {
         out.append("</entry>");
 
     }
+
+    private String getOpening(DBSection section) {
+        String id = "";
+        if (section.getId() != null && !ids.contains(section.getId())) {
+            id = " xml:id=\"" + section.getId() + "\"";
+            ids.add(section.getId());
+        }
+        String opening;
+        if (section.isAppendix()) {
+            opening = "<appendix" + id + ">\n";
+        }
+        else if (section.isChapter()) {
+            opening = "<chapter" + id + ">\n";
+        }
+        else {
+            opening = "<section" + id + ">\n";
+        }
+        return opening + "<info><title>" + DocGenUtils.fixString(section.getTitle()) + "</title></info>\n";
+    }
+
+    /**
+     * Writer that holds back the openings of sections until content is written into them.
+     */
+    private class SectionWriter extends PrintWriter {
+        private final List<DBSection> heldSections = new ArrayList<>();
+
+        private SectionWriter(Writer writer) {
+            super(writer);
+        }
+
+        private void hold(DBSection section) {
+            heldSections.add(section);
+        }
+
+        /**
+         * Stops holding the opening of the section, which is the innermost one being visited.
+         *
+         * @return whether its opening was still held, i.e. nothing has been written into the section
+         */
+        private boolean release(DBSection section) {
+            int last = heldSections.size() - 1;
+            if (last >= 0 && heldSections.get(last) == section) {
+                heldSections.remove(last);
+                return true;
+            }
+            return false;
+        }
+
+        private void writeHeldSections() {
+            if (heldSections.isEmpty()) {
+                return;
+            }
+            List<DBSection> sections = new ArrayList<>(heldSections);
+            heldSections.clear();
+            for (DBSection section : sections) {
+                super.write(getOpening(section));
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            writeHeldSections();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            if (len > 0) {
+                writeHeldSections();
+            }
+            super.write(buf, off, len);
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            if (len > 0) {
+                writeHeldSections();
+            }
+            super.write(s, off, len);
+        }
+    }
 }
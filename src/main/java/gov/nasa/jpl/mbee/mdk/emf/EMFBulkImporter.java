@@ -3,6 +3,7 @@ package gov.nasa.jpl.mbee.mdk.emf;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.openapi.uml.ModelElementsManager;
 import com.nomagic.magicdraw.openapi.uml.ReadOnlyElementException;
 import com.nomagic.magicdraw.openapi.uml.SessionManager;
 import com.nomagic.magicdraw.uml.transaction.RepositoryModelValidator;
@@ -12,7 +13,6 @@ import com.nomagic.uml2.transaction.ModelValidationResult;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.annotations.SessionManaged;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
-import gov.nasa.jpl.mbee.mdk.api.incubating.convert.JsonToElementFunction;
 import gov.nasa.jpl.mbee.mdk.json.ImportException;
 import gov.nasa.jpl.mbee.mdk.mms.json.JsonEquivalencePredicate;
 import gov.nasa.jpl.mbee.mdk.util.Changelog;
@@ -33,6 +33,9 @@ import java.util.function.BiFunction;
 public class EMFBulkImporter implements BulkImportFunction {
     private final String sessionName;
     private int sessionCount;
+    private int passCount;
+    private int restartsAvoided;
+    private final Map<Phase, Long> phaseTimes = new EnumMap<>(Phase.class);
 
     private Changelog<String, Pair<Element, ObjectNode>> changelog;
     private Map<Pair<Element, ObjectNode>, Exception> failedElementMap;
@@ -80,15 +83,20 @@ public class EMFBulkImporter implements BulkImportFunction {
             objectNodes = new ArrayList<>(objectNodes);
             failedElementMap = new LinkedHashMap<>(objectNodes.size());
             nonEquivalentElements = new LinkedHashMap<>();
+            passCount = 0;
+            restartsAvoided = 0;
+            phaseTimes.clear();
             Map<Element, Changelog.ChangeType> changeTypeMap = new HashMap<>(objectNodes.size());
 
-            JsonToElementFunction jsonToElementFunction = new EMFImporter() {
+            EMFImporter jsonToElementFunction = new EMFImporter() {
                 @Override
                 protected List<EStructuralFeatureOverride> getEStructuralFeatureOverrides() {
                     if (eStructuralFeatureOverrides == null) {
-                        eStructuralFeatureOverrides = new ArrayList<>(super.getEStructuralFeatureOverrides());
-                        eStructuralFeatureOverrides.remove(EStructuralFeatureOverride.OWNER);
-                        eStructuralFeatureOverrides.add(EStructuralFeatureOverride.getOwnerEStructuralFeatureOverride(bulkIdToElementConverter));
+                        // only published once complete
+                        List<EStructuralFeatureOverride> overrides = new ArrayList<>(super.getEStructuralFeatureOverrides());
+                        overrides.remove(EStructuralFeatureOverride.OWNER);
+                        overrides.add(EStructuralFeatureOverride.getOwnerEStructuralFeatureOverride(bulkIdToElementConverter));
+                        eStructuralFeatureOverrides = overrides;
                     }
                     return eStructuralFeatureOverrides;
                 }
@@ -96,9 +104,10 @@ public class EMFBulkImporter implements BulkImportFunction {
                 @Override
                 protected List<PreProcessor> getPreProcessors() {
                     if (preProcessors == null) {
-                        preProcessors = new ArrayList<>(super.getPreProcessors());
-                        preProcessors.remove(PreProcessor.CREATE);
-                        preProcessors.add(0, PreProcessor.getCreatePreProcessor(bulkIdToElementConverter));
+                        List<PreProcessor> processors = new ArrayList<>(super.getPreProcessors());
+                        processors.remove(PreProcessor.CREATE);
+                        processors.add(0, PreProcessor.getCreatePreProcessor(bulkIdToElementConverter));
+                        preProcessors = processors;
                     }
                     return preProcessors;
                 }
@@ -109,44 +118,60 @@ public class EMFBulkImporter implements BulkImportFunction {
                 }
             };
 
-            bulkImport:
-            while (/*failedElementMap.isEmpty() && */!objectNodes.isEmpty()) {
+            long phaseStart = System.currentTimeMillis();
+            List<ObjectNode> orderedObjectNodes = orderByOwner(objectNodes);
+            Map<String, Set<String>> dependentIds = getDependentIds(objectNodes);
+            Map<String, ObjectNode> objectNodeMap = new HashMap<>(objectNodes.size());
+            orderedObjectNodes.forEach(objectNode -> objectNodeMap.putIfAbsent(getSysmlId(objectNode), objectNode));
+            addPhaseTime(Phase.ORDER, phaseStart);
+
+            // decoding only reads the model, so it is done in parallel once up front and reused by every pass
+            phaseStart = System.currentTimeMillis();
+            elementCache = null;
+            Map<ObjectNode, EMFImporter.DecodedElement> decodedElements = jsonToElementFunction.decode(orderedObjectNodes, project);
+            addPhaseTime(Phase.DECODE, phaseStart);
+
+            Set<String> quarantinedIds = new HashSet<>();
+            while (true) {
+                passCount++;
                 changelog = new Changelog<>();
                 elementCache = new HashMap<>();
-
-                List<ObjectNode> retryObjectNodes = new ArrayList<>();
+                changeTypeMap.clear();
+                ImportPass pass = new ImportPass(project, quarantinedIds, dependentIds, objectNodeMap);
 
                 if (SessionManager.getInstance().isSessionCreated(project)) {
                     SessionManager.getInstance().cancelSession(project);
                 }
-                SessionManager.getInstance().createSession(project, sessionName + " x" + objectNodes.size() + " #" + ++sessionCount);
+                int remaining = (int) orderedObjectNodes.stream().filter(objectNode -> !quarantinedIds.contains(getSysmlId(objectNode))).count();
+                SessionManager.getInstance().createSession(project, sessionName + " x" + remaining + " #" + ++sessionCount);
                 if (progressStatus != null) {
-                    progressStatus.setDescription(sessionName + " - " + NumberFormat.getInstance().format(objectNodes.size()) + " elements" + (!failedElementMap.isEmpty() ? " - " + NumberFormat.getInstance().format(failedElementMap.size()) + " failed" : ""));
-                    progressStatus.setCurrent(progressStatus.getMax() - objectNodes.size() * 3);
+                    progressStatus.setDescription(sessionName + " - " + NumberFormat.getInstance().format(remaining) + " elements" + (!failedElementMap.isEmpty() ? " - " + NumberFormat.getInstance().format(failedElementMap.size()) + " failed" : ""));
+                    progressStatus.setCurrent(0);
                 }
 
-                Iterator<ObjectNode> iterator = objectNodes.iterator();
-                while (iterator.hasNext()) {
-                    ObjectNode objectNode = iterator.next();
-                    JsonNode sysmlIdJsonNode = objectNode.get(MDKConstants.ID_KEY);
-                    String sysmlId = sysmlIdJsonNode != null && sysmlIdJsonNode.isTextual() ? sysmlIdJsonNode.asText() : null;
+                // owners are imported before the elements they own, so a single pass creates everything that can be created
+                phaseStart = System.currentTimeMillis();
+                for (ObjectNode objectNode : orderedObjectNodes) {
+                    String sysmlId = getSysmlId(objectNode);
+                    if (quarantinedIds.contains(sysmlId)) {
+                        continue;
+                    }
                     if (MDUtils.isDeveloperMode()) {
                         System.out.println("[ATTEMPT 1] Attempting " + sysmlId);
                     }
+                    boolean existed = sysmlId != null && bulkIdToElementConverter.apply(sysmlId, project) != null;
                     Changelog.Change<Element> change = null;
+                    Exception exception = new ImportException(null, objectNode, "Failed to create/update element.");
                     try {
-                        change = jsonToElementFunction.apply(objectNode, project, false);
-                    } catch (ImportException | ReadOnlyElementException ignored) {
+                        change = importElement(jsonToElementFunction, decodedElements.get(objectNode), objectNode, project, false);
+                    } catch (ImportException | ReadOnlyElementException e) {
+                        exception = e;
                     }
                     if (change == null || change.getChanged() == null) {
                         if (MDUtils.isDeveloperMode()) {
                             System.err.println("[FAILED 1] Could not create " + sysmlId);
                         }
-                        // Element may fail to create on first pass, ex: Diagram (because owner doesn't exist yet + custom creation), so we need to retry after everything else.
-                        retryObjectNodes.add(objectNode);
-                        //failedElementMap.put(new Pair<>(Converters.getIdToElementConverter().apply(objectNode.get(MDKConstants.ID_KEY).asText(), project), objectNode), importException);
-                        //iterator.remove();
-                        //continue bulkImport;
+                        pass.quarantine(sysmlId, objectNode, exception, existed);
                     }
                     else {
                         if (MDUtils.isDeveloperMode()) {
@@ -154,129 +179,114 @@ public class EMFBulkImporter implements BulkImportFunction {
                         }
                         if (sysmlId != null) {
                             elementCache.put(sysmlId, change.getChanged());
+                            pass.imported(sysmlId, existed);
                         }
                         changeTypeMap.put(change.getChanged(), change.getType());
                     }
-
-                    //changelog.addChange(Converters.getElementToIdConverter().apply(change.getChanged()), new Pair<>(change.getChanged(), objectNode), change.getType());
                     if (progressStatus != null) {
                         progressStatus.increase();
                     }
                 }
-
-                for (ObjectNode objectNode : retryObjectNodes) {
-                    JsonNode sysmlIdJsonNode = objectNode.get(MDKConstants.ID_KEY);
-                    String sysmlId = sysmlIdJsonNode != null && sysmlIdJsonNode.isTextual() ? sysmlIdJsonNode.asText() : null;
+                addPhaseTime(Phase.CREATE, phaseStart);
+
+                phaseStart = System.currentTimeMillis();
+                Map<String, Pair<Element, ObjectNode>> importedElements = new LinkedHashMap<>();
+                for (ObjectNode objectNode : orderedObjectNodes) {
+                    String sysmlId = getSysmlId(objectNode);
+                    if (quarantinedIds.contains(sysmlId)) {
+                        continue;
+                    }
                     if (MDUtils.isDeveloperMode()) {
-                        System.out.println("[ATTEMPT 1.5] Attempting " + sysmlId);
+                        System.out.println("[ATTEMPT 2] Attempting " + sysmlId);
                     }
                     Changelog.Change<Element> change = null;
-                    Exception exception = new ImportException(null, objectNode, "Failed to create/update element.");
+                    Exception exception = new ImportException(null, objectNode, "Failed to create/update element with relationships.");
                     try {
-                        change = jsonToElementFunction.apply(objectNode, project, false);
+                        change = importElement(jsonToElementFunction, decodedElements.get(objectNode), objectNode, project, true);
                     } catch (ImportException | ReadOnlyElementException e) {
                         exception = e;
                     }
                     if (change == null || change.getChanged() == null) {
                         if (MDUtils.isDeveloperMode()) {
-                            System.err.println("[FAILED 1.5] Could not create " + sysmlId);
+                            System.err.println("[FAILED 2] Could not import " + sysmlId);
                         }
-                        Element element = Converters.getIdToElementConverter().apply(sysmlId, project);
-                        failedElementMap.put(new Pair<>(element != null && !element.isInvalid() && !project.isDisposed(element) ? element : null, objectNode), exception);
-                        objectNodes.remove(objectNode);
-                        continue bulkImport;
+                        pass.quarantine(sysmlId, objectNode, exception, pass.existed(sysmlId));
                     }
                     else {
                         if (MDUtils.isDeveloperMode()) {
-                            System.out.println("[SUCCESS 1.5] Imported " + sysmlId);
+                            System.out.println("[SUCCESS 2] Imported " + sysmlId);
                         }
                         if (sysmlId != null) {
                             elementCache.put(sysmlId, change.getChanged());
                         }
-                        changeTypeMap.put(change.getChanged(), change.getType());
+                        importedElements.put(sysmlId != null ? sysmlId : Converters.getElementToIdConverter().apply(change.getChanged()), new Pair<>(change.getChanged(), objectNode));
+                        changeTypeMap.putIfAbsent(change.getChanged(), change.getType());
+                    }
+                    if (progressStatus != null) {
+                        progressStatus.increase();
                     }
                 }
+                addPhaseTime(Phase.RELATE, phaseStart);
 
-                iterator = objectNodes.iterator();
-                while (iterator.hasNext()) {
-                    ObjectNode objectNode = iterator.next();
-                    JsonNode sysmlIdJsonNode = objectNode.get(MDKConstants.ID_KEY);
-                    String sysmlId = sysmlIdJsonNode != null && sysmlIdJsonNode.isTextual() ? sysmlIdJsonNode.asText() : "<>";
-                    if (MDUtils.isDeveloperMode()) {
-                        System.out.println("[ATTEMPT 2] Attempting " + sysmlId);
+                phaseStart = System.currentTimeMillis();
+                for (Map.Entry<String, Pair<Element, ObjectNode>> entry : importedElements.entrySet()) {
+                    if (quarantinedIds.contains(entry.getKey())) {
+                        continue;
                     }
-                    Changelog.Change<Element> change = null;
-                    Exception exception = new ImportException(null, objectNode, "Failed to create/update element with relationships.");
-                    try {
-                        change = jsonToElementFunction.apply(objectNode, project, true);
-                    } catch (ImportException | ReadOnlyElementException e) {
-                        exception = e;
-                    }
-                    if (change == null || change.getChanged() == null) {
+                    Element element = entry.getValue().getKey();
+                    ObjectNode objectNode = entry.getValue().getValue();
+
+                    Collection<ModelValidationResult> results = validator.validateChanges(Collections.singleton(element));
+                    if (results != null && !results.isEmpty()) {
+                        ModelValidationResult result = results.iterator().next();
                         if (MDUtils.isDeveloperMode()) {
-                            System.err.println("[FAILED 2] Could not import " + sysmlId);
+                            System.err.println("[FAILED 3] " + result.toString());
                         }
-                        Element element = Converters.getIdToElementConverter().apply(sysmlId, project);
-                        failedElementMap.put(new Pair<>(element != null && !element.isInvalid() && !project.isDisposed(element) ? element : null, objectNode), exception);
-                        iterator.remove();
-                        continue bulkImport;
+                        pass.quarantine(entry.getKey(), objectNode, new ImportException(element, objectNode, "Element failed validation after importing. Reason: " + result.getReason()), pass.existed(entry.getKey()));
+                        continue;
                     }
-                    else {
+                    if (element.isInvalid()) {
                         if (MDUtils.isDeveloperMode()) {
-                            System.out.println("[SUCCESS 2] Imported " + sysmlId);
+                            System.err.println("[FAILED 4] Could not create " + entry.getKey());
                         }
-                        if (sysmlId != null) {
-                            elementCache.put(sysmlId, change.getChanged());
-                        }
-                        Changelog.ChangeType changeType = changeTypeMap.get(change.getChanged());
-                        changelog.addChange(Converters.getElementToIdConverter().apply(change.getChanged()), new Pair<>(change.getChanged(), objectNode), changeType != null ? changeType : change.getType());
+                        pass.quarantine(entry.getKey(), objectNode, new ImportException(element, objectNode, "Element was found to be invalid after importing."), pass.existed(entry.getKey()));
                     }
-
                     if (progressStatus != null) {
                         progressStatus.increase();
                     }
                 }
+                addPhaseTime(Phase.VERIFY, phaseStart);
 
-                for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
-                    for (Map.Entry<String, Pair<Element, ObjectNode>> entry : changelog.get(changeType).entrySet()) {
-                        Element element = entry.getValue().getKey();
-                        ObjectNode objectNode = entry.getValue().getValue();
-
-                        Collection<ModelValidationResult> results = validator.validateChanges(Collections.singleton(element));
-
-                        if (results != null && !results.isEmpty()) {
-                            ModelValidationResult result = results.iterator().next();
-                            if (MDUtils.isDeveloperMode()) {
-                                System.err.println("[FAILED 3] " + result.toString());
-                            }
-                            failedElementMap.put(new Pair<>(element != null && !element.isInvalid() && !project.isDisposed(element) ? element : null, objectNode), new ImportException(element, objectNode, "Element failed validation after importing. Reason: " + result.getReason()));
-                            objectNodes.remove(objectNode);
-                            continue bulkImport;
-                        }
-
-                        if (element.isInvalid()) {
-                            if (MDUtils.isDeveloperMode()) {
-                                JsonNode sysmlIdJsonNode = objectNode.get(MDKConstants.ID_KEY);
-                                String sysmlId = sysmlIdJsonNode != null && sysmlIdJsonNode.isTextual() ? sysmlIdJsonNode.asText() : "<>";
-                                System.err.println("[FAILED 4] Could not create " + sysmlId);
-                            }
-                            failedElementMap.put(new Pair<>(element != null && !element.isInvalid() && !project.isDisposed(element) ? element : null, objectNode), new ImportException(element, objectNode, "Element was found to be invalid after importing."));
-                            objectNodes.remove(objectNode);
-                            continue bulkImport;
-                        }
-                        ObjectNode sourceObjectNode = Converters.getElementToJsonConverter().apply(element, project);
-                        if (!JsonEquivalencePredicate.getInstance().test(sourceObjectNode, objectNode)) {
-                            // currently handled as a warning instead of an error
-                            nonEquivalentElements.put(element, objectNode);
-                        }
+                if (pass.isRestartRequired()) {
+                    // a failed element was partially applied to an element that already existed, which cannot be undone
+                    // within the session. everything that failed in this pass is skipped in the next one.
+                    continue;
+                }
+                restartsAvoided += pass.getQuarantineCount();
 
-                        if (progressStatus != null) {
-                            progressStatus.increase();
-                        }
+                phaseStart = System.currentTimeMillis();
+                for (Map.Entry<String, Pair<Element, ObjectNode>> entry : importedElements.entrySet()) {
+                    Element element = entry.getValue().getKey();
+                    if (quarantinedIds.contains(entry.getKey()) || element.isInvalid()) {
+                        continue;
+                    }
+                    ObjectNode objectNode = entry.getValue().getValue();
+                    Changelog.ChangeType changeType = changeTypeMap.get(element);
+                    changelog.addChange(Converters.getElementToIdConverter().apply(element), entry.getValue(), changeType != null ? changeType : Changelog.ChangeType.UPDATED);
+
+                    ObjectNode sourceObjectNode = Converters.getElementToJsonConverter().apply(element, project);
+                    if (!JsonEquivalencePredicate.getInstance().test(sourceObjectNode, objectNode)) {
+                        // currently handled as a warning instead of an error
+                        nonEquivalentElements.put(element, objectNode);
                     }
                 }
+                addPhaseTime(Phase.COMPARE, phaseStart);
                 break;
             }
+            if (MDUtils.isDeveloperMode()) {
+                System.out.println("[INFO] " + sessionName + " import: " + NumberFormat.getInstance().format(objectNodes.size()) + " elements, " + passCount + " pass" + (passCount != 1 ? "es" : "")
+                        + ", " + failedElementMap.size() + " failed, " + restartsAvoided + " restart" + (restartsAvoided != 1 ? "s" : "") + " avoided, phases " + phaseTimes + " ms");
+            }
         } finally {
             try {
                 if (failedElementMap.isEmpty()) {
@@ -303,6 +313,206 @@ public class EMFBulkImporter implements BulkImportFunction {
         return (changelog == null ? new Changelog<>() : changelog);
     }
 
+    private static String getSysmlId(ObjectNode objectNode) {
+        JsonNode sysmlIdJsonNode = objectNode.get(MDKConstants.ID_KEY);
+        return sysmlIdJsonNode != null && sysmlIdJsonNode.isTextual() ? sysmlIdJsonNode.asText() : null;
+    }
+
+    /**
+     * Orders the nodes so that owners within the collection come before the elements they own, keeping the given order
+     * otherwise.
+     */
+    private static List<ObjectNode> orderByOwner(Collection<ObjectNode> objectNodes) {
+        Map<String, ObjectNode> objectNodeMap = new HashMap<>(objectNodes.size());
+        for (ObjectNode objectNode : objectNodes) {
+            String sysmlId = getSysmlId(objectNode);
+            if (sysmlId != null) {
+                objectNodeMap.putIfAbsent(sysmlId, objectNode);
+            }
+        }
+        List<ObjectNode> orderedObjectNodes = new ArrayList<>(objectNodes.size());
+        Set<ObjectNode> visited = Collections.newSetFromMap(new IdentityHashMap<>(objectNodes.size()));
+        Deque<ObjectNode> owners = new ArrayDeque<>();
+        for (ObjectNode objectNode : objectNodes) {
+            // walk up to the outermost owner not yet ordered, then add the chain from the top down
+            for (ObjectNode current = objectNode; current != null && visited.add(current); ) {
+                owners.push(current);
+                JsonNode ownerIdJsonNode = current.get(MDKConstants.OWNER_ID_KEY);
+                current = ownerIdJsonNode != null && ownerIdJsonNode.isTextual() ? objectNodeMap.get(ownerIdJsonNode.asText()) : null;
+            }
+            while (!owners.isEmpty()) {
+                orderedObjectNodes.add(owners.pop());
+            }
+        }
+        return orderedObjectNodes;
+    }
+
+    /**
+     * Maps the id of each node to the ids of the other nodes in the collection that reference it, by owner or by any
+     * other id or ids field, including those of nested value specifications.
+     */
+    private static Map<String, Set<String>> getDependentIds(Collection<ObjectNode> objectNodes) {
+        Set<String> sysmlIds = new HashSet<>(objectNodes.size());
+        objectNodes.stream().map(EMFBulkImporter::getSysmlId).filter(Objects::nonNull).forEach(sysmlIds::add);
+        Map<String, Set<String>> dependentIds = new HashMap<>();
+        for (ObjectNode objectNode : objectNodes) {
+            String sysmlId = getSysmlId(objectNode);
+            if (sysmlId == null) {
+                continue;
+            }
+            Set<String> referencedIds = new HashSet<>();
+            collectReferencedIds(objectNode, referencedIds);
+            for (String referencedId : referencedIds) {
+                if (!referencedId.equals(sysmlId) && sysmlIds.contains(referencedId)) {
+                    dependentIds.computeIfAbsent(referencedId, key -> new LinkedHashSet<>()).add(sysmlId);
+                }
+            }
+        }
+        return dependentIds;
+    }
+
+    private static void collectReferencedIds(JsonNode jsonNode, Set<String> referencedIds) {
+        if (jsonNode.isArray()) {
+            jsonNode.forEach(value -> collectReferencedIds(value, referencedIds));
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (field.getKey().endsWith("Id") && value.isTextual()) {
+                referencedIds.add(value.asText());
+            }
+            else if (field.getKey().endsWith("Ids") && value.isArray()) {
+                value.forEach(id -> {
+                    if (id.isTextual()) {
+                        referencedIds.add(id.asText());
+                    }
+                });
+            }
+            else if (value.isContainerNode()) {
+                collectReferencedIds(value, referencedIds);
+            }
+        }
+    }
+
+    private void addPhaseTime(Phase phase, long phaseStart) {
+        phaseTimes.merge(phase, System.currentTimeMillis() - phaseStart, Long::sum);
+    }
+
+    private static Element getExistingElement(String sysmlId, Project project) {
+        Element element = sysmlId != null ? Converters.getIdToElementConverter().apply(sysmlId, project) : null;
+        return element != null && !element.isInvalid() && !project.isDisposed(element) ? element : null;
+    }
+
+    /**
+     * Tracks what a single import pass has done in its session, so that a failed element and the elements that depend on
+     * it can be taken out of the import without starting over. Elements created in the session are removed again.
+     * Elements that already existed cannot be reverted, in which case the pass has to be restarted in a new session.
+     */
+    private class ImportPass {
+        private final Project project;
+        private final Set<String> quarantinedIds;
+        private final Map<String, Set<String>> dependentIds;
+        private final Map<String, ObjectNode> objectNodeMap;
+        private final Set<String> existingIds = new HashSet<>();
+        private boolean restartRequired;
+        private int quarantineCount;
+
+        ImportPass(Project project, Set<String> quarantinedIds, Map<String, Set<String>> dependentIds, Map<String, ObjectNode> objectNodeMap) {
+            this.project = project;
+            this.quarantinedIds = quarantinedIds;
+            this.dependentIds = dependentIds;
+            this.objectNodeMap = objectNodeMap;
+        }
+
+        void imported(String sysmlId, boolean existed) {
+            if (existed) {
+                existingIds.add(sysmlId);
+            }
+        }
+
+        boolean existed(String sysmlId) {
+            return existingIds.contains(sysmlId);
+        }
+
+        boolean isRestartRequired() {
+            return restartRequired;
+        }
+
+        int getQuarantineCount() {
+            return quarantineCount;
+        }
+
+        void quarantine(String sysmlId, ObjectNode objectNode, Exception exception, boolean existed) {
+            quarantineCount++;
+            if (sysmlId == null) {
+                failedElementMap.put(new Pair<>(null, objectNode), exception);
+                return;
+            }
+            quarantinedIds.add(sysmlId);
+            if (existed) {
+                // the element is still there for its dependents to reference, but may have been partially updated
+                restartRequired = true;
+                failedElementMap.put(new Pair<>(getExistingElement(sysmlId, project), objectNode), exception);
+                return;
+            }
+            remove(sysmlId);
+            failedElementMap.put(new Pair<>(null, objectNode), exception);
+
+            // elements referencing one that could not be created would fail to resolve it
+            Deque<String> queue = new ArrayDeque<>(dependentIds.getOrDefault(sysmlId, Collections.emptySet()));
+            while (!queue.isEmpty()) {
+                String dependentId = queue.poll();
+                if (!quarantinedIds.add(dependentId)) {
+                    continue;
+                }
+                Element element = getExistingElement(dependentId, project);
+                if (existingIds.contains(dependentId)) {
+                    restartRequired = true;
+                }
+                else {
+                    remove(dependentId);
+                    element = null;
+                }
+                ObjectNode dependentObjectNode = objectNodeMap.get(dependentId);
+                failedElementMap.put(new Pair<>(element, dependentObjectNode), new ImportException(element, dependentObjectNode, "Element depends on " + sysmlId + ", which failed to import."));
+                if (element == null) {
+                    queue.addAll(dependentIds.getOrDefault(dependentId, Collections.emptySet()));
+                }
+            }
+        }
+
+        private void remove(String sysmlId) {
+            Element element = getExistingElement(sysmlId, project);
+            if (element == null) {
+                element = elementCache.get(sysmlId);
+            }
+            elementCache.remove(sysmlId);
+            if (element == null || element.isInvalid()) {
+                return;
+            }
+            try {
+                ModelElementsManager.getInstance().removeElement(element);
+            } catch (ReadOnlyElementException e) {
+                restartRequired = true;
+            }
+        }
+    }
+
+    private static Changelog.Change<Element> importElement(EMFImporter importer, EMFImporter.DecodedElement decodedElement, ObjectNode objectNode, Project project, boolean strict) throws ImportException, ReadOnlyElementException {
+        return decodedElement != null ? importer.apply(decodedElement, project, strict) : importer.apply(objectNode, project, strict);
+    }
+
+    private enum Phase {
+        ORDER,
+        DECODE,
+        CREATE,
+        RELATE,
+        VERIFY,
+        COMPARE
+    }
+
     private static void preloadRecursively(EObject eObject) {
         for (final TreeIterator<Object> allProperContents = EcoreUtil.getAllProperContents(eObject, true); allProperContents.hasNext(); allProperContents.next()) {
             // just iterate to load contents
@@ -323,6 +533,29 @@ public class EMFBulkImporter implements BulkImportFunction {
         return sessionCount;
     }
 
+    /**
+     * @return number of sessions the last import needed; more than one only if a failure could not be reverted in place
+     */
+    public int getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * @return number of failed elements in the last import that were taken out without restarting the session
+     */
+    public int getRestartsAvoided() {
+        return restartsAvoided;
+    }
+
+    /**
+     * @return time spent in each phase of the last import, in milliseconds
+     */
+    public Map<String, Long> getPhaseTimes() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        phaseTimes.forEach((phase, time) -> times.put(phase.name().toLowerCase(), time));
+        return times;
+    }
+
     public Changelog<String, Pair<Element, ObjectNode>> getChangelog() {
         return changelog;
     }
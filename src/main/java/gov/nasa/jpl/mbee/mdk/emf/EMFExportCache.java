@@ -0,0 +1,181 @@
+package gov.nasa.jpl.mbee.mdk.emf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.core.ProjectUtilities;
+import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
+import com.nomagic.magicdraw.openapi.uml.SessionManager;
+import com.nomagic.magicdraw.uml.transaction.MDTransactionManager;
+import com.nomagic.uml2.ext.jmi.UML2MetamodelConstants;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Constraint;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.InstanceSpecification;
+import com.nomagic.uml2.transaction.TransactionCommitListener;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+
+import java.beans.PropertyChangeEvent;
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Memoizes the json export of elements per project, so that repeated conversions of unchanged elements do not walk
+ * their structural features again. Entries are invalidated by the property change events of committed transactions,
+ * including undo and redo, for the changed element and for the elements whose json embeds it, i.e. its owners, the
+ * element an applied stereotype instance belongs to and the views constrained by a changed constraint.
+ * <p>
+ * The cache is bypassed while a session is open on the project, as changes are only reported once their transaction is
+ * committed, and for the roots of attached projects, whose mount json changes when the used project is updated. Callers receive their own copy of the json and are free to modify it. The number of cached elements per
+ * project is bounded by {@link MDKOptionsGroup#getExportCacheSize()}, evicting the least recently used entries first.
+ */
+public class EMFExportCache implements BiFunction<Element, Project, ObjectNode> {
+    private static final Map<Project, ProjectExportCache> PROJECT_CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final BiFunction<Element, Project, ObjectNode> exporter;
+
+    public EMFExportCache(BiFunction<Element, Project, ObjectNode> exporter) {
+        this.exporter = exporter;
+    }
+
+    @Override
+    public ObjectNode apply(Element element, Project project) {
+        int maxSize = MDKOptionsGroup.getMDKOptions().getExportCacheSize();
+        // the mount json of attached project roots holds the version and branch of the used project, which change without
+        // any property change event on the element
+        if (element == null || project == null || maxSize <= 0 || SessionManager.getInstance().isSessionCreated(project) || ProjectUtilities.isAttachedProjectRoot(element)) {
+            return exporter.apply(element, project);
+        }
+        return getProjectCache(project).get(element, project, exporter, maxSize);
+    }
+
+    public static ProjectExportCache getProjectCache(Project project) {
+        synchronized (PROJECT_CACHES) {
+            ProjectExportCache projectCache = PROJECT_CACHES.get(project);
+            if (projectCache == null) {
+                PROJECT_CACHES.put(project, projectCache = new ProjectExportCache());
+                ((MDTransactionManager) project.getRepository().getTransactionManager()).addTransactionCommitListenerIncludingUndoAndRedo(projectCache);
+            }
+            return projectCache;
+        }
+    }
+
+    private static void release(Project project) {
+        ProjectExportCache projectCache = PROJECT_CACHES.remove(project);
+        if (projectCache != null) {
+            project.getRepository().getTransactionManager().removeTransactionCommitListener(projectCache);
+            projectCache.clear();
+        }
+    }
+
+    public static class ProjectExportCache implements TransactionCommitListener {
+        private final LinkedHashMap<Element, JsonNode> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long generation;
+        private long hitCount, missCount, evictionCount, invalidationCount;
+
+        private ObjectNode get(Element element, Project project, BiFunction<Element, Project, ObjectNode> exporter, int maxSize) {
+            long exportGeneration;
+            synchronized (this) {
+                JsonNode jsonNode = entries.get(element);
+                if (jsonNode != null) {
+                    hitCount++;
+                    return jsonNode.isObject() ? ((ObjectNode) jsonNode).deepCopy() : null;
+                }
+                missCount++;
+                exportGeneration = generation;
+            }
+            ObjectNode objectNode = exporter.apply(element, project);
+            synchronized (this) {
+                // a transaction committed during the export may have changed what was read, so the result is not kept
+                if (exportGeneration == generation && !SessionManager.getInstance().isSessionCreated(project)) {
+                    entries.put(element, objectNode != null ? objectNode.deepCopy() : NullNode.getInstance());
+                    Iterator<Element> iterator = entries.keySet().iterator();
+                    while (entries.size() > maxSize && iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                        evictionCount++;
+                    }
+                }
+            }
+            return objectNode;
+        }
+
+        @Override
+        public Runnable transactionCommited(Collection<PropertyChangeEvent> events) {
+            synchronized (this) {
+                generation++;
+                if (entries.isEmpty()) {
+                    return null;
+                }
+                for (PropertyChangeEvent event : events) {
+                    if (!(event.getSource() instanceof Element)) {
+                        continue;
+                    }
+                    Element element = (Element) event.getSource();
+                    if (UML2MetamodelConstants.INSTANCE_DELETED.equals(event.getPropertyName())) {
+                        invalidate(element);
+                        continue;
+                    }
+                    for (Element e = element; e != null; e = e.getOwner()) {
+                        invalidate(e);
+                    }
+                    if (element instanceof InstanceSpecification) {
+                        invalidate(((InstanceSpecification) element).getStereotypedElement());
+                    }
+                    else if (element instanceof Constraint) {
+                        ((Constraint) element).getConstrainedElement().forEach(this::invalidate);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void invalidate(Element element) {
+            if (element != null && entries.remove(element) != null) {
+                invalidationCount++;
+            }
+        }
+
+        public synchronized void clear() {
+            generation++;
+            entries.clear();
+        }
+
+        public synchronized int size() {
+            return entries.size();
+        }
+
+        public synchronized long getHitCount() {
+            return hitCount;
+        }
+
+        public synchronized long getMissCount() {
+            return missCount;
+        }
+
+        public synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public synchronized long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Export cache: " + entries.size() + " entries, " + hitCount + " hits, " + missCount + " misses, " + evictionCount + " evictions, " + invalidationCount + " invalidations";
+        }
+    }
+
+    public static class EMFExportCacheProjectEventListenerAdapter extends ProjectEventListenerAdapter {
+        @Override
+        public void projectClosed(Project project) {
+            release(project);
+        }
+
+        @Override
+        public void projectReplaced(Project oldProject, Project newProject) {
+            release(oldProject);
+        }
+    }
+}
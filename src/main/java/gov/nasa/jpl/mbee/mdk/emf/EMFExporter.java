@@ -23,6 +23,7 @@ import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
 import gov.nasa.jpl.mbee.mdk.api.stream.MDKCollectors;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
 import gov.nasa.jpl.mbee.mdk.util.Utils;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EReference;
@@ -34,6 +35,7 @@ import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -52,7 +54,7 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
             return null;
         }
         ObjectNode objectNode = JacksonUtils.getObjectMapper().createObjectNode();
-        for (Processor processor : Arrays.stream(Processor.values()).filter(processor -> processor.getType() == Processor.Type.PRE).collect(Collectors.toList())) {
+        for (Processor processor : PRE_PROCESSORS) {
             if (nestedValueSpecification && processor == Processor.VALUE_SPECIFICATION) {
                 continue;
             }
@@ -66,13 +68,10 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 return null;
             }
         }
-        for (EStructuralFeature eStructuralFeature : element.eClass().getEAllStructuralFeatures()) {
-            final ObjectNode finalObjectNode = objectNode;
-            ExportFunction function = Arrays.stream(EStructuralFeatureOverride.values())
-                    .filter(override -> override.getPredicate().test(element, project, eStructuralFeature, finalObjectNode)).map(EStructuralFeatureOverride::getFunction)
-                    .findAny().orElse(DEFAULT_E_STRUCTURAL_FEATURE_FUNCTION);
+        for (FeatureExport featureExport : getExportPlan(element.eClass())) {
+            ExportFunction function = featureExport.resolve(element, project, objectNode);
             try {
-                objectNode = function.apply(element, project, eStructuralFeature, objectNode);
+                objectNode = function.apply(element, project, featureExport.getEStructuralFeature(), objectNode);
             } catch (RuntimeException e) {
                 e.printStackTrace();
                 System.err.println(element);
@@ -81,7 +80,7 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 return null;
             }
         }
-        for (Processor processor : Arrays.stream(Processor.values()).filter(processor -> processor.getType() == Processor.Type.POST).collect(Collectors.toList())) {
+        for (Processor processor : POST_PROCESSORS) {
             try {
                 objectNode = processor.getFunction().apply(element, project, objectNode);
             } catch (RuntimeException e) {
@@ -95,6 +94,44 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
         return objectNode;
     }
 
+    /**
+     * Returns the export plan of the EClass, building it on first use. The plan lists the structural features in export
+     * order, each with the override function that applies to it already resolved, and leaves out the features that are
+     * never exported. Only overrides whose predicate depends on the element itself are evaluated per element.
+     */
+    private static List<FeatureExport> getExportPlan(EClass eClass) {
+        List<FeatureExport> exportPlan = EXPORT_PLANS.get(eClass);
+        if (exportPlan == null) {
+            exportPlan = new ArrayList<>();
+            for (EStructuralFeature eStructuralFeature : eClass.getEAllStructuralFeatures()) {
+                List<EStructuralFeatureOverride> dynamicOverrides = new ArrayList<>(0);
+                ExportFunction function = null;
+                for (EStructuralFeatureOverride override : EStructuralFeatureOverride.values()) {
+                    if (override.getFeaturePredicate() == null) {
+                        dynamicOverrides.add(override);
+                    }
+                    else if (override.getFeaturePredicate().test(eClass, eStructuralFeature)) {
+                        function = override.getFunction();
+                        break;
+                    }
+                }
+                if (function == null) {
+                    function = getDefaultFunction(eStructuralFeature);
+                }
+                if (function == EMPTY_E_STRUCTURAL_FEATURE_FUNCTION && dynamicOverrides.isEmpty()) {
+                    continue;
+                }
+                exportPlan.add(new FeatureExport(eStructuralFeature, dynamicOverrides, function));
+            }
+            exportPlan = Collections.unmodifiableList(exportPlan);
+            List<FeatureExport> existingExportPlan = EXPORT_PLANS.putIfAbsent(eClass, exportPlan);
+            if (existingExportPlan != null) {
+                exportPlan = existingExportPlan;
+            }
+        }
+        return exportPlan;
+    }
+
     public static String getEID(EObject eObject) {
         if (eObject == null) {
             return null;
@@ -332,6 +369,10 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
         }
     }
 
+    private static final Processor[] PRE_PROCESSORS = Arrays.stream(Processor.values()).filter(processor -> processor.getType() == Processor.Type.PRE).toArray(Processor[]::new);
+    private static final Processor[] POST_PROCESSORS = Arrays.stream(Processor.values()).filter(processor -> processor.getType() == Processor.Type.POST).toArray(Processor[]::new);
+    private static final Map<EClass, List<FeatureExport>> EXPORT_PLANS = new ConcurrentHashMap<>();
+
     private static final SerializationFunction DEFAULT_SERIALIZATION_FUNCTION = (object, project, eStructuralFeature) -> {
         if (object == null) {
             return NullNode.getInstance();
@@ -398,35 +439,39 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
         return NullNode.getInstance();
     };
 
-    private static final ExportFunction DEFAULT_E_STRUCTURAL_FEATURE_FUNCTION = (element, project, eStructuralFeature, objectNode) -> {
-        if (!eStructuralFeature.isChangeable() || eStructuralFeature.isVolatile() || eStructuralFeature.isTransient() || eStructuralFeature.isUnsettable() || eStructuralFeature.isDerived() || eStructuralFeature.getName().startsWith("_")) {
-            return EMFExporter.EMPTY_E_STRUCTURAL_FEATURE_FUNCTION.apply(element, project, eStructuralFeature, objectNode);
-        }
-        return EMFExporter.UNCHECKED_E_STRUCTURAL_FEATURE_FUNCTION.apply(element, project, eStructuralFeature, objectNode);
-    };
+    private static final ExportFunction DEFAULT_E_STRUCTURAL_FEATURE_FUNCTION = (element, project, eStructuralFeature, objectNode) -> getDefaultFunction(eStructuralFeature).apply(element, project, eStructuralFeature, objectNode);
 
-    private static final ExportFunction UNCHECKED_E_STRUCTURAL_FEATURE_FUNCTION = (element, project, eStructuralFeature, objectNode) -> {
-        Object value = element.eGet(eStructuralFeature);
-        JsonNode serializedValue = DEFAULT_SERIALIZATION_FUNCTION.apply(value, project, eStructuralFeature);
-        if (value != null && serializedValue == null) {
-            System.err.println("[EMF] Failed to serialize " + eStructuralFeature + " for " + element + ": " + value + " - " + value.getClass());
-            return objectNode;
+    private static ExportFunction getDefaultFunction(EStructuralFeature eStructuralFeature) {
+        if (!eStructuralFeature.isChangeable() || eStructuralFeature.isVolatile() || eStructuralFeature.isTransient() || eStructuralFeature.isUnsettable() || eStructuralFeature.isDerived() || eStructuralFeature.getName().startsWith("_")) {
+            return EMPTY_E_STRUCTURAL_FEATURE_FUNCTION;
         }
+        return getUncheckedFunction(eStructuralFeature);
+    }
 
+    private static ExportFunction getUncheckedFunction(EStructuralFeature eStructuralFeature) {
         String key = eStructuralFeature.getName();
         if (eStructuralFeature instanceof EReference && EObject.class.isAssignableFrom(((EReference) eStructuralFeature).getEReferenceType().getInstanceClass())
                 && !ValueSpecification.class.isAssignableFrom(((EReference) eStructuralFeature).getEReferenceType().getInstanceClass())) {
             key += "Id" + (eStructuralFeature.isMany() ? "s" : "");
         }
-        objectNode.put(key, serializedValue);
-        return objectNode;
-    };
+        String finalKey = key;
+        return (element, project, feature, objectNode) -> {
+            Object value = element.eGet(feature);
+            JsonNode serializedValue = DEFAULT_SERIALIZATION_FUNCTION.apply(value, project, feature);
+            if (value != null && serializedValue == null) {
+                System.err.println("[EMF] Failed to serialize " + feature + " for " + element + ": " + value + " - " + value.getClass());
+                return objectNode;
+            }
+            objectNode.put(finalKey, serializedValue);
+            return objectNode;
+        };
+    }
 
     private static final ExportFunction EMPTY_E_STRUCTURAL_FEATURE_FUNCTION = (element, project, eStructuralFeature, objectNode) -> objectNode;
 
     private enum EStructuralFeatureOverride {
         ID(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature == element.eClass().getEIDAttribute(),
+                (eClass, eStructuralFeature) -> eStructuralFeature == eClass.getEIDAttribute(),
                 (element, project, eStructuralFeature, objectNode) -> {
                     /*if (element instanceof ValueSpecification && !(element instanceof TimeExpression)) {
                         return objectNode;
@@ -436,7 +481,7 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 }
         ),
         OWNER(
-                (element, project, eStructuralFeature, objectNode) -> UMLPackage.Literals.ELEMENT__OWNER == eStructuralFeature,
+                (eClass, eStructuralFeature) -> UMLPackage.Literals.ELEMENT__OWNER == eStructuralFeature,
                 (element, project, eStructuralFeature, objectNode) -> {
                     Element owner = element.getOwner();
                     /*if (element instanceof ValueSpecification || owner instanceof ValueSpecification) {
@@ -449,37 +494,37 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 }
         ),
         OWNING(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature.getName().startsWith("owning"),
+                (eClass, eStructuralFeature) -> eStructuralFeature.getName().startsWith("owning"),
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         ),
         OWNED(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature.getName().startsWith("owned") && !eStructuralFeature.isOrdered(),
+                (eClass, eStructuralFeature) -> eStructuralFeature.getName().startsWith("owned") && !eStructuralFeature.isOrdered(),
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         ),
         NESTED(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature.getName().startsWith("nested"),
+                (eClass, eStructuralFeature) -> eStructuralFeature.getName().startsWith("nested"),
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         ),
         PACKAGED_ELEMENT(
-                (element, project, eStructuralFeature, objectNode) -> UMLPackage.Literals.PACKAGE__PACKAGED_ELEMENT == eStructuralFeature || UMLPackage.Literals.COMPONENT__PACKAGED_ELEMENT == eStructuralFeature,
+                (eClass, eStructuralFeature) -> UMLPackage.Literals.PACKAGE__PACKAGED_ELEMENT == eStructuralFeature || UMLPackage.Literals.COMPONENT__PACKAGED_ELEMENT == eStructuralFeature,
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         ),
         DIRECTED_RELATIONSHIP__SOURCE(
-                (element, project, eStructuralFeature, objectNode) -> UMLPackage.Literals.DIRECTED_RELATIONSHIP__SOURCE == eStructuralFeature,
+                (eClass, eStructuralFeature) -> UMLPackage.Literals.DIRECTED_RELATIONSHIP__SOURCE == eStructuralFeature,
                 (element, project, eStructuralFeature, objectNode) -> {
                     objectNode.set(MDKConstants.DERIVED_KEY_PREFIX + eStructuralFeature.getName() + MDKConstants.IDS_KEY_SUFFIX, DEFAULT_SERIALIZATION_FUNCTION.apply(element.eGet(eStructuralFeature), project, eStructuralFeature));
                     return objectNode;
                 }
         ),
         DIRECTED_RELATIONSHIP__TARGET(
-                (element, project, eStructuralFeature, objectNode) -> UMLPackage.Literals.DIRECTED_RELATIONSHIP__TARGET == eStructuralFeature,
+                (eClass, eStructuralFeature) -> UMLPackage.Literals.DIRECTED_RELATIONSHIP__TARGET == eStructuralFeature,
                 (element, project, eStructuralFeature, objectNode) -> {
                     objectNode.set(MDKConstants.DERIVED_KEY_PREFIX + eStructuralFeature.getName() + MDKConstants.IDS_KEY_SUFFIX, DEFAULT_SERIALIZATION_FUNCTION.apply(element.eGet(eStructuralFeature), project, eStructuralFeature));
                     return objectNode;
                 }
         ),
         CONNECTOR__END(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature == UMLPackage.Literals.CONNECTOR__END,
+                (eClass, eStructuralFeature) -> eStructuralFeature == UMLPackage.Literals.CONNECTOR__END,
                 (element, project, eStructuralFeature, objectNode) -> {
                     Connector connector = (Connector) element;
                     // TODO Stop using Strings @donbot
@@ -504,7 +549,7 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 }
         ),
         VALUE_SPECIFICATION__EXPRESSION(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature == UMLPackage.Literals.VALUE_SPECIFICATION__EXPRESSION,
+                (eClass, eStructuralFeature) -> eStructuralFeature == UMLPackage.Literals.VALUE_SPECIFICATION__EXPRESSION,
                 /*(element, project, eStructuralFeature, objectNode) -> {
                     Expression expression = null;
                     Object object = element.eGet(UMLPackage.Literals.VALUE_SPECIFICATION__EXPRESSION);
@@ -517,18 +562,36 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         ),
         UML_CLASS(
-                (element, project, eStructuralFeature, objectNode) -> eStructuralFeature == UMLPackage.Literals.CLASSIFIER__UML_CLASS || eStructuralFeature == UMLPackage.Literals.PROPERTY__UML_CLASS || eStructuralFeature == UMLPackage.Literals.OPERATION__UML_CLASS,
+                (eClass, eStructuralFeature) -> eStructuralFeature == UMLPackage.Literals.CLASSIFIER__UML_CLASS || eStructuralFeature == UMLPackage.Literals.PROPERTY__UML_CLASS || eStructuralFeature == UMLPackage.Literals.OPERATION__UML_CLASS,
                 EMPTY_E_STRUCTURAL_FEATURE_FUNCTION
         );
 
+        private FeaturePredicate featurePredicate;
         private ExportPredicate predicate;
         private ExportFunction function;
 
+        EStructuralFeatureOverride(FeaturePredicate featurePredicate, ExportFunction function) {
+            this.featurePredicate = featurePredicate;
+            this.predicate = (element, project, eStructuralFeature, objectNode) -> featurePredicate.test(element.eClass(), eStructuralFeature);
+            this.function = function;
+        }
+
+        /**
+         * For overrides that depend on the element being exported, and not only on its EClass. These are evaluated for
+         * every element instead of being resolved in the export plan.
+         */
         EStructuralFeatureOverride(ExportPredicate predicate, ExportFunction function) {
             this.predicate = predicate;
             this.function = function;
         }
 
+        /**
+         * @return the EClass level predicate, or null if the override depends on the element being exported
+         */
+        public FeaturePredicate getFeaturePredicate() {
+            return featurePredicate;
+        }
+
         public ExportPredicate getPredicate() {
             return predicate;
         }
@@ -543,6 +606,36 @@ public class EMFExporter implements BiFunction<Element, Project, ObjectNode> {
         JsonNode apply(Object object, Project project, EStructuralFeature eStructuralFeature);
     }
 
+    private static class FeatureExport {
+        private final EStructuralFeature eStructuralFeature;
+        private final EStructuralFeatureOverride[] dynamicOverrides;
+        private final ExportFunction function;
+
+        FeatureExport(EStructuralFeature eStructuralFeature, List<EStructuralFeatureOverride> dynamicOverrides, ExportFunction function) {
+            this.eStructuralFeature = eStructuralFeature;
+            this.dynamicOverrides = dynamicOverrides.toArray(new EStructuralFeatureOverride[dynamicOverrides.size()]);
+            this.function = function;
+        }
+
+        EStructuralFeature getEStructuralFeature() {
+            return eStructuralFeature;
+        }
+
+        ExportFunction resolve(Element element, Project project, ObjectNode objectNode) {
+            for (EStructuralFeatureOverride override : dynamicOverrides) {
+                if (override.getPredicate().test(element, project, eStructuralFeature, objectNode)) {
+                    return override.getFunction();
+                }
+            }
+            return function;
+        }
+    }
+
+    @FunctionalInterface
+    interface FeaturePredicate {
+        boolean test(EClass eClass, EStructuralFeature eStructuralFeature);
+    }
+
     @FunctionalInterface
     interface ExportPredicate {
         boolean test(Element element, Project project, EStructuralFeature structuralFeature, ObjectNode objectNode);
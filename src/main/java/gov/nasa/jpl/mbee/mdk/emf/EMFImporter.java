@@ -30,9 +30,9 @@ import org.eclipse.emf.ecore.*;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -40,20 +40,143 @@ import java.util.function.Function;
  * Created by igomes on 9/19/16.
  */
 public class EMFImporter implements JsonToElementFunction {
+    private static final int DECODE_CHUNK_SIZE = 500;
+    private static final AtomicInteger DECODE_THREAD_COUNT = new AtomicInteger();
+
     protected List<PreProcessor> preProcessors;
     protected List<EStructuralFeatureOverride> eStructuralFeatureOverrides;
 
+    private final Map<EClass, List<FeatureImport>> importPlans = new ConcurrentHashMap<>();
+    private DecodedElement decodedElement;
+
     @Override
     public Changelog.Change<Element> apply(ObjectNode objectNode, Project project, Boolean strict) throws ImportException {
         return convert(objectNode, project, strict);
     }
 
+    /**
+     * Imports an element that was decoded with {@link #decode(Collection, Project)}. The decoded literal values and
+     * referenced elements are used in place of reading them from the json again, except for referenced elements that
+     * have since become invalid, which are looked up again.
+     */
+    public synchronized Changelog.Change<Element> apply(DecodedElement decodedElement, Project project, Boolean strict) throws ImportException {
+        this.decodedElement = decodedElement;
+        try {
+            return convert(decodedElement.getObjectNode(), project, strict);
+        } finally {
+            this.decodedElement = null;
+        }
+    }
+
+    /**
+     * Decodes the json of the elements in parallel, without modifying the model, so that as little work as possible is
+     * left for the session in which they are imported. Each element's EClass is determined, its literal values are
+     * deserialized and the elements it references that already exist are looked up. Elements that cannot be decoded are
+     * left out of the result and imported from their json as usual.
+     *
+     * @return decoded elements keyed by the identity of their json
+     */
+    public Map<ObjectNode, DecodedElement> decode(Collection<ObjectNode> objectNodes, Project project) {
+        Map<ObjectNode, DecodedElement> decodedElements = Collections.synchronizedMap(new IdentityHashMap<>(objectNodes.size()));
+        // subclasses initialize these lazily, so they are resolved here before any decode thread builds an import plan
+        getEStructuralFeatureOverrides();
+        getPreProcessors();
+        List<ObjectNode> objectNodeList = new ArrayList<>(objectNodes);
+        int threads = Math.max(Math.min(Runtime.getRuntime().availableProcessors(), (objectNodeList.size() + DECODE_CHUNK_SIZE - 1) / DECODE_CHUNK_SIZE), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "MDK Import Decode " + DECODE_THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < objectNodeList.size(); i += DECODE_CHUNK_SIZE) {
+                List<ObjectNode> chunk = objectNodeList.subList(i, Math.min(i + DECODE_CHUNK_SIZE, objectNodeList.size()));
+                futures.add(executor.submit(() -> {
+                    for (ObjectNode objectNode : chunk) {
+                        try {
+                            DecodedElement decodedElement = decode(objectNode, project);
+                            if (decodedElement != null) {
+                                decodedElements.put(objectNode, decodedElement);
+                            }
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return decodedElements;
+    }
+
+    private DecodedElement decode(ObjectNode objectNode, Project project) {
+        JsonNode jsonNode = objectNode.get(MDKConstants.ID_KEY);
+        String id = jsonNode != null && jsonNode.isTextual() ? jsonNode.asText() : null;
+        Element element = id != null ? getIdToElementConverter().apply(id, project) : null;
+        EClass eClass = null;
+        if (element != null) {
+            eClass = element.eClass();
+        }
+        else if ((jsonNode = objectNode.get(MDKConstants.TYPE_KEY)) != null && jsonNode.isTextual()) {
+            EClassifier eClassifier = UMLPackage.eINSTANCE.getEClassifier(jsonNode.asText());
+            eClass = eClassifier instanceof EClass ? (EClass) eClassifier : null;
+        }
+        if (eClass == null) {
+            return null;
+        }
+        Map<EStructuralFeature, Object> values = new HashMap<>();
+        Map<String, Element> referencedElements = new HashMap<>();
+        if (element != null) {
+            referencedElements.put(id, element);
+        }
+        for (FeatureImport featureImport : getImportPlan(eClass)) {
+            EStructuralFeature eStructuralFeature = featureImport.getEStructuralFeature();
+            JsonNode valueJsonNode = objectNode.get(featureImport.getKey());
+            if (valueJsonNode == null) {
+                continue;
+            }
+            if (eStructuralFeature instanceof EAttribute) {
+                try {
+                    // decoded strictly so that the value is the same regardless of the strictness it is imported with
+                    Object value = DEFAULT_DESERIALIZATION_FUNCTION.apply(featureImport.getKey(), valueJsonNode, false, objectNode, eStructuralFeature, project, true, null);
+                    if (value != null || valueJsonNode.isNull()) {
+                        values.put(eStructuralFeature, value);
+                    }
+                } catch (ImportException | RuntimeException ignored) {
+                    // left for the import to report
+                }
+            }
+            else if (eStructuralFeature instanceof EReference && !ValueSpecification.class.isAssignableFrom(((EReference) eStructuralFeature).getEReferenceType().getInstanceClass())) {
+                for (JsonNode idJsonNode : valueJsonNode.isArray() ? valueJsonNode : Collections.singletonList(valueJsonNode)) {
+                    String referencedId;
+                    Element referencedElement;
+                    if (idJsonNode.isTextual() && !referencedElements.containsKey(referencedId = idJsonNode.asText())
+                            && (referencedElement = getIdToElementConverter().apply(referencedId, project)) != null) {
+                        referencedElements.put(referencedId, referencedElement);
+                    }
+                }
+            }
+        }
+        return new DecodedElement(objectNode, eClass, values, referencedElements);
+    }
+
     private synchronized Changelog.Change<Element> convert(ObjectNode objectNode, Project project, Boolean strict) throws ImportException {
         JsonNode jsonNode = objectNode.get(MDKConstants.ID_KEY);
         /*if (jsonNode == null || !jsonNode.isTextual()) {
             return null;
         }*/
-        Element element = jsonNode != null && jsonNode.isTextual() ? getIdToElementConverter().apply(jsonNode.asText(), project) : null;
+        Element element = jsonNode != null && jsonNode.isTextual() ? resolve(jsonNode.asText(), project) : null;
         Changelog.ChangeType changeType = element != null && !project.isDisposed(element) ? Changelog.ChangeType.UPDATED : Changelog.ChangeType.CREATED;
 
         try {
@@ -66,12 +189,9 @@ public class EMFImporter implements JsonToElementFunction {
             if (element.eClass() == null) {
                 return null;
             }
-            for (EStructuralFeature eStructuralFeature : element.eClass().getEAllStructuralFeatures()) {
-                final Element finalElement = element;
-                ImportFunction function = getEStructuralFeatureOverrides().stream().filter(override -> override.getPredicate()
-                        .test(objectNode, eStructuralFeature, project, strict, finalElement)).map(EStructuralFeatureOverride::getFunction)
-                        .findAny().orElse(DEFAULT_E_STRUCTURAL_FEATURE_FUNCTION);
-                element = function.apply(objectNode, eStructuralFeature, project, strict, element);
+            for (FeatureImport featureImport : getImportPlan(element.eClass())) {
+                ImportFunction function = featureImport.resolve(objectNode, project, strict, element);
+                element = function.apply(objectNode, featureImport.getEStructuralFeature(), project, strict, element);
                 if (element == null) {
                     return null;
                 }
@@ -82,6 +202,59 @@ public class EMFImporter implements JsonToElementFunction {
         return new Changelog.Change<>(element, changeType);
     }
 
+    /**
+     * Returns the import plan of the EClass, building it on first use. The plan lists the structural features that can be
+     * imported, each with the override function that applies to it already resolved. Only overrides whose predicate
+     * depends on the json or element being imported are evaluated per element.
+     */
+    private List<FeatureImport> getImportPlan(EClass eClass) {
+        List<FeatureImport> importPlan = importPlans.get(eClass);
+        if (importPlan == null) {
+            importPlan = new ArrayList<>();
+            for (EStructuralFeature eStructuralFeature : eClass.getEAllStructuralFeatures()) {
+                List<EStructuralFeatureOverride> dynamicOverrides = new ArrayList<>(0);
+                ImportFunction function = null;
+                for (EStructuralFeatureOverride override : getEStructuralFeatureOverrides()) {
+                    if (override.getFeaturePredicate() == null) {
+                        dynamicOverrides.add(override);
+                    }
+                    else if (override.getFeaturePredicate().test(eClass, eStructuralFeature)) {
+                        function = override.getFunction();
+                        break;
+                    }
+                }
+                if (function == null) {
+                    function = isImported(eStructuralFeature) ? UNCHECKED_E_STRUCTURAL_FEATURE_FUNCTION : EMPTY_E_STRUCTURAL_FEATURE_FUNCTION;
+                }
+                if (function == EMPTY_E_STRUCTURAL_FEATURE_FUNCTION && dynamicOverrides.isEmpty()) {
+                    continue;
+                }
+                importPlan.add(new FeatureImport(eStructuralFeature, KEY_FUNCTION.apply(eStructuralFeature), dynamicOverrides, function));
+            }
+            importPlan = Collections.unmodifiableList(importPlan);
+            List<FeatureImport> existingImportPlan = importPlans.putIfAbsent(eClass, importPlan);
+            if (existingImportPlan != null) {
+                importPlan = existingImportPlan;
+            }
+        }
+        return importPlan;
+    }
+
+    private static boolean isImported(EStructuralFeature eStructuralFeature) {
+        return eStructuralFeature.isChangeable() && !eStructuralFeature.isVolatile() && !eStructuralFeature.isTransient() && !eStructuralFeature.isUnsettable() && !eStructuralFeature.isDerived() && !eStructuralFeature.getName().startsWith(MDKConstants.DERIVED_KEY_PREFIX);
+    }
+
+    /**
+     * Looks up an element by id, using the element found while decoding if it is still valid.
+     */
+    private Element resolve(String id, Project project) {
+        Element element = decodedElement != null ? decodedElement.getReferencedElements().get(id) : null;
+        if (element != null && !element.isInvalid() && !project.isDisposed(element)) {
+            return element;
+        }
+        return getIdToElementConverter().apply(id, project);
+    }
+
     protected List<PreProcessor> getPreProcessors() {
         if (preProcessors == null) {
             preProcessors = Arrays.asList(PreProcessor.CREATE, PreProcessor.EDITABLE, PreProcessor.DOCUMENTATION, PreProcessor.SYSML_ID_VALIDATION);
@@ -233,7 +406,7 @@ public class EMFImporter implements JsonToElementFunction {
                 return null;
             }
             String id = jsonNode.asText();
-            Element referencedElement = getIdToElementConverter().apply(id, project);
+            Element referencedElement = resolve(id, project);
             if (referencedElement == null) {
                 if (strict) {
                     throw new ReferenceException(element, objectNode, "Could not find referenced element " + id + " in model for key \"" + key + "\" in JSON.");
@@ -289,13 +462,6 @@ public class EMFImporter implements JsonToElementFunction {
         return null;
     };
 
-    private final ImportFunction DEFAULT_E_STRUCTURAL_FEATURE_FUNCTION = (objectNode, eStructuralFeature, project, strict, element) -> {
-        if (!eStructuralFeature.isChangeable() || eStructuralFeature.isVolatile() || eStructuralFeature.isTransient() || eStructuralFeature.isUnsettable() || eStructuralFeature.isDerived() || eStructuralFeature.getName().startsWith(MDKConstants.DERIVED_KEY_PREFIX)) {
-            return EMFImporter.EMPTY_E_STRUCTURAL_FEATURE_FUNCTION.apply(objectNode, eStructuralFeature, project, strict, element);
-        }
-        return this.UNCHECKED_E_STRUCTURAL_FEATURE_FUNCTION.apply(objectNode, eStructuralFeature, project, strict, element);
-    };
-
     private final ImportFunction UNCHECKED_E_STRUCTURAL_FEATURE_FUNCTION = (objectNode, eStructuralFeature, project, strict, element) -> {
         String key = KEY_FUNCTION.apply(eStructuralFeature);
         JsonNode jsonNode = objectNode.get(key);
@@ -306,7 +472,17 @@ public class EMFImporter implements JsonToElementFunction {
             return element;
         }
 
-        Object deserialized = DEFAULT_DESERIALIZATION_FUNCTION.apply(key, jsonNode, false, objectNode, eStructuralFeature, project, strict, element);
+        Object deserialized;
+        if (decodedElement != null && decodedElement.getObjectNode() == objectNode && decodedElement.getValues().containsKey(eStructuralFeature)) {
+            deserialized = decodedElement.getValues().get(eStructuralFeature);
+            if (deserialized instanceof Collection) {
+                // decoded elements can be imported more than once, e.g. non-strictly and then strictly
+                deserialized = eStructuralFeature.isUnique() ? new UniqueEList<>((Collection<?>) deserialized) : new BasicEList<>((Collection<?>) deserialized);
+            }
+        }
+        else {
+            deserialized = DEFAULT_DESERIALIZATION_FUNCTION.apply(key, jsonNode, false, objectNode, eStructuralFeature, project, strict, element);
+        }
 
         if (deserialized == null && !jsonNode.isNull()) {
             if (strict) {
@@ -362,7 +538,7 @@ public class EMFImporter implements JsonToElementFunction {
     protected static class EStructuralFeatureOverride {
         public static final EStructuralFeatureOverride
                 ID = new EStructuralFeatureOverride(
-                (objectNode, eStructuralFeature, project, strict, element) -> eStructuralFeature == element.eClass().getEIDAttribute(),
+                (eClass, eStructuralFeature) -> eStructuralFeature == eClass.getEIDAttribute(),
                 (objectNode, eStructuralFeature, project, strict, element) -> {
                     JsonNode jsonNode = objectNode.get(MDKConstants.ID_KEY);
                     if (jsonNode == null || !jsonNode.isTextual()) {
@@ -385,14 +561,32 @@ public class EMFImporter implements JsonToElementFunction {
         ),
                 OWNER = getOwnerEStructuralFeatureOverride(Converters.getIdToElementConverter());
 
+        private FeaturePredicate featurePredicate;
         private ImportPredicate importPredicate;
         private ImportFunction importFunction;
 
+        public EStructuralFeatureOverride(FeaturePredicate featurePredicate, ImportFunction importFunction) {
+            this.featurePredicate = featurePredicate;
+            this.importPredicate = (objectNode, eStructuralFeature, project, strict, element) -> featurePredicate.test(element.eClass(), eStructuralFeature);
+            this.importFunction = importFunction;
+        }
+
+        /**
+         * For overrides that depend on the json or element being imported, and not only on the EClass. These are
+         * evaluated for every element instead of being resolved in the import plan.
+         */
         public EStructuralFeatureOverride(ImportPredicate importPredicate, ImportFunction importFunction) {
             this.importPredicate = importPredicate;
             this.importFunction = importFunction;
         }
 
+        /**
+         * @return the EClass level predicate, or null if the override depends on the json or element being imported
+         */
+        public FeaturePredicate getFeaturePredicate() {
+            return featurePredicate;
+        }
+
         public ImportPredicate getPredicate() {
             return importPredicate;
         }
@@ -403,7 +597,7 @@ public class EMFImporter implements JsonToElementFunction {
 
         protected static EStructuralFeatureOverride getOwnerEStructuralFeatureOverride(BiFunction<String, Project, Element> idToElementConverter) {
             return new EStructuralFeatureOverride(
-                    (objectNode, eStructuralFeature, project, strict, element) -> UMLPackage.Literals.ELEMENT__OWNER == eStructuralFeature,
+                    (eClass, eStructuralFeature) -> UMLPackage.Literals.ELEMENT__OWNER == eStructuralFeature,
                     (objectNode, eStructuralFeature, project, strict, element) -> {
                         if (element instanceof Model || element instanceof ValueSpecification) {
                             return element;
@@ -489,4 +683,73 @@ public class EMFImporter implements JsonToElementFunction {
     interface ImportPredicate {
         boolean test(ObjectNode objectNode, EStructuralFeature eStructuralFeature, Project project, boolean strict, Element element);
     }
+
+    @FunctionalInterface
+    interface FeaturePredicate {
+        boolean test(EClass eClass, EStructuralFeature eStructuralFeature);
+    }
+
+    private static class FeatureImport {
+        private final EStructuralFeature eStructuralFeature;
+        private final String key;
+        private final EStructuralFeatureOverride[] dynamicOverrides;
+        private final ImportFunction function;
+
+        FeatureImport(EStructuralFeature eStructuralFeature, String key, List<EStructuralFeatureOverride> dynamicOverrides, ImportFunction function) {
+            this.eStructuralFeature = eStructuralFeature;
+            this.key = key;
+            this.dynamicOverrides = dynamicOverrides.toArray(new EStructuralFeatureOverride[dynamicOverrides.size()]);
+            this.function = function;
+        }
+
+        EStructuralFeature getEStructuralFeature() {
+            return eStructuralFeature;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        ImportFunction resolve(ObjectNode objectNode, Project project, boolean strict, Element element) {
+            for (EStructuralFeatureOverride override : dynamicOverrides) {
+                if (override.getPredicate().test(objectNode, eStructuralFeature, project, strict, element)) {
+                    return override.getFunction();
+                }
+            }
+            return function;
+        }
+    }
+
+    /**
+     * Element json that has been decoded ahead of its import, see {@link #decode(Collection, Project)}.
+     */
+    public static class DecodedElement {
+        private final ObjectNode objectNode;
+        private final EClass eClass;
+        private final Map<EStructuralFeature, Object> values;
+        private final Map<String, Element> referencedElements;
+
+        DecodedElement(ObjectNode objectNode, EClass eClass, Map<EStructuralFeature, Object> values, Map<String, Element> referencedElements) {
+            this.objectNode = objectNode;
+            this.eClass = eClass;
+            this.values = values;
+            this.referencedElements = referencedElements;
+        }
+
+        public ObjectNode getObjectNode() {
+            return objectNode;
+        }
+
+        public EClass getEClass() {
+            return eClass;
+        }
+
+        Map<EStructuralFeature, Object> getValues() {
+            return values;
+        }
+
+        Map<String, Element> getReferencedElements() {
+            return referencedElements;
+        }
+    }
 }
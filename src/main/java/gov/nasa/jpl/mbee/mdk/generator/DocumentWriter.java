@@ -2,15 +2,23 @@ package gov.nasa.jpl.mbee.mdk.generator;
 
 import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.GUILog;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.export.image.ImageExporter;
 import com.nomagic.magicdraw.openapi.uml.SessionManager;
+import com.nomagic.magicdraw.uml.symbols.DiagramPresentationElement;
 import com.nomagic.task.ProgressStatus;
 import com.nomagic.task.RunnableWithProgress;
-import gov.nasa.jpl.mbee.mdk.docgen.docbook.DBBook;
-import gov.nasa.jpl.mbee.mdk.docgen.docbook.DBSerializeVisitor;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Diagram;
+import gov.nasa.jpl.mbee.mdk.docgen.DiagramArtifactCache;
+import gov.nasa.jpl.mbee.mdk.docgen.docbook.*;
 import gov.nasa.jpl.mbee.mdk.model.DocBookOutputVisitor;
 import gov.nasa.jpl.mbee.mdk.model.Document;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * runs the generation as a runnable to not stall magicdraw main thread, also
@@ -36,8 +44,7 @@ public class DocumentWriter implements RunnableWithProgress {
     public void run(ProgressStatus arg0) {
         GUILog gl = Application.getInstance().getGUILog();
         arg0.setIndeterminate(true);
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(realfile));
+        try (BufferedWriter writer = Files.newBufferedWriter(realfile.toPath(), StandardCharsets.UTF_8)) {
             gl.log("Output directory: " + dir.getAbsolutePath());
             SessionManager.getInstance().createSession(Application.getInstance().getProject(), DocBookOutputVisitor.class.getSimpleName());
             DocBookOutputVisitor visitor = new DocBookOutputVisitor(false, dir.getAbsolutePath());
@@ -45,15 +52,21 @@ public class DocumentWriter implements RunnableWithProgress {
             SessionManager.getInstance().closeSession(Application.getInstance().getProject());
             DBBook book = visitor.getBook();
             if (book != null) {
+                // the diagrams of the book are rasterized in the background while it is serialized
+                Project project = Application.getInstance().getProject();
+                DiagramArtifactCache diagramArtifactCache = DiagramArtifactCache.getCache(project);
+                long previousHitCount = diagramArtifactCache.getHitCount(), previousMissCount = diagramArtifactCache.getMissCount(), previousExportTimeMillis = diagramArtifactCache.getExportTimeMillis();
+                diagramArtifactCache.prefetch(getDiagramPresentationElements(project, book), ImageExporter.PNG);
                 // List<DocumentElement> books = dge.getDocumentElement();
-                DBSerializeVisitor v = new DBSerializeVisitor(genNewImage, dir, arg0);
-                book.accept(v);
                 writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
                 // writer.write("<!DOCTYPE book [\n<!ENTITY % sgml.features \"IGNORE\">\n<!ENTITY % xml.features \"INCLUDE\">\n<!ENTITY % dbcent PUBLIC \"-//OASIS//ENTITIES DocBook Character Entities\nV4.4//EN\" \"dbcentx.mod\">\n%dbcent;\n]>");
-                writer.write(v.getOut());
+                // the book is streamed to the file as it is visited instead of being serialized in memory first
+                DBSerializeVisitor v = new DBSerializeVisitor(genNewImage, dir, writer, arg0);
+                book.accept(v);
+                v.flush();
+                gl.log(diagramArtifactCache.getSummary(previousHitCount, previousMissCount, previousExportTimeMillis));
             }
             writer.flush();
-            writer.close();
             gl.log("Generation Finished");
         } catch (IOException ex) {
             StringWriter sw = new StringWriter();
@@ -64,4 +77,37 @@ public class DocumentWriter implements RunnableWithProgress {
         }
     }
 
+    private static List<DiagramPresentationElement> getDiagramPresentationElements(Project project, DBBook book) {
+        Set<Diagram> diagrams = new LinkedHashSet<>();
+        if (book.getMetadata() != null && book.getMetadata().getCoverImage() != null) {
+            diagrams.add(book.getMetadata().getCoverImage());
+        }
+        book.accept(new DBAbstractVisitor() {
+            @Override
+            public void visit(DBImage image) {
+                if (image.getImage() != null) {
+                    diagrams.add(image.getImage());
+                }
+            }
+
+            @Override
+            public void visit(DBTable table) {
+                for (List<List<DocumentElement>> rows : Arrays.asList(table.getHeaders(), table.getBody())) {
+                    if (rows == null) {
+                        continue;
+                    }
+                    for (List<DocumentElement> row : rows) {
+                        row.forEach(documentElement -> documentElement.accept(this));
+                    }
+                }
+            }
+
+            @Override
+            public void visit(DBTableEntry tableentry) {
+                visitChildren(tableentry);
+            }
+        });
+        return diagrams.stream().map(project::getDiagram).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,118 @@
+package gov.nasa.jpl.mbee.mdk.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+import gov.nasa.jpl.mbee.mdk.MDKPlugin;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.docgen.docbook.DBBook;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.viewedit.DBAlfrescoVisitor;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.json.simple.JSONArray;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Fingerprints the generated presentation of views, so that views whose generated output has not changed since their
+ * last generation can be left alone. A fingerprint combines a hash of the presentation elements generated for the view
+ * from its {@link DBBook}, which includes the generator version, with a hash of the view contents it was committed
+ * with. It is stored in the view json on MMS under {@link MDKConstants#GENERATION_FINGERPRINT_KEY}, so that it is
+ * shared by all clients and no longer matches once the view contents are edited elsewhere.
+ */
+public class GenerationFingerprint {
+    private static final String SEPARATOR = ":";
+    private static final byte[] DELIMITER = {0};
+
+    /**
+     * Hashes the presentation elements generated for each view of the book. The model must not have view constraints
+     * for these views yet, as the presentation elements would otherwise be matched to their existing instances.
+     */
+    public static Map<Element, String> getPresentationHashes(DBBook book, boolean recurse) {
+        DBAlfrescoVisitor dbAlfrescoVisitor = new DBAlfrescoVisitor(recurse, true);
+        book.accept(dbAlfrescoVisitor);
+        Map<Element, String> presentationHashes = new LinkedHashMap<>(dbAlfrescoVisitor.getView2Pe().size());
+        for (Map.Entry<Element, List<PresentationElementInstance>> entry : dbAlfrescoVisitor.getView2Pe().entrySet()) {
+            MessageDigest digest = DigestUtils.getMd5Digest();
+            update(digest, MDKPlugin.getVersion());
+            update(digest, entry.getValue());
+            JSONArray displayedElementIds = dbAlfrescoVisitor.getView2Elements().get(entry.getKey());
+            if (displayedElementIds != null) {
+                List<String> sortedIds = new ArrayList<>(displayedElementIds.size());
+                for (Object id : displayedElementIds) {
+                    sortedIds.add((String) id);
+                }
+                Collections.sort(sortedIds);
+                update(digest, sortedIds);
+            }
+            presentationHashes.put(entry.getKey(), Hex.encodeHexString(digest.digest()));
+        }
+        return presentationHashes;
+    }
+
+    public static String getFingerprint(String presentationHash, JsonNode contents) {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        if (contents != null) {
+            update(digest, JacksonUtils.getObjectMapper().convertValue(contents, Object.class));
+        }
+        return presentationHash + SEPARATOR + Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Tests whether the view json on MMS was generated from the same presentation and has not had its contents changed
+     * since.
+     */
+    public static boolean isUnchanged(String presentationHash, ObjectNode viewObjectNode) {
+        if (presentationHash == null || viewObjectNode == null) {
+            return false;
+        }
+        JsonNode fingerprintJsonNode = viewObjectNode.get(MDKConstants.GENERATION_FINGERPRINT_KEY);
+        return fingerprintJsonNode != null && fingerprintJsonNode.isTextual()
+                && fingerprintJsonNode.asText().equals(getFingerprint(presentationHash, viewObjectNode.get(MDKConstants.CONTENTS_KEY)));
+    }
+
+    private static void update(MessageDigest digest, PresentationElementInstance presentationElementInstance) {
+        update(digest, presentationElementInstance.getType() != null ? presentationElementInstance.getType().name() : null);
+        update(digest, presentationElementInstance.getName());
+        update(digest, presentationElementInstance.isManual());
+        update(digest, presentationElementInstance.getLoopElement() != null ? Converters.getElementToIdConverter().apply(presentationElementInstance.getLoopElement()) : null);
+        update(digest, presentationElementInstance.getNewspec());
+        if (presentationElementInstance.getChildren() != null) {
+            update(digest, presentationElementInstance.getChildren());
+        }
+    }
+
+    /**
+     * Updates the digest with the value, visiting maps in key order so that the hash does not depend on the order their
+     * entries were put in.
+     */
+    private static void update(MessageDigest digest, Object value) {
+        if (value instanceof PresentationElementInstance) {
+            update(digest, (PresentationElementInstance) value);
+        }
+        else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            SortedMap<String, Object> sortedMap = new TreeMap<>();
+            map.forEach((key, entryValue) -> sortedMap.put(String.valueOf(key), entryValue));
+            update(digest, "{");
+            sortedMap.forEach((key, entryValue) -> {
+                update(digest, key);
+                update(digest, entryValue);
+            });
+            update(digest, "}");
+        }
+        else if (value instanceof Collection) {
+            update(digest, "[");
+            ((Collection<?>) value).forEach(item -> update(digest, item));
+            update(digest, "]");
+        }
+        else {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update(DELIMITER);
+        }
+    }
+}
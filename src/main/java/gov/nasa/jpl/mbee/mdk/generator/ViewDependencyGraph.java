@@ -0,0 +1,360 @@
+package gov.nasa.jpl.mbee.mdk.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Application;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
+import com.nomagic.ui.ProgressStatusRunner;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.*;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.model.AbstractModelVisitor;
+import gov.nasa.jpl.mbee.mdk.model.Document;
+import gov.nasa.jpl.mbee.mdk.model.Section;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import gov.nasa.jpl.mbee.mdk.util.CacheUtils;
+import gov.nasa.jpl.mbee.mdk.util.GeneratorUtils;
+import gov.nasa.jpl.mbee.mdk.util.MDUtils;
+import gov.nasa.jpl.mbee.mdk.viewedit.ViewHierarchyVisitor;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.json.simple.JSONArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records, per view, the model elements its last generation depended on and a fingerprint of their content at that time,
+ * so that generating many views can skip the views none of whose dependencies changed since. The graph is persisted per
+ * project and branch in the MDK cache directory and is used when {@link MDKOptionsGroup#isIncrementalViewGenerationEnabled()}
+ * is set.
+ * <p>
+ * The dependencies of a view are the view itself, its viewpoint and every element owned by the viewpoint's method, the
+ * elements it exposes and the elements displayed in its generated contents. An element's fingerprint covers its json,
+ * its stereotype property values, the ids of its owned elements and the ids of the relationships it is the source or
+ * target of, so that adding an expose, a child element or a relationship to a dependency also invalidates the view.
+ * Changes that are only reachable through elements neither exposed nor displayed are not tracked; views that depend on
+ * such queries can always be generated individually, which does not consult the graph.
+ */
+public class ViewDependencyGraph {
+    private static final String CACHE_NAME = "view-dependencies";
+    private static final int FORMAT = 1;
+    private static final String MISSING_FINGERPRINT = "";
+    private static final Map<Project, ViewDependencyGraph> GRAPHS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Project project;
+    private final Map<String, ViewRecord> views = new HashMap<>();
+    private boolean loaded;
+
+    private ViewDependencyGraph(Project project) {
+        this.project = project;
+    }
+
+    public static ViewDependencyGraph getGraph(Project project) {
+        synchronized (GRAPHS) {
+            return GRAPHS.computeIfAbsent(project, ViewDependencyGraph::new);
+        }
+    }
+
+    /**
+     * Collects the elements each view in the document is generated from, before its contents are known.
+     *
+     * @param document     parsed document
+     * @param dependencies map the dependencies of each view are added to
+     */
+    public static void collectDependencies(Document document, Map<Element, Set<Element>> dependencies) {
+        document.accept(new AbstractModelVisitor() {
+            @Override
+            public void visit(Section section) {
+                Element view = section.getDgElement();
+                if (section.isView() && view != null) {
+                    Set<Element> viewDependencies = dependencies.computeIfAbsent(view, k -> new LinkedHashSet<>());
+                    viewDependencies.add(view);
+                    if (section.getExposes() != null) {
+                        viewDependencies.addAll(section.getExposes());
+                    }
+                    Element viewpoint = section.getViewpoint();
+                    if (viewpoint != null) {
+                        viewDependencies.add(viewpoint);
+                        if (viewpoint instanceof Classifier) {
+                            Behavior method = GeneratorUtils.getViewpointMethod((Classifier) viewpoint, Project.getProject(viewpoint));
+                            if (method != null) {
+                                addOwnedElementsRecursively(method, viewDependencies);
+                            }
+                        }
+                    }
+                }
+                visitChildren(section);
+            }
+        });
+    }
+
+    private static void addOwnedElementsRecursively(Element element, Set<Element> elements) {
+        Deque<Element> queue = new ArrayDeque<>();
+        queue.add(element);
+        Element current;
+        while ((current = queue.poll()) != null) {
+            if (elements.add(current)) {
+                queue.addAll(current.getOwnedElement());
+            }
+        }
+    }
+
+    /**
+     * Returns the views that have to be generated: those never generated with the graph, and those with a dependency
+     * whose fingerprint changed since.
+     *
+     * @param candidates views that would be generated without the graph
+     * @return the candidates to generate, in their original order
+     */
+    public synchronized Set<Element> getAffectedViews(Collection<Element> candidates) {
+        load();
+        Map<String, String> fingerprints = new HashMap<>();
+        Set<Element> affectedViews = new LinkedHashSet<>();
+        for (Element view : candidates) {
+            ViewRecord record = views.get(Converters.getElementToIdConverter().apply(view));
+            if (record == null || !record.fingerprint.equals(getFingerprint(record.dependencyIds, fingerprints))) {
+                affectedViews.add(view);
+            }
+        }
+        return affectedViews;
+    }
+
+    /**
+     * Runs {@link #getAffectedViews(Collection)} with a progress status, logging how many of the views are skipped.
+     *
+     * @return the views to generate, or null if cancelled
+     */
+    public static Set<Element> getAffectedViews(Project project, Collection<Element> views) {
+        AtomicReference<Set<Element>> affectedViews = new AtomicReference<>();
+        ProgressStatusRunner.runWithProgressStatus(progressStatus -> {
+            progressStatus.setIndeterminate(true);
+            progressStatus.setDescription("Checking " + NumberFormat.getInstance().format(views.size()) + " view" + (views.size() != 1 ? "s" : "") + " for changes");
+            affectedViews.set(getGraph(project).getAffectedViews(views));
+        }, "Checking Views for Changes", false, 0);
+        Set<Element> result = affectedViews.get();
+        if (result != null) {
+            Application.getInstance().getGUILog().log("[INFO] Incremental view generation: " + NumberFormat.getInstance().format(result.size()) + " of " + NumberFormat.getInstance().format(views.size())
+                    + " view" + (views.size() != 1 ? "s" : "") + " changed since last generated. Unchanged views are skipped.");
+        }
+        return result;
+    }
+
+    /**
+     * Expands the views to the views they contain, as recursive generation would generate them.
+     */
+    public static Set<Element> getViewHierarchy(Collection<Element> views) {
+        Set<Element> hierarchy = new LinkedHashSet<>(views);
+        for (Element view : views) {
+            Document document = new DocumentGenerator(view, null, null, false).parseDocument(true, true, true);
+            ViewHierarchyVisitor viewHierarchyVisitor = new ViewHierarchyVisitor();
+            document.accept(viewHierarchyVisitor);
+            hierarchy.addAll(viewHierarchyVisitor.getView2ViewElements().keySet());
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Fingerprints the dependencies of generated views in their current state, to be recorded once the views are uploaded.
+     * Must be called once the elements created during generation have been removed again.
+     *
+     * @param viewDependencyIds ids of the elements each generated view, by id, depended on
+     * @return records of the views by id
+     */
+    public synchronized Map<String, ViewRecord> fingerprint(Map<String, Set<String>> viewDependencyIds) {
+        Map<String, ViewRecord> viewRecords = new HashMap<>(viewDependencyIds.size());
+        Map<String, String> fingerprints = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : viewDependencyIds.entrySet()) {
+            List<String> dependencyIds = new ArrayList<>(entry.getValue());
+            Collections.sort(dependencyIds);
+            viewRecords.put(entry.getKey(), new ViewRecord(dependencyIds, getFingerprint(dependencyIds, fingerprints)));
+        }
+        return viewRecords;
+    }
+
+    /**
+     * Records the fingerprinted dependencies of the uploaded views, and forgets the views whose upload failed so that
+     * they are generated again, and persists the graph.
+     *
+     * @param viewRecords   records of the generated views by id, as returned by {@link #fingerprint(Map)}
+     * @param failedViewIds ids of the views whose upload failed
+     */
+    public synchronized void record(Map<String, ViewRecord> viewRecords, Collection<String> failedViewIds) {
+        if (viewRecords.isEmpty() && failedViewIds.isEmpty()) {
+            return;
+        }
+        load();
+        viewRecords.forEach((viewId, viewRecord) -> {
+            if (!failedViewIds.contains(viewId)) {
+                views.put(viewId, viewRecord);
+            }
+        });
+        views.keySet().removeAll(failedViewIds);
+        save();
+    }
+
+    /**
+     * Adds the displayed element ids of the generated views to their dependencies.
+     *
+     * @param dependencies   dependencies of the views, as collected by {@link #collectDependencies(Document, Map)}
+     * @param view2elements  displayed element ids of the views
+     * @param generatedViews views that were generated
+     * @return dependency ids by view id
+     */
+    public static Map<String, Set<String>> toDependencyIds(Map<Element, Set<Element>> dependencies, Map<Element, JSONArray> view2elements, Collection<Element> generatedViews) {
+        Map<String, Set<String>> dependencyIds = new LinkedHashMap<>(generatedViews.size());
+        for (Element view : generatedViews) {
+            String viewId = Converters.getElementToIdConverter().apply(view);
+            if (viewId == null) {
+                continue;
+            }
+            Set<String> ids = new HashSet<>();
+            ids.add(viewId);
+            for (Element dependency : dependencies.getOrDefault(view, Collections.emptySet())) {
+                String id = Converters.getElementToIdConverter().apply(dependency);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+            JSONArray displayedElementIds = view2elements.get(view);
+            if (displayedElementIds != null) {
+                for (Object id : displayedElementIds) {
+                    if (id instanceof String) {
+                        ids.add((String) id);
+                    }
+                }
+            }
+            dependencyIds.put(viewId, ids);
+        }
+        return dependencyIds;
+    }
+
+    private String getFingerprint(List<String> dependencyIds, Map<String, String> fingerprints) {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        for (String dependencyId : dependencyIds) {
+            digest.update(dependencyId.getBytes(StandardCharsets.UTF_8));
+            digest.update(fingerprints.computeIfAbsent(dependencyId, this::getElementFingerprint).getBytes(StandardCharsets.UTF_8));
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private String getElementFingerprint(String id) {
+        Element element = Converters.getIdToElementConverter().apply(id, project);
+        if (element == null) {
+            return MISSING_FINGERPRINT;
+        }
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        try {
+            ObjectNode json = Converters.getElementToJsonConverter().apply(element, project);
+            if (json != null) {
+                // written by view generation itself, and so not something the view depends on
+                json.remove(MDKConstants.CONTENTS_KEY);
+                json.remove(MDKConstants.DISPLAYED_ELEMENT_IDS_KEY);
+                digest.update(JacksonUtils.getObjectMapper().writeValueAsBytes(json));
+            }
+            InstanceSpecification appliedStereotypeInstance = element.getAppliedStereotypeInstance();
+            if (appliedStereotypeInstance != null) {
+                for (Slot slot : appliedStereotypeInstance.getSlot()) {
+                    ObjectNode slotJson = Converters.getElementToJsonConverter().apply(slot, project);
+                    if (slotJson != null) {
+                        digest.update(JacksonUtils.getObjectMapper().writeValueAsBytes(slotJson));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return MISSING_FINGERPRINT;
+        }
+        List<String> relatedIds = new ArrayList<>();
+        element.getOwnedElement().stream().map(Converters.getElementToIdConverter()).filter(Objects::nonNull).forEach(relatedIds::add);
+        element.get_directedRelationshipOfSource().stream().map(Converters.getElementToIdConverter()).filter(Objects::nonNull).forEach(relatedIds::add);
+        element.get_directedRelationshipOfTarget().stream().map(Converters.getElementToIdConverter()).filter(Objects::nonNull).forEach(relatedIds::add);
+        Collections.sort(relatedIds);
+        for (String relatedId : relatedIds) {
+            digest.update(relatedId.getBytes(StandardCharsets.UTF_8));
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private File getFile() throws IOException {
+        String projectId = Converters.getIProjectToIdConverter().apply(project.getPrimaryProject());
+        return new File(CacheUtils.getCacheDirectory(CACHE_NAME, projectId), CacheUtils.toFileName(MDUtils.getBranchId(project)) + ".json");
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        JsonNode jsonNode;
+        try {
+            jsonNode = CacheUtils.readJson(getFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (jsonNode == null || jsonNode.path("format").asInt() != FORMAT) {
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = jsonNode.path("views").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode dependencyIdsNode = field.getValue().path("dependencies");
+            List<String> dependencyIds = new ArrayList<>(dependencyIdsNode.size());
+            dependencyIdsNode.forEach(idNode -> dependencyIds.add(idNode.asText()));
+            views.put(field.getKey(), new ViewRecord(dependencyIds, field.getValue().path("fingerprint").asText()));
+        }
+    }
+
+    private void save() {
+        ObjectNode jsonNode = JacksonUtils.getObjectMapper().createObjectNode();
+        jsonNode.put("format", FORMAT);
+        ObjectNode viewsNode = jsonNode.putObject("views");
+        for (Map.Entry<String, ViewRecord> entry : views.entrySet()) {
+            ObjectNode viewNode = viewsNode.putObject(entry.getKey());
+            viewNode.put("fingerprint", entry.getValue().fingerprint);
+            ArrayNode dependenciesNode = viewNode.putArray("dependencies");
+            entry.getValue().dependencyIds.forEach(dependenciesNode::add);
+        }
+        try {
+            CacheUtils.writeJson(getFile(), jsonNode);
+        } catch (IOException e) {
+            System.out.println("[WARNING] Failed to save view dependencies. Reason: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized int size() {
+        load();
+        return views.size();
+    }
+
+    public static class ViewRecord {
+        private final List<String> dependencyIds;
+        private final String fingerprint;
+
+        private ViewRecord(List<String> dependencyIds, String fingerprint) {
+            this.dependencyIds = dependencyIds;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    public static class ViewDependencyGraphProjectEventListenerAdapter extends ProjectEventListenerAdapter {
+        @Override
+        public void projectClosed(Project project) {
+            GRAPHS.remove(project);
+        }
+
+        @Override
+        public void projectReplaced(Project oldProject, Project newProject) {
+            GRAPHS.remove(oldProject);
+        }
+    }
+}
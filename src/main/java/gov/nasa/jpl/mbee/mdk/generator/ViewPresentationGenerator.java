@@ -1,6 +1,5 @@
 package gov.nasa.jpl.mbee.mdk.generator;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -27,6 +26,8 @@ import gov.nasa.jpl.mbee.mdk.emf.EMFImporter;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.ImportException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCommitter;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementFetcher;
 import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.CommitDiagramArtifactsAction;
 import gov.nasa.jpl.mbee.mdk.mms.json.JsonEquivalencePredicate;
@@ -36,6 +37,7 @@ import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaTransactionCommitListener;
 import gov.nasa.jpl.mbee.mdk.mms.validation.DiagramValidator;
 import gov.nasa.jpl.mbee.mdk.model.DocBookOutputVisitor;
 import gov.nasa.jpl.mbee.mdk.model.Document;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.*;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationRule;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationRuleViolation;
@@ -43,24 +45,31 @@ import gov.nasa.jpl.mbee.mdk.validation.ValidationSuite;
 import gov.nasa.jpl.mbee.mdk.validation.ViolationSeverity;
 import gov.nasa.jpl.mbee.mdk.viewedit.DBAlfrescoVisitor;
 import gov.nasa.jpl.mbee.mdk.viewedit.ViewHierarchyVisitor;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
 import org.json.simple.JSONArray;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author dlam
  */
 
 public class ViewPresentationGenerator implements RunnableWithProgress {
+    private static final ForkJoinPool GENERATION_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("View Generation " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
     private ValidationSuite suite = new ValidationSuite("View Instance Generation");
     private ValidationRule uneditableContent = new ValidationRule("Uneditable", "uneditable", ViolationSeverity.ERROR);
     private ValidationRule uneditableElements = new ValidationRule("Uneditable elements", "uneditable elements", ViolationSeverity.WARNING);
@@ -75,6 +84,8 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
     private final boolean recurse;
     private final List<ValidationSuite> vss = new ArrayList<>();
     private final Set<Element> processedElements;
+    private final boolean recordDependencies = MDKOptionsGroup.getMDKOptions().isIncrementalViewGenerationEnabled();
+    private final Map<Element, Set<Element>> viewDependencies = new HashMap<>();
 
     private boolean failure;
 
@@ -116,29 +127,25 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         Map<String, Pair<ObjectNode, Slot>> slotMap = new LinkedHashMap<>();
         Map<String, ViewMapping> viewMap = new LinkedHashMap<>();
 
-        ValidationSuite viewValidationSuite = null;
-        for (Element rootView : rootViews) {
-            // STAGE 1: Calculating view structure
-            progressStatus.setDescription("Calculating view structure");
-            progressStatus.setCurrent(1);
+        // STAGE 1: Calculating view structure
+        progressStatus.setDescription("Calculating view structure");
+        progressStatus.setCurrent(1);
 
-            ViewViewpointValidator dv = new ViewViewpointValidator(rootViews, project, recurse);
-            dv.run();
+        // the validator already covers all of the root views, so it is only run once for the whole generation
+        ViewViewpointValidator dv = new ViewViewpointValidator(rootViews, project, recurse);
+        dv.run();
+        for (Element rootView : rootViews) {
             if (dv.isFailed()) {
                 Application.getInstance().getGUILog().log("[WARNING] View validation failed for " + Converters.getElementToHumanNameConverter().apply(rootView) + ". Skipping generation.");
-                if (viewValidationSuite == null) {
-                    viewValidationSuite = dv.getValidationSuite();
-                }
-                else {
-                    ValidationSuite vs = viewValidationSuite;
-                    dv.getValidationSuite().getValidationRules().forEach(rule -> vs.getValidationRules().stream().filter(r -> rule.getName().equals(r.getName())).findAny().ifPresent(r -> r.addViolations(rule.getViolations())));
-                }
                 continue;
             }
             // first run a local generation of the view model to get the current model view structure
             DocumentGenerator dg = new DocumentGenerator(rootView, dv, null, false);
             Document dge = dg.parseDocument(true, recurse, false);
             new PostProcessor().process(dge);
+            if (recordDependencies) {
+                ViewDependencyGraph.collectDependencies(dge, viewDependencies);
+            }
 
             SessionManager.getInstance().createSession(project, DocBookOutputVisitor.class.getSimpleName());
             if (!SessionManager.getInstance().isSessionCreated(project)) {
@@ -176,8 +183,8 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                 viewMap.put(Converters.getElementToIdConverter().apply(view), viewMapping);
             }
         }
-        if (viewValidationSuite != null) {
-            Utils.displayValidationWindow(project, viewValidationSuite, viewValidationSuite.getName());
+        if (dv.isFailed()) {
+            Utils.displayValidationWindow(project, dv.getValidationSuite(), dv.getValidationSuite().getName());
         }
 
         // Find and delete existing view constraints to prevent ID conflict when importing. Migration should handle this,
@@ -234,6 +241,26 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             return;
         }
 
+        // Fingerprint the presentation generated for each view, now that there are no view constraints left to match it
+        // to. Views whose fingerprint matches the one on MMS need neither their instances downloaded nor regenerated.
+        List<DBBook> books = viewMap.values().stream().map(ViewMapping::getBook).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        @SuppressWarnings("unchecked")
+        Map<Element, String>[] presentationHashes = mapConcurrently(books, book -> {
+            try {
+                return GenerationFingerprint.getPresentationHashes(book, recurse);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Collections.emptyMap();
+            }
+        }, new Map[books.size()]);
+        for (ViewMapping viewMapping : viewMap.values()) {
+            int bookIndex = books.indexOf(viewMapping.getBook());
+            if (bookIndex >= 0 && presentationHashes[bookIndex] != null) {
+                viewMapping.setPresentationHash(presentationHashes[bookIndex].get(viewMapping.getElement()));
+            }
+        }
+        Set<Element> unchangedViews = new HashSet<>();
+
         // Allowing cancellation right before potentially long server queries
         if (handleCancel(progressStatus)) {
             return;
@@ -263,235 +290,233 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             progressStatus.setDescription("Downloading existing view instances");
             progressStatus.setCurrent(2);
 
-            ObjectNode viewResponse;
+            List<ObjectNode> viewElementsJsonArray = new ArrayList<>(viewMap.size());
             try {
-                File responseFile = MMSUtils.getElements(project, viewMap.keySet(), progressStatus);
-                try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                    viewResponse = JacksonUtils.parseJsonObject(jsonParser);
-                }
+                MMSElementFetcher.getElements(project, viewMap.keySet(), 0, progressStatus, viewElementsJsonArray::add);
             } catch (IOException | URISyntaxException | ServerException | GeneralSecurityException e) {
                 failure = true;
+                MMSUtils.getLastException().set(e);
                 Application.getInstance().getGUILog().log("[ERROR] An error occurred. View generation aborted. Please check your network connection or view logs for more information. Reason: " + e.getMessage());
                 e.printStackTrace();
                 return;
             }
-            JsonNode viewElementsJsonArray;
-            if (viewResponse != null && (viewElementsJsonArray = viewResponse.get("elements")) != null && viewElementsJsonArray.isArray()) {
-                Queue<String> instanceIDs = new LinkedList<>();
-                Queue<String> slotIDs = new LinkedList<>();
-                Property generatedFromViewProperty = Utils.getGeneratedFromViewProperty(project),
-                        generatedFromElementProperty = Utils.getGeneratedFromElementProperty(project);
-                for (JsonNode elementJsonNode : viewElementsJsonArray) {
-                    if (!elementJsonNode.isObject()) {
+            if (handleCancel(progressStatus)) {
+                return;
+            }
+            Queue<String> instanceIDs = new LinkedList<>();
+            Queue<String> slotIDs = new LinkedList<>();
+            Property generatedFromViewProperty = Utils.getGeneratedFromViewProperty(project),
+                    generatedFromElementProperty = Utils.getGeneratedFromElementProperty(project);
+            for (JsonNode elementJsonNode : viewElementsJsonArray) {
+                if (!elementJsonNode.isObject()) {
+                    continue;
+                }
+                ObjectNode elementObjectNode = (ObjectNode) elementJsonNode;
+                // Resolve current instances in the view constraint expression
+                JsonNode viewOperandJsonNode = JacksonUtils.getAtPath(elementObjectNode, "/" + MDKConstants.CONTENTS_KEY + "/operand"),
+                        sysmlIdJson = elementObjectNode.get(MDKConstants.ID_KEY);
+                String sysmlId;
+                if (sysmlIdJson != null && sysmlIdJson.isTextual() && !(sysmlId = sysmlIdJson.asText()).isEmpty()) {
+                    viewIDs.add(sysmlId);
+                    ViewMapping generatedViewMapping = viewMap.get(sysmlId);
+                    if (generatedViewMapping != null && GenerationFingerprint.isUnchanged(generatedViewMapping.getPresentationHash(), elementObjectNode)) {
+                        unchangedViews.add(generatedViewMapping.getElement());
                         continue;
                     }
-                    ObjectNode elementObjectNode = (ObjectNode) elementJsonNode;
-                    // Resolve current instances in the view constraint expression
-                    JsonNode viewOperandJsonNode = JacksonUtils.getAtPath(elementObjectNode, "/" + MDKConstants.CONTENTS_KEY + "/operand"),
-                            sysmlIdJson = elementObjectNode.get(MDKConstants.ID_KEY);
-                    String sysmlId;
-                    if (sysmlIdJson != null && sysmlIdJson.isTextual() && !(sysmlId = sysmlIdJson.asText()).isEmpty()) {
-                        viewIDs.add(sysmlId);
-                        if (viewOperandJsonNode != null && viewOperandJsonNode.isArray()) {
-                            // store returned ids so we can exclude view generation for elements that aren't on the mms yet
-
-                            List<String> viewInstanceIDs = new ArrayList<>(viewOperandJsonNode.size());
-                            for (JsonNode viewOperandJson : viewOperandJsonNode) {
-                                JsonNode instanceIdJsonNode = viewOperandJson.get(MDKConstants.INSTANCE_ID_KEY);
-                                String instanceId;
-                                if (instanceIdJsonNode != null && instanceIdJsonNode.isTextual() && !(instanceId = instanceIdJsonNode.asText()).isEmpty()) {
-                                    if (generatedFromViewProperty != null) {
-                                        slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromViewProperty));
-                                    }
-                                    if (generatedFromElementProperty != null) {
-                                        slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromElementProperty));
-                                    }
-                                    instanceIDs.add(instanceId);
-                                    viewInstanceIDs.add(instanceId);
+                    if (viewOperandJsonNode != null && viewOperandJsonNode.isArray()) {
+                        // store returned ids so we can exclude view generation for elements that aren't on the mms yet
+
+                        List<String> viewInstanceIDs = new ArrayList<>(viewOperandJsonNode.size());
+                        for (JsonNode viewOperandJson : viewOperandJsonNode) {
+                            JsonNode instanceIdJsonNode = viewOperandJson.get(MDKConstants.INSTANCE_ID_KEY);
+                            String instanceId;
+                            if (instanceIdJsonNode != null && instanceIdJsonNode.isTextual() && !(instanceId = instanceIdJsonNode.asText()).isEmpty()) {
+                                if (generatedFromViewProperty != null) {
+                                    slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromViewProperty));
                                 }
+                                if (generatedFromElementProperty != null) {
+                                    slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromElementProperty));
+                                }
+                                instanceIDs.add(instanceId);
+                                viewInstanceIDs.add(instanceId);
                             }
-                            ViewMapping viewMapping = viewMap.containsKey(sysmlId) ? viewMap.get(sysmlId) : new ViewMapping();
-                            viewMapping.setObjectNode(elementObjectNode);
-                            viewMapping.setInstanceIDs(viewInstanceIDs);
-                            viewMap.put(sysmlId, viewMapping);
                         }
+                        ViewMapping viewMapping = viewMap.containsKey(sysmlId) ? viewMap.get(sysmlId) : new ViewMapping();
+                        viewMapping.setObjectNode(elementObjectNode);
+                        viewMapping.setInstanceIDs(viewInstanceIDs);
+                        viewMap.put(sysmlId, viewMapping);
                     }
                 }
+            }
 
-                // Now that all first-level instances are resolved, query for them and import client-side (in reverse order) as model elements
-                // Add any sections that are found along the way and loop until no more are found
-                List<ObjectNode> instanceObjectNodes = new ArrayList<>();
-                List<ObjectNode> slotObjectNodes = new ArrayList<>();
-                while (!instanceIDs.isEmpty() && !slotIDs.isEmpty()) {
-                    // Allow cancellation between every depths' server query.
-                    if (handleCancel(progressStatus)) {
-                        return;
-                    }
+            // Now that all first-level instances are resolved, query for them and import client-side (in reverse order) as model elements
+            // Add any sections that are found along the way and loop until no more are found
+            List<ObjectNode> instanceObjectNodes = new ArrayList<>();
+            List<ObjectNode> slotObjectNodes = new ArrayList<>();
+            while (!instanceIDs.isEmpty() && !slotIDs.isEmpty()) {
+                // Allow cancellation between every depths' server query.
+                if (handleCancel(progressStatus)) {
+                    return;
+                }
 
-                    List<String> elementIDs = new ArrayList<>(instanceIDs);
-                    elementIDs.addAll(slotIDs);
+                List<String> elementIDs = new ArrayList<>(instanceIDs);
+                elementIDs.addAll(slotIDs);
 
-                    ObjectNode instanceAndSlotResponse;
-                    try {
-                        File responseFile = MMSUtils.getElements(project, elementIDs, progressStatus);
-                        try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                            instanceAndSlotResponse = JacksonUtils.parseJsonObject(jsonParser);
-                        }
-                    } catch (IOException | URISyntaxException | ServerException | GeneralSecurityException e) {
-                        failure = true;
-                        Application.getInstance().getGUILog().log("[ERROR] An error occurred. View generation aborted. Please check your network connection or view logs for more information. Reason: " + e.getMessage());
-                        e.printStackTrace();
-                        SessionManager.getInstance().cancelSession(project);
-                        return;
-                    }
-                    instanceIDs.clear();
-                    slotIDs.clear();
-                    JsonNode instanceAndSlotElementsJsonArray;
-                    if (instanceAndSlotResponse != null && (instanceAndSlotElementsJsonArray = instanceAndSlotResponse.get("elements")) != null && instanceAndSlotElementsJsonArray.isArray()) {
-                        for (JsonNode elementJson : instanceAndSlotElementsJsonArray) {
-                            JsonNode instanceOperandJsonArray = JacksonUtils.getAtPath(elementJson, "/specification/operand");
-                            if (instanceOperandJsonArray != null && instanceOperandJsonArray.isArray()) {
-                                for (JsonNode instanceOperandJson : instanceOperandJsonArray) {
-                                    JsonNode instanceIdJson = instanceOperandJson.get(MDKConstants.INSTANCE_ID_KEY);
-                                    String instanceId;
-                                    if (instanceIdJson != null && instanceIdJson.isTextual() && !(instanceId = instanceIdJson.asText()).isEmpty()) {
-                                    /*if (!instanceID.endsWith(PresentationElementUtils.ID_KEY_SUFFIX)) {
-                                        continue;
-                                    }*/
-                                        if (generatedFromViewProperty != null) {
-                                            slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromViewProperty));
-                                        }
-                                        if (generatedFromElementProperty != null) {
-                                            slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromElementProperty));
-                                        }
-                                        instanceIDs.add(instanceId);
-                                    }
+                List<ObjectNode> instanceAndSlotElementsJsonArray = new ArrayList<>(elementIDs.size());
+                try {
+                    MMSElementFetcher.getElements(project, elementIDs, 0, progressStatus, instanceAndSlotElementsJsonArray::add);
+                } catch (IOException | URISyntaxException | ServerException | GeneralSecurityException e) {
+                    failure = true;
+                    MMSUtils.getLastException().set(e);
+                    Application.getInstance().getGUILog().log("[ERROR] An error occurred. View generation aborted. Please check your network connection or view logs for more information. Reason: " + e.getMessage());
+                    e.printStackTrace();
+                    SessionManager.getInstance().cancelSession(project);
+                    return;
+                }
+                instanceIDs.clear();
+                slotIDs.clear();
+                for (JsonNode elementJson : instanceAndSlotElementsJsonArray) {
+                    JsonNode instanceOperandJsonArray = JacksonUtils.getAtPath(elementJson, "/specification/operand");
+                    if (instanceOperandJsonArray != null && instanceOperandJsonArray.isArray()) {
+                        for (JsonNode instanceOperandJson : instanceOperandJsonArray) {
+                            JsonNode instanceIdJson = instanceOperandJson.get(MDKConstants.INSTANCE_ID_KEY);
+                            String instanceId;
+                            if (instanceIdJson != null && instanceIdJson.isTextual() && !(instanceId = instanceIdJson.asText()).isEmpty()) {
+                            /*if (!instanceID.endsWith(PresentationElementUtils.ID_KEY_SUFFIX)) {
+                                continue;
+                            }*/
+                                if (generatedFromViewProperty != null) {
+                                    slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromViewProperty));
                                 }
-                            }
-                            JsonNode typeJson = elementJson.get(MDKConstants.TYPE_KEY);
-                            if (typeJson.isTextual() && elementJson.isObject()) {
-                                (typeJson.asText().equalsIgnoreCase("slot") ? slotObjectNodes : instanceObjectNodes).add((ObjectNode) elementJson);
+                                if (generatedFromElementProperty != null) {
+                                    slotIDs.add(instanceId + MDKConstants.SLOT_ID_SEPARATOR + Converters.getElementToIdConverter().apply(generatedFromElementProperty));
+                                }
+                                instanceIDs.add(instanceId);
                             }
                         }
                     }
+                    JsonNode typeJson = elementJson.get(MDKConstants.TYPE_KEY);
+                    if (typeJson.isTextual() && elementJson.isObject()) {
+                        (typeJson.asText().equalsIgnoreCase("slot") ? slotObjectNodes : instanceObjectNodes).add((ObjectNode) elementJson);
+                    }
                 }
+            }
 
-                // STAGE 3: Importing existing view instances
-                progressStatus.setDescription("Importing existing view instances");
-                progressStatus.setCurrent(3);
+            // STAGE 3: Importing existing view instances
+            progressStatus.setDescription("Importing existing view instances");
+            progressStatus.setCurrent(3);
 
-                EMFImporter emfImporter = new EMFImporter() {
-                    @Override
-                    public List<PreProcessor> getPreProcessors() {
-                        if (preProcessors == null) {
-                            preProcessors = new ArrayList<>(super.getPreProcessors());
-                            preProcessors.remove(PreProcessor.SYSML_ID_VALIDATION);
-                        }
-                        return preProcessors;
+            EMFImporter emfImporter = new EMFImporter() {
+                @Override
+                public List<PreProcessor> getPreProcessors() {
+                    if (preProcessors == null) {
+                        preProcessors = new ArrayList<>(super.getPreProcessors());
+                        preProcessors.remove(PreProcessor.SYSML_ID_VALIDATION);
                     }
+                    return preProcessors;
+                }
 
-                    @Override
-                    public List<EStructuralFeatureOverride> getEStructuralFeatureOverrides() {
-                        if (eStructuralFeatureOverrides == null) {
-                            eStructuralFeatureOverrides = new ArrayList<>(super.getEStructuralFeatureOverrides());
-                            eStructuralFeatureOverrides.remove(EStructuralFeatureOverride.OWNER);
-                            eStructuralFeatureOverrides.add(new EStructuralFeatureOverride(
-                                    EStructuralFeatureOverride.OWNER.getPredicate(),
-                                    (objectNode, eStructuralFeature, project, strict, element) -> {
-                                        if (element instanceof InstanceSpecification) {
-                                            element.setOwner(project.getPrimaryModel());
-                                            return element;
-                                        }
-                                        return EStructuralFeatureOverride.OWNER.getFunction().apply(objectNode, eStructuralFeature, project, strict, element);
-                                    }));
-                        }
-                        return eStructuralFeatureOverrides;
+                @Override
+                public List<EStructuralFeatureOverride> getEStructuralFeatureOverrides() {
+                    if (eStructuralFeatureOverrides == null) {
+                        eStructuralFeatureOverrides = new ArrayList<>(super.getEStructuralFeatureOverrides());
+                        eStructuralFeatureOverrides.remove(EStructuralFeatureOverride.OWNER);
+                        eStructuralFeatureOverrides.add(new EStructuralFeatureOverride(
+                                EStructuralFeatureOverride.OWNER.getFeaturePredicate(),
+                                (objectNode, eStructuralFeature, project, strict, element) -> {
+                                    if (element instanceof InstanceSpecification) {
+                                        element.setOwner(project.getPrimaryModel());
+                                        return element;
+                                    }
+                                    return EStructuralFeatureOverride.OWNER.getFunction().apply(objectNode, eStructuralFeature, project, strict, element);
+                                }));
                     }
-                };
-
-                for (Boolean strict : Arrays.asList(false, true)) {
-                    // importing instances in reverse order so that deepest level instances (sections and such) are loaded first
-                    ListIterator<ObjectNode> instanceObjectNodesIterator = instanceObjectNodes.listIterator(instanceObjectNodes.size());
-                    while (instanceObjectNodesIterator.hasPrevious()) {
-                        if (handleCancel(progressStatus)) {
-                            return;
-                        }
-
-                        ObjectNode instanceObjectNode = instanceObjectNodesIterator.previous();
-                        try {
-                            // Slots will break if imported with owner (instance) ignored, but we need to ignore InstanceSpecification owners
-                            //Element element = ImportUtility.createElement(elementJsonNode, false, true);
-                            Changelog.Change<Element> change = emfImporter.apply(instanceObjectNode, project, strict);
-                            Element element = change != null ? change.getChanged() : null;
+                    return eStructuralFeatureOverrides;
+                }
+            };
 
-                            if (element instanceof InstanceSpecification) {
-                                instanceSpecificationMap.put(Converters.getElementToIdConverter().apply(element), new Pair<>(instanceObjectNode, (InstanceSpecification) element));
-                            }
-                        } catch (ImportException e) {
-                            Application.getInstance().getGUILog().log("[WARNING] Failed to import instance specification " + instanceObjectNode.get(MDKConstants.ID_KEY) + ": " + e.getMessage());
-                            instanceObjectNodesIterator.remove();
-                        }
+            for (Boolean strict : Arrays.asList(false, true)) {
+                // importing instances in reverse order so that deepest level instances (sections and such) are loaded first
+                ListIterator<ObjectNode> instanceObjectNodesIterator = instanceObjectNodes.listIterator(instanceObjectNodes.size());
+                while (instanceObjectNodesIterator.hasPrevious()) {
+                    if (handleCancel(progressStatus)) {
+                        return;
                     }
 
-                    // The Alfresco service is a nice guy and returns Slots at the end so that when it's loaded in order the slots don't throw errors for missing their instances.
-                    // However we're being fancy and loading them backwards so we had to separate them ahead of time and then load the slots after.
-                    ListIterator<ObjectNode> slotObjectNodesIterator = slotObjectNodes.listIterator();
-                    while (slotObjectNodesIterator.hasNext()) {
-                        if (handleCancel(progressStatus)) {
-                            return;
-                        }
-
-                        ObjectNode slotObjectNode = slotObjectNodesIterator.next();
-                        try {
-                            // Slots will break if imported with owner (instance) ignored, but we need to ignore InstanceSpecification owners
-                            //Element element = ImportUtility.createElement(slotJsonNode, false, false);
-                            Changelog.Change<Element> change = emfImporter.apply(slotObjectNode, project, strict);
-                            Element element = change != null ? change.getChanged() : null;
+                    ObjectNode instanceObjectNode = instanceObjectNodesIterator.previous();
+                    try {
+                        // Slots will break if imported with owner (instance) ignored, but we need to ignore InstanceSpecification owners
+                        //Element element = ImportUtility.createElement(elementJsonNode, false, true);
+                        Changelog.Change<Element> change = emfImporter.apply(instanceObjectNode, project, strict);
+                        Element element = change != null ? change.getChanged() : null;
 
-                            if (element instanceof Slot) {
-                                slotMap.put(Converters.getElementToIdConverter().apply(element), new Pair<>(slotObjectNode, (Slot) element));
-                            }
-                        } catch (ImportException e) {
-                            Application.getInstance().getGUILog().log("[WARNING] Failed to import slot " + slotObjectNode.get(MDKConstants.ID_KEY) + ": " + e.getMessage());
-                            slotObjectNodesIterator.remove();
+                        if (element instanceof InstanceSpecification) {
+                            instanceSpecificationMap.put(Converters.getElementToIdConverter().apply(element), new Pair<>(instanceObjectNode, (InstanceSpecification) element));
                         }
+                    } catch (ImportException e) {
+                        Application.getInstance().getGUILog().log("[WARNING] Failed to import instance specification " + instanceObjectNode.get(MDKConstants.ID_KEY) + ": " + e.getMessage());
+                        instanceObjectNodesIterator.remove();
                     }
                 }
 
-                // Build view constraints client-side as actual Constraint, Expression, InstanceValue(s), etc.
-                // Note: Doing this one first since what it does is smaller in scope than ImportUtility. Potential order-dependent edge cases require further evaluation.
-                // Correct point of no return.
-                for (ViewMapping viewMapping : viewMap.values()) {
-                    Element view = viewMapping.getElement();
-                    /*if (handleCancel(progressStatus)) {
+                // The Alfresco service is a nice guy and returns Slots at the end so that when it's loaded in order the slots don't throw errors for missing their instances.
+                // However we're being fancy and loading them backwards so we had to separate them ahead of time and then load the slots after.
+                ListIterator<ObjectNode> slotObjectNodesIterator = slotObjectNodes.listIterator();
+                while (slotObjectNodesIterator.hasNext()) {
+                    if (handleCancel(progressStatus)) {
                         return;
-                    }*/
-
-                    ObjectNode viewObjectNode = viewMapping.getObjectNode();
-                    if (viewObjectNode == null) {
-                        continue;
-                    }
-                    JsonNode viewContentsJsonNode = viewObjectNode.get(MDKConstants.CONTENTS_KEY);
-                    if (viewContentsJsonNode == null || !viewContentsJsonNode.isObject()) {
-                        continue;
                     }
+
+                    ObjectNode slotObjectNode = slotObjectNodesIterator.next();
                     try {
-                        Changelog.Change<Element> change = Converters.getJsonToElementConverter().apply((ObjectNode) viewContentsJsonNode, project, false);
-                        if (change.getChanged() != null && change.getChanged() instanceof Expression) {
-                            Expression expression = (Expression) change.getChanged();
-                            // bit of massaging to filter out InstanceValues whose InstanceSpecification is deleted
-                            expression.getOperand().stream().filter(vs -> !(vs instanceof InstanceValue) || ((InstanceValue) vs).getInstance() == null).collect(Collectors.toList()).forEach(vs -> {
-                                elementsToDelete.add(vs);
-                                expression.getOperand().remove(vs);
-                            });
-                            presentationElementUtils.getOrCreateViewConstraint(view).setSpecification(expression);
+                        // Slots will break if imported with owner (instance) ignored, but we need to ignore InstanceSpecification owners
+                        //Element element = ImportUtility.createElement(slotJsonNode, false, false);
+                        Changelog.Change<Element> change = emfImporter.apply(slotObjectNode, project, strict);
+                        Element element = change != null ? change.getChanged() : null;
+
+                        if (element instanceof Slot) {
+                            slotMap.put(Converters.getElementToIdConverter().apply(element), new Pair<>(slotObjectNode, (Slot) element));
                         }
-                    } catch (ImportException | ReadOnlyElementException e) {
-                        Application.getInstance().getGUILog().log("[WARNING] Could not create view contents for " + Converters.getElementToIdConverter().apply(view) + ". The result could be that the view contents are created from scratch.");
-                        //continue;
+                    } catch (ImportException e) {
+                        Application.getInstance().getGUILog().log("[WARNING] Failed to import slot " + slotObjectNode.get(MDKConstants.ID_KEY) + ": " + e.getMessage());
+                        slotObjectNodesIterator.remove();
                     }
                 }
             }
+
+            // Build view constraints client-side as actual Constraint, Expression, InstanceValue(s), etc.
+            // Note: Doing this one first since what it does is smaller in scope than ImportUtility. Potential order-dependent edge cases require further evaluation.
+            // Correct point of no return.
+            for (ViewMapping viewMapping : viewMap.values()) {
+                Element view = viewMapping.getElement();
+                /*if (handleCancel(progressStatus)) {
+                    return;
+                }*/
+
+                ObjectNode viewObjectNode = viewMapping.getObjectNode();
+                if (viewObjectNode == null) {
+                    continue;
+                }
+                JsonNode viewContentsJsonNode = viewObjectNode.get(MDKConstants.CONTENTS_KEY);
+                if (viewContentsJsonNode == null || !viewContentsJsonNode.isObject()) {
+                    continue;
+                }
+                try {
+                    Changelog.Change<Element> change = Converters.getJsonToElementConverter().apply((ObjectNode) viewContentsJsonNode, project, false);
+                    if (change.getChanged() != null && change.getChanged() instanceof Expression) {
+                        Expression expression = (Expression) change.getChanged();
+                        // bit of massaging to filter out InstanceValues whose InstanceSpecification is deleted
+                        expression.getOperand().stream().filter(vs -> !(vs instanceof InstanceValue) || ((InstanceValue) vs).getInstance() == null).collect(Collectors.toList()).forEach(vs -> {
+                            elementsToDelete.add(vs);
+                            expression.getOperand().remove(vs);
+                        });
+                        presentationElementUtils.getOrCreateViewConstraint(view).setSpecification(expression);
+                    }
+                } catch (ImportException | ReadOnlyElementException e) {
+                    Application.getInstance().getGUILog().log("[WARNING] Could not create view contents for " + Converters.getElementToIdConverter().apply(view) + ". The result could be that the view contents are created from scratch.");
+                    //continue;
+                }
+            }
         }
 
         // STAGE 4: Generating new view instances
@@ -504,14 +529,24 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         Map<Element, JSONArray> view2elements = new LinkedHashMap<>();
         Set<Diagram> diagrams = new LinkedHashSet<>();
         Set<Element> skippedViews = new HashSet<>();
-        for (ViewMapping viewMapping : viewMap.values()) {
+        // all views generated from the same root view share its book, so each book is only visited once. The visitors
+        // only read the model and the books of different root views are visited concurrently.
+        DBAlfrescoVisitor[] dbAlfrescoVisitors = mapConcurrently(books, book -> {
             DBAlfrescoVisitor dbAlfrescoVisitor = new DBAlfrescoVisitor(recurse, true);
             try {
-                viewMapping.getBook().accept(dbAlfrescoVisitor);
+                book.accept(dbAlfrescoVisitor);
             } catch (Exception e) {
                 Utils.printException(e);
                 e.printStackTrace();
             }
+            return dbAlfrescoVisitor;
+        }, new DBAlfrescoVisitor[books.size()]);
+        for (ViewMapping viewMapping : viewMap.values()) {
+            int bookIndex = books.indexOf(viewMapping.getBook());
+            if (bookIndex < 0 || dbAlfrescoVisitors[bookIndex] == null) {
+                continue;
+            }
+            DBAlfrescoVisitor dbAlfrescoVisitor = dbAlfrescoVisitors[bookIndex];
             views.addAll(presentationElementUtils.getViewProcessOrder(viewMapping.getElement(), dbAlfrescoVisitor.getHierarchyElements()));
             view2pe.putAll(dbAlfrescoVisitor.getView2Pe());
             view2unused.putAll(dbAlfrescoVisitor.getView2Unused());
@@ -522,6 +557,10 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
 
 
         for (Element view : views) {
+            if (unchangedViews.contains(view)) {
+                skippedViews.add(view);
+                continue;
+            }
             if (ProjectUtilities.isElementInAttachedProject(view)) {
                 ValidationRuleViolation violation = new ValidationRuleViolation(view, "[IN MODULE] This view is in a module and was not processed.");
                 viewInProject.addViolation(violation);
@@ -533,6 +572,10 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                 skippedViews.add(view);
             }
         }
+        long unchangedViewCount = views.stream().filter(unchangedViews::contains).count();
+        if (unchangedViewCount > 0) {
+            Application.getInstance().getGUILog().log("Skipping " + NumberFormat.getInstance().format(unchangedViewCount) + " view" + (unchangedViewCount != 1 ? "s" : "") + " whose generated presentation is unchanged.");
+        }
 
         if (failure) {
             Utils.displayValidationWindow(project, vss, "View Generation Validation");
@@ -547,6 +590,9 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             diagramValidator.getSuite().getValidationRules().stream().flatMap(rule -> rule.getViolations().stream()).flatMap(violation -> violation.getActions().stream()).filter(action -> action instanceof CommitDiagramArtifactsAction).forEach(action -> action.actionPerformed(null));
         }
 
+        // the upload is started once the session is cancelled, and records the dependencies of the views it uploaded
+        Map<String, ViewDependencyGraph.ViewRecord> viewRecords = new HashMap<>();
+        Runnable upload = null;
         try {
             for (Element view : views) {
                 if (skippedViews.contains(view)) {
@@ -562,15 +608,20 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             }*/
 
             // commit to MMS
+            // the client side json of the views and their instances is exported concurrently, and compared to the
+            // server side json in generation order afterwards
             LinkedList<ObjectNode> elementsToCommit = new LinkedList<>();
-            Queue<Pair<InstanceSpecification, Element>> instanceToView = new LinkedList<>();
-            for (Element view : views) {
-                if (skippedViews.contains(view)) {
-                    continue;
-                }
+            // ids of the views each committed or deleted element was generated for, and the fingerprints of the views
+            Map<String, String> elementViewIds = new HashMap<>();
+            Map<String, JsonNode> viewFingerprints = new LinkedHashMap<>();
+            List<Pair<InstanceSpecification, Element>> instanceToView = new ArrayList<>();
+            List<Element> viewsToCommit = views.stream().filter(view -> !skippedViews.contains(view)).collect(Collectors.toList());
+            ObjectNode[] clientViewJsons = mapConcurrently(viewsToCommit, view -> Converters.getElementToJsonConverter().apply(view, project), new ObjectNode[viewsToCommit.size()]);
+            for (int i = 0; i < clientViewJsons.length; i++) {
+                Element view = viewsToCommit.get(i);
                 // Sends the full view JSON if it doesn't exist on the server yet. If it does exist, it sends just the
                 // portion of the JSON required to update the view contents.
-                ObjectNode clientViewJson = Converters.getElementToJsonConverter().apply(view, project);
+                ObjectNode clientViewJson = clientViewJsons[i];
                 if (clientViewJson == null) {
                     skippedViews.add(view);
                     continue;
@@ -583,14 +634,26 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                 }
                 Object o;
                 ObjectNode serverViewJson = (o = viewMap.get(Converters.getElementToIdConverter().apply(view))) != null ? ((ViewMapping) o).getObjectNode() : null;
+                if (o != null && ((ViewMapping) o).getPresentationHash() != null) {
+                    clientViewJson.put(MDKConstants.GENERATION_FINGERPRINT_KEY, GenerationFingerprint.getFingerprint(((ViewMapping) o).getPresentationHash(), clientViewJson.get(MDKConstants.CONTENTS_KEY)));
+                }
 
-                ObjectNode clientViewContentsJson = clientViewJson.deepCopy().retain(MDKConstants.ID_KEY, MDKConstants.CONTENTS_KEY, MDKConstants.DISPLAYED_ELEMENT_IDS_KEY);
-                ObjectNode serverViewContentsJson = serverViewJson != null ? serverViewJson.deepCopy().retain(MDKConstants.ID_KEY, MDKConstants.CONTENTS_KEY, MDKConstants.DISPLAYED_ELEMENT_IDS_KEY) : null;
+                ObjectNode clientViewContentsJson = clientViewJson.deepCopy().retain(MDKConstants.ID_KEY, MDKConstants.CONTENTS_KEY, MDKConstants.DISPLAYED_ELEMENT_IDS_KEY, MDKConstants.GENERATION_FINGERPRINT_KEY);
+                ObjectNode serverViewContentsJson = serverViewJson != null ? serverViewJson.deepCopy().retain(MDKConstants.ID_KEY, MDKConstants.CONTENTS_KEY, MDKConstants.DISPLAYED_ELEMENT_IDS_KEY, MDKConstants.GENERATION_FINGERPRINT_KEY) : null;
                 if (!JsonEquivalencePredicate.getInstance().test(clientViewContentsJson, serverViewContentsJson)) {
                     if (MDUtils.isDeveloperMode()) {
                         Application.getInstance().getGUILog().log("View contents diff for " + Converters.getElementToIdConverter().apply(view) + ": " + JsonPatchFunction.getInstance().apply(clientViewContentsJson, serverViewContentsJson).toString());
                     }
-                    elementsToCommit.add(serverViewJson != null ? clientViewContentsJson : clientViewJson);
+                    ObjectNode viewJson = serverViewJson != null ? clientViewContentsJson : clientViewJson;
+                    // the fingerprint is only committed once everything generated for the view is, so that a view whose
+                    // upload failed is not skipped by the next generation
+                    JsonNode fingerprintJsonNode = viewJson.remove(MDKConstants.GENERATION_FINGERPRINT_KEY);
+                    String viewId = Converters.getElementToIdConverter().apply(view);
+                    if (fingerprintJsonNode != null) {
+                        viewFingerprints.put(viewId, fingerprintJsonNode);
+                    }
+                    elementViewIds.put(viewId, viewId);
+                    elementsToCommit.add(viewJson);
                 }
                 for (PresentationElementInstance presentationElementInstance : view2pe.get(view)) {
                     if (presentationElementInstance.getInstance() != null) {
@@ -599,17 +662,29 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                 }
             }
 
-            String viewInstanceBinId = MDKConstants.VIEW_INSTANCES_BIN_PREFIX + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject());
-            while (!instanceToView.isEmpty()) {
-                Pair<InstanceSpecification, Element> pair = instanceToView.remove();
-                InstanceSpecification instance = pair.getKey();
-
-                List<InstanceSpecification> subInstances = presentationElementUtils.getCurrentInstances(instance, pair.getValue()).getAll();
+            for (int i = 0; i < instanceToView.size(); i++) {
+                Pair<InstanceSpecification, Element> pair = instanceToView.get(i);
+                List<InstanceSpecification> subInstances = presentationElementUtils.getCurrentInstances(pair.getKey(), pair.getValue()).getAll();
                 for (InstanceSpecification subInstance : subInstances) {
                     instanceToView.add(new Pair<>(subInstance, pair.getValue()));
                 }
+            }
+            List<Element> instancesAndSlots = new ArrayList<>();
+            for (Pair<InstanceSpecification, Element> pair : instanceToView) {
+                instancesAndSlots.add(pair.getKey());
+                instancesAndSlots.addAll(pair.getKey().getSlot());
+            }
+            ObjectNode[] clientInstanceAndSlotJsons = mapConcurrently(instancesAndSlots, element -> Converters.getElementToJsonConverter().apply(element, project), new ObjectNode[instancesAndSlots.size()]);
+            if (failure) {
+                return;
+            }
 
-                ObjectNode clientInstanceSpecificationJson = Converters.getElementToJsonConverter().apply(instance, project);
+            String viewInstanceBinId = MDKConstants.VIEW_INSTANCES_BIN_PREFIX + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject());
+            int jsonIndex = 0;
+            for (Pair<InstanceSpecification, Element> pair : instanceToView) {
+                InstanceSpecification instance = pair.getKey();
+                ObjectNode clientInstanceSpecificationJson = clientInstanceAndSlotJsons[jsonIndex++];
+                List<ObjectNode> clientSlotJsons = Arrays.asList(clientInstanceAndSlotJsons).subList(jsonIndex, jsonIndex += instance.getSlot().size());
                 if (clientInstanceSpecificationJson == null) {
                     continue;
                 }
@@ -622,10 +697,12 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                         Application.getInstance().getGUILog().log("View Instance diff for " + Converters.getElementToIdConverter().apply(instance) + ": " + JsonPatchFunction.getInstance().apply(clientInstanceSpecificationJson, serverInstanceSpecificationJson).toString());
                     }
                     elementsToCommit.add(clientInstanceSpecificationJson);
+                    elementViewIds.put(Converters.getElementToIdConverter().apply(instance), Converters.getElementToIdConverter().apply(pair.getValue()));
                 }
 
-                for (Slot slot : instance.getSlot()) {
-                    ObjectNode clientSlotJson = Converters.getElementToJsonConverter().apply(slot, project);
+                for (int j = 0; j < clientSlotJsons.size(); j++) {
+                    Slot slot = instance.getSlot().get(j);
+                    ObjectNode clientSlotJson = clientSlotJsons.get(j);
                     if (clientSlotJson == null) {
                         continue;
                     }
@@ -633,6 +710,7 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                             slotMap.get(Converters.getElementToIdConverter().apply(slot)).getKey() : null;
                     if (!JsonEquivalencePredicate.getInstance().test(clientSlotJson, serverSlotJson)) {
                         elementsToCommit.add(clientSlotJson);
+                        elementViewIds.put(Converters.getElementToIdConverter().apply(slot), Converters.getElementToIdConverter().apply(pair.getValue()));
                         if (MDUtils.isDeveloperMode()) {
                             Application.getInstance().getGUILog().log("Slot diff for " + Converters.getElementToIdConverter().apply(slot) + ": " + JsonPatchFunction.getInstance().apply(clientSlotJson, serverSlotJson).toString());
                         }
@@ -654,26 +732,14 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                 progressStatus.setDescription("Queueing upload of generated view instances");
                 progressStatus.setCurrent(5);
                 Application.getInstance().getGUILog().log("Updating/creating " + NumberFormat.getInstance().format(elementsToCommit.size()) + " element" + (elementsToCommit.size() != 1 ? "s" : "") + " to generate views.");
-
-                URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
-                File file = MMSUtils.createEntityFile(this.getClass(), ContentType.APPLICATION_JSON, elementsToCommit, MMSUtils.JsonBlobType.ELEMENT_JSON);
-                HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.POST, requestUri, file, ContentType.APPLICATION_JSON);
-                TaskRunner.runWithProgressStatus(progressStatus1 -> {
-                    try {
-                        MMSUtils.sendMMSRequest(project, request, progressStatus1);
-                    } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                        // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                        e.printStackTrace();
-                    }
-                }, "View Generation Create/Update x" + NumberFormat.getInstance().format(elementsToCommit.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
                 changed = true;
             }
 
             // Delete unused presentation elements
 
             Set<String> mmsElementsToDelete = new HashSet<>();
-            for (List<PresentationElementInstance> presentationElementInstances : view2unused.values()) {
-                for (PresentationElementInstance presentationElementInstance : presentationElementInstances) {
+            for (Map.Entry<Element, List<PresentationElementInstance>> entry : view2unused.entrySet()) {
+                for (PresentationElementInstance presentationElementInstance : entry.getValue()) {
                     if (presentationElementInstance.getInstance() == null) {
                         continue;
                     }
@@ -682,23 +748,22 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
                         continue;
                     }
                     mmsElementsToDelete.add(id);
+                    elementViewIds.put(id, Converters.getElementToIdConverter().apply(entry.getKey()));
                 }
             }
             if (mmsElementsToDelete.size() > 0) {
                 Application.getInstance().getGUILog().log("Deleting " + NumberFormat.getInstance().format(mmsElementsToDelete.size()) + " unused presentation element" + (mmsElementsToDelete.size() != 1 ? "s" : "") + ".");
+                changed = true;
+            }
 
-                URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
-                File file = MMSUtils.createEntityFile(this.getClass(), ContentType.APPLICATION_JSON, mmsElementsToDelete, MMSUtils.JsonBlobType.ELEMENT_ID);
-                HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.DELETE, requestUri, file, ContentType.APPLICATION_JSON);
-                TaskRunner.runWithProgressStatus(progressStatus1 -> {
-                    try {
-                        MMSUtils.sendMMSRequest(project, request, progressStatus1);
-                    } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                        // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                        e.printStackTrace();
+            if (changed) {
+                int size = elementsToCommit.size() + mmsElementsToDelete.size();
+                upload = () -> TaskRunner.runWithProgressStatus(progressStatus1 -> {
+                    Set<String> failedViewIds = commitGeneratedViews(elementsToCommit, mmsElementsToDelete, elementViewIds, viewFingerprints, progressStatus1);
+                    if (recordDependencies) {
+                        ViewDependencyGraph.getGraph(project).record(viewRecords, failedViewIds);
                     }
-                }, "View Generate Delete x" + NumberFormat.getInstance().format(elementsToDelete.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
-                changed = true;
+                }, "View Generation Upload x" + NumberFormat.getInstance().format(size), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
             }
 
             if (!changed) {
@@ -767,6 +832,7 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             processedElements.addAll(views);
         } catch (Exception e) {
             failure = true;
+            MMSUtils.getLastException().set(e);
             Utils.printException(e);
         } finally {
             // cancel session so all elements created get deleted automatically
@@ -778,6 +844,18 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
             }
         }
 
+        // fingerprinted once the session is cancelled, so that the fingerprints do not include the temporary view instances
+        if (recordDependencies && !failure) {
+            List<Element> generatedViews = views.stream().filter(view -> !skippedViews.contains(view) || unchangedViews.contains(view)).collect(Collectors.toList());
+            viewRecords.putAll(ViewDependencyGraph.getGraph(project).fingerprint(ViewDependencyGraph.toDependencyIds(viewDependencies, view2elements, generatedViews)));
+        }
+        if (upload != null) {
+            upload.run();
+        }
+        else if (!viewRecords.isEmpty()) {
+            ViewDependencyGraph.getGraph(project).record(viewRecords, Collections.emptySet());
+        }
+
         if (suite.hasErrors()) {
             Utils.displayValidationWindow(project, vss, "View Generation Validation");
         }
@@ -792,6 +870,25 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         }
     }
 
+    /**
+     * Applies the function to the listed items concurrently, storing each result at the index of its item. The function
+     * must only read the model, as the calling thread, and with it the open session, waits for all of them to finish.
+     */
+    private <T, R> R[] mapConcurrently(List<T> items, Function<T, R> function, R[] results) {
+        try {
+            GENERATION_POOL.submit(() -> IntStream.range(0, results.length).parallel().forEach(i -> results[i] = function.apply(items.get(i)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
     private boolean handleCancel(ProgressStatus progressStatus) {
         if (progressStatus.isCancel()) {
             failure = true;
@@ -804,6 +901,79 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         return false;
     }
 
+    /**
+     * Commits the generated view elements and deletes the unused ones, and then commits the fingerprints of the views
+     * whose elements were all committed and deleted.
+     *
+     * @return ids of the views whose elements were not all committed and deleted
+     */
+    private Set<String> commitGeneratedViews(List<ObjectNode> elementsToCommit, Set<String> elementsToDelete, Map<String, String> elementViewIds, Map<String, JsonNode> viewFingerprints, ProgressStatus progressStatus) {
+        Set<String> failedViewIds = new HashSet<>();
+        if (!elementsToCommit.isEmpty()) {
+            try {
+                MMSElementCommitter.CommitResult result = MMSElementCommitter.postElements(project, elementsToCommit, progressStatus);
+                handleCommitResult(result, elementsToCommit.size(), Changelog.ChangeType.UPDATED);
+                result.getFailedIds().stream().map(elementViewIds::get).filter(Objects::nonNull).forEach(failedViewIds::add);
+            } catch (IOException | URISyntaxException e) {
+                MMSUtils.getLastException().set(e);
+                Application.getInstance().getGUILog().log("[ERROR] Failed to commit generated view instances to MMS. Reason: " + e.getMessage());
+                e.printStackTrace();
+                failedViewIds.addAll(elementViewIds.values());
+            }
+        }
+        if (!elementsToDelete.isEmpty()) {
+            try {
+                MMSElementCommitter.CommitResult result = MMSElementCommitter.deleteElements(project, elementsToDelete, progressStatus);
+                handleCommitResult(result, elementsToDelete.size(), Changelog.ChangeType.DELETED);
+                result.getFailedIds().stream().map(elementViewIds::get).filter(Objects::nonNull).forEach(failedViewIds::add);
+            } catch (IOException | URISyntaxException e) {
+                MMSUtils.getLastException().set(e);
+                Application.getInstance().getGUILog().log("[ERROR] Failed to delete unused presentation elements from MMS. Reason: " + e.getMessage());
+                e.printStackTrace();
+                failedViewIds.addAll(elementViewIds.values());
+            }
+        }
+        List<ObjectNode> fingerprintJsons = new ArrayList<>(viewFingerprints.size());
+        for (Map.Entry<String, JsonNode> entry : viewFingerprints.entrySet()) {
+            if (failedViewIds.contains(entry.getKey())) {
+                continue;
+            }
+            ObjectNode fingerprintJson = JacksonUtils.getObjectMapper().createObjectNode();
+            fingerprintJson.put(MDKConstants.ID_KEY, entry.getKey());
+            fingerprintJson.set(MDKConstants.GENERATION_FINGERPRINT_KEY, entry.getValue());
+            fingerprintJsons.add(fingerprintJson);
+        }
+        if (!fingerprintJsons.isEmpty()) {
+            // a missing fingerprint only means that the view is generated again next time
+            try {
+                MMSElementCommitter.CommitResult result = MMSElementCommitter.postElements(project, fingerprintJsons, progressStatus);
+                if (!result.isSuccessful() && !result.isCancelled()) {
+                    Application.getInstance().getGUILog().log("[WARNING] Failed to commit the generation fingerprints of " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " view" + (result.getFailedIds().size() != 1 ? "s" : "") + " to MMS. They will be generated again next time." + (result.getException() != null ? " Reason: " + result.getException().getMessage() : ""));
+                }
+            } catch (IOException | URISyntaxException e) {
+                Application.getInstance().getGUILog().log("[WARNING] Failed to commit the generation fingerprints of views to MMS. They will be generated again next time. Reason: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        return failedViewIds;
+    }
+
+    private void handleCommitResult(MMSElementCommitter.CommitResult result, int size, Changelog.ChangeType changeType) {
+        if (result.isSuccessful()) {
+            return;
+        }
+        if (result.getException() != null) {
+            MMSUtils.getLastException().set(result.getException());
+        }
+        // generated instances and slots only exist in the cancelled session, and the model's view contents predate the
+        // generation, so only deletions can be left to the next sync
+        if (changeType == Changelog.ChangeType.DELETED) {
+            MMSElementCommitter.requeueFailedElements(project, result, changeType);
+        }
+        Application.getInstance().getGUILog().log("[ERROR] Failed to commit " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " of " + NumberFormat.getInstance().format(size) + " generated view element" + (size != 1 ? "s" : "") + " to MMS."
+                + (changeType == Changelog.ChangeType.DELETED ? " They have been queued for the next sync." : " Generate the views again to retry.") + (result.getException() != null ? " Reason: " + result.getException().getMessage() : ""));
+    }
+
     public List<ValidationSuite> getValidations() {
         return vss;
     }
@@ -817,6 +987,7 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         private ObjectNode objectNode;
         private List<String> instanceIDs;
         private DBBook book;
+        private String presentationHash;
 
         public Element getElement() {
             return element;
@@ -849,6 +1020,14 @@ public class ViewPresentationGenerator implements RunnableWithProgress {
         public void setBook(DBBook book) {
             this.book = book;
         }
+
+        public String getPresentationHash() {
+            return presentationHash;
+        }
+
+        public void setPresentationHash(String presentationHash) {
+            this.presentationHash = presentationHash;
+        }
     }
 
 }
@@ -0,0 +1,74 @@
+package gov.nasa.jpl.mbee.mdk.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entity wrapper that counts the bytes read from or written by the wrapped entity. When wrapping a raw entity, before
+ * any content encoding is applied or removed, the count is the number of bytes actually sent or received over the wire.
+ */
+public class CountingHttpEntity extends HttpEntityWrapper {
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong totalByteCount;
+
+    public CountingHttpEntity(HttpEntity wrappedEntity, AtomicLong totalByteCount) {
+        super(wrappedEntity);
+        this.totalByteCount = totalByteCount;
+    }
+
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream inputStream = super.getContent();
+        if (inputStream == null) {
+            return null;
+        }
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    count(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        super.writeTo(new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                count(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                count(len);
+            }
+        });
+    }
+
+    private void count(long n) {
+        byteCount.addAndGet(n);
+        totalByteCount.addAndGet(n);
+    }
+}
@@ -0,0 +1,219 @@
+package gov.nasa.jpl.mbee.mdk.http;
+
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived, pooled http clients shared by all MMS requests. One client is kept per server (scheme, host and port) so
+ * that connections, and their TCP and TLS handshakes, are reused across requests instead of being paid for every time.
+ * Clients are built from the connection options in {@link MDKOptionsGroup} when first requested and are closed once
+ * no open project references their server anymore and the requests still executing on them have completed, or when the
+ * plugin is closed.
+ * <p>
+ * Clients advertise gzip and deflate support and transparently decode compressed responses. Request and response bodies
+ * are wrapped in {@link CountingHttpEntity} before any content coding is applied or removed, so the entities stored in the
+ * execution context under {@link #REQUEST_ENTITY_ATTRIBUTE} and {@link #RESPONSE_ENTITY_ATTRIBUTE} report wire bytes.
+ */
+public class HttpClientPool {
+    public static final String REQUEST_ENTITY_ATTRIBUTE = "mdk.request.entity",
+            RESPONSE_ENTITY_ATTRIBUTE = "mdk.response.entity";
+
+    private static final long IDLE_CONNECTION_TIMEOUT = 60;
+    private static final AtomicLong BYTES_SENT = new AtomicLong();
+    private static final AtomicLong BYTES_RECEIVED = new AtomicLong();
+
+    private static final Map<String, PooledClient> CLIENTS = new HashMap<>();
+    private static final Map<Project, String> PROJECT_SERVERS = new WeakHashMap<>();
+
+    /**
+     * Leases the shared client for the server the request is addressed to. The client is kept open until the lease is
+     * closed, which must happen once the response it produced has been consumed. The client itself must not be closed
+     * by the caller.
+     *
+     * @param project project the request is made for, can be null
+     * @param request request that will be executed with the leased client
+     * @return lease of the pooled client for the server
+     */
+    public static synchronized Lease acquire(Project project, HttpRequestBase request) {
+        String server = getServerKey(request.getURI());
+        if (project != null) {
+            PROJECT_SERVERS.put(project, server);
+        }
+        PooledClient pooledClient = CLIENTS.computeIfAbsent(server, key -> new PooledClient(createClient()));
+        pooledClient.inFlightCount++;
+        return new Lease(pooledClient);
+    }
+
+    /**
+     * Retires the client for the project's server if no other open project is using it. A retired client is closed
+     * once the requests executing on it have completed; requests made afterwards get a new client.
+     *
+     * @param project project being closed
+     */
+    public static synchronized void release(Project project) {
+        String server = PROJECT_SERVERS.remove(project);
+        if (server == null || PROJECT_SERVERS.containsValue(server)) {
+            return;
+        }
+        PooledClient pooledClient = CLIENTS.remove(server);
+        if (pooledClient != null) {
+            pooledClient.retire();
+        }
+    }
+
+    /**
+     * Closes all clients and their pooled connections, aborting requests that are still executing. Clients are lazily
+     * recreated if requests are made afterwards.
+     */
+    public static synchronized void shutdown() {
+        PROJECT_SERVERS.clear();
+        CLIENTS.values().forEach(pooledClient -> close(pooledClient.client));
+        CLIENTS.clear();
+    }
+
+    /**
+     * @return total number of body bytes sent over the wire by all clients
+     */
+    public static long getBytesSent() {
+        return BYTES_SENT.get();
+    }
+
+    /**
+     * @return total number of body bytes received over the wire by all clients, before decompression
+     */
+    public static long getBytesReceived() {
+        return BYTES_RECEIVED.get();
+    }
+
+    private static CloseableHttpClient createClient() {
+        MDKOptionsGroup options = MDKOptionsGroup.getMDKOptions();
+        int maxConnectionsPerRoute = Math.max(options.getMmsMaxConnectionsPerRoute(), 1);
+        int connectTimeout = (int) TimeUnit.SECONDS.toMillis(Math.max(options.getMmsConnectTimeout(), 0));
+        int socketTimeout = (int) TimeUnit.SECONDS.toMillis(Math.max(options.getMmsSocketTimeout(), 0));
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsPerRoute * 2);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> {
+                    HttpEntity entity;
+                    if (!(request instanceof HttpEntityEnclosingRequest) || (entity = ((HttpEntityEnclosingRequest) request).getEntity()) == null) {
+                        return;
+                    }
+                    if (!(entity instanceof CountingHttpEntity)) {
+                        ((HttpEntityEnclosingRequest) request).setEntity(entity = new CountingHttpEntity(entity, BYTES_SENT));
+                    }
+                    context.setAttribute(REQUEST_ENTITY_ATTRIBUTE, entity);
+                })
+                .addInterceptorFirst((HttpResponseInterceptor) (response, context) -> {
+                    HttpEntity entity = response.getEntity();
+                    if (entity == null) {
+                        return;
+                    }
+                    CountingHttpEntity countingEntity = new CountingHttpEntity(entity, BYTES_RECEIVED);
+                    response.setEntity(countingEntity);
+                    context.setAttribute(RESPONSE_ENTITY_ATTRIBUTE, countingEntity);
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static void close(CloseableHttpClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String getServerKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static class PooledClient {
+        private final CloseableHttpClient client;
+        private int inFlightCount;
+        private boolean retired;
+
+        private PooledClient(CloseableHttpClient client) {
+            this.client = client;
+        }
+
+        private void retire() {
+            retired = true;
+            if (inFlightCount == 0) {
+                close(client);
+            }
+        }
+    }
+
+    /**
+     * Keeps a pooled client open while a request is executed with it.
+     */
+    public static class Lease implements AutoCloseable {
+        private final PooledClient pooledClient;
+        private boolean closed;
+
+        private Lease(PooledClient pooledClient) {
+            this.pooledClient = pooledClient;
+        }
+
+        public CloseableHttpClient getClient() {
+            return pooledClient.client;
+        }
+
+        @Override
+        public void close() {
+            synchronized (HttpClientPool.class) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (--pooledClient.inFlightCount == 0 && pooledClient.retired) {
+                    close(pooledClient.client);
+                }
+            }
+        }
+    }
+
+    public static class HttpClientPoolProjectEventListenerAdapter extends ProjectEventListenerAdapter {
+        @Override
+        public void projectClosed(Project project) {
+            release(project);
+        }
+
+        @Override
+        public void projectReplaced(Project oldProject, Project newProject) {
+            release(oldProject);
+        }
+    }
+}
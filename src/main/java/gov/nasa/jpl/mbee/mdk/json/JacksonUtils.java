@@ -15,6 +15,7 @@ import org.apache.commons.lang.math.NumberUtils;
 
 import java.io.IOException;
 import java.util.LinkedList;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -117,6 +118,33 @@ public class JacksonUtils {
         return getObjectMapper().readTree(jsonParser);
     }
 
+    /**
+     * Streams each object of a top level array field to the consumer without building the enclosing object. Other fields
+     * are skipped. The parser must be positioned before or at the start of the enclosing object.
+     */
+    public static void parseJsonArrayField(JsonParser jsonParser, String fieldName, Consumer<ObjectNode> consumer) throws IOException {
+        JsonToken current = (jsonParser.getCurrentToken() == null ? jsonParser.nextToken() : jsonParser.getCurrentToken());
+        if (current != JsonToken.START_OBJECT) {
+            throw new IOException("Unable to build object from JSON parser.");
+        }
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String currentName = jsonParser.getCurrentName();
+            current = jsonParser.nextToken();
+            if (!fieldName.equals(currentName) || current != JsonToken.START_ARRAY) {
+                jsonParser.skipChildren();
+                continue;
+            }
+            while ((current = jsonParser.nextToken()) != JsonToken.END_ARRAY && current != null) {
+                if (current == JsonToken.START_OBJECT) {
+                    consumer.accept(getObjectMapper().readTree(jsonParser));
+                }
+                else {
+                    jsonParser.skipChildren();
+                }
+            }
+        }
+    }
+
     public static ArrayNode parseJsonArray(JsonParser jsonParser, ArrayNode arrayNode) throws IOException {
         JsonToken current = (jsonParser.getCurrentToken() == null ? jsonParser.nextToken() : jsonParser.getCurrentToken());
         if (current != JsonToken.START_ARRAY) {
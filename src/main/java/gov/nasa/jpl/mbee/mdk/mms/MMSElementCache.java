@@ -0,0 +1,512 @@
+package gov.nasa.jpl.mbee.mdk.mms;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Application;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.task.ProgressStatus;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.http.ServerException;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.sync.mms.MMSCommitHistoryReader;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import gov.nasa.jpl.mbee.mdk.util.CacheUtils;
+import gov.nasa.jpl.mbee.mdk.util.MDUtils;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * On-disk cache of the server json of elements, per project and branch. The cache records the MMS commit it is valid
+ * for and, when opened, replays the change sets of the commits made since then so that only the elements touched by
+ * those commits are requested again. Elements that MMS does not have are cached as well, so that repeated validations
+ * of unsynced elements do not request them every time.
+ * <p>
+ * Subtrees that have been fetched with unlimited depth are remembered, so that later recursive requests below them are
+ * answered from the cache by following the owners of the cached elements. Elements touched by new commits are fetched
+ * again as part of opening the cache while any such subtree exists, as otherwise elements added below it would be
+ * missed.
+ * <p>
+ * The cache is stored in a fixed number of shard files, of which only a few are held in memory at once. Fetched entries
+ * are appended to their shard files in batches, and the shards they were appended to are rewritten whole when the cache
+ * is closed, so that caching a whole model never holds it in memory.
+ * <p>
+ * Instances hold an exclusive lock on the cache directory until they are closed, and the json they return must not be
+ * modified before then. Opening waits a bounded time for the lock, after which requests go straight to MMS. The cache
+ * can also be disabled in {@link MDKOptionsGroup}.
+ */
+public class MMSElementCache implements Closeable {
+    private static final String ELEMENTS_CACHE_NAME = "elements";
+    private static final String STATE_FILE_NAME = "state.json";
+    private static final String SHARD_FILE_PREFIX = "elements-";
+    private static final String COMMIT_ID_KEY = "commitId";
+    private static final String ROOT_IDS_KEY = "rootIds";
+    private static final int SHARD_COUNT = 64;
+    private static final int MAX_RESIDENT_SHARDS = 8;
+    private static final int MAX_PENDING_ENTRIES = 10000;
+    private static final long LOCK_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final int CHECK_CANCEL_DELAY = 100;
+    // appended in place of an entry to remove it, as earlier segments of the shard file may still contain it
+    private static final JsonNode REMOVED = BooleanNode.FALSE;
+    private static final Map<File, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Project project;
+    private final File directory;
+    private final ReentrantLock lock;
+    private final Map<Integer, Map<String, JsonNode>> residentShards = new LinkedHashMap<Integer, Map<String, JsonNode>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, JsonNode>> eldest) {
+            return size() > MAX_RESIDENT_SHARDS;
+        }
+    };
+    private final Map<Integer, Map<String, JsonNode>> pendingEntries = new HashMap<>();
+    private final boolean[] appendedShards = new boolean[SHARD_COUNT];
+    private int pendingEntryCount;
+    private final Set<String> rootIds = new LinkedHashSet<>();
+    private Map<String, List<String>> childIds;
+    private String commitId;
+    private boolean stateDirty;
+
+    private MMSElementCache(Project project, File directory) {
+        this.project = project;
+        this.directory = directory;
+        this.lock = directory != null ? LOCKS.computeIfAbsent(directory, key -> new ReentrantLock()) : null;
+    }
+
+    /**
+     * Opens the cache of the project's branch and brings it up to date with the latest MMS commit. Waits while another
+     * instance of the same cache is open; if it is still open after a while, an instance that requests everything from
+     * MMS is returned instead.
+     *
+     * @param project        project to open the cache for
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @return the cache, or null if opening was cancelled
+     */
+    public static MMSElementCache open(Project project, ProgressStatus progressStatus)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        return open(project, progressStatus, true);
+    }
+
+    /**
+     * Opens the cache of the project's branch like {@link #open(Project, ProgressStatus)}, but does not wait while another
+     * instance of the same cache is open.
+     *
+     * @param project        project to open the cache for
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @return the cache, or null if it is in use or opening was cancelled
+     */
+    public static MMSElementCache tryOpen(Project project, ProgressStatus progressStatus)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        return open(project, progressStatus, false);
+    }
+
+    private static MMSElementCache open(Project project, ProgressStatus progressStatus, boolean wait)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        File directory = null;
+        if (MDKOptionsGroup.getMDKOptions().isMmsElementCacheEnabled()) {
+            try {
+                directory = CacheUtils.getCacheDirectory(ELEMENTS_CACHE_NAME, Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()), MDUtils.getBranchId(project));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        MMSElementCache cache = new MMSElementCache(project, directory);
+        if (cache.lock == null) {
+            return cache;
+        }
+        if (!wait && !cache.lock.tryLock()) {
+            return null;
+        }
+        if (wait && !cache.tryLock(progressStatus)) {
+            if (Thread.currentThread().isInterrupted() || progressStatus != null && progressStatus.isCancel()) {
+                return null;
+            }
+            Application.getInstance().getGUILog().log("[INFO] The cached MMS elements are in use by another operation. Elements will be requested from MMS instead.");
+            return new MMSElementCache(project, null);
+        }
+        boolean opened = false;
+        try {
+            cache.readState();
+            opened = cache.update(progressStatus);
+        } finally {
+            if (!opened) {
+                cache.lock.unlock();
+            }
+        }
+        return opened ? cache : null;
+    }
+
+    /**
+     * Gets the elements from the cache, and from MMS for the ones that are not cached. Elements that do not exist on MMS
+     * are not returned.
+     *
+     * @param elementIds     ids of the elements to get
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @param consumer       consumer of the element json
+     * @return false if the request was cancelled, true otherwise
+     */
+    public boolean getElements(Collection<String> elementIds, ProgressStatus progressStatus, Consumer<ObjectNode> consumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        if (directory == null) {
+            return MMSElementFetcher.getElements(project, elementIds, 0, progressStatus, consumer);
+        }
+        Set<String> missingIds = new LinkedHashSet<>();
+        forEachCached(elementIds, (elementId, jsonNode) -> {
+            if (jsonNode == null) {
+                missingIds.add(elementId);
+            }
+            else if (jsonNode.isObject()) {
+                consumer.accept((ObjectNode) jsonNode);
+            }
+        });
+        return fetch(missingIds, 0, progressStatus, consumer);
+    }
+
+    /**
+     * Gets the elements and their owned elements down to the given depth. The request is answered from the cache if the
+     * element is part of a subtree that has been fetched with unlimited depth, and from MMS otherwise.
+     *
+     * @param elementId      id of the root element
+     * @param depth          depth to recurse through owned elements, negative for unlimited
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @param consumer       consumer of the element json
+     * @return false if the request was cancelled, true otherwise
+     */
+    public boolean getElementsRecursively(String elementId, int depth, ProgressStatus progressStatus, Consumer<ObjectNode> consumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        if (directory == null) {
+            return MMSElementFetcher.getElements(project, Collections.singletonList(elementId), depth, progressStatus, consumer);
+        }
+        if (isSubtreeCached(elementId)) {
+            Map<String, List<String>> childIds = getChildIds();
+            Set<String> subtreeIds = new LinkedHashSet<>();
+            List<String> level = Collections.singletonList(elementId);
+            for (int i = 0; !level.isEmpty(); i++) {
+                List<String> nextLevel = new ArrayList<>();
+                for (String id : level) {
+                    if (subtreeIds.add(id) && (depth < 0 || i < depth)) {
+                        nextLevel.addAll(childIds.getOrDefault(id, Collections.emptyList()));
+                    }
+                }
+                level = nextLevel;
+            }
+            forEachCached(subtreeIds, (id, jsonNode) -> {
+                if (jsonNode != null && jsonNode.isObject()) {
+                    consumer.accept((ObjectNode) jsonNode);
+                }
+            });
+            return true;
+        }
+        if (!fetch(Collections.singleton(elementId), depth, progressStatus, consumer)) {
+            return false;
+        }
+        if (depth < 0) {
+            rootIds.add(elementId);
+            stateDirty = true;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the changed entries back to disk and releases the cache. Failures to write are logged and leave the
+     * affected entries uncached.
+     */
+    @Override
+    public void close() {
+        if (lock == null || !lock.isHeldByCurrentThread()) {
+            return;
+        }
+        try {
+            appendPendingEntries();
+            // shards are rewritten one at a time, without their appended segments
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                if (!appendedShards[i]) {
+                    continue;
+                }
+                Map<String, JsonNode> shard = residentShards.containsKey(i) ? residentShards.get(i) : readShard(i);
+                ObjectNode shardJson = JacksonUtils.getObjectMapper().createObjectNode();
+                shard.forEach(shardJson::set);
+                CacheUtils.writeJson(getShardFile(i), shardJson);
+                appendedShards[i] = false;
+            }
+            if (stateDirty) {
+                ObjectNode stateJson = JacksonUtils.getObjectMapper().createObjectNode();
+                stateJson.put(COMMIT_ID_KEY, commitId);
+                ArrayNode rootIdsJson = stateJson.putArray(ROOT_IDS_KEY);
+                rootIds.forEach(rootIdsJson::add);
+                CacheUtils.writeJson(new File(directory, STATE_FILE_NAME), stateJson);
+                stateDirty = false;
+            }
+        } catch (IOException e) {
+            // a partially written cache could pair new elements with an old commit, so start over next time
+            e.printStackTrace();
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryLock(ProgressStatus progressStatus) {
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT;
+        try {
+            while (!lock.tryLock(CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS)) {
+                if (progressStatus != null && progressStatus.isCancel() || System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean update(ProgressStatus progressStatus)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        String cachedCommitId = commitId;
+        AtomicReference<String> headCommitId = new AtomicReference<>();
+        AtomicBoolean cursorFound = new AtomicBoolean();
+        List<String> commitIds = MMSCommitHistoryReader.getCommitIdsSince(project, id -> {
+            headCommitId.compareAndSet(null, id);
+            if (cachedCommitId == null || id.equals(cachedCommitId)) {
+                cursorFound.set(true);
+                return true;
+            }
+            return false;
+        });
+        if (!cursorFound.get() || cachedCommitId == null) {
+            // the cached commit is no longer part of the branch's history, e.g. the branch was recreated
+            clear();
+        }
+        else if (!commitIds.isEmpty()) {
+            if (progressStatus != null) {
+                progressStatus.setDescription("Updating cached MMS elements with " + commitIds.size() + " commit" + (commitIds.size() != 1 ? "s" : ""));
+            }
+            Set<String> changedIds = new LinkedHashSet<>();
+            MMSCommitHistoryReader.getCommitChanges(project, commitIds, (id, commitChanges) -> commitChanges.getElementIds().values().forEach(changedIds::addAll));
+            changedIds.forEach(this::remove);
+            if (!rootIds.isEmpty() && !fetch(changedIds, 0, progressStatus, objectNode -> {
+            })) {
+                return false;
+            }
+        }
+        if (!Objects.equals(commitId, headCommitId.get())) {
+            commitId = headCommitId.get();
+            stateDirty = true;
+        }
+        return true;
+    }
+
+    private boolean fetch(Collection<String> elementIds, int depth, ProgressStatus progressStatus, Consumer<ObjectNode> consumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        if (elementIds.isEmpty()) {
+            return true;
+        }
+        Set<String> returnedIds = new HashSet<>();
+        boolean completed = MMSElementFetcher.getElements(project, elementIds, depth, progressStatus, objectNode -> {
+            JsonNode idJsonNode = objectNode.get(MDKConstants.ID_KEY);
+            if (idJsonNode != null && idJsonNode.isTextual() && returnedIds.add(idJsonNode.asText())) {
+                put(idJsonNode.asText(), objectNode);
+                consumer.accept(objectNode);
+            }
+        });
+        if (!completed) {
+            return false;
+        }
+        elementIds.stream().filter(id -> !returnedIds.contains(id)).forEach(id -> put(id, NullNode.getInstance()));
+        return true;
+    }
+
+    private boolean isSubtreeCached(String elementId) {
+        Set<String> visitedIds = new HashSet<>();
+        String id = elementId;
+        while (id != null && visitedIds.add(id)) {
+            if (rootIds.contains(id)) {
+                return true;
+            }
+            JsonNode jsonNode = get(id);
+            JsonNode ownerIdJsonNode = jsonNode != null ? jsonNode.get(MDKConstants.OWNER_ID_KEY) : null;
+            id = ownerIdJsonNode != null && ownerIdJsonNode.isTextual() ? ownerIdJsonNode.asText() : null;
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the ids shard by shard, so that each shard is loaded at most once, and passes each id with its cached json
+     * to the action, or with null if it is not cached.
+     */
+    private void forEachCached(Collection<String> elementIds, BiConsumer<String, JsonNode> action) {
+        Map<Integer, List<String>> idsByShard = new TreeMap<>();
+        for (String elementId : elementIds) {
+            idsByShard.computeIfAbsent(getShardIndex(elementId), key -> new ArrayList<>()).add(elementId);
+        }
+        for (Map.Entry<Integer, List<String>> entry : idsByShard.entrySet()) {
+            Map<String, JsonNode> shard = getShard(entry.getKey());
+            entry.getValue().forEach(elementId -> action.accept(elementId, shard.get(elementId)));
+        }
+    }
+
+    private Map<String, List<String>> getChildIds() {
+        if (childIds == null) {
+            childIds = new HashMap<>();
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                for (Map.Entry<String, JsonNode> entry : getShard(i).entrySet()) {
+                    JsonNode ownerIdJsonNode = entry.getValue().get(MDKConstants.OWNER_ID_KEY);
+                    if (ownerIdJsonNode != null && ownerIdJsonNode.isTextual() && !ownerIdJsonNode.asText().equals(entry.getKey())) {
+                        childIds.computeIfAbsent(ownerIdJsonNode.asText(), key -> new ArrayList<>()).add(entry.getKey());
+                    }
+                }
+            }
+        }
+        return childIds;
+    }
+
+    private JsonNode get(String elementId) {
+        return getShard(getShardIndex(elementId)).get(elementId);
+    }
+
+    private void put(String elementId, JsonNode jsonNode) {
+        if (commitId == null) {
+            // without a commit the entry could never be invalidated
+            return;
+        }
+        int index = getShardIndex(elementId);
+        pendingEntries.computeIfAbsent(index, key -> new HashMap<>()).put(elementId, jsonNode);
+        Map<String, JsonNode> shard = residentShards.get(index);
+        if (shard != null) {
+            apply(shard, elementId, jsonNode);
+        }
+        childIds = null;
+        if (++pendingEntryCount >= MAX_PENDING_ENTRIES) {
+            appendPendingEntries();
+        }
+    }
+
+    private void remove(String elementId) {
+        put(elementId, REMOVED);
+    }
+
+    private static void apply(Map<String, JsonNode> shard, String elementId, JsonNode jsonNode) {
+        if (REMOVED.equals(jsonNode)) {
+            shard.remove(elementId);
+        }
+        else {
+            shard.put(elementId, jsonNode);
+        }
+    }
+
+    private Map<String, JsonNode> getShard(int index) {
+        Map<String, JsonNode> shard = residentShards.get(index);
+        if (shard == null) {
+            shard = readShard(index);
+            residentShards.put(index, shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Reads a shard file, which holds a sequence of json objects whose entries are applied in order, together with the
+     * entries that have not been appended to it yet.
+     */
+    private Map<String, JsonNode> readShard(int index) {
+        Map<String, JsonNode> shard = new HashMap<>();
+        File shardFile = getShardFile(index);
+        if (shardFile.isFile()) {
+            try (MappingIterator<JsonNode> segments = JacksonUtils.getObjectMapper().readerFor(JsonNode.class).readValues(shardFile)) {
+                while (segments.hasNextValue()) {
+                    JsonNode segment = segments.nextValue();
+                    Iterator<Map.Entry<String, JsonNode>> fields = segment.fields();
+                    while (fields.hasNext()) {
+                        Map.Entry<String, JsonNode> field = fields.next();
+                        apply(shard, field.getKey(), field.getValue());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // a partially read shard could be missing the removal of stale entries, so none of it is used
+                shardFile.delete();
+                shard.clear();
+            }
+        }
+        Map<String, JsonNode> pendingShardEntries = pendingEntries.get(index);
+        if (pendingShardEntries != null) {
+            pendingShardEntries.forEach((elementId, jsonNode) -> apply(shard, elementId, jsonNode));
+        }
+        return shard;
+    }
+
+    private void appendPendingEntries() {
+        try {
+            for (Map.Entry<Integer, Map<String, JsonNode>> entry : pendingEntries.entrySet()) {
+                try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(getShardFile(entry.getKey()), true));
+                     JsonGenerator jsonGenerator = JacksonUtils.getJsonFactory().createGenerator(outputStream)) {
+                    jsonGenerator.writeStartObject();
+                    for (Map.Entry<String, JsonNode> pendingEntry : entry.getValue().entrySet()) {
+                        jsonGenerator.writeFieldName(pendingEntry.getKey());
+                        jsonGenerator.writeTree(pendingEntry.getValue());
+                    }
+                    jsonGenerator.writeEndObject();
+                    jsonGenerator.writeRaw('\n');
+                }
+                appendedShards[entry.getKey()] = true;
+            }
+            pendingEntries.clear();
+            pendingEntryCount = 0;
+        } catch (IOException e) {
+            // a partially appended shard is dropped when it is read, so start over next time
+            e.printStackTrace();
+            clear();
+        }
+    }
+
+    private File getShardFile(int index) {
+        return new File(directory, SHARD_FILE_PREFIX + index + ".json");
+    }
+
+    private static int getShardIndex(String elementId) {
+        return (elementId.hashCode() & Integer.MAX_VALUE) % SHARD_COUNT;
+    }
+
+    private void readState() {
+        JsonNode stateJson = CacheUtils.readJson(new File(directory, STATE_FILE_NAME));
+        if (stateJson == null) {
+            return;
+        }
+        JsonNode value;
+        if ((value = stateJson.get(COMMIT_ID_KEY)) != null && value.isTextual()) {
+            commitId = value.asText();
+        }
+        if ((value = stateJson.get(ROOT_IDS_KEY)) != null && value.isArray()) {
+            value.forEach(rootId -> rootIds.add(rootId.asText()));
+        }
+    }
+
+    private void clear() {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            getShardFile(i).delete();
+            appendedShards[i] = false;
+        }
+        residentShards.clear();
+        pendingEntries.clear();
+        pendingEntryCount = 0;
+        new File(directory, STATE_FILE_NAME).delete();
+        rootIds.clear();
+        childIds = null;
+        commitId = null;
+        stateDirty = true;
+    }
+}
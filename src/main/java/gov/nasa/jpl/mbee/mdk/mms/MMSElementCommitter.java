@@ -0,0 +1,387 @@
+package gov.nasa.jpl.mbee.mdk.mms;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Application;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.task.ProgressStatus;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.http.ServerException;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaProjectEventListenerAdapter;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import gov.nasa.jpl.mbee.mdk.util.Changelog;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Commits elements to MMS in size-bounded batches, several of which are in flight at once over a bounded pool while the
+ * next batches are still being serialized. Each batch is retried independently and succeeds or fails on its own, so a
+ * timeout only costs the batches it affected; the ids of everything that was not committed are returned to the caller to
+ * be re-queued. Batch size, concurrency and retries are configured in {@link MDKOptionsGroup}.
+ * <p>
+ * Batches are dispatched in the order of the given collection, but with a concurrency above 1 they may complete out of
+ * order.
+ */
+public class MMSElementCommitter {
+    private static final int CHECK_CANCEL_DELAY = 100;
+    private static final long BYTES_PER_KILOBYTE = 1024;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    // sized to the connection pool before each commit; workers of concurrent commits beyond that wait in the queue
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "MMS Element Commit " + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    private static final Batch END_OF_BATCHES = new Batch(null, Collections.emptyList(), 0, 0);
+
+    /**
+     * Creates or updates the elements on MMS.
+     *
+     * @param project        project to commit the elements to
+     * @param elements       json of the elements to create or update
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @return result listing the committed and failed element ids
+     */
+    public static CommitResult postElements(Project project, Collection<ObjectNode> elements, ProgressStatus progressStatus)
+            throws IOException, URISyntaxException {
+        return commit(project, MMSUtils.HttpRequestType.POST, elements, MMSUtils.JsonBlobType.ELEMENT_JSON, progressStatus);
+    }
+
+    /**
+     * Deletes the elements from MMS.
+     *
+     * @param project        project to delete the elements from
+     * @param elementIds     ids of the elements to delete
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @return result listing the deleted and failed element ids
+     */
+    public static CommitResult deleteElements(Project project, Collection<String> elementIds, ProgressStatus progressStatus)
+            throws IOException, URISyntaxException {
+        return commit(project, MMSUtils.HttpRequestType.DELETE, elementIds, MMSUtils.JsonBlobType.ELEMENT_ID, progressStatus);
+    }
+
+    /**
+     * Adds the failed elements of a commit to the project's in-memory local changelog, so that they are re-attempted by the
+     * next Coordinated Sync instead of being lost.
+     *
+     * @param project    project the commit was made for
+     * @param result     result of the commit
+     * @param changeType type of change to record the failed elements as
+     */
+    public static void requeueFailedElements(Project project, CommitResult result, Changelog.ChangeType changeType) {
+        if (result.getFailedIds().isEmpty()) {
+            return;
+        }
+        Changelog<String, Element> changelog = LocalDeltaProjectEventListenerAdapter.getProjectMapping(project).getLocalDeltaTransactionCommitListener().getInMemoryLocalChangelog();
+        for (String id : result.getFailedIds()) {
+            Element element = changeType != Changelog.ChangeType.DELETED ? Converters.getIdToElementConverter().apply(id, project) : null;
+            if (element != null || changeType == Changelog.ChangeType.DELETED) {
+                changelog.addChange(id, element, changeType);
+            }
+        }
+    }
+
+    private static CommitResult commit(Project project, MMSUtils.HttpRequestType type, Collection<?> nodes, MMSUtils.JsonBlobType jsonBlobType, ProgressStatus progressStatus)
+            throws IOException, URISyntaxException {
+        CommitResult result = new CommitResult();
+        if (nodes == null || nodes.isEmpty()) {
+            return result;
+        }
+        URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
+        if (requestUri == null) {
+            throw new IOException("Unable to build the MMS elements URI for the project.");
+        }
+        MDKOptionsGroup options = MDKOptionsGroup.getMDKOptions();
+        long batchSize = Math.max(options.getMmsCommitBatchSize(), 1) * BYTES_PER_KILOBYTE;
+        int concurrency = Math.max(options.getMmsCommitConcurrency(), 1);
+        int retries = Math.max(options.getMmsRequestRetries(), 0);
+
+        // bounded so that serialization stays at most one batch per worker ahead of the network
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(concurrency);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Set<HttpRequestBase> inFlightRequests = ConcurrentHashMap.newKeySet();
+
+        Callable<Void> worker = () -> {
+            Batch batch;
+            while ((batch = batches.take()) != END_OF_BATCHES) {
+                try {
+                    if (stopped.get()) {
+                        result.addFailed(batch.ids, null);
+                        continue;
+                    }
+                    Exception exception = null;
+                    long start = System.currentTimeMillis();
+                    for (int attempt = 0; attempt <= retries && !stopped.get(); attempt++) {
+                        try {
+                            requestBatch(project, type, requestUri, batch.file, inFlightRequests);
+                            exception = null;
+                            break;
+                        } catch (Exception e) {
+                            exception = e;
+                            if (stopped.get() || attempt >= retries || !isRetryable(e)) {
+                                break;
+                            }
+                            MMSMetrics.recordRetry(type.name(), MMSMetrics.getEndpoint(requestUri.getPath()));
+                            System.out.println("[INFO] Retrying commit batch " + batch.number + " of " + NumberFormat.getInstance().format(batch.ids.size()) + " element" + (batch.ids.size() != 1 ? "s" : "") + " after failed attempt " + (attempt + 1) + ". Reason: " + e.getMessage());
+                        }
+                    }
+                    if (exception != null || stopped.get()) {
+                        result.addFailed(batch.ids, exception);
+                        continue;
+                    }
+                    result.addCommitted(batch.ids);
+                    logThroughput(type, batch, System.currentTimeMillis() - start);
+                } finally {
+                    if (!MDKOptionsGroup.getMDKOptions().isLogJson()) {
+                        batch.file.delete();
+                    }
+                }
+            }
+            return null;
+        };
+
+        EXECUTOR.setCorePoolSize(Math.max(options.getMmsMaxConnectionsPerRoute(), 1));
+        List<Future<Void>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(EXECUTOR.submit(worker));
+        }
+
+        Iterator<?> iterator = nodes.iterator();
+        int batchNumber = 0;
+        // ids consumed from the iterator for the batch being written, which are reported as failed if writing it fails
+        List<String> batchIds = new ArrayList<>();
+        try {
+            while (iterator.hasNext() && !isCancelled(progressStatus)) {
+                batchIds = new ArrayList<>();
+                Batch batch = writeBatch(iterator, jsonBlobType, batchSize, ++batchNumber, batchIds);
+                batchIds = Collections.emptyList();
+                if (!offer(batches, batch, progressStatus)) {
+                    result.addFailed(batch.ids, null);
+                    batch.file.delete();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            stopped.set(true);
+            result.addFailed(batchIds, e);
+        } finally {
+            cancelIfRequested(progressStatus, stopped, inFlightRequests, result);
+            while (iterator.hasNext()) {
+                String id = getId(iterator.next());
+                if (id != null) {
+                    result.addFailed(Collections.singletonList(id), null);
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    while (!batches.offer(END_OF_BATCHES, CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS) && !futures.stream().allMatch(Future::isDone)) {
+                        cancelIfRequested(progressStatus, stopped, inFlightRequests, result);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped.set(true);
+                    futures.forEach(future -> future.cancel(true));
+                    break;
+                }
+            }
+        }
+
+        for (Future<Void> future : futures) {
+            while (!future.isDone()) {
+                cancelIfRequested(progressStatus, stopped, inFlightRequests, result);
+                try {
+                    future.get(CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+
+                } catch (ExecutionException e) {
+                    result.addFailed(Collections.emptyList(), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped.set(true);
+                    inFlightRequests.forEach(HttpRequestBase::abort);
+                }
+            }
+        }
+        if (result.isCancelled()) {
+            Application.getInstance().getGUILog().log("[INFO] MMS commit was manually cancelled. " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " element" + (result.getFailedIds().size() != 1 ? "s were" : " was") + " not committed.");
+        }
+        return result;
+    }
+
+    /**
+     * Writes the next batch of nodes to a request file. The ids of the nodes taken from the iterator are added to the
+     * given list as they are taken, so that the caller still has them if writing fails.
+     */
+    private static Batch writeBatch(Iterator<?> iterator, MMSUtils.JsonBlobType jsonBlobType, long batchSize, int number, List<String> ids) throws IOException {
+        File file = MMSUtils.createRequestFile(MMSElementCommitter.class, ContentType.APPLICATION_JSON);
+        try (CountingOutputStream outputStream = new CountingOutputStream(new FileOutputStream(file));
+             JsonGenerator jsonGenerator = JacksonUtils.getJsonFactory().createGenerator(outputStream)) {
+            MMSUtils.writeEntityStart(jsonGenerator, jsonBlobType);
+            // always write at least one node, even if it is larger than the batch size on its own
+            do {
+                Object node = iterator.next();
+                String id = getId(node);
+                if (id != null) {
+                    ids.add(id);
+                }
+                MMSUtils.writeEntityNode(jsonGenerator, node, jsonBlobType);
+            }
+            while (iterator.hasNext() && outputStream.getByteCount() + jsonGenerator.getOutputBuffered() < batchSize);
+            MMSUtils.writeEntityEnd(jsonGenerator);
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        return new Batch(file, ids, file.length(), number);
+    }
+
+    private static void requestBatch(Project project, MMSUtils.HttpRequestType type, URIBuilder requestUri, File file, Set<HttpRequestBase> inFlightRequests)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        HttpRequestBase request = MMSUtils.buildRequest(type, requestUri, file, ContentType.APPLICATION_JSON);
+        inFlightRequests.add(request);
+        try {
+            // the response echoes the committed elements, which are not needed, so it is drained without being stored
+            MMSUtils.sendMMSRequest(project, request, null, jsonParser -> null);
+        } finally {
+            inFlightRequests.remove(request);
+        }
+    }
+
+    private static boolean offer(BlockingQueue<Batch> batches, Batch batch, ProgressStatus progressStatus) {
+        try {
+            while (!batches.offer(batch, CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS)) {
+                if (isCancelled(progressStatus)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void cancelIfRequested(ProgressStatus progressStatus, AtomicBoolean stopped, Set<HttpRequestBase> inFlightRequests, CommitResult result) {
+        if (isCancelled(progressStatus) && !stopped.getAndSet(true)) {
+            result.cancelled = true;
+            inFlightRequests.forEach(HttpRequestBase::abort);
+        }
+    }
+
+    private static boolean isCancelled(ProgressStatus progressStatus) {
+        return progressStatus != null && progressStatus.isCancel();
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof ServerException) {
+            int code = ((ServerException) e).getCode();
+            return code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
+        }
+        return e instanceof IOException;
+    }
+
+    private static String getId(Object node) {
+        if (node instanceof String) {
+            return (String) node;
+        }
+        JsonNode value;
+        if (node instanceof ObjectNode && (value = ((ObjectNode) node).get(MDKConstants.ID_KEY)) != null && value.isTextual()) {
+            return value.asText();
+        }
+        return null;
+    }
+
+    private static void logThroughput(MMSUtils.HttpRequestType type, Batch batch, long elapsed) {
+        NumberFormat numberFormat = NumberFormat.getInstance();
+        numberFormat.setMaximumFractionDigits(1);
+        double seconds = Math.max(elapsed, 1) / 1000.0;
+        System.out.println("[INFO] MMS Commit [" + type.name() + "] batch " + batch.number + ": "
+                + numberFormat.format(batch.ids.size()) + " element" + (batch.ids.size() != 1 ? "s" : "") + ", "
+                + numberFormat.format(batch.bytes / 1024.0) + " KB in " + numberFormat.format(seconds) + " s ("
+                + numberFormat.format(batch.ids.size() / seconds) + " elements/s, "
+                + numberFormat.format(batch.bytes / 1024.0 / seconds) + " KB/s)");
+    }
+
+    private static class Batch {
+        private final File file;
+        private final List<String> ids;
+        private final long bytes;
+        private final int number;
+
+        private Batch(File file, List<String> ids, long bytes, int number) {
+            this.file = file;
+            this.ids = ids;
+            this.bytes = bytes;
+            this.number = number;
+        }
+    }
+
+    public static class CommitResult {
+        private final Set<String> committedIds = Collections.synchronizedSet(new LinkedHashSet<>());
+        private final Set<String> failedIds = Collections.synchronizedSet(new LinkedHashSet<>());
+        private final AtomicReference<Exception> exception = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        private void addCommitted(Collection<String> ids) {
+            committedIds.addAll(ids);
+        }
+
+        private void addFailed(Collection<String> ids, Exception exception) {
+            failedIds.addAll(ids);
+            if (exception != null) {
+                this.exception.compareAndSet(null, exception);
+            }
+        }
+
+        /**
+         * @return ids of the elements whose batches were committed
+         */
+        public Set<String> getCommittedIds() {
+            return committedIds;
+        }
+
+        /**
+         * @return ids of the elements whose batches failed or were never sent, which need to be re-attempted
+         */
+        public Set<String> getFailedIds() {
+            return failedIds;
+        }
+
+        /**
+         * @return first exception a batch failed with, or null if none failed with an exception
+         */
+        public Exception getException() {
+            return exception.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isSuccessful() {
+            return failedIds.isEmpty() && exception.get() == null;
+        }
+    }
+}
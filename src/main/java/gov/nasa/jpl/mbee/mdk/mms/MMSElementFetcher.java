@@ -0,0 +1,225 @@
+package gov.nasa.jpl.mbee.mdk.mms;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Application;
+import com.nomagic.magicdraw.core.Project;
+import com.nomagic.task.ProgressStatus;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.http.ServerException;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Fetches elements from MMS by splitting the requested ids into chunks that are requested concurrently. Chunk requests
+ * are sent through {@link MMSUtils#sendMMSRequestAsync(Project, HttpRequestBase, ProgressStatus, MMSUtils.ResponseHandler)},
+ * so they share its in-flight limit with all other MMS requests. Each chunk is retried independently and handed to the
+ * caller as soon as its response arrives, so large fetches neither fail as a unit nor have to wait for the whole model to
+ * download before processing can start. Chunk size, concurrency and retries are configured in {@link MDKOptionsGroup}.
+ */
+public class MMSElementFetcher {
+    private static final int CHECK_CANCEL_DELAY = 100;
+
+    /**
+     * Gets the elements and streams each element of the responses to the consumer. The consumer is called on the
+     * caller's thread. Elements are not de-duplicated across chunks, which can overlap when depth is not 0.
+     *
+     * @param project        project to get the elements for
+     * @param elementIds     ids of the elements to get
+     * @param depth          depth to recurse through child elements
+     * @param progressStatus progress status object used for cancellation, can be null
+     * @param consumer       consumer of the returned element json
+     * @return false if the fetch was cancelled, true otherwise
+     */
+    public static boolean getElements(Project project, Collection<String> elementIds, int depth, ProgressStatus progressStatus, Consumer<ObjectNode> consumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        // each chunk is parsed straight off the response stream; elements are only buffered per chunk so that retries do
+        // not hand partial chunks to the consumer
+        return fetch(project, elementIds, depth, progressStatus, request -> MMSUtils.sendMMSRequestAsync(project, request, progressStatus, jsonParser -> {
+            List<ObjectNode> elements = new ArrayList<>();
+            JacksonUtils.parseJsonArrayField(jsonParser, "elements", elements::add);
+            return elements;
+        }), elements -> elements.forEach(consumer));
+    }
+
+    /**
+     * Gets the elements and returns the response file of each chunk, in completion order.
+     *
+     * @return response files, or null if the fetch was cancelled
+     * @see #getElements(Project, Collection, int, ProgressStatus, Consumer)
+     */
+    public static List<File> getElementFiles(Project project, Collection<String> elementIds, int depth, ProgressStatus progressStatus)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        List<File> responseFiles = new ArrayList<>();
+        return fetch(project, elementIds, depth, progressStatus, request -> MMSUtils.sendMMSRequestAsync(project, request, progressStatus), responseFiles::add) ? responseFiles : null;
+    }
+
+    /**
+     * Convenience method that collects all returned elements into a map keyed by id.
+     *
+     * @return elements by id, or null if the fetch was cancelled
+     * @see #getElements(Project, Collection, int, ProgressStatus, Consumer)
+     */
+    public static Map<String, ObjectNode> getElementsMap(Project project, Collection<String> elementIds, int depth, ProgressStatus progressStatus)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        Map<String, ObjectNode> elements = new LinkedHashMap<>(elementIds.size());
+        return getElements(project, elementIds, depth, progressStatus, objectNode -> {
+            String id = objectNode.path(MDKConstants.ID_KEY).asText(null);
+            if (id != null) {
+                elements.putIfAbsent(id, objectNode);
+            }
+        }) ? elements : null;
+    }
+
+    private static <T> boolean fetch(Project project, Collection<String> elementIds, int depth, ProgressStatus progressStatus, ChunkRequester<T> chunkRequester, ChunkConsumer<T> chunkConsumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        if (elementIds == null || elementIds.isEmpty()) {
+            return true;
+        }
+        if (MMSUtils.getServiceProjectsRefsElementsUri(project) == null) {
+            throw new IOException("Unable to build the MMS elements URI for the project.");
+        }
+        MDKOptionsGroup options = MDKOptionsGroup.getMDKOptions();
+        int chunkSize = Math.max(options.getMmsFetchChunkSize(), 1);
+        int concurrency = Math.max(options.getMmsFetchConcurrency(), 1);
+        int retries = Math.max(options.getMmsRequestRetries(), 0);
+
+        Queue<List<String>> chunks = new ArrayDeque<>();
+        List<String> chunk = new ArrayList<>(Math.min(chunkSize, elementIds.size()));
+        for (String elementId : elementIds) {
+            chunk.add(elementId);
+            if (chunk.size() >= chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        BlockingQueue<ChunkRequest<T>> completedRequests = new LinkedBlockingQueue<>();
+        Set<ChunkRequest<T>> inFlightRequests = new HashSet<>(concurrency);
+        try {
+            while (!chunks.isEmpty() || !inFlightRequests.isEmpty()) {
+                while (inFlightRequests.size() < concurrency && !chunks.isEmpty()) {
+                    ChunkRequest<T> chunkRequest = new ChunkRequest<>(chunks.poll());
+                    chunkRequest.send(project, depth, chunkRequester, completedRequests);
+                    inFlightRequests.add(chunkRequest);
+                }
+                ChunkRequest<T> chunkRequest = completedRequests.poll(CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS);
+                if (progressStatus != null && progressStatus.isCancel()) {
+                    Application.getInstance().getGUILog().log("[INFO] MMS request was manually cancelled.");
+                    return false;
+                }
+                if (chunkRequest == null) {
+                    continue;
+                }
+                inFlightRequests.remove(chunkRequest);
+                T response;
+                try {
+                    response = chunkRequest.future.get();
+                } catch (CancellationException e) {
+                    return false;
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    if (chunkRequest.attempt < retries && isRetryable(cause)) {
+                        MMSMetrics.recordRetry(MMSUtils.HttpRequestType.PUT.name(), MMSMetrics.ELEMENTS);
+                        System.out.println("[INFO] Retrying chunk of " + chunkRequest.ids.size() + " element" + (chunkRequest.ids.size() != 1 ? "s" : "") + " after failed attempt " + (chunkRequest.attempt + 1) + ". Reason: " + cause.getMessage());
+                        chunkRequest.attempt++;
+                        chunkRequest.send(project, depth, chunkRequester, completedRequests);
+                        inFlightRequests.add(chunkRequest);
+                        continue;
+                    }
+                    throw rethrow(cause);
+                }
+                if (response == null) {
+                    return false;
+                }
+                chunkConsumer.accept(response);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // cancelling the futures aborts the requests that are still queued or in flight
+            inFlightRequests.forEach(chunkRequest -> chunkRequest.future.cancel(true));
+        }
+    }
+
+    private static IOException rethrow(Exception e) throws ServerException, URISyntaxException, GeneralSecurityException {
+        if (e instanceof IOException) {
+            return (IOException) e;
+        }
+        if (e instanceof ServerException) {
+            throw (ServerException) e;
+        }
+        if (e instanceof URISyntaxException) {
+            throw (URISyntaxException) e;
+        }
+        if (e instanceof GeneralSecurityException) {
+            throw (GeneralSecurityException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        return new IOException(e);
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof ServerException) {
+            int code = ((ServerException) e).getCode();
+            return code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
+        }
+        return e instanceof IOException;
+    }
+
+    private static class ChunkRequest<T> {
+        private final List<String> ids;
+        private int attempt;
+        private CompletableFuture<T> future;
+
+        private ChunkRequest(List<String> ids) {
+            this.ids = ids;
+        }
+
+        private void send(Project project, int depth, ChunkRequester<T> chunkRequester, Queue<ChunkRequest<T>> completedRequests)
+                throws IOException, URISyntaxException {
+            URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
+            if (requestUri == null) {
+                throw new IOException("Unable to build the MMS elements URI for the project.");
+            }
+            requestUri.setParameter("depth", Integer.toString(depth));
+            File sendData = MMSUtils.createEntityFile(MMSElementFetcher.class, ContentType.APPLICATION_JSON, ids, MMSUtils.JsonBlobType.ELEMENT_ID);
+            HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.PUT, requestUri, sendData, ContentType.APPLICATION_JSON);
+            future = chunkRequester.request(request);
+            future.whenComplete((response, throwable) -> {
+                if (!MDKOptionsGroup.getMDKOptions().isLogJson()) {
+                    sendData.delete();
+                }
+                completedRequests.add(this);
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkRequester<T> {
+        CompletableFuture<T> request(HttpRequestBase request);
+    }
+
+    @FunctionalInterface
+    private interface ChunkConsumer<T> {
+        void accept(T response) throws IOException;
+    }
+}
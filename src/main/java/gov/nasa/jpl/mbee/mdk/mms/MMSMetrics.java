@@ -0,0 +1,263 @@
+package gov.nasa.jpl.mbee.mdk.mms;
+
+import com.codahale.metrics.*;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import gov.nasa.jpl.mbee.mdk.http.CountingHttpEntity;
+import gov.nasa.jpl.mbee.mdk.http.HttpClientPool;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaTransactionCommitListener;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the requests sent to MMS, kept in a Dropwizard {@link MetricRegistry} per http method and endpoint. For each
+ * pair the registry holds a latency timer, histograms and totals of the wire bytes sent and received, a counter per
+ * response status code, an error meter and a retry counter, named {@code mms.<method>.<endpoint>.<metric>}. The throughput
+ * of the local delta listener of each open project is kept as gauges named {@code local-delta.<project id>.<metric>}.
+ * <p>
+ * The registry is always published over JMX while the plugin is loaded. When {@link MDKOptionsGroup#getMmsMetricsDirectory()}
+ * is set, it is also reported to CSV files in that directory every minute, and {@link #writeJson(File)} snapshots can be
+ * written there, as the command line runners do at the end of each run.
+ */
+public class MMSMetrics {
+    public static final String JMX_DOMAIN = "gov.nasa.jpl.mbee.mdk",
+            ELEMENTS = "elements",
+            COMMITS = "commits",
+            ARTIFACTS = "artifacts",
+            REFS = "refs",
+            PROJECTS = "projects",
+            ORGS = "orgs",
+            LOGIN = "login",
+            OTHER = "other";
+
+    // nested resources take precedence, so that e.g. /projects/{id}/refs/{id}/elements is reported as elements
+    private static final List<String> ENDPOINTS = Arrays.asList(ORGS, PROJECTS, REFS, ELEMENTS, ARTIFACTS, COMMITS);
+    private static final long CSV_REPORT_PERIOD = 1;
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    private static JmxReporter jmxReporter;
+    private static CsvReporter csvReporter;
+
+    public static MetricRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Maps a request path to the endpoint its metrics are recorded under.
+     *
+     * @param path path of the request uri
+     * @return one of the endpoint constants of this class
+     */
+    public static String getEndpoint(String path) {
+        if (path == null) {
+            return OTHER;
+        }
+        int endpointIndex = -1;
+        for (String segment : path.split("/")) {
+            if (LOGIN.equals(segment)) {
+                return LOGIN;
+            }
+            endpointIndex = Math.max(endpointIndex, ENDPOINTS.indexOf(segment));
+        }
+        return endpointIndex >= 0 ? ENDPOINTS.get(endpointIndex) : OTHER;
+    }
+
+    /**
+     * Records an executed request. The wire byte counts are read from the entities that {@link HttpClientPool} stores in
+     * the context.
+     *
+     * @param request       executed request
+     * @param context       context the request was executed with
+     * @param durationNanos time from sending the request until its response was processed
+     * @param failed        true if the request failed, whether with an exception or an error response
+     */
+    public static void recordRequest(HttpRequestBase request, HttpClientContext context, long durationNanos, boolean failed) {
+        HttpResponse response = context.getResponse();
+        int responseCode = response != null ? response.getStatusLine().getStatusCode() : -1;
+        String prefix = MetricRegistry.name("mms", request.getMethod(), getEndpoint(request.getURI().getPath()));
+        REGISTRY.timer(MetricRegistry.name(prefix, "latency")).update(durationNanos, TimeUnit.NANOSECONDS);
+        REGISTRY.counter(MetricRegistry.name(prefix, "latency", "total-ms")).inc(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        CountingHttpEntity requestEntity = context.getAttribute(HttpClientPool.REQUEST_ENTITY_ATTRIBUTE, CountingHttpEntity.class);
+        CountingHttpEntity responseEntity = context.getAttribute(HttpClientPool.RESPONSE_ENTITY_ATTRIBUTE, CountingHttpEntity.class);
+        long bytesSent = requestEntity != null ? requestEntity.getByteCount() : 0;
+        long bytesReceived = responseEntity != null ? responseEntity.getByteCount() : 0;
+        REGISTRY.histogram(MetricRegistry.name(prefix, "bytes-sent")).update(bytesSent);
+        REGISTRY.counter(MetricRegistry.name(prefix, "bytes-sent", "total")).inc(bytesSent);
+        REGISTRY.histogram(MetricRegistry.name(prefix, "bytes-received")).update(bytesReceived);
+        REGISTRY.counter(MetricRegistry.name(prefix, "bytes-received", "total")).inc(bytesReceived);
+        REGISTRY.counter(MetricRegistry.name(prefix, "status", responseCode >= 0 ? Integer.toString(responseCode) : "none")).inc();
+        if (failed) {
+            REGISTRY.meter(MetricRegistry.name(prefix, "errors")).mark();
+        }
+    }
+
+    /**
+     * Records that a failed request is sent again.
+     *
+     * @param method   http method of the request
+     * @param endpoint endpoint of the request, one of the endpoint constants of this class
+     */
+    public static void recordRetry(String method, String endpoint) {
+        REGISTRY.counter(MetricRegistry.name("mms", method, endpoint, "retries")).inc();
+    }
+
+    /**
+     * Registers the gauges of the local delta listener of a project, in place of those of an earlier listener of the same
+     * project.
+     */
+    public static void registerLocalDeltaGauges(String projectId, LocalDeltaTransactionCommitListener listener) {
+        removeLocalDeltaGauges(projectId);
+        REGISTRY.register(MetricRegistry.name("local-delta", projectId, "queued-events"), (Gauge<Integer>) listener::getQueuedEventCount);
+        REGISTRY.register(MetricRegistry.name("local-delta", projectId, "processed-events"), (Gauge<Long>) listener::getProcessedEventCount);
+        REGISTRY.register(MetricRegistry.name("local-delta", projectId, "recorded-changes"), (Gauge<Long>) listener::getRecordedChangeCount);
+        REGISTRY.register(MetricRegistry.name("local-delta", projectId, "events-per-second"), (Gauge<Double>) listener::getEventsPerSecond);
+    }
+
+    public static void removeLocalDeltaGauges(String projectId) {
+        String prefix = MetricRegistry.name("local-delta", projectId) + ".";
+        REGISTRY.removeMatching((name, metric) -> name.startsWith(prefix));
+    }
+
+    /**
+     * Starts publishing the registry over JMX and, if a metrics directory is configured, to CSV files. Reporters that are
+     * already running are left as is.
+     */
+    public static synchronized void startReporters() {
+        if (jmxReporter == null) {
+            jmxReporter = JmxReporter.forRegistry(REGISTRY).inDomain(JMX_DOMAIN).convertRatesTo(TimeUnit.SECONDS).convertDurationsTo(TimeUnit.MILLISECONDS).build();
+            jmxReporter.start();
+        }
+        File directory = getMetricsDirectory();
+        if (csvReporter == null && directory != null) {
+            csvReporter = CsvReporter.forRegistry(REGISTRY).formatFor(Locale.US).convertRatesTo(TimeUnit.SECONDS).convertDurationsTo(TimeUnit.MILLISECONDS).build(directory);
+            csvReporter.start(CSV_REPORT_PERIOD, TimeUnit.MINUTES);
+        }
+    }
+
+    public static synchronized void stopReporters() {
+        if (csvReporter != null) {
+            csvReporter.report();
+            csvReporter.stop();
+            csvReporter = null;
+        }
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+    }
+
+    /**
+     * @return the configured metrics directory, created if necessary, or null if reporting to files is disabled
+     */
+    public static File getMetricsDirectory() {
+        String path = MDKOptionsGroup.getMDKOptions().getMmsMetricsDirectory();
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        File directory = new File(path.trim());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("[WARNING] Unable to create MMS metrics directory " + directory.getAbsolutePath() + ".");
+            return null;
+        }
+        return directory;
+    }
+
+    /**
+     * Writes a snapshot of all metrics to the file as json, with durations in milliseconds.
+     */
+    public static void writeJson(File file) throws IOException {
+        try (JsonGenerator jsonGenerator = JacksonUtils.getJsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            jsonGenerator.useDefaultPrettyPrinter();
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeNumberField("timestamp", System.currentTimeMillis());
+            jsonGenerator.writeObjectFieldStart("counters");
+            for (Map.Entry<String, Counter> entry : REGISTRY.getCounters().entrySet()) {
+                jsonGenerator.writeNumberField(entry.getKey(), entry.getValue().getCount());
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.writeObjectFieldStart("gauges");
+            for (Map.Entry<String, Gauge> entry : REGISTRY.getGauges().entrySet()) {
+                Object value = entry.getValue().getValue();
+                if (value instanceof Number) {
+                    jsonGenerator.writeNumberField(entry.getKey(), ((Number) value).doubleValue());
+                }
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.writeObjectFieldStart("meters");
+            for (Map.Entry<String, Meter> entry : REGISTRY.getMeters().entrySet()) {
+                jsonGenerator.writeObjectFieldStart(entry.getKey());
+                jsonGenerator.writeNumberField("count", entry.getValue().getCount());
+                jsonGenerator.writeNumberField("m1_rate", entry.getValue().getOneMinuteRate());
+                jsonGenerator.writeEndObject();
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.writeObjectFieldStart("histograms");
+            for (Map.Entry<String, Histogram> entry : REGISTRY.getHistograms().entrySet()) {
+                jsonGenerator.writeObjectFieldStart(entry.getKey());
+                writeSnapshot(jsonGenerator, entry.getValue().getCount(), entry.getValue().getSnapshot(), 1);
+                jsonGenerator.writeEndObject();
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.writeObjectFieldStart("timers");
+            for (Map.Entry<String, Timer> entry : REGISTRY.getTimers().entrySet()) {
+                jsonGenerator.writeObjectFieldStart(entry.getKey());
+                writeSnapshot(jsonGenerator, entry.getValue().getCount(), entry.getValue().getSnapshot(), TimeUnit.MILLISECONDS.toNanos(1));
+                jsonGenerator.writeEndObject();
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.writeEndObject();
+        }
+    }
+
+    private static void writeSnapshot(JsonGenerator jsonGenerator, long count, Snapshot snapshot, double divisor) throws IOException {
+        jsonGenerator.writeNumberField("count", count);
+        jsonGenerator.writeNumberField("min", snapshot.getMin() / divisor);
+        jsonGenerator.writeNumberField("mean", snapshot.getMean() / divisor);
+        jsonGenerator.writeNumberField("p50", snapshot.getMedian() / divisor);
+        jsonGenerator.writeNumberField("p95", snapshot.get95thPercentile() / divisor);
+        jsonGenerator.writeNumberField("p99", snapshot.get99thPercentile() / divisor);
+        jsonGenerator.writeNumberField("max", snapshot.getMax() / divisor);
+    }
+
+    /**
+     * Summarizes the requests per method and endpoint, one line each, ordered by the total time spent on them.
+     */
+    public static List<String> getSummary() {
+        NumberFormat numberFormat = NumberFormat.getInstance();
+        SortedMap<String, Timer> timers = REGISTRY.getTimers((name, metric) -> name.startsWith("mms.") && name.endsWith(".latency"));
+        List<Map.Entry<String, Timer>> entries = new ArrayList<>(timers.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Timer> entry) -> getCount(entry.getKey() + ".total-ms")).reversed());
+        List<String> summary = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Timer> entry : entries) {
+            String prefix = entry.getKey().substring(0, entry.getKey().length() - ".latency".length());
+            String[] parts = prefix.split("\\.");
+            Snapshot snapshot = entry.getValue().getSnapshot();
+            Meter errors = REGISTRY.getMeters().get(prefix + ".errors");
+            summary.add("[INFO] MMS " + parts[1] + " " + parts[2] + ": "
+                    + numberFormat.format(entry.getValue().getCount()) + " request" + (entry.getValue().getCount() != 1 ? "s" : "") + ", "
+                    + numberFormat.format(getCount(entry.getKey() + ".total-ms")) + " ms total, "
+                    + numberFormat.format(TimeUnit.NANOSECONDS.toMillis((long) snapshot.getMean())) + " ms mean, "
+                    + numberFormat.format(TimeUnit.NANOSECONDS.toMillis((long) snapshot.get95thPercentile())) + " ms p95, "
+                    + numberFormat.format(TimeUnit.NANOSECONDS.toMillis(snapshot.getMax())) + " ms max, "
+                    + numberFormat.format(getCount(prefix + ".bytes-sent.total")) + " bytes sent, "
+                    + numberFormat.format(getCount(prefix + ".bytes-received.total")) + " bytes received, "
+                    + numberFormat.format(errors != null ? errors.getCount() : 0) + " errors, "
+                    + numberFormat.format(getCount(prefix + ".retries")) + " retries");
+        }
+        return summary;
+    }
+
+    private static long getCount(String name) {
+        Counter counter = REGISTRY.getCounters().get(name);
+        return counter != null ? counter.getCount() : 0;
+    }
+}
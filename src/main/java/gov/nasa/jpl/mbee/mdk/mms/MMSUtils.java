@@ -3,9 +3,10 @@ package gov.nasa.jpl.mbee.mdk.mms;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -19,13 +20,14 @@ import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import gov.nasa.jpl.mbee.mdk.MDKPlugin;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.http.CountingHttpEntity;
+import gov.nasa.jpl.mbee.mdk.http.HttpClientPool;
 import gov.nasa.jpl.mbee.mdk.http.HttpDeleteWithBody;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.MMSLogoutAction;
 import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.MDUtils;
-import gov.nasa.jpl.mbee.mdk.util.TaskRunner;
 import gov.nasa.jpl.mbee.mdk.util.TicketUtils;
 import gov.nasa.jpl.mbee.mdk.util.Utils;
 import org.apache.commons.io.IOUtils;
@@ -33,13 +35,14 @@ import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.client.entity.EntityBuilder;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.*;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 import javax.swing.*;
 import java.io.*;
@@ -47,17 +50,34 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
+import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class MMSUtils {
 
     private static final int CHECK_CANCEL_DELAY = 100;
     private static final AtomicReference<Exception> LAST_EXCEPTION = new AtomicReference<>();
+    private static final ThreadLocal<Boolean> IS_REQUEST_THREAD = ThreadLocal.withInitial(() -> false);
+    private static final AtomicInteger REQUEST_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService REQUEST_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(() -> {
+            IS_REQUEST_THREAD.set(true);
+            runnable.run();
+        }, "MMS Request " + REQUEST_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Queue<Runnable> QUEUED_REQUESTS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger IN_FLIGHT_REQUEST_COUNT = new AtomicInteger();
+    private static final ScheduledExecutorService CANCEL_CHECK_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MMS Request Cancel Check");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final Cache<Project, String> PROFILE_SERVER_CACHE = CacheBuilder.newBuilder().weakKeys().maximumSize(100).expireAfterAccess(10, TimeUnit.MINUTES).build();
 
     public enum HttpRequestType {
@@ -68,24 +88,29 @@ public class MMSUtils {
         ELEMENT_JSON, ELEMENT_ID, ARTIFACT_JSON, ARTIFACT_ID, PROJECT, REF, ORG
     }
 
+    /**
+     * Last failure an MMS operation gave up on, such as a sync or view generation whose commit failed. It is set by the
+     * operations themselves rather than per request, as many failed requests are handled or retried by their callers.
+     * Kept for the CLI runners, which only wait for background tasks to go idle.
+     */
     public static AtomicReference<Exception> getLastException() {
         return LAST_EXCEPTION;
     }
 
     public static ObjectNode getElement(Project project, String elementId, ProgressStatus progressStatus)
             throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
-        Collection<String> elementIds = new ArrayList<>(1);
-        elementIds.add(elementId);
-        File responseFile = getElementsRecursively(project, elementIds, 0, progressStatus);
-        try (JsonParser responseParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-            ObjectNode response = JacksonUtils.parseJsonObject(responseParser);
-            JsonNode value;
-            if (((value = response.get("elements")) != null) && value.isArray()
-                    && (value = ((ArrayNode) value).remove(1)) != null && (value instanceof ObjectNode)) {
-                return (ObjectNode) value;
-            }
+        URIBuilder requestUri = getServiceProjectsRefsElementsUri(project);
+        if (requestUri == null) {
+            return null;
         }
-        return null;
+        requestUri.setParameter("depth", "0");
+        File sendData = createEntityFile(MMSUtils.class, ContentType.APPLICATION_JSON, Collections.singletonList(elementId), JsonBlobType.ELEMENT_ID);
+        AtomicReference<ObjectNode> element = new AtomicReference<>();
+        sendMMSRequest(project, buildRequest(HttpRequestType.PUT, requestUri, sendData, ContentType.APPLICATION_JSON), progressStatus, jsonParser -> {
+            JacksonUtils.parseJsonArrayField(jsonParser, "elements", objectNode -> element.compareAndSet(null, objectNode));
+            return null;
+        });
+        return element.get();
     }
 
     public static File getElementRecursively(Project project, String elementId, int depth, ProgressStatus progressStatus)
@@ -245,7 +270,7 @@ public class MMSUtils {
      * @param type       Type of request, as selected from one of the options in the inner enum.
      * @param requestUri URI to send the request to. Methods to generate this URI are available in the class.
      * @param sendData   Data to send as an entity/body along with the request, if desired. Support for GET and DELETE
-     *                   with body is included.
+     *                   with body is included. The body is gzip encoded if enabled in the MDK options.
      * @return
      * @throws IOException
      * @throws URISyntaxException
@@ -281,6 +306,9 @@ public class MMSUtils {
             }
             HttpEntity reqEntity = new FileEntity(sendData, contentType);
             //reqEntity.setChunked(true);
+            if (MDKOptionsGroup.getMDKOptions().isMmsCompressRequests()) {
+                reqEntity = new GzipCompressingEntity(reqEntity);
+            }
             ((HttpEntityEnclosingRequest) request).setEntity(reqEntity);
         }
         return request;
@@ -301,6 +329,20 @@ public class MMSUtils {
     }
 
     public static File createEntityFile(Class<?> clazz, ContentType contentType, Collection<?> nodes, JsonBlobType jsonBlobType) throws IOException {
+        File requestFile = createRequestFile(clazz, contentType);
+        try (FileOutputStream outputStream = new FileOutputStream(requestFile);
+             JsonGenerator jsonGenerator = JacksonUtils.getJsonFactory().createGenerator(outputStream)) {
+            writeEntityStart(jsonGenerator, jsonBlobType);
+            for (Object node : nodes) {
+                writeEntityNode(jsonGenerator, node, jsonBlobType);
+            }
+            writeEntityEnd(jsonGenerator);
+        }
+
+        return requestFile;
+    }
+
+    static File createRequestFile(Class<?> clazz, ContentType contentType) throws IOException {
         File requestFile = File.createTempFile(clazz.getSimpleName() + "-" + contentType.getMimeType().replace('/', '-') + "-", null);
         if (MDKOptionsGroup.getMDKOptions().isLogJson()) {
             System.out.println("[INFO] Request Body: " + requestFile.getPath());
@@ -309,7 +351,10 @@ public class MMSUtils {
         else {
             requestFile.deleteOnExit();
         }
+        return requestFile;
+    }
 
+    static void writeEntityStart(JsonGenerator jsonGenerator, JsonBlobType jsonBlobType) throws IOException {
         String arrayName = null;
         switch (jsonBlobType) {
             case ELEMENT_ID:
@@ -330,31 +375,29 @@ public class MMSUtils {
                 arrayName = "refs";
                 break;
         }
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeArrayFieldStart(arrayName);
+    }
 
-        try (FileOutputStream outputStream = new FileOutputStream(requestFile);
-             JsonGenerator jsonGenerator = JacksonUtils.getJsonFactory().createGenerator(outputStream)) {
+    static void writeEntityNode(JsonGenerator jsonGenerator, Object node, JsonBlobType jsonBlobType) throws IOException {
+        if (node instanceof ObjectNode && jsonBlobType == JsonBlobType.ELEMENT_JSON || jsonBlobType == JsonBlobType.ORG || jsonBlobType == JsonBlobType.PROJECT || jsonBlobType == JsonBlobType.REF) {
+            jsonGenerator.writeObject(node);
+        }
+        else if (node instanceof String && jsonBlobType == JsonBlobType.ELEMENT_ID || jsonBlobType == JsonBlobType.ARTIFACT_ID) {
             jsonGenerator.writeStartObject();
-            jsonGenerator.writeArrayFieldStart(arrayName);
-            for (Object node : nodes) {
-                if (node instanceof ObjectNode && jsonBlobType == JsonBlobType.ELEMENT_JSON || jsonBlobType == JsonBlobType.ORG || jsonBlobType == JsonBlobType.PROJECT || jsonBlobType == JsonBlobType.REF) {
-                    jsonGenerator.writeObject(node);
-                }
-                else if (node instanceof String && jsonBlobType == JsonBlobType.ELEMENT_ID || jsonBlobType == JsonBlobType.ARTIFACT_ID) {
-                    jsonGenerator.writeStartObject();
-                    jsonGenerator.writeStringField(MDKConstants.ID_KEY, (String) node);
-                    jsonGenerator.writeEndObject();
-                }
-                else {
-                    throw new IOException("Unsupported collection type for entity file.");
-                }
-            }
-            jsonGenerator.writeEndArray();
-            jsonGenerator.writeStringField("source", "magicdraw");
-            jsonGenerator.writeStringField("mdkVersion", MDKPlugin.getVersion());
+            jsonGenerator.writeStringField(MDKConstants.ID_KEY, (String) node);
             jsonGenerator.writeEndObject();
         }
+        else {
+            throw new IOException("Unsupported collection type for entity file.");
+        }
+    }
 
-        return requestFile;
+    static void writeEntityEnd(JsonGenerator jsonGenerator) throws IOException {
+        jsonGenerator.writeEndArray();
+        jsonGenerator.writeStringField("source", "magicdraw");
+        jsonGenerator.writeStringField("mdkVersion", MDKPlugin.getVersion());
+        jsonGenerator.writeEndObject();
     }
 
     /**
@@ -362,16 +405,182 @@ public class MMSUtils {
      * When the file is written, it is temp unless the logJSON environment variable is enabled (or DEVELOPER mode is on). This file IS NOT
      * written to when the responseJson object is non-null. In that instance, the response is parsed into this object instead, keeping
      * the results entirely in memory. For large results this could be extremely memory intensive, so it is not advised for general use.
+     * Blocks until the request completes; see {@link #sendMMSRequestAsync(Project, HttpRequestBase, ProgressStatus)}.
      *
      * @param request
-     * @return
+     * @return the response file, or null if the request was cancelled
      * @throws IOException
      * @throws ServerException
      */
     public static File sendMMSRequest(Project project, HttpRequestBase request, ProgressStatus progressStatus, final ObjectNode responseJson) throws IOException, ServerException, GeneralSecurityException {
+        if (progressStatus != null) {
+            progressStatus.setIndeterminate(true);
+        }
+        return await(request, progressStatus, () -> executeMMSRequest(project, request, responseJson));
+    }
+
+    public static File sendMMSRequest(Project project, HttpRequestBase request) throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        return sendMMSRequest(project, request, null, (ObjectNode) null);
+    }
+
+    public static File sendMMSRequest(Project project, HttpRequestBase request, ProgressStatus progressStatus) throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        return sendMMSRequest(project, request, progressStatus, (ObjectNode) null);
+    }
+
+    /**
+     * Sends the request and hands the response body to the handler as it is received, without writing it to disk first.
+     * The status line is checked before the body is read: error responses are read in full, reported and thrown as a
+     * {@link ServerException} without reaching the handler. When the logJson option is enabled the response is spilled to
+     * a file first, as with the file based variants, so that it is kept for inspection. Blocks until the request
+     * completes; see {@link #sendMMSRequestAsync(Project, HttpRequestBase, ProgressStatus, ResponseHandler)}.
+     *
+     * @param project         project the request is made for
+     * @param request         request to send
+     * @param progressStatus  progress status object used for cancellation, can be null
+     * @param responseHandler handler that reads the response body from the parser
+     * @return the handler's result, or null if the request was cancelled
+     */
+    public static <T> T sendMMSRequest(Project project, HttpRequestBase request, ProgressStatus progressStatus, ResponseHandler<T> responseHandler)
+            throws IOException, ServerException, GeneralSecurityException {
+        return await(request, progressStatus, () -> executeMMSRequest(project, request, responseHandler));
+    }
+
+    /**
+     * Sends the request without blocking the caller. Requests are executed on a shared pool with at most
+     * {@link MDKOptionsGroup#getMmsMaxConnectionsPerRoute()} of them in flight at once; the rest wait in submission order,
+     * so callers can fan out many requests without exhausting the connection pool. The returned future completes with the
+     * handler's result or exceptionally with this request's own failure. It is cancelled when the progress status is
+     * cancelled, and cancelling it aborts the request.
+     *
+     * @param project         project the request is made for
+     * @param request         request to send
+     * @param progressStatus  progress status object used for cancellation, can be null
+     * @param responseHandler handler that reads the response body from the parser, called on a request thread
+     * @return future of the handler's result
+     * @see #sendMMSRequest(Project, HttpRequestBase, ProgressStatus, ResponseHandler)
+     */
+    public static <T> CompletableFuture<T> sendMMSRequestAsync(Project project, HttpRequestBase request, ProgressStatus progressStatus, ResponseHandler<T> responseHandler) {
+        return submit(request, progressStatus, () -> executeMMSRequest(project, request, responseHandler));
+    }
+
+    /**
+     * Sends the request without blocking the caller and writes the response to a file.
+     *
+     * @return future of the response file
+     * @see #sendMMSRequestAsync(Project, HttpRequestBase, ProgressStatus, ResponseHandler)
+     */
+    public static CompletableFuture<File> sendMMSRequestAsync(Project project, HttpRequestBase request, ProgressStatus progressStatus) {
+        return submit(request, progressStatus, () -> executeMMSRequest(project, request, (ObjectNode) null));
+    }
+
+    public static int getInFlightRequestCount() {
+        return IN_FLIGHT_REQUEST_COUNT.get();
+    }
+
+    public static int getQueuedRequestCount() {
+        return QUEUED_REQUESTS.size();
+    }
+
+    private static <T> CompletableFuture<T> submit(HttpRequestBase request, ProgressStatus progressStatus, RequestExecution<T> execution) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ScheduledFuture<?> cancelCheck = progressStatus != null ? CANCEL_CHECK_EXECUTOR.scheduleWithFixedDelay(() -> {
+            if (progressStatus.isCancel()) {
+                future.cancel(true);
+            }
+        }, CHECK_CANCEL_DELAY, CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS) : null;
+        future.whenComplete((result, throwable) -> {
+            if (cancelCheck != null) {
+                cancelCheck.cancel(false);
+            }
+            if (future.isCancelled()) {
+                request.abort();
+            }
+        });
+        QUEUED_REQUESTS.add(() -> {
+            // requests cancelled while queued are never sent
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(execution.execute());
+            } catch (Exception e) {
+                // an aborted request fails with an exception that belongs to the cancellation, not to the caller
+                if (!future.isCancelled()) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        dispatch();
+        return future;
+    }
+
+    private static void dispatch() {
+        int maxInFlight = Math.max(MDKOptionsGroup.getMDKOptions().getMmsMaxConnectionsPerRoute(), 1);
+        while (!QUEUED_REQUESTS.isEmpty()) {
+            int inFlight = IN_FLIGHT_REQUEST_COUNT.get();
+            if (inFlight >= maxInFlight) {
+                return;
+            }
+            if (!IN_FLIGHT_REQUEST_COUNT.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            Runnable queuedRequest = QUEUED_REQUESTS.poll();
+            if (queuedRequest == null) {
+                IN_FLIGHT_REQUEST_COUNT.decrementAndGet();
+                continue;
+            }
+            REQUEST_EXECUTOR.execute(() -> {
+                try {
+                    queuedRequest.run();
+                } finally {
+                    IN_FLIGHT_REQUEST_COUNT.decrementAndGet();
+                    dispatch();
+                }
+            });
+        }
+    }
+
+    private static <T> T await(HttpRequestBase request, ProgressStatus progressStatus, RequestExecution<T> execution) throws IOException, ServerException, GeneralSecurityException {
+        // requests made from a response handler run inline, as waiting on the queue could deadlock on the in-flight limit
+        if (IS_REQUEST_THREAD.get()) {
+            return execution.execute();
+        }
+        CompletableFuture<T> future = submit(request, progressStatus, execution);
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            Application.getInstance().getGUILog().log("[INFO] MMS request was manually cancelled.");
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ServerException) {
+                throw (ServerException) cause;
+            }
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static File executeMMSRequest(Project project, HttpRequestBase request, ObjectNode responseJson) throws IOException, ServerException, GeneralSecurityException {
         final File responseFile = (responseJson == null ? File.createTempFile("Response-", null) : null);
-        final AtomicReference<String> responseBody = new AtomicReference<>();
-        final AtomicReference<Integer> responseCode = new AtomicReference<>();
+        final HttpClientContext context = HttpClientContext.create();
+        String responseBody = null;
+        int responseCode;
 
         String requestSummary = "[INFO] MMS Request [" + request.getMethod() + "] " + request.getURI().toString();
         System.out.println(requestSummary);
@@ -379,93 +588,135 @@ public class MMSUtils {
             Application.getInstance().getGUILog().log(requestSummary);
         }
 
-        // create client, execute request, parse response, store in thread safe buffer to return as string later
-        // client, response, and reader are all auto closed after block
-        if (progressStatus == null) {
-            try (CloseableHttpClient httpclient = HttpClients.createDefault();
-                 CloseableHttpResponse response = httpclient.execute(request);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            // execute request with the pooled client for the server, parse response, store in buffer to return as string later
+            // response and reader are auto closed after block, which releases the connection back to the pool
+            try (HttpClientPool.Lease lease = HttpClientPool.acquire(project, request);
+                 CloseableHttpResponse response = lease.getClient().execute(request, context);
                  InputStream inputStream = response.getEntity().getContent()) {
-                responseCode.set(response.getStatusLine().getStatusCode());
-                String responseSummary = "[INFO] MMS Response [" + request.getMethod() + "]: " + responseCode.get() + " " + request.getURI().toString();
+                responseCode = response.getStatusLine().getStatusCode();
+                String responseSummary = "[INFO] MMS Response [" + request.getMethod() + "]: " + responseCode + " " + request.getURI().toString();
                 System.out.println(responseSummary);
                 if (MDUtils.isDeveloperMode()) {
                     Application.getInstance().getGUILog().log(responseSummary);
                 }
                 if (inputStream != null) {
-                    responseBody.set(generateMmsOutput(inputStream, responseFile));
+                    responseBody = generateMmsOutput(inputStream, responseFile);
                 }
             }
-        }
-        else {
-            LAST_EXCEPTION.set(null);
-            progressStatus.setIndeterminate(true);
-            Future<?> future = TaskRunner.runWithProgressStatus(() -> {
-                try (CloseableHttpClient httpclient = HttpClients.createDefault();
-                     CloseableHttpResponse response = httpclient.execute(request);
-                     InputStream inputStream = response.getEntity().getContent()) {
-                    responseCode.set(response.getStatusLine().getStatusCode());
-                    if (MDKOptionsGroup.getMDKOptions().isLogJson()) {
-                        System.out.println("[INFO] MMS Response [" + request.getMethod() + "]: " + responseCode.get() + " " + request.getURI().toString());
+            logTransfer(request, context, responseFile != null ? responseFile.length() : (responseBody != null ? responseBody.getBytes().length : 0));
+            if (responseFile == null) {
+                try (InputStream inputStream = new ByteArrayInputStream(responseBody.getBytes())) {
+                    if (!processResponse(responseCode, inputStream, project)) {
+                        throw new ServerException(responseBody, responseCode);
                     }
-                    if (inputStream != null) {
-                        responseBody.set(generateMmsOutput(inputStream, responseFile));
+                    ObjectNode json = JacksonUtils.getObjectMapper().readValue(responseBody, ObjectNode.class);
+                    Iterator<Map.Entry<String, JsonNode>> jsonFields = json.fields();
+                    while (jsonFields.hasNext()) {
+                        Map.Entry<String, JsonNode> currentField = jsonFields.next();
+                        responseJson.put(currentField.getKey(), currentField.getValue());
                     }
-                } catch (Exception e) {
-                    LAST_EXCEPTION.set(e);
-                    e.printStackTrace();
                 }
-            }, null, TaskRunner.ThreadExecutionStrategy.NONE, true);
-            try {
-                while (!future.isDone() && !future.isCancelled()) {
-                    try {
-                        future.get(CHECK_CANCEL_DELAY, TimeUnit.MILLISECONDS);
-                    } catch (ExecutionException | TimeoutException ignored) {
-
-                    } catch (InterruptedException e2) {
-                        Thread.currentThread().interrupt();
-                    }
-                    if (progressStatus.isCancel() && future.cancel(true)) {
-                        Application.getInstance().getGUILog().log("[INFO] MMS request was manually cancelled.");
-                        return null;
+            }
+            else {
+                try (InputStream inputStream = new FileInputStream(responseFile)) {
+                    if (!processResponse(responseCode, inputStream, project)) {
+                        throw new ServerException(responseFile.getAbsolutePath(), responseCode);
                     }
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
-            if (LAST_EXCEPTION.get() instanceof IOException) {
-                throw (IOException) LAST_EXCEPTION.get();
+            failed = false;
+            return responseFile;
+        } finally {
+            MMSMetrics.recordRequest(request, context, System.nanoTime() - start, failed);
+        }
+    }
+
+    private static <T> T executeMMSRequest(Project project, HttpRequestBase request, ResponseHandler<T> responseHandler) throws IOException, ServerException, GeneralSecurityException {
+        if (MDKOptionsGroup.getMDKOptions().isLogJson()) {
+            File responseFile = executeMMSRequest(project, request, (ObjectNode) null);
+            try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
+                return responseHandler.handle(jsonParser);
             }
         }
-        if (responseFile == null) {
-            try (InputStream inputStream = new ByteArrayInputStream(responseBody.get().getBytes())) {
-                if (!processResponse(responseCode.get(), inputStream, project)) {
-                    throw new ServerException(responseBody.get(), responseCode.get());
+
+        final HttpClientContext context = HttpClientContext.create();
+        String requestSummary = "[INFO] MMS Request [" + request.getMethod() + "] " + request.getURI().toString();
+        System.out.println(requestSummary);
+        if (MDUtils.isDeveloperMode()) {
+            Application.getInstance().getGUILog().log(requestSummary);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (HttpClientPool.Lease lease = HttpClientPool.acquire(project, request);
+             CloseableHttpResponse response = lease.getClient().execute(request, context)) {
+            int responseCode = response.getStatusLine().getStatusCode();
+            String responseSummary = "[INFO] MMS Response [" + request.getMethod() + "]: " + responseCode + " " + request.getURI().toString();
+            System.out.println(responseSummary);
+            if (MDUtils.isDeveloperMode()) {
+                Application.getInstance().getGUILog().log(responseSummary);
+            }
+            HttpEntity entity = response.getEntity();
+            if (responseCode != HttpURLConnection.HTTP_OK || entity == null) {
+                String responseBody = entity != null ? EntityUtils.toString(entity, Consts.UTF_8) : "";
+                logTransfer(request, context, responseBody.length());
+                try (InputStream inputStream = new ByteArrayInputStream(responseBody.getBytes(Consts.UTF_8))) {
+                    if (!processResponse(responseCode, inputStream, project)) {
+                        throw new ServerException(responseBody, responseCode);
+                    }
                 }
-                ObjectNode json = JacksonUtils.getObjectMapper().readValue(responseBody.get(), ObjectNode.class);
-                Iterator<Map.Entry<String, JsonNode>> jsonFields = json.fields();
-                while (jsonFields.hasNext()) {
-                    Map.Entry<String, JsonNode> currentField = jsonFields.next();
-                    responseJson.put(currentField.getKey(), currentField.getValue());
+                T result;
+                try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseBody.isEmpty() ? "{}" : responseBody)) {
+                    result = responseHandler.handle(jsonParser);
                 }
+                failed = false;
+                return result;
             }
-        }
-        else {
-            try (InputStream inputStream = new FileInputStream(responseFile)) {
-                if (!processResponse(responseCode.get(), inputStream, project)) {
-                    throw new ServerException(responseFile.getAbsolutePath(), responseCode.get());
-                }
+            T result;
+            long decodedBytes;
+            try (ServerMessageJsonParser jsonParser = new ServerMessageJsonParser(JacksonUtils.getJsonFactory().createParser(entity.getContent()))) {
+                result = responseHandler.handle(jsonParser);
+                jsonParser.finish();
+                decodedBytes = jsonParser.getCurrentLocation().getByteOffset();
             }
+            // drain whatever the handler did not read so that the connection can be reused
+            EntityUtils.consume(entity);
+            logTransfer(request, context, decodedBytes);
+            failed = false;
+            return result;
+        } finally {
+            MMSMetrics.recordRequest(request, context, System.nanoTime() - start, failed);
         }
-
-        return responseFile;
     }
 
-    public static File sendMMSRequest(Project project, HttpRequestBase request) throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
-        return sendMMSRequest(project, request, null, null);
+    /**
+     * Convenience method that streams each object of the response's top level array field to the consumer.
+     *
+     * @return false if the request was cancelled, true otherwise
+     * @see #sendMMSRequest(Project, HttpRequestBase, ProgressStatus, ResponseHandler)
+     */
+    public static boolean sendMMSRequest(Project project, HttpRequestBase request, ProgressStatus progressStatus, String arrayName, Consumer<ObjectNode> consumer)
+            throws IOException, ServerException, GeneralSecurityException {
+        return sendMMSRequest(project, request, progressStatus, jsonParser -> {
+            JacksonUtils.parseJsonArrayField(jsonParser, arrayName, consumer);
+            return Boolean.TRUE;
+        }) != null;
     }
 
-    public static File sendMMSRequest(Project project, HttpRequestBase request, ProgressStatus progressStatus) throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
-        return sendMMSRequest(project, request, progressStatus, null);
+    private static void logTransfer(HttpRequestBase request, HttpClientContext context, long decodedBytes) {
+        if (!MDKOptionsGroup.getMDKOptions().isLogJson()) {
+            return;
+        }
+        CountingHttpEntity requestEntity = context.getAttribute(HttpClientPool.REQUEST_ENTITY_ATTRIBUTE, CountingHttpEntity.class);
+        CountingHttpEntity responseEntity = context.getAttribute(HttpClientPool.RESPONSE_ENTITY_ATTRIBUTE, CountingHttpEntity.class);
+        NumberFormat numberFormat = NumberFormat.getInstance();
+        System.out.println("[INFO] MMS Transfer [" + request.getMethod() + "]: "
+                + numberFormat.format(requestEntity != null ? requestEntity.getByteCount() : 0) + " bytes sent, "
+                + numberFormat.format(responseEntity != null ? responseEntity.getByteCount() : 0) + " bytes received ("
+                + numberFormat.format(decodedBytes) + " decoded) " + request.getURI().toString());
     }
 
     private static String generateMmsOutput(InputStream inputStream, final File responseFile) throws IOException {
@@ -736,4 +987,56 @@ public class MMSUtils {
         return name;
     }
 
+
+    /**
+     * Reads a response body from a parser positioned before its first token.
+     */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(JsonParser jsonParser) throws IOException;
+    }
+
+    /**
+     * Logs the top level message of a streamed response while it is parsed, as {@link #processResponse(int, InputStream, Project)}
+     * does for buffered responses.
+     */
+    private static class ServerMessageJsonParser extends JsonParserDelegate {
+        private ServerMessageJsonParser(JsonParser jsonParser) {
+            super(jsonParser);
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = super.nextToken();
+            if (token != null && token.isScalarValue() && "message".equals(getCurrentName())) {
+                JsonStreamContext context = getParsingContext();
+                if (context.inObject() && context.getParent() != null && context.getParent().inRoot()) {
+                    Application.getInstance().getGUILog().log("[SERVER MESSAGE] " + getText());
+                }
+            }
+            return token;
+        }
+
+        /**
+         * Reads the top level fields the response handler left unread, skipping nested values, so that a message after
+         * them is still logged.
+         */
+        private void finish() {
+            try {
+                JsonToken token;
+                while ((token = nextToken()) != null) {
+                    if (token.isStructStart() && getParsingContext().getParent() != null && !getParsingContext().getParent().inRoot()) {
+                        skipChildren();
+                    }
+                }
+            } catch (IOException e) {
+                Application.getInstance().getGUILog().log("[WARNING] Unable to retrieve messages from server response.");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RequestExecution<T> {
+        T execute() throws IOException, ServerException, GeneralSecurityException;
+    }
 }
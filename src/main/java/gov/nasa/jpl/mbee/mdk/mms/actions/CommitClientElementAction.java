@@ -9,21 +9,16 @@ import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.Project;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
-import gov.nasa.jpl.mbee.mdk.http.ServerException;
-import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCommitter;
+import gov.nasa.jpl.mbee.mdk.util.Changelog;
 import gov.nasa.jpl.mbee.mdk.util.TaskRunner;
 import gov.nasa.jpl.mbee.mdk.validation.IRuleViolationAction;
 import gov.nasa.jpl.mbee.mdk.validation.RuleViolationAction;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
 
 import javax.annotation.CheckForNull;
 import java.awt.event.ActionEvent;
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.security.GeneralSecurityException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -118,43 +113,35 @@ public class CommitClientElementAction extends RuleViolationAction implements An
     private static void request(List<ObjectNode> elementsToUpdate, List<String> elementsToDelete, Project project) throws JsonProcessingException {
         if (elementsToUpdate != null && !elementsToUpdate.isEmpty()) {
             Application.getInstance().getGUILog().log("[INFO] Queuing request to create/update " + NumberFormat.getInstance().format(elementsToUpdate.size()) + " element" + (elementsToUpdate.size() != 1 ? "s" : "") + " on MMS.");
-            try {
-                File file = MMSUtils.createEntityFile(CommitClientElementAction.class, ContentType.APPLICATION_JSON, elementsToUpdate, MMSUtils.JsonBlobType.ELEMENT_JSON);
-                URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
-                HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.POST, requestUri, file, ContentType.APPLICATION_JSON);
-                TaskRunner.runWithProgressStatus(progressStatus -> {
-                    try {
-                        MMSUtils.sendMMSRequest(project, request, progressStatus);
-                    } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                        // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                        e.printStackTrace();
-                    }
-                }, "Element Create/Update x" + NumberFormat.getInstance().format(elementsToUpdate.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
-            } catch (IOException | URISyntaxException e) {
-                Application.getInstance().getGUILog().log("[ERROR] Unexpected failure processing request. Reason: " + e.getMessage());
-                e.printStackTrace();
-                return;
-            }
+            TaskRunner.runWithProgressStatus(progressStatus -> {
+                try {
+                    MMSElementCommitter.CommitResult result = MMSElementCommitter.postElements(project, elementsToUpdate, progressStatus);
+                    handleResult(project, result, elementsToUpdate.size(), Changelog.ChangeType.UPDATED);
+                } catch (IOException | URISyntaxException e) {
+                    Application.getInstance().getGUILog().log("[ERROR] Unexpected failure processing request. Reason: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }, "Element Create/Update x" + NumberFormat.getInstance().format(elementsToUpdate.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
         }
         if (elementsToDelete != null && !elementsToDelete.isEmpty()) {
             Application.getInstance().getGUILog().log("[INFO] Queuing request to delete " + NumberFormat.getInstance().format(elementsToDelete.size()) + " element" + (elementsToDelete.size() != 1 ? "s" : "") + " on MMS.");
-            try {
-                File file = MMSUtils.createEntityFile(CommitClientElementAction.class, ContentType.APPLICATION_JSON, elementsToDelete, MMSUtils.JsonBlobType.ELEMENT_ID);
-                URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
-                HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.DELETE, requestUri, file, ContentType.APPLICATION_JSON);
-                TaskRunner.runWithProgressStatus(progressStatus -> {
-                    try {
-                        MMSUtils.sendMMSRequest(project, request, progressStatus);
-                    } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                        // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                        e.printStackTrace();
-                    }
-                }, "Element Delete x" + NumberFormat.getInstance().format(elementsToDelete.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
-            } catch (IOException | URISyntaxException e) {
-                Application.getInstance().getGUILog().log("[ERROR] Unexpected failure processing request. Reason: " + e.getMessage());
-                e.printStackTrace();
-                return;
-            }
+            TaskRunner.runWithProgressStatus(progressStatus -> {
+                try {
+                    MMSElementCommitter.CommitResult result = MMSElementCommitter.deleteElements(project, elementsToDelete, progressStatus);
+                    handleResult(project, result, elementsToDelete.size(), Changelog.ChangeType.DELETED);
+                } catch (IOException | URISyntaxException e) {
+                    Application.getInstance().getGUILog().log("[ERROR] Unexpected failure processing request. Reason: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }, "Element Delete x" + NumberFormat.getInstance().format(elementsToDelete.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
+        }
+    }
+
+    private static void handleResult(Project project, MMSElementCommitter.CommitResult result, int size, Changelog.ChangeType changeType) {
+        if (result.isSuccessful()) {
+            return;
         }
+        MMSElementCommitter.requeueFailedElements(project, result, changeType);
+        Application.getInstance().getGUILog().log("[ERROR] Failed to commit " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " of " + NumberFormat.getInstance().format(size) + " element" + (size != 1 ? "s" : "") + " to MMS. They have been queued for the next sync." + (result.getException() != null ? " Reason: " + result.getException().getMessage() : ""));
     }
 }
@@ -5,23 +5,38 @@ import com.nomagic.magicdraw.actions.MDAction;
 import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.Project;
 import gov.nasa.jpl.mbee.mdk.MDKPlugin;
+import gov.nasa.jpl.mbee.mdk.mms.json.JsonPatchFunction;
 
 import javax.annotation.CheckForNull;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.lang.reflect.Constructor;
+import java.util.function.Supplier;
 
 public class ElementDiffAction extends MDAction {
     public static final String NAME = "Display Differences";
 
-    private final JsonNode clientElement, serverElement, patch;
+    private final JsonNode clientElement, serverElement;
+    private final Supplier<JsonNode> patchSupplier;
     private final Project project;
 
     public ElementDiffAction(JsonNode clientElement, JsonNode serverElement, JsonNode patch, Project project) {
         super(ElementDiffAction.class.getSimpleName(), NAME, null, null);
         this.clientElement = clientElement;
         this.serverElement = serverElement;
-        this.patch = patch;
+        this.patchSupplier = () -> patch;
+        this.project = project;
+    }
+
+    /**
+     * Creates the action without computing the patch. The json is copied and pre-processed, and the patch computed, only
+     * when the differences are displayed.
+     */
+    public ElementDiffAction(JsonNode clientElement, JsonNode serverElement, Project project) {
+        super(ElementDiffAction.class.getSimpleName(), NAME, null, null);
+        this.clientElement = clientElement;
+        this.serverElement = serverElement;
+        this.patchSupplier = null;
         this.project = project;
     }
 
@@ -34,7 +49,17 @@ public class ElementDiffAction extends MDAction {
         try {
             Class<?> clazz = Class.forName("gov.nasa.jpl.mbee.mdk.json.diff.ui.MDKDiffView");
             Constructor<?> constructor = clazz.getConstructor(JsonNode.class, JsonNode.class, JsonNode.class, Project.class);
-            Runnable runnable = (Runnable) constructor.newInstance(clientElement, serverElement, patch, project);
+            JsonNode client = clientElement, server = serverElement, patch;
+            if (patchSupplier != null) {
+                patch = patchSupplier.get();
+            }
+            else {
+                client = clientElement.deepCopy();
+                server = serverElement.deepCopy();
+                JsonPatchFunction.preProcess(client, server);
+                patch = JsonPatchFunction.getInstance().apply(client, server);
+            }
+            Runnable runnable = (Runnable) constructor.newInstance(client, server, patch, project);
             runnable.run();
         } catch (Exception | Error e) {
             System.err.println("[WARNING] Failed to initialize JavaFX application. JavaFX functionality is disabled.");
@@ -7,7 +7,9 @@ import com.nomagic.ui.ProgressStatusRunner;
 import com.nomagic.uml2.ext.jmi.helpers.StereotypesHelper;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import com.nomagic.uml2.ext.magicdraw.mdprofiles.Stereotype;
+import gov.nasa.jpl.mbee.mdk.generator.ViewDependencyGraph;
 import gov.nasa.jpl.mbee.mdk.generator.ViewPresentationGenerator;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.Utils;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationSuite;
 
@@ -41,6 +43,12 @@ public class GenerateAllViewsAction extends MMSAction {
             Application.getInstance().getGUILog().log("[INFO] No views found. Skipping generation.");
             return vss;
         }
+        if (MDKOptionsGroup.getMDKOptions().isIncrementalViewGenerationEnabled()) {
+            views = ViewDependencyGraph.getAffectedViews(project, views);
+            if (views == null || views.isEmpty()) {
+                return vss;
+            }
+        }
         ViewPresentationGenerator vg = new ViewPresentationGenerator(views, project, false);
         ProgressStatusRunner.runWithProgressStatus(vg, "Generating All Views", true, 0);
         vss.addAll(vg.getValidations());
@@ -7,7 +7,9 @@ import com.nomagic.uml2.ext.jmi.helpers.StereotypesHelper;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import com.nomagic.uml2.ext.magicdraw.mdprofiles.Stereotype;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.generator.ViewDependencyGraph;
 import gov.nasa.jpl.mbee.mdk.generator.ViewPresentationGenerator;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.Utils;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationSuite;
 
@@ -65,7 +67,16 @@ public class GenerateViewPresentationAction extends MMSAction {
             }
         }
 
-        ViewPresentationGenerator vg = new ViewPresentationGenerator(views, project, recurse, null, processedElements);
+        boolean generateRecursively = recurse;
+        if (recurse && MDKOptionsGroup.getMDKOptions().isIncrementalViewGenerationEnabled()) {
+            // the affected views are generated individually, as recursive generation would regenerate all of them
+            views = ViewDependencyGraph.getAffectedViews(project, ViewDependencyGraph.getViewHierarchy(views));
+            if (views == null || views.isEmpty()) {
+                return vss;
+            }
+            generateRecursively = false;
+        }
+        ViewPresentationGenerator vg = new ViewPresentationGenerator(views, project, generateRecursively, null, processedElements);
         ProgressStatusRunner.runWithProgressStatus(vg, "Generating View" + (recurse ? "s" : ""), true, 0);
         vss.addAll(vg.getValidations());
         return vss;
@@ -1,10 +1,19 @@
 package gov.nasa.jpl.mbee.mdk.mms.json;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.function.BiPredicate;
 
 /**
+ * Tests whether client and server json are equivalent, i.e. whether {@link JsonPatchFunction} would produce an empty patch
+ * for them. Instead of building the patch, the trees are walked in place and the walk stops at the first difference, so
+ * the common case of equivalent elements allocates nothing. Object fields are compared regardless of order, arrays in
+ * order and numbers by value, as in the patch, and derived keys of the server json that are missing in the client json
+ * are ignored as in {@link JsonPatchFunction#preProcess(JsonNode, JsonNode)}.
+ * <p>
  * Created by igomes on 9/28/16.
  */
 public class JsonEquivalencePredicate implements BiPredicate<JsonNode, JsonNode> {
@@ -18,8 +27,64 @@ public class JsonEquivalencePredicate implements BiPredicate<JsonNode, JsonNode>
         if (source == null || target == null) {
             return false;
         }
-        JsonNode patch = JsonPatchFunction.getInstance().apply(source, target);
-        return patch == null || patch.size() == 0;
+        if (!source.isObject() || !target.isObject()) {
+            return isEquivalent(source, target);
+        }
+        Iterator<Map.Entry<String, JsonNode>> sourceFields = source.fields();
+        while (sourceFields.hasNext()) {
+            Map.Entry<String, JsonNode> sourceField = sourceFields.next();
+            JsonNode targetValue = target.get(sourceField.getKey());
+            if (targetValue == null || !isEquivalent(sourceField.getValue(), targetValue)) {
+                return false;
+            }
+        }
+        if (target.size() == source.size()) {
+            return true;
+        }
+        Iterator<String> targetKeys = target.fieldNames();
+        while (targetKeys.hasNext()) {
+            String targetKey = targetKeys.next();
+            if (!targetKey.startsWith(MDKConstants.DERIVED_KEY_PREFIX) && !source.has(targetKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEquivalent(JsonNode source, JsonNode target) {
+        if (source == target) {
+            return true;
+        }
+        if (source.isNumber() && target.isNumber()) {
+            if (source.isIntegralNumber() && target.isIntegralNumber() && source.canConvertToLong() && target.canConvertToLong()) {
+                return source.longValue() == target.longValue();
+            }
+            return source.decimalValue().compareTo(target.decimalValue()) == 0;
+        }
+        if (source.getNodeType() != target.getNodeType() || source.size() != target.size()) {
+            return false;
+        }
+        switch (source.getNodeType()) {
+            case OBJECT:
+                Iterator<Map.Entry<String, JsonNode>> sourceFields = source.fields();
+                while (sourceFields.hasNext()) {
+                    Map.Entry<String, JsonNode> sourceField = sourceFields.next();
+                    JsonNode targetValue = target.get(sourceField.getKey());
+                    if (targetValue == null || !isEquivalent(sourceField.getValue(), targetValue)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                for (int i = 0; i < source.size(); i++) {
+                    if (!isEquivalent(source.get(i), target.get(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return source.equals(target);
+        }
     }
 
     public static JsonEquivalencePredicate getInstance() {
@@ -20,8 +20,12 @@ public class JsonPatchFunction implements BiFunction<JsonNode, JsonNode, JsonNod
         if (client == null && server == null) {
             return null;
         }
-        client = client != null ? client.deepCopy() : JacksonUtils.getObjectMapper().createObjectNode();
-        server = server != null ? server.deepCopy() : JacksonUtils.getObjectMapper().createObjectNode();
+        if (JsonEquivalencePredicate.getInstance().test(client, server)) {
+            return JacksonUtils.getObjectMapper().createArrayNode();
+        }
+        // JsonDiff does not modify its inputs, so only the server object needs a shallow copy for preProcess to strip
+        client = client != null ? client : JacksonUtils.getObjectMapper().createObjectNode();
+        server = server != null ? (server.isObject() ? JacksonUtils.getObjectMapper().createObjectNode().setAll((ObjectNode) server) : server) : JacksonUtils.getObjectMapper().createObjectNode();
         preProcess(client, server);
         return JsonDiff.asJson(client, server);
     }
@@ -7,28 +7,83 @@ import com.nomagic.magicdraw.core.ProjectUtilities;
 import com.nomagic.magicdraw.core.SaveParticipant;
 import com.nomagic.magicdraw.core.project.ProjectDescriptor;
 import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
+import com.nomagic.magicdraw.openapi.uml.SessionManager;
+import com.nomagic.task.ProgressStatus;
 import com.nomagic.ui.ProgressStatusRunner;
 import com.nomagic.uml2.ext.jmi.helpers.StereotypesHelper;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.http.ServerException;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCache;
 import gov.nasa.jpl.mbee.mdk.mms.actions.MMSLoginAction;
 import gov.nasa.jpl.mbee.mdk.mms.sync.delta.DeltaSyncRunner;
+import gov.nasa.jpl.mbee.mdk.mms.sync.delta.SyncElement;
+import gov.nasa.jpl.mbee.mdk.mms.sync.delta.SyncElements;
+import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaProjectEventListenerAdapter;
+import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaTransactionCommitListener;
+import gov.nasa.jpl.mbee.mdk.mms.sync.mms.MMSDeltaProjectEventListenerAdapter;
 import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import gov.nasa.jpl.mbee.mdk.util.Changelog;
+import gov.nasa.jpl.mbee.mdk.util.TaskRunner;
 import gov.nasa.jpl.mbee.mdk.util.TicketUtils;
 
 import javax.annotation.CheckForNull;
-import java.util.Collections;
-import java.util.Map;
-import java.util.WeakHashMap;
+import javax.swing.*;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by igomes on 6/22/16.
+ * <p>
+ * Between saves, the changes that Coordinated Sync will process are staged in the background at the interval set in
+ * {@link MDKOptionsGroup#getCoordinatedSyncStagingInterval()}. The elements changed on MMS are fetched into the
+ * {@link MMSElementCache} and the elements changed locally are exported into the export cache, so that the sync run
+ * on save only has to fetch and export what changed since the last staging pass.
  */
 public class CoordinatedSyncProjectEventListenerAdapter extends ProjectEventListenerAdapter implements SaveParticipant {
+    private static final int EXPORT_BATCH_SIZE = 100;
     private static final Map<Project, CoordinatedSyncProjectMapping> projectMappings = Collections.synchronizedMap(new WeakHashMap<>());
     private DeltaSyncRunner deltaSyncRunner;
 
+    @Override
+    public void projectOpened(Project project) {
+        int interval = MDKOptionsGroup.getMDKOptions().getCoordinatedSyncStagingInterval();
+        if (!project.isRemote() || interval <= 0) {
+            return;
+        }
+        CoordinatedSyncProjectMapping coordinatedSyncProjectMapping = getProjectMapping(project);
+        coordinatedSyncProjectMapping.cancelStaging();
+        coordinatedSyncProjectMapping.setStagingFuture(TaskRunner.scheduleWithProgressStatus(progressStatus -> {
+                    try {
+                        stage(project, progressStatus);
+                    } finally {
+                        coordinatedSyncProjectMapping.setStagingQueued(false);
+                    }
+                }, "Coordinated Sync Staging", false, TaskRunner.ThreadExecutionStrategy.SINGLE, true,
+                // a pass is only queued once the previous one is done, so that passes do not pile up behind other tasks
+                (r, ses) -> ses.scheduleWithFixedDelay(() -> {
+                    if (coordinatedSyncProjectMapping.setStagingQueued(true)) {
+                        r.run();
+                    }
+                }, interval, interval, TimeUnit.MINUTES)));
+    }
+
+    @Override
+    public void projectCreated(Project project) {
+        projectOpened(project);
+    }
+
     @Override
     public void projectClosed(Project project) {
-        projectMappings.remove(project);
+        CoordinatedSyncProjectMapping coordinatedSyncProjectMapping = projectMappings.remove(project);
+        if (coordinatedSyncProjectMapping != null) {
+            coordinatedSyncProjectMapping.cancelStaging();
+        }
     }
 
     @Override
@@ -51,8 +106,104 @@ public class CoordinatedSyncProjectEventListenerAdapter extends ProjectEventList
             // skip csync
             return;
         }
+        CoordinatedSyncProjectMapping coordinatedSyncProjectMapping = getProjectMapping(project);
+        // a running staging pass would otherwise hold the element cache until its fetch is done
+        coordinatedSyncProjectMapping.setSaving(true);
         deltaSyncRunner = new DeltaSyncRunner(true, true, true);
-        ProgressStatusRunner.runWithProgressStatus(deltaSyncRunner, "Coordinated Sync", true, 0);
+        long start = System.currentTimeMillis();
+        try {
+            ProgressStatusRunner.runWithProgressStatus(deltaSyncRunner, "Coordinated Sync", true, 0);
+        } finally {
+            coordinatedSyncProjectMapping.setSaving(false);
+        }
+        coordinatedSyncProjectMapping.addSaveSyncTime(System.currentTimeMillis() - start);
+        System.out.println("[INFO] " + project.getName() + " - " + coordinatedSyncProjectMapping);
+    }
+
+    /**
+     * Fetches the elements changed on MMS and exports the elements changed locally, so that they are cached when
+     * Coordinated Sync runs on save. Nothing is written to the model or sent to MMS. The pass is skipped while the
+     * element cache is in use, and is cancelled through its progress status when a save starts.
+     */
+    public static void stage(Project project, ProgressStatus progressStatus) {
+        CoordinatedSyncProjectMapping coordinatedSyncProjectMapping = getProjectMapping(project);
+        if (!project.isRemote() || project.isClosing() || project.isProjectClosed()
+                || !StereotypesHelper.hasStereotype(project.getPrimaryModel(), "ModelManagementSystem")
+                || coordinatedSyncProjectMapping.isDisabled()
+                || !TicketUtils.isTicketSet(project)
+                || !coordinatedSyncProjectMapping.startStagingPass(progressStatus)) {
+            return;
+        }
+        try {
+            stage(project, progressStatus, coordinatedSyncProjectMapping);
+        } finally {
+            coordinatedSyncProjectMapping.endStagingPass(progressStatus);
+        }
+    }
+
+    private static void stage(Project project, ProgressStatus progressStatus, CoordinatedSyncProjectMapping coordinatedSyncProjectMapping) {
+        long start = System.currentTimeMillis();
+        int fetchedCount = 0, exportedCount = 0;
+
+        MMSDeltaProjectEventListenerAdapter.MMSDeltaProjectMapping mmsDeltaProjectMapping = MMSDeltaProjectEventListenerAdapter.getProjectMapping(project);
+        try {
+            if (!mmsDeltaProjectMapping.update()) {
+                return;
+            }
+            if (MDKOptionsGroup.getMDKOptions().isMmsElementCacheEnabled()) {
+                Changelog<String, Void> mmsChangelog = SyncElements.buildChangelog(project, SyncElement.Type.MMS).addAll(mmsDeltaProjectMapping.getInMemoryChangelog());
+                Set<String> elementIds = new LinkedHashSet<>(mmsChangelog.get(Changelog.ChangeType.CREATED).keySet());
+                elementIds.addAll(mmsChangelog.get(Changelog.ChangeType.UPDATED).keySet());
+                if (!elementIds.isEmpty()) {
+                    int[] count = new int[1];
+                    try (MMSElementCache elementCache = MMSElementCache.tryOpen(project, progressStatus)) {
+                        if (elementCache == null || !elementCache.getElements(elementIds, progressStatus, objectNode -> count[0]++)) {
+                            return;
+                        }
+                    }
+                    fetchedCount = count[0];
+                }
+            }
+        } catch (URISyntaxException | IOException | ServerException | GeneralSecurityException | IllegalStateException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        LocalDeltaTransactionCommitListener listener = LocalDeltaProjectEventListenerAdapter.getProjectMapping(project).getLocalDeltaTransactionCommitListener();
+        if (listener != null && MDKOptionsGroup.getMDKOptions().getExportCacheSize() > 0) {
+            Changelog<String, Element> localChangelog = new Changelog<String, Element>(false).addAll(SyncElements.buildChangelog(project, SyncElement.Type.LOCAL), (key, value) -> Converters.getIdToElementConverter().apply(key, project)).addAll(listener.getInMemoryLocalChangelog());
+            List<Element> elements = new ArrayList<>(localChangelog.get(Changelog.ChangeType.CREATED).values());
+            elements.addAll(localChangelog.get(Changelog.ChangeType.UPDATED).values());
+            int[] count = new int[1];
+            for (int i = 0; i < elements.size(); i += EXPORT_BATCH_SIZE) {
+                if (progressStatus.isCancel() || project.isClosing()) {
+                    return;
+                }
+                List<Element> batch = elements.subList(i, Math.min(i + EXPORT_BATCH_SIZE, elements.size()));
+                // exported on the event dispatch thread, where the sessions of user edits are opened and closed, so that
+                // no json is read, and cached, from the middle of a session that may still be cancelled
+                try {
+                    SwingUtilities.invokeAndWait(() -> {
+                        if (SessionManager.getInstance().isSessionCreated(project)) {
+                            return;
+                        }
+                        for (Element element : batch) {
+                            if (element != null && !project.isDisposed(element) && Converters.getElementToJsonConverter().apply(element, project) != null) {
+                                count[0]++;
+                            }
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+            exportedCount = count[0];
+        }
+        coordinatedSyncProjectMapping.setLastStaging(System.currentTimeMillis() - start, fetchedCount, exportedCount);
     }
 
     @Override
@@ -113,6 +264,13 @@ public class CoordinatedSyncProjectEventListenerAdapter extends ProjectEventList
 
     public static class CoordinatedSyncProjectMapping {
         private boolean disabled;
+        private ScheduledFuture<?> stagingFuture;
+        private boolean stagingQueued, saving;
+        private ProgressStatus stagingProgressStatus;
+
+        private long lastStagingTime, lastStagingDuration;
+        private int lastStagingFetchedCount, lastStagingExportedCount;
+        private long saveSyncCount, lastSaveSyncTime, totalSaveSyncTime, maxSaveSyncTime;
 
         public synchronized boolean isDisabled() {
             return (disabled || !MDKOptionsGroup.getMDKOptions().isCoordinatedSyncEnabled());
@@ -121,5 +279,114 @@ public class CoordinatedSyncProjectEventListenerAdapter extends ProjectEventList
         public synchronized void setDisabled(boolean disabled) {
             this.disabled = disabled;
         }
+
+        synchronized void setStagingFuture(ScheduledFuture<?> stagingFuture) {
+            this.stagingFuture = stagingFuture;
+        }
+
+        synchronized void cancelStaging() {
+            if (stagingFuture != null) {
+                stagingFuture.cancel(true);
+                stagingFuture = null;
+            }
+            cancelStagingPass();
+        }
+
+        /**
+         * @return false if a staging pass was already queued or running when queueing one
+         */
+        synchronized boolean setStagingQueued(boolean stagingQueued) {
+            if (stagingQueued && this.stagingQueued) {
+                return false;
+            }
+            this.stagingQueued = stagingQueued;
+            return true;
+        }
+
+        synchronized void setSaving(boolean saving) {
+            this.saving = saving;
+            if (saving) {
+                cancelStagingPass();
+            }
+        }
+
+        synchronized boolean startStagingPass(ProgressStatus progressStatus) {
+            if (saving || stagingFuture == null) {
+                return false;
+            }
+            stagingProgressStatus = progressStatus;
+            return true;
+        }
+
+        synchronized void endStagingPass(ProgressStatus progressStatus) {
+            if (stagingProgressStatus == progressStatus) {
+                stagingProgressStatus = null;
+            }
+        }
+
+        private void cancelStagingPass() {
+            if (stagingProgressStatus != null) {
+                stagingProgressStatus.setCancel(true);
+                stagingProgressStatus = null;
+            }
+        }
+
+        synchronized void setLastStaging(long duration, int fetchedCount, int exportedCount) {
+            lastStagingTime = System.currentTimeMillis();
+            lastStagingDuration = duration;
+            lastStagingFetchedCount = fetchedCount;
+            lastStagingExportedCount = exportedCount;
+        }
+
+        synchronized void addSaveSyncTime(long time) {
+            saveSyncCount++;
+            lastSaveSyncTime = time;
+            totalSaveSyncTime += time;
+            maxSaveSyncTime = Math.max(maxSaveSyncTime, time);
+        }
+
+        /**
+         * @return time the last staging pass completed at, or 0 if none has
+         */
+        public synchronized long getLastStagingTime() {
+            return lastStagingTime;
+        }
+
+        public synchronized long getLastStagingDuration() {
+            return lastStagingDuration;
+        }
+
+        public synchronized int getLastStagingFetchedCount() {
+            return lastStagingFetchedCount;
+        }
+
+        public synchronized int getLastStagingExportedCount() {
+            return lastStagingExportedCount;
+        }
+
+        public synchronized long getSaveSyncCount() {
+            return saveSyncCount;
+        }
+
+        /**
+         * @return time in ms that the user waited on Coordinated Sync during the last save
+         */
+        public synchronized long getLastSaveSyncTime() {
+            return lastSaveSyncTime;
+        }
+
+        public synchronized long getAverageSaveSyncTime() {
+            return saveSyncCount > 0 ? totalSaveSyncTime / saveSyncCount : 0;
+        }
+
+        public synchronized long getMaxSaveSyncTime() {
+            return maxSaveSyncTime;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Coordinated Sync on save: " + lastSaveSyncTime + " ms, " + getAverageSaveSyncTime() + " ms average and " + maxSaveSyncTime + " ms max over " + saveSyncCount + " save" + (saveSyncCount != 1 ? "s" : "")
+                    + (lastStagingTime > 0 ? "; last staging " + ((System.currentTimeMillis() - lastStagingTime) / 1000) + " s before took " + lastStagingDuration + " ms, fetching " + lastStagingFetchedCount + " and exporting " + lastStagingExportedCount + " element" + (lastStagingExportedCount != 1 ? "s" : "") : "; not staged");
+        }
     }
 }
@@ -1,11 +1,9 @@
 package gov.nasa.jpl.mbee.mdk.mms.sync.delta;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.nomagic.magicdraw.core.Project;
 import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
 import com.nomagic.magicdraw.openapi.uml.SessionManager;
 import com.nomagic.uml2.ext.jmi.helpers.StereotypesHelper;
-import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
 import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaProjectEventListenerAdapter;
 import gov.nasa.jpl.mbee.mdk.mms.sync.local.LocalDeltaTransactionCommitListener;
 import gov.nasa.jpl.mbee.mdk.mms.sync.mms.MMSDeltaProjectEventListenerAdapter;
@@ -21,15 +19,12 @@ public class DeltaSyncProjectEventListenerAdapter extends ProjectEventListenerAd
 
     static {
         CHANGELOG_FUNCTIONS.put(SyncElement.Type.LOCAL, project -> {
-            Changelog<String, Void> combinedPersistedChangelog = new Changelog<>();
-            for (SyncElement syncElement : SyncElements.getAllByType(project, SyncElement.Type.LOCAL)) {
-                combinedPersistedChangelog = combinedPersistedChangelog.and(SyncElements.buildChangelog(syncElement));
-            }
+            Changelog<String, Void> combinedPersistedChangelog = SyncElements.buildChangelog(project, SyncElement.Type.LOCAL);
             LocalDeltaTransactionCommitListener localDeltaTransactionCommitListener = LocalDeltaProjectEventListenerAdapter.getProjectMapping(project).getLocalDeltaTransactionCommitListener();
             if (localDeltaTransactionCommitListener == null) {
                 return combinedPersistedChangelog;
             }
-            return combinedPersistedChangelog.and(localDeltaTransactionCommitListener.getInMemoryLocalChangelog(), (key, element) -> null);
+            return combinedPersistedChangelog.addAll(localDeltaTransactionCommitListener.getInMemoryLocalChangelog(), (key, element) -> null);
         });
         /*
         CHANGELOG_FUNCTIONS.put(SyncElement.Type.MMS, project -> {
@@ -66,11 +61,7 @@ public class DeltaSyncProjectEventListenerAdapter extends ProjectEventListenerAd
         }
         for (Map.Entry<SyncElement.Type, Function<Project, Changelog<String, ?>>> entry : CHANGELOG_FUNCTIONS.entrySet()) {
             Changelog<String, ?> changelog = entry.getValue().apply(project);
-            try {
-                SyncElements.setByType(project, entry.getKey(), JacksonUtils.getObjectMapper().writeValueAsString(SyncElements.buildJson(changelog)));
-            } catch (JsonProcessingException e) {
-                e.printStackTrace();
-            }
+            SyncElements.setChangelogByType(project, entry.getKey(), changelog);
         }
         if (SessionManager.getInstance().isSessionCreated(project)) {
             SessionManager.getInstance().closeSession();
@@ -1,6 +1,5 @@
 package gov.nasa.jpl.mbee.mdk.mms.sync.delta;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -18,6 +17,8 @@ import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCommitter;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCache;
 import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.MMSLoginAction;
 import gov.nasa.jpl.mbee.mdk.mms.actions.UpdateClientElementAction;
@@ -29,11 +30,7 @@ import gov.nasa.jpl.mbee.mdk.mms.validation.ElementValidator;
 import gov.nasa.jpl.mbee.mdk.mms.validation.ProjectValidator;
 import gov.nasa.jpl.mbee.mdk.util.*;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationSuite;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.ContentType;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
@@ -123,12 +120,8 @@ public class DeltaSyncRunner implements RunnableWithProgress {
 
         // BUILD COMPLETE LOCAL CHANGELOG
 
-        Changelog<String, Element> persistedLocalChangelog = new Changelog<>();
-        Collection<SyncElement> persistedLocalSyncElements = SyncElements.getAllByType(project, SyncElement.Type.LOCAL);
-        for (SyncElement syncElement : persistedLocalSyncElements) {
-            persistedLocalChangelog = persistedLocalChangelog.and(SyncElements.buildChangelog(syncElement), (key, value) -> Converters.getIdToElementConverter().apply(key, project));
-        }
-        Changelog<String, Element> localChangelog = persistedLocalChangelog.and(listener.getInMemoryLocalChangelog());
+        Changelog<String, Element> persistedLocalChangelog = new Changelog<String, Element>(false).addAll(SyncElements.buildChangelog(project, SyncElement.Type.LOCAL), (key, value) -> Converters.getIdToElementConverter().apply(key, project));
+        Changelog<String, Element> localChangelog = persistedLocalChangelog.addAll(listener.getInMemoryLocalChangelog());
 
         // HANDLE CASE WHERE VALUE SPECIFICATION IS DIRTIED EXTERNALLY
         // Workaround: Dirty all referencing elements as ValueSpecifications aren't given their own identity
@@ -155,12 +148,8 @@ public class DeltaSyncRunner implements RunnableWithProgress {
 
         // BUILD COMPLETE MMS CHANGELOG
 
-        Changelog<String, Void> persistedMmsChangelog = new Changelog<>();
-        Collection<SyncElement> persistedMmsSyncElements = SyncElements.getAllByType(project, SyncElement.Type.MMS);
-        for (SyncElement syncElement : persistedMmsSyncElements) {
-            persistedMmsChangelog = persistedMmsChangelog.and(SyncElements.buildChangelog(syncElement));
-        }
-        Changelog<String, Void> mmsChangelog = persistedMmsChangelog.and(MMSDeltaProjectEventListenerAdapter.getProjectMapping(project).getInMemoryChangelog(), (key, objectNode) -> null);
+        Changelog<String, Void> persistedMmsChangelog = SyncElements.buildChangelog(project, SyncElement.Type.MMS);
+        Changelog<String, Void> mmsChangelog = persistedMmsChangelog.addAll(MMSDeltaProjectEventListenerAdapter.getProjectMapping(project).getInMemoryChangelog(), (key, objectNode) -> null);
 
         Map<String, Void> mmsCreated = mmsChangelog.get(Changelog.ChangeType.CREATED),
                 mmsUpdated = mmsChangelog.get(Changelog.ChangeType.UPDATED),
@@ -179,18 +168,21 @@ public class DeltaSyncRunner implements RunnableWithProgress {
 
         if (!elementIdsToGet.isEmpty()) {
             progressStatus.setDescription("Getting " + elementIdsToGet.size() + " added/changed element" + (elementIdsToGet.size() != 1 ? "s" : "") + " from MMS");
-            File responseFile;
-            ObjectNode response;
-            try {
-                responseFile = MMSUtils.getElements(project, elementIdsToGet, progressStatus);
-                try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                    response = JacksonUtils.parseJsonObject(jsonParser);
+            try (MMSElementCache elementCache = MMSElementCache.open(project, progressStatus)) {
+                if (elementCache != null) {
+                    elementCache.getElements(elementIdsToGet, progressStatus, jsonNode -> {
+                        JsonNode idJsonNode = jsonNode.get(MDKConstants.ID_KEY);
+                        if (idJsonNode != null && idJsonNode.isTextual()) {
+                            mmsJsons.put(idJsonNode.asText(), jsonNode);
+                        }
+                    });
                 }
             } catch (IOException | URISyntaxException | ServerException | GeneralSecurityException e) {
                 if (progressStatus.isCancel()) {
                     Application.getInstance().getGUILog().log("[INFO] Sync manually cancelled. All changes will be re-attempted in the next sync.");
                     return;
                 }
+                MMSUtils.getLastException().set(e);
                 Application.getInstance().getGUILog().log("[ERROR] Cannot get elements from MMS. Skipping sync. All changes will be re-attempted in the next sync. Reason: " + e.getMessage());
                 e.printStackTrace();
                 return;
@@ -200,22 +192,6 @@ public class DeltaSyncRunner implements RunnableWithProgress {
                 Application.getInstance().getGUILog().log("[INFO] Sync manually cancelled. All changes will be attempted at next update.");
                 return;
             }
-
-            if (response == null) {
-                Application.getInstance().getGUILog().log("[ERROR] Cannot get elements from MMS server. Skipping sync. All changes will be re-attempted in the next sync.");
-                return;
-            }
-            JsonNode elementsArrayNode = response.get("elements");
-            if (elementsArrayNode == null || !elementsArrayNode.isArray()) {
-                elementsArrayNode = JacksonUtils.getObjectMapper().createArrayNode();
-            }
-            for (JsonNode jsonNode : elementsArrayNode) {
-                if (!jsonNode.isObject()) {
-                    continue;
-                }
-                String webId = jsonNode.get(MDKConstants.ID_KEY).asText();
-                mmsJsons.put(webId, (ObjectNode) jsonNode);
-            }
         }
 
         // NEW CONFLICT DETECTION
@@ -318,20 +294,19 @@ public class DeltaSyncRunner implements RunnableWithProgress {
                 }
             }
             if (!postElements.isEmpty()) {
-                URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
                 try {
-                    File file = MMSUtils.createEntityFile(this.getClass(), ContentType.APPLICATION_JSON, postElements, MMSUtils.JsonBlobType.ELEMENT_JSON);
-
-                    HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.POST, requestUri, file, ContentType.APPLICATION_JSON);
-                    TaskRunner.runWithProgressStatus(progressStatus1 -> {
-                        try {
-                            MMSUtils.sendMMSRequest(project, request, progressStatus1);
-                        } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                            // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                            e.printStackTrace();
+                    MMSElementCommitter.CommitResult result = MMSElementCommitter.postElements(project, postElements, progressStatus);
+                    for (String id : result.getFailedIds()) {
+                        failedLocalChangelog.addChange(id, localElementsToPost.get(id), localCreated.containsKey(id) ? Changelog.ChangeType.CREATED : Changelog.ChangeType.UPDATED);
+                    }
+                    if (!result.isSuccessful() && !result.isCancelled()) {
+                        if (result.getException() != null) {
+                            MMSUtils.getLastException().set(result.getException());
                         }
-                    }, "Sync Create/Update x" + NumberFormat.getInstance().format(postElements.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
+                        Application.getInstance().getGUILog().log("[ERROR] Failed to commit " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " of " + NumberFormat.getInstance().format(postElements.size()) + " created/updated element" + (postElements.size() != 1 ? "s" : "") + " to MMS. They will be re-attempted in the next sync." + (result.getException() != null ? " Reason: " + result.getException().getMessage() : ""));
+                    }
                 } catch (IOException | URISyntaxException e) {
+                    MMSUtils.getLastException().set(e);
                     Application.getInstance().getGUILog().log("[ERROR] An error occurred. Skipping sync. All changes will be re-attempted in the next sync. Reason: " + e.getMessage());
                     e.printStackTrace();
                     return;
@@ -345,19 +320,19 @@ public class DeltaSyncRunner implements RunnableWithProgress {
 
         if (shouldCommit && shouldCommitDeletes && !deleteElements.isEmpty()) {
             progressStatus.setDescription("Committing deletions to MMS");
-            URIBuilder requestUri = MMSUtils.getServiceProjectsRefsElementsUri(project);
             try {
-                File file = MMSUtils.createEntityFile(this.getClass(), ContentType.APPLICATION_JSON, deleteElements, MMSUtils.JsonBlobType.ELEMENT_ID);
-                HttpRequestBase request = MMSUtils.buildRequest(MMSUtils.HttpRequestType.DELETE, requestUri, file, ContentType.APPLICATION_JSON);
-                TaskRunner.runWithProgressStatus(progressStatus1 -> {
-                    try {
-                        MMSUtils.sendMMSRequest(project, request, progressStatus1);
-                    } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
-                        // TODO Implement error handling that was previously not possible due to OutputQueue implementation
-                        e.printStackTrace();
+                MMSElementCommitter.CommitResult result = MMSElementCommitter.deleteElements(project, deleteElements, progressStatus);
+                for (String id : result.getFailedIds()) {
+                    failedLocalChangelog.addChange(id, null, Changelog.ChangeType.DELETED);
+                }
+                if (!result.isSuccessful() && !result.isCancelled()) {
+                    if (result.getException() != null) {
+                        MMSUtils.getLastException().set(result.getException());
                     }
-                }, "Sync Delete x" + NumberFormat.getInstance().format(deleteElements.size()), true, TaskRunner.ThreadExecutionStrategy.SINGLE);
+                    Application.getInstance().getGUILog().log("[ERROR] Failed to commit " + NumberFormat.getInstance().format(result.getFailedIds().size()) + " of " + NumberFormat.getInstance().format(deleteElements.size()) + " deletion" + (deleteElements.size() != 1 ? "s" : "") + " to MMS. They will be re-attempted in the next sync." + (result.getException() != null ? " Reason: " + result.getException().getMessage() : ""));
+                }
             } catch (IOException | URISyntaxException e) {
+                MMSUtils.getLastException().set(e);
                 Application.getInstance().getGUILog().log("[ERROR] An error occurred. Skipping sync. All changes will be re-attempted in the next sync. Reason: " + e.getMessage());
                 e.printStackTrace();
                 return;
@@ -388,7 +363,7 @@ public class DeltaSyncRunner implements RunnableWithProgress {
             updateClientElementAction.setElementsToDelete(mmsElementsToDeleteLocally.values().stream().map(Converters.getElementToIdConverter()).filter(Objects::nonNull).filter(id -> !id.isEmpty()).collect(Collectors.toList()));
             updateClientElementAction.run(progressStatus);
 
-            failedMmsChangelog = failedMmsChangelog.and(updateClientElementAction.getFailedChangelog(), (id, objectNode) -> null);
+            failedMmsChangelog.addAll(updateClientElementAction.getFailedChangelog(), (id, objectNode) -> null);
             successfulMmsChangelog = updateClientElementAction.getSuccessfulChangelog();
             listener.setDisabled(false);
         }
@@ -464,9 +439,9 @@ public class DeltaSyncRunner implements RunnableWithProgress {
         MMSDeltaProjectEventListenerAdapter.getProjectMapping(project).getInMemoryChangelog().clear();
         MMSDeltaProjectEventListenerAdapter.getProjectMapping(project).getInMemoryCommits().clear();
 
-        Changelog<String, Void> unprocessedLocalChangelog = new Changelog<>();
+        Changelog<String, Void> unprocessedLocalChangelog = new Changelog<>(false);
         if (!shouldCommit) {
-            unprocessedLocalChangelog = unprocessedLocalChangelog.and(localChangelog, (s, element) -> null);
+            unprocessedLocalChangelog.addAll(localChangelog, (s, element) -> null);
         }
         if (shouldCommit && !shouldCommitDeletes) {
             Map<String, Void> unprocessedLocalDeletedChanges = unprocessedLocalChangelog.get(Changelog.ChangeType.DELETED);
@@ -474,23 +449,15 @@ public class DeltaSyncRunner implements RunnableWithProgress {
                 unprocessedLocalDeletedChanges.put(key, null);
             }
         }
-        unprocessedLocalChangelog = unprocessedLocalChangelog.and(failedLocalChangelog, (s, element) -> null);
-        try {
-            SyncElements.setByType(project, SyncElement.Type.LOCAL, JacksonUtils.getObjectMapper().writeValueAsString(SyncElements.buildJson(unprocessedLocalChangelog)));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
+        unprocessedLocalChangelog.addAll(failedLocalChangelog, (s, element) -> null);
+        SyncElements.setChangelogByType(project, SyncElement.Type.LOCAL, unprocessedLocalChangelog);
 
-        Changelog<String, Void> unprocessedMmsChangelog = new Changelog<>();
+        Changelog<String, Void> unprocessedMmsChangelog = new Changelog<>(false);
         if (!shouldUpdate) {
-            unprocessedMmsChangelog = unprocessedMmsChangelog.and(mmsChangelog);
-        }
-        unprocessedMmsChangelog = unprocessedMmsChangelog.and(failedMmsChangelog);
-        try {
-            SyncElements.setByType(project, SyncElement.Type.MMS, JacksonUtils.getObjectMapper().writeValueAsString(SyncElements.buildJson(unprocessedMmsChangelog)));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+            unprocessedMmsChangelog.addAll(mmsChangelog);
         }
+        unprocessedMmsChangelog.addAll(failedMmsChangelog);
+        SyncElements.setChangelogByType(project, SyncElement.Type.MMS, unprocessedMmsChangelog);
 
         SessionManager.getInstance().closeSession();
         listener.setDisabled(false);
@@ -1,5 +1,6 @@
 package gov.nasa.jpl.mbee.mdk.mms.sync.delta;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -12,6 +13,7 @@ import com.nomagic.uml2.ext.jmi.helpers.ModelHelper;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Element;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.InstanceSpecification;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.LiteralString;
+import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.NamedElement;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Package;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
@@ -21,8 +23,7 @@ import gov.nasa.jpl.mbee.mdk.util.Changelog;
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +32,9 @@ import java.util.stream.Collectors;
 
 public class SyncElements {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH.mm.ss.SSSZ");
+    private static final int TARGET_SEGMENT_SIZE = 2048;
+    private static final int MAX_SEGMENT_SIZE = 8192;
+    private static final Map<Project, Map<SyncElement.Type, PersistedCounts>> PERSISTED_COUNTS = Collections.synchronizedMap(new WeakHashMap<>());
 
     private static String getSyncPackageID(Project project) {
         return Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()) + MDKConstants.SYNC_SYSML_ID_SUFFIX;
@@ -51,18 +55,75 @@ public class SyncElements {
     }
 
     public static SyncElement setByType(Project project, SyncElement.Type type, String comment) {
-        getAllByType(project, type).stream().map(SyncElement::getElement).forEach(element -> {
-            try {
-                Command command = RemoveCommandCreator.getCommand(element);
-                command.execute();
-                MacroCommand macroCommand = CommandHistory.getCommandForAppend(element);
-                macroCommand.add(command);
-            } catch (RuntimeException e) {
-                System.out.println("Unable to delete sync element: " + element.getName());
-                e.printStackTrace();
+        invalidatePersistedCounts(project, type);
+        getAllByType(project, type).stream().map(SyncElement::getElement).forEach(SyncElements::remove);
+        return create(project, type, type.toString().toLowerCase() + "_" + ZonedDateTime.now().format(DATE_TIME_FORMATTER), comment);
+    }
+
+    /**
+     * Persists the changelog as segments of at most {@value #MAX_SEGMENT_SIZE} ids. Ids are sorted within each segment, and
+     * segment boundaries are derived from the ids themselves, so that a change to the changelog only rewrites the segments
+     * containing the changed ids. Sync elements whose content is unchanged are kept as they are. Each segment is written in
+     * the same format as a single changelog, and all sync elements of a type are merged when read, so projects shared with
+     * older MDK versions remain readable by them.
+     */
+    public static void setChangelogByType(Project project, SyncElement.Type type, Changelog<String, ?> changelog) {
+        long start = System.currentTimeMillis();
+        invalidatePersistedCounts(project, type);
+        List<String> segments = buildSegments(changelog);
+        Map<String, Integer> unwrittenSegments = new HashMap<>(segments.size());
+        segments.forEach(segment -> unwrittenSegments.merge(segment, 1, Integer::sum));
+
+        int removedCount = 0;
+        for (SyncElement syncElement : getAllByType(project, type)) {
+            String value = getValue(syncElement);
+            if (value != null && unwrittenSegments.containsKey(value)) {
+                unwrittenSegments.computeIfPresent(value, (segment, count) -> count > 1 ? count - 1 : null);
+                continue;
             }
-        });
+            remove(syncElement.getElement());
+            removedCount++;
+        }
+        String name = type.toString().toLowerCase() + "_" + ZonedDateTime.now().format(DATE_TIME_FORMATTER);
+        int writtenCount = 0;
+        long writtenBytes = 0;
+        for (Map.Entry<String, Integer> entry : unwrittenSegments.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                create(project, type, name + "_" + writtenCount++, entry.getKey());
+                writtenBytes += entry.getKey().length();
+            }
+        }
+        System.out.println("[INFO] Persisted " + type.name().toLowerCase() + " changelog of " + changelog.flattenedSize() + " change" + (changelog.flattenedSize() != 1 ? "s" : "") + " in " + segments.size() + " segment" + (segments.size() != 1 ? "s" : "")
+                + ": " + (segments.size() - writtenCount) + " unchanged, " + writtenCount + " written (" + writtenBytes + " characters), " + removedCount + " removed in " + (System.currentTimeMillis() - start) + " ms.");
+    }
 
+    /**
+     * Reads the persisted changelog from all sync elements of the type.
+     */
+    public static Changelog<String, Void> buildChangelog(Project project, SyncElement.Type type) {
+        long start = System.currentTimeMillis();
+        Changelog<String, Void> changelog = new Changelog<>(false);
+        Collection<SyncElement> syncElements = getAllByType(project, type);
+        for (SyncElement syncElement : syncElements) {
+            buildChangelog(changelog, syncElement);
+        }
+        System.out.println("[INFO] Loaded " + type.name().toLowerCase() + " changelog of " + changelog.flattenedSize() + " change" + (changelog.flattenedSize() != 1 ? "s" : "") + " from " + syncElements.size() + " sync element" + (syncElements.size() != 1 ? "s" : "") + " in " + (System.currentTimeMillis() - start) + " ms.");
+        return changelog;
+    }
+
+    private static void remove(Element element) {
+        try {
+            Command command = RemoveCommandCreator.getCommand(element);
+            command.execute();
+            MacroCommand macroCommand = CommandHistory.getCommandForAppend(element);
+            macroCommand.add(command);
+        } catch (RuntimeException e) {
+            System.out.println("Unable to delete sync element: " + ((NamedElement) element).getName());
+            e.printStackTrace();
+        }
+    }
+
+    private static SyncElement create(Project project, SyncElement.Type type, String name, String comment) {
         project.getCounter().setCanResetIDForObject(true);
         Package syncPackage = getSyncPackage(project);
         if (syncPackage == null) {
@@ -79,12 +140,101 @@ public class SyncElements {
         InstanceSpecification instanceSpecification = project.getElementsFactory().createInstanceSpecificationInstance();
         instanceSpecification.setLocalID(instanceSpecification.getLocalID() + MDKConstants.SYNC_SYSML_ID_SUFFIX);
         instanceSpecification.setOwningPackage(syncPackage);
-        instanceSpecification.setName(type.toString().toLowerCase() + "_" + ZonedDateTime.now().format(DATE_TIME_FORMATTER));
+        instanceSpecification.setName(name);
         instanceSpecification.setSpecification(literalString);
 
         return new SyncElement(instanceSpecification, type);
     }
 
+    static List<String> buildSegments(Changelog<String, ?> changelog) {
+        SortedMap<String, List<Changelog.ChangeType>> changes = new TreeMap<>();
+        for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
+            for (String key : changelog.get(changeType).keySet()) {
+                changes.computeIfAbsent(key, k -> new ArrayList<>(1)).add(changeType);
+            }
+        }
+        List<String> segments = new ArrayList<>();
+        Map<Changelog.ChangeType, List<String>> segmentKeys = new EnumMap<>(Changelog.ChangeType.class);
+        int segmentSize = 0;
+        for (Map.Entry<String, List<Changelog.ChangeType>> entry : changes.entrySet()) {
+            for (Changelog.ChangeType changeType : entry.getValue()) {
+                segmentKeys.computeIfAbsent(changeType, k -> new ArrayList<>()).add(entry.getKey());
+            }
+            // content-defined boundaries keep the other segments stable when ids are added or removed
+            if (++segmentSize >= MAX_SEGMENT_SIZE || (entry.getKey().hashCode() & Integer.MAX_VALUE) % TARGET_SEGMENT_SIZE == 0) {
+                segments.add(buildSegment(segmentKeys));
+                segmentKeys.clear();
+                segmentSize = 0;
+            }
+        }
+        if (segmentSize > 0) {
+            segments.add(buildSegment(segmentKeys));
+        }
+        return segments;
+    }
+
+    private static String buildSegment(Map<Changelog.ChangeType, List<String>> segmentKeys) {
+        ObjectNode objectNode = JacksonUtils.getObjectMapper().createObjectNode();
+        for (Map.Entry<Changelog.ChangeType, List<String>> entry : segmentKeys.entrySet()) {
+            ArrayNode arrayNode = objectNode.putArray(entry.getKey().name().toLowerCase());
+            entry.getValue().forEach(arrayNode::add);
+        }
+        try {
+            return JacksonUtils.getObjectMapper().writeValueAsString(objectNode);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the number of persisted changes of each change type, without re-parsing the sync elements if their content
+     * has not changed since they were last counted. The sync elements are parsed once per project and again after
+     * {@link #setChangelogByType(Project, SyncElement.Type, Changelog)} or any other change to them, e.g. an undo or a project
+     * update.
+     */
+    public static Map<Changelog.ChangeType, Integer> getPersistedCounts(Project project, SyncElement.Type type) {
+        Collection<SyncElement> syncElements = getAllByType(project, type);
+        List<String> values = new ArrayList<>(syncElements.size());
+        for (SyncElement syncElement : syncElements) {
+            values.add(getValue(syncElement));
+        }
+        Map<SyncElement.Type, PersistedCounts> projectCounts = PERSISTED_COUNTS.computeIfAbsent(project, p -> new EnumMap<>(SyncElement.Type.class));
+        synchronized (projectCounts) {
+            PersistedCounts persistedCounts = projectCounts.get(type);
+            if (persistedCounts == null || !persistedCounts.values.equals(values)) {
+                Changelog<String, Void> changelog = new Changelog<>(false);
+                for (SyncElement syncElement : syncElements) {
+                    buildChangelog(changelog, syncElement);
+                }
+                Map<Changelog.ChangeType, Integer> counts = new EnumMap<>(Changelog.ChangeType.class);
+                for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
+                    counts.put(changeType, changelog.get(changeType).size());
+                }
+                projectCounts.put(type, persistedCounts = new PersistedCounts(values, Collections.unmodifiableMap(counts)));
+            }
+            return persistedCounts.counts;
+        }
+    }
+
+    private static void invalidatePersistedCounts(Project project, SyncElement.Type type) {
+        Map<SyncElement.Type, PersistedCounts> projectCounts = PERSISTED_COUNTS.get(project);
+        if (projectCounts != null) {
+            synchronized (projectCounts) {
+                projectCounts.remove(type);
+            }
+        }
+    }
+
+    private static class PersistedCounts {
+        private final List<String> values;
+        private final Map<Changelog.ChangeType, Integer> counts;
+
+        private PersistedCounts(List<String> values, Map<Changelog.ChangeType, Integer> counts) {
+            this.values = values;
+            this.counts = counts;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public static ObjectNode buildJson(Changelog<String, ?> changelog) {
         ObjectNode objectNode = JacksonUtils.getObjectMapper().createObjectNode();
@@ -97,7 +247,7 @@ public class SyncElements {
     }
 
     public static Changelog<String, Void> buildChangelog(SyncElement syncElement) {
-        Changelog<String, Void> changelog = new Changelog<>();
+        Changelog<String, Void> changelog = new Changelog<>(false);
         return buildChangelog(changelog, syncElement);
     }
 
@@ -135,7 +285,7 @@ public class SyncElements {
     }
 
     public static Changelog<String, Void> buildChangelog(ObjectNode objectNode) {
-        Changelog<String, Void> changelog = new Changelog<>();
+        Changelog<String, Void> changelog = new Changelog<>(false);
         return buildChangelog(changelog, objectNode);
     }
 
@@ -3,6 +3,8 @@ package gov.nasa.jpl.mbee.mdk.mms.sync.local;
 import com.nomagic.magicdraw.core.Project;
 import com.nomagic.magicdraw.core.project.ProjectEventListenerAdapter;
 import com.nomagic.magicdraw.uml.transaction.MDTransactionManager;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.mms.MMSMetrics;
 
 import java.util.Collections;
 import java.util.Map;
@@ -32,7 +34,9 @@ public class LocalDeltaProjectEventListenerAdapter extends ProjectEventListenerA
     @Override
     public void projectClosed(Project project) {
         closeLocalCommitListener(project);
-        projectMappings.remove(project);
+        if (projectMappings.remove(project) != null) {
+            MMSMetrics.removeLocalDeltaGauges(Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()));
+        }
     }
 
     @Override
@@ -63,6 +67,7 @@ public class LocalDeltaProjectEventListenerAdapter extends ProjectEventListenerA
         LocalSyncProjectMapping localSyncProjectMapping = projectMappings.get(project);
         if (localSyncProjectMapping == null) {
             projectMappings.put(project, localSyncProjectMapping = new LocalSyncProjectMapping(project));
+            MMSMetrics.registerLocalDeltaGauges(Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()), localSyncProjectMapping.getLocalDeltaTransactionCommitListener());
             if (project.isRemote()) {
                 ((MDTransactionManager) project.getRepository().getTransactionManager()).addTransactionCommitListenerIncludingUndoAndRedo(localSyncProjectMapping.getLocalDeltaTransactionCommitListener());
             }
@@ -16,22 +16,31 @@ import gov.nasa.jpl.mbee.mdk.util.Changelog;
 import gov.nasa.jpl.mbee.mdk.util.MDUtils;
 
 import java.beans.PropertyChangeEvent;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
+import java.util.*;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class responds to commits done in the document.
+ * <p>
+ * The events of each transaction are processed as a single batch on a background thread. Within a batch, repeated
+ * changes to the same element are recorded once and the per element lookups are done once. The sync status is refreshed
+ * at most once every {@value #STATUS_UPDATE_INTERVAL} ms, however many transactions are committed in between.
  *
  * @author igomes
  */
 public class LocalDeltaTransactionCommitListener implements TransactionCommitListener {
-    private static final ExecutorService EXECUTOR_SERVICE = Executors.newSingleThreadExecutor();
+    private static final long STATUS_UPDATE_INTERVAL = 500;
+    private static final ScheduledExecutorService EXECUTOR_SERVICE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Local Delta Commit Listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean STATUS_UPDATE_SCHEDULED = new AtomicBoolean();
     private static final List<String> IGNORED_PROPERTY_CHANGE_EVENT_NAMES = Arrays.asList(
             PropertyNames.PACKAGED_ELEMENT,
             UML2MetamodelConstants.ID,
@@ -46,6 +55,11 @@ public class LocalDeltaTransactionCommitListener implements TransactionCommitLis
     private final AtomicBoolean disabled = new AtomicBoolean();
     private final Changelog<String, Element> inMemoryLocalChangelog = new Changelog<>();
 
+    private final AtomicInteger queuedEventCount = new AtomicInteger();
+    private final AtomicLong processedEventCount = new AtomicLong();
+    private final AtomicLong recordedChangeCount = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+
     {
         if (MDUtils.isDeveloperMode()) {
             inMemoryLocalChangelog.setShouldLogChanges(true);
@@ -72,6 +86,50 @@ public class LocalDeltaTransactionCommitListener implements TransactionCommitLis
         return inMemoryLocalChangelog;
     }
 
+    /**
+     * @return number of events of committed transactions that are waiting to be processed
+     */
+    public int getQueuedEventCount() {
+        return queuedEventCount.get();
+    }
+
+    public long getProcessedEventCount() {
+        return processedEventCount.get();
+    }
+
+    /**
+     * @return number of changes added to the in-memory changelog after events for the same element were merged
+     */
+    public long getRecordedChangeCount() {
+        return recordedChangeCount.get();
+    }
+
+    /**
+     * @return events processed per second of processing time, or 0 if none have been processed
+     */
+    public double getEventsPerSecond() {
+        long nanos = processingNanos.get();
+        return nanos > 0 ? processedEventCount.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Local delta listener: " + getQueuedEventCount() + " queued events, " + getProcessedEventCount() + " processed events, " + getRecordedChangeCount() + " recorded changes, " + String.format("%.0f", getEventsPerSecond()) + " events/s";
+    }
+
+    private static void scheduleStatusUpdate() {
+        if (STATUS_UPDATE_SCHEDULED.compareAndSet(false, true)) {
+            EXECUTOR_SERVICE.schedule(() -> {
+                STATUS_UPDATE_SCHEDULED.set(false);
+                try {
+                    SyncStatusConfigurator.getSyncStatusAction().update();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, STATUS_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public Runnable transactionCommited(Collection<PropertyChangeEvent> events) {
         if (isDisabled()) {
@@ -84,6 +142,14 @@ public class LocalDeltaTransactionCommitListener implements TransactionCommitLis
         private final Collection<PropertyChangeEvent> events;
         private final Project project;
 
+        private final Map<String, String> spoofedIdMapping = new HashMap<>();
+        private final Map<Element, String> elementIds = new IdentityHashMap<>();
+        private final Map<Element, Boolean> primaryModelElements = new IdentityHashMap<>();
+        private final Map<Element, Boolean> exportableElements = new IdentityHashMap<>();
+        private final Map<String, Changelog.ChangeType> lastChangeTypes = new HashMap<>();
+        private final List<Changelog.Change<Element>> changes = new ArrayList<>();
+        private final List<String> changeIds = new ArrayList<>();
+
         TransactionCommitHandler(final Collection<PropertyChangeEvent> events, Project project) {
             this.events = events;
             this.project = project;
@@ -91,160 +157,197 @@ public class LocalDeltaTransactionCommitListener implements TransactionCommitLis
 
         @Override
         public void run() {
+            int eventCount = events.size();
+            queuedEventCount.addAndGet(eventCount);
             try {
-                CountDownLatch doneSignal = new CountDownLatch(events.size());
-                new Thread(() -> {
+                EXECUTOR_SERVICE.execute(() -> {
+                    long start = System.nanoTime();
                     try {
-                        doneSignal.await();
-                    } catch (InterruptedException ignored) {
-                    }
-                    SyncStatusConfigurator.getSyncStatusAction().update();
-                }, "Sync Status Update").start();
-                HashMap<String, String> spoofedIdMapping = new HashMap<>();
-                for (PropertyChangeEvent event : events) {
-                    EXECUTOR_SERVICE.execute(() -> {
-                        Object source = event.getSource();
-                        if (!(source instanceof Element) || ProjectUtilities.isElementInAttachedProject((Element) source)) {
-                            doneSignal.countDown();
-                            return;
+                        for (PropertyChangeEvent event : events) {
+                            process(event);
+                        }
+                        // changes are only added once the batch is processed, after changes repeated within it are dropped
+                        for (int i = 0; i < changes.size(); i++) {
+                            Changelog.Change<Element> change = changes.get(i);
+                            inMemoryLocalChangelog.addChange(changeIds.get(i), change.getChanged(), change.getType());
                         }
-                        Element sourceElement = (Element) source;
-                        String changedPropertyName = event.getPropertyName();
+                        recordedChangeCount.addAndGet(changes.size());
+                    } catch (Exception e) {
+                        Application.getInstance().getGUILog().log("[ERROR] LocalSyncTransactionCommitListener had an unexpected error: " + e.getMessage());
+                        e.printStackTrace();
+                    } finally {
+                        processingNanos.addAndGet(System.nanoTime() - start);
+                        processedEventCount.addAndGet(eventCount);
+                        queuedEventCount.addAndGet(-eventCount);
+                        scheduleStatusUpdate();
+                    }
+                });
+            } catch (Exception e) {
+                queuedEventCount.addAndGet(-eventCount);
+                Application.getInstance().getGUILog().log("[ERROR] LocalSyncTransactionCommitListener had an unexpected error: " + e.getMessage());
+                e.printStackTrace();
+                throw e;
+            }
+        }
+
+        private void process(PropertyChangeEvent event) {
+            Object source = event.getSource();
+            if (!(source instanceof Element) || ProjectUtilities.isElementInAttachedProject((Element) source)) {
+                return;
+            }
+            Element sourceElement = (Element) source;
+            String changedPropertyName = event.getPropertyName();
+
+            if (changedPropertyName == null || changedPropertyName.startsWith("_") || IGNORED_PROPERTY_CHANGE_EVENT_NAMES.contains(changedPropertyName)) {
+                return;
+            }
+            if ((event.getNewValue() == null && event.getOldValue() == null) || (event.getNewValue() != null && event.getNewValue().equals(event.getOldValue()))) {
+                return;
+            }
 
-                        if (changedPropertyName == null || changedPropertyName.startsWith("_") || IGNORED_PROPERTY_CHANGE_EVENT_NAMES.contains(changedPropertyName)) {
-                            doneSignal.countDown();
-                            return;
+            // id spoofing for proper removal of deleted elements in changelogs. this is based on the spoofing in EMFExporter, and MUST be updated when that is.
+            if (sourceElement instanceof InstanceSpecification) {
+                if (changedPropertyName.equals(UMLPackage.Literals.INSTANCE_SPECIFICATION__STEREOTYPED_ELEMENT.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
+                    Element origin = (Element) event.getOldValue();
+                    String spoofedId = getId(origin) + MDKConstants.APPLIED_STEREOTYPE_INSTANCE_ID_SUFFIX;
+                    if (!spoofedId.equals(sourceElement.getLocalID())) {
+                        spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
+                    }
+                }
+            }
+            else if (sourceElement instanceof Slot) {
+                if (changedPropertyName.equals(UMLPackage.Literals.SLOT__OWNING_INSTANCE.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
+                    if (!spoofedIdMapping.containsKey(sourceElement.getLocalID()) && sourceElement.getLocalID().equals(getId(sourceElement))) {
+                        spoofedIdMapping.put(sourceElement.getLocalID(), MDKConstants.SLOT_ID_SEPARATOR);
+                    }
+                    if (spoofedIdMapping.containsKey(sourceElement.getLocalID())) {
+                        String spoofedId = spoofedIdMapping.get(sourceElement.getLocalID());
+                        Element owningInstance = (Element) event.getOldValue();
+                        if (spoofedId.startsWith(MDKConstants.SLOT_ID_SEPARATOR)) {
+                            String owningInstanceId = spoofedIdMapping.containsKey(owningInstance.getLocalID()) ? spoofedIdMapping.get(owningInstance.getLocalID()) : getId(owningInstance);
+                            spoofedId = owningInstanceId + spoofedId;
+                            spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
                         }
-                        if ((event.getNewValue() == null && event.getOldValue() == null) || (event.getNewValue() != null && event.getNewValue().equals(event.getOldValue()))) {
-                            doneSignal.countDown();
-                            return;
+                        else if (!spoofedId.startsWith(getId(owningInstance))) {
+                            System.out.println("[WARNING] Spoofed element ID already exists with a different owning instance id component.");
                         }
-
-                        // id spoofing for proper removal of deleted elements in changelogs. this is based on the spoofing in EMFExporter, and MUST be updated when that is.
-                        if (sourceElement instanceof InstanceSpecification) {
-                            if (changedPropertyName.equals(UMLPackage.Literals.INSTANCE_SPECIFICATION__STEREOTYPED_ELEMENT.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
-                                Element origin = (Element) event.getOldValue();
-                                String spoofedId = Converters.getElementToIdConverter().apply(origin) + MDKConstants.APPLIED_STEREOTYPE_INSTANCE_ID_SUFFIX;
-                                if (!spoofedId.equals(sourceElement.getLocalID())) {
-                                    spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
-                                }
-                            }
+                    }
+                }
+                else if (changedPropertyName.equals(UMLPackage.Literals.SLOT__DEFINING_FEATURE.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
+                    if (!spoofedIdMapping.containsKey(sourceElement.getLocalID()) && sourceElement.getLocalID().equals(getId(sourceElement))) {
+                        spoofedIdMapping.put(sourceElement.getLocalID(), MDKConstants.SLOT_VALUE_ID_SEPARATOR);
+                    }
+                    if (spoofedIdMapping.containsKey(sourceElement.getLocalID())) {
+                        String spoofedId = spoofedIdMapping.get(sourceElement.getLocalID());
+                        Element definingFeature = (Element) event.getOldValue();
+                        if (spoofedId.endsWith(MDKConstants.SLOT_ID_SEPARATOR)) {
+                            spoofedId = spoofedId + getId(definingFeature);
+                            spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
                         }
-                        else if (sourceElement instanceof Slot) {
-                            if (changedPropertyName.equals(UMLPackage.Literals.SLOT__OWNING_INSTANCE.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
-                                if (!spoofedIdMapping.containsKey(sourceElement.getLocalID()) && sourceElement.getLocalID().equals(Converters.getElementToIdConverter().apply(sourceElement))) {
-                                    spoofedIdMapping.put(sourceElement.getLocalID(), MDKConstants.SLOT_ID_SEPARATOR);
-                                }
-                                if (spoofedIdMapping.containsKey(sourceElement.getLocalID())) {
-                                    String spoofedId = spoofedIdMapping.get(sourceElement.getLocalID());
-                                    Element owningInstance = (Element) event.getOldValue();
-                                    if (spoofedId.startsWith(MDKConstants.SLOT_ID_SEPARATOR)) {
-                                        String owningInstanceId = spoofedIdMapping.containsKey(owningInstance.getLocalID()) ? spoofedIdMapping.get(owningInstance.getLocalID()) : Converters.getElementToIdConverter().apply(owningInstance);
-                                        spoofedId = owningInstanceId + spoofedId;
-                                        spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
-                                    }
-                                    else if (!spoofedId.startsWith(Converters.getElementToIdConverter().apply(owningInstance))) {
-                                        System.out.println("[WARNING] Spoofed element ID already exists with a different owning instance id component.");
-                                    }
-                                }
-                            }
-                            else if (changedPropertyName.equals(UMLPackage.Literals.SLOT__DEFINING_FEATURE.getName()) && event.getNewValue() == null && event.getOldValue() instanceof Element) {
-                                if (!spoofedIdMapping.containsKey(sourceElement.getLocalID()) && sourceElement.getLocalID().equals(Converters.getElementToIdConverter().apply(sourceElement))) {
-                                    spoofedIdMapping.put(sourceElement.getLocalID(), MDKConstants.SLOT_VALUE_ID_SEPARATOR);
-                                }
-                                if (spoofedIdMapping.containsKey(sourceElement.getLocalID())) {
-                                    String spoofedId = spoofedIdMapping.get(sourceElement.getLocalID());
-                                    Element definingFeature = (Element) event.getOldValue();
-                                    if (spoofedId.endsWith(MDKConstants.SLOT_ID_SEPARATOR)) {
-                                        spoofedId = spoofedId + Converters.getElementToIdConverter().apply(definingFeature);
-                                        spoofedIdMapping.put(sourceElement.getLocalID(), spoofedId);
-                                    }
-                                    else if (!spoofedId.endsWith(Converters.getElementToIdConverter().apply(definingFeature))) {
-                                        System.out.println("[WARNING] Spoofed element ID already exists with a different defining feature id component.");
-                                    }
-                                }
-                            }
+                        else if (!spoofedId.endsWith(getId(definingFeature))) {
+                            System.out.println("[WARNING] Spoofed element ID already exists with a different defining feature id component.");
                         }
+                    }
+                }
+            }
 
-                        // documentation is orphaned on deletion, resulting in a new comment element that would be added to the deletion queue. this catches it while we have access to it, so that it can be ignored later
-                        if (changedPropertyName.equals(PropertyNames.OWNED_COMMENT) && event.getNewValue() == null && event.getOldValue() != null && event.getOldValue() instanceof Element) {
-                            spoofedIdMapping.put(((Element) event.getOldValue()).getLocalID(), "");
-                        }
+            // documentation is orphaned on deletion, resulting in a new comment element that would be added to the deletion queue. this catches it while we have access to it, so that it can be ignored later
+            if (changedPropertyName.equals(PropertyNames.OWNED_COMMENT) && event.getNewValue() == null && event.getOldValue() != null && event.getOldValue() instanceof Element) {
+                spoofedIdMapping.put(((Element) event.getOldValue()).getLocalID(), "");
+            }
 
-                        // elements in the sync package aren't properly ignored on delete beacuse of owner changes. this catches it while we have access to it, so that it can be ignored later
-                        if (changedPropertyName.equals(PropertyNames.OWNING_PACKAGE) && event.getNewValue() == null && event.getOldValue() != null && event.getOldValue() instanceof Element) {
-                            if (((Element) event.getOldValue()).getLocalID().endsWith(MDKConstants.SYNC_SYSML_ID_SUFFIX)) {
-                                spoofedIdMapping.put(sourceElement.getLocalID(), "");
-                            }
-                        }
+            // elements in the sync package aren't properly ignored on delete beacuse of owner changes. this catches it while we have access to it, so that it can be ignored later
+            if (changedPropertyName.equals(PropertyNames.OWNING_PACKAGE) && event.getNewValue() == null && event.getOldValue() != null && event.getOldValue() instanceof Element) {
+                if (((Element) event.getOldValue()).getLocalID().endsWith(MDKConstants.SYNC_SYSML_ID_SUFFIX)) {
+                    spoofedIdMapping.put(sourceElement.getLocalID(), "");
+                }
+            }
 
-                        if (!changedPropertyName.equals(UML2MetamodelConstants.INSTANCE_DELETED)) {
-                            Element root = sourceElement;
-                            while (root.getOwner() != null) {
-                                root = root.getOwner();
-                            }
-                            if (!root.equals(project.getPrimaryModel())) {
-                                doneSignal.countDown();
-                                return;
-                            }
-                        }
+            if (!changedPropertyName.equals(UML2MetamodelConstants.INSTANCE_DELETED) && !isInPrimaryModel(sourceElement)) {
+                return;
+            }
 
-                        // START PRE-PROCESSING
-                        Comment comment;
-                        if (changedPropertyName.equals(PropertyNames.BODY) && sourceElement instanceof Comment && (comment = (Comment) sourceElement).getAnnotatedElement().size() == 1 && comment.getAnnotatedElement().iterator().next() == comment.getOwner()) {
-                            sourceElement = sourceElement.getOwner();
-                        }
-                        else if (changedPropertyName.equals(PropertyNames.VALUE) && sourceElement instanceof ValueSpecification ||
-                                changedPropertyName.equals(PropertyNames.BODY) && sourceElement instanceof OpaqueExpression ||
-                                changedPropertyName.equals(PropertyNames.OPERAND) && sourceElement instanceof Expression) {
-                            // Need to find the actual element that needs to be sent (most likely a Property or Slot that's the closest owner of this element)
-                            do {
-                                sourceElement = sourceElement.getOwner();
-                            }
-                            while (sourceElement instanceof ValueSpecification);
-                            // There may be multiple ValueSpecification changes so go up the chain of owners until we find the actual owner that should be submitted
-                        }
-                        // END PRE-PROCESSING
+            // START PRE-PROCESSING
+            Comment comment;
+            if (changedPropertyName.equals(PropertyNames.BODY) && sourceElement instanceof Comment && (comment = (Comment) sourceElement).getAnnotatedElement().size() == 1 && comment.getAnnotatedElement().iterator().next() == comment.getOwner()) {
+                sourceElement = sourceElement.getOwner();
+            }
+            else if (changedPropertyName.equals(PropertyNames.VALUE) && sourceElement instanceof ValueSpecification ||
+                    changedPropertyName.equals(PropertyNames.BODY) && sourceElement instanceof OpaqueExpression ||
+                    changedPropertyName.equals(PropertyNames.OPERAND) && sourceElement instanceof Expression) {
+                // Need to find the actual element that needs to be sent (most likely a Property or Slot that's the closest owner of this element)
+                do {
+                    sourceElement = sourceElement.getOwner();
+                }
+                while (sourceElement instanceof ValueSpecification);
+                // There may be multiple ValueSpecification changes so go up the chain of owners until we find the actual owner that should be submitted
+            }
+            // END PRE-PROCESSING
 
-                        if (Converters.getElementToJsonConverter().apply(sourceElement, project) == null) {
-                            doneSignal.countDown();
-                            return;
-                        }
+            if (!isExportable(sourceElement)) {
+                return;
+            }
 
-                        String sysmlId = Converters.getElementToIdConverter().apply(sourceElement);
-                        if (sysmlId == null) {
-                            doneSignal.countDown();
-                            return;
-                        }
-                        if (spoofedIdMapping.containsKey(sysmlId)) {
-                            String spoofedId = spoofedIdMapping.get(sysmlId);
-                            if (!(sourceElement instanceof Slot) || !(spoofedId.startsWith(MDKConstants.SLOT_VALUE_ID_SEPARATOR) || spoofedId.endsWith(MDKConstants.SLOT_VALUE_ID_SEPARATOR))) {
-                                sysmlId = spoofedId;
-                            }
-                            if (sysmlId.isEmpty()) {
-                                doneSignal.countDown();
-                                return;
-                            }
-                        }
+            String sysmlId = getId(sourceElement);
+            if (sysmlId == null) {
+                return;
+            }
+            if (spoofedIdMapping.containsKey(sysmlId)) {
+                String spoofedId = spoofedIdMapping.get(sysmlId);
+                if (!(sourceElement instanceof Slot) || !(spoofedId.startsWith(MDKConstants.SLOT_VALUE_ID_SEPARATOR) || spoofedId.endsWith(MDKConstants.SLOT_VALUE_ID_SEPARATOR))) {
+                    sysmlId = spoofedId;
+                }
+                if (sysmlId.isEmpty()) {
+                    return;
+                }
+            }
 
-                        Changelog.ChangeType changeType = Changelog.ChangeType.UPDATED;
-                        switch (changedPropertyName) {
-                            case UML2MetamodelConstants.INSTANCE_DELETED:
-                                changeType = Changelog.ChangeType.DELETED;
-                                break;
-                            case UML2MetamodelConstants.INSTANCE_CREATED:
-                                changeType = Changelog.ChangeType.CREATED;
-                                break;
-                        }
-                        inMemoryLocalChangelog.addChange(sysmlId, sourceElement, changeType);
-                        doneSignal.countDown();
-                    });
+            Changelog.ChangeType changeType = Changelog.ChangeType.UPDATED;
+            switch (changedPropertyName) {
+                case UML2MetamodelConstants.INSTANCE_DELETED:
+                    changeType = Changelog.ChangeType.DELETED;
+                    break;
+                case UML2MetamodelConstants.INSTANCE_CREATED:
+                    changeType = Changelog.ChangeType.CREATED;
+                    break;
+            }
+            // consecutive changes of the same type to an element have the same effect on the changelog as one
+            if (lastChangeTypes.put(sysmlId, changeType) == changeType) {
+                return;
+            }
+            changes.add(new Changelog.Change<>(sourceElement, changeType));
+            changeIds.add(sysmlId);
+        }
+
+        // the model no longer changes once the transaction is committed, so the following are looked up once per element per batch
+
+        private String getId(Element element) {
+            if (elementIds.containsKey(element)) {
+                return elementIds.get(element);
+            }
+            String id = Converters.getElementToIdConverter().apply(element);
+            elementIds.put(element, id);
+            return id;
+        }
+
+        private boolean isInPrimaryModel(Element element) {
+            Boolean inPrimaryModel = primaryModelElements.get(element);
+            if (inPrimaryModel == null) {
+                Element root = element;
+                while (root.getOwner() != null) {
+                    root = root.getOwner();
                 }
-            } catch (Exception e) {
-                Application.getInstance().getGUILog().log("[ERROR] LocalSyncTransactionCommitListener had an unexpected error: " + e.getMessage());
-                e.printStackTrace();
-                throw e;
+                primaryModelElements.put(element, inPrimaryModel = root.equals(project.getPrimaryModel()));
+            }
+            return inPrimaryModel;
+        }
+
+        private boolean isExportable(Element element) {
+            Boolean exportable = exportableElements.get(element);
+            if (exportable == null) {
+                exportableElements.put(element, exportable = Converters.getElementToJsonConverter().apply(element, project) != null);
             }
+            return exportable;
         }
     }
 }
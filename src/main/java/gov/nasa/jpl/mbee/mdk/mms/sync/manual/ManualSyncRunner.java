@@ -1,5 +1,6 @@
 package gov.nasa.jpl.mbee.mdk.mms.sync.manual;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.Project;
@@ -10,25 +11,40 @@ import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Package;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
-import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementCache;
 import gov.nasa.jpl.mbee.mdk.mms.validation.BranchValidator;
 import gov.nasa.jpl.mbee.mdk.mms.validation.ElementValidator;
 import gov.nasa.jpl.mbee.mdk.mms.validation.ProjectValidator;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
 import gov.nasa.jpl.mbee.mdk.util.Pair;
 import gov.nasa.jpl.mbee.mdk.util.Utils;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationSuite;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Created by igomes on 9/26/16.
+ * <p>
+ * Each root's subtree is listed once and exported on a fork-join pool, while the server elements of the subtree are
+ * requested on a separate thread as soon as their ids are known. Server elements are written to a file as they arrive and
+ * streamed from it into the validator, so that they are not all held in memory.
  */
 public class ManualSyncRunner implements RunnableWithProgress {
+    private static final AtomicInteger FETCH_THREAD_COUNT = new AtomicInteger();
+    private static final ForkJoinPool EXPORT_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Manual Sync Export " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
 
     private final Collection<Element> rootElements;
     private final Project project;
@@ -78,103 +94,226 @@ public class ManualSyncRunner implements RunnableWithProgress {
         progressStatus.setCurrent(0);
 
         List<Pair<Element, ObjectNode>> clientElements = new ArrayList<>(rootElements.size());
-        Collection<File> responseFiles = new ArrayList<>(3);
-        for (Element element : rootElements) {
-            collectClientElementsRecursively(project, element, depth, clientElements);
-            Set<String> clientElementIds = clientElements.stream().map(pair -> Converters.getElementToIdConverter().apply(pair.getKey())).collect(Collectors.toCollection(LinkedHashSet::new));
+        File serverElementsFile;
+        JsonGenerator serverElementsGenerator;
+        try {
+            serverElementsFile = File.createTempFile("ManualSync-elements-", ".json");
+            serverElementsGenerator = JacksonUtils.getJsonFactory().createGenerator(new BufferedOutputStream(new FileOutputStream(serverElementsFile)));
+            serverElementsGenerator.writeStartObject();
+            serverElementsGenerator.writeArrayFieldStart("elements");
+        } catch (IOException e) {
+            Application.getInstance().getGUILog().log("[ERROR] An error occurred while preparing to get elements from the server. Manual sync aborted. Reason: " + e.getMessage());
+            e.printStackTrace();
+            validationSuite = null;
+            return;
+        }
+        // only called from the fetch thread; duplicates are skipped by the validator
+        Consumer<ObjectNode> serverElementConsumer = objectNode -> {
+            try {
+                serverElementsGenerator.writeTree(objectNode);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        boolean collected = false;
+        try {
+            if (!collectElements(progressStatus, clientElements, serverElementConsumer)) {
+                return;
+            }
+            serverElementsGenerator.writeEndArray();
+            serverElementsGenerator.writeEndObject();
+            collected = !progressStatus.isCancel();
+        } catch (ServerException | URISyntaxException | IOException | GeneralSecurityException e) {
+            Application.getInstance().getGUILog().log("[ERROR] An error occurred while getting elements from the server. Manual sync aborted. Reason: " + e.getMessage());
+            e.printStackTrace();
+            validationSuite = null;
+            return;
+        } finally {
             try {
-                File recursiveResponseFile, traversedResponseFile, responseFile;
+                serverElementsGenerator.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                collected = false;
+            }
+            if (!collected) {
+                serverElementsFile.delete();
+            }
+        }
+        if (!collected) {
+            return;
+        }
+        try {
+            elementValidator = new ElementValidator("Element Validation", clientElements, null, project, Collections.singletonList(serverElementsFile));
+            elementValidator.run(progressStatus);
+        } finally {
+            if (MDKOptionsGroup.getMDKOptions().isLogJson()) {
+                System.out.println("[INFO] Server Elements: " + serverElementsFile.getPath());
+            }
+            else {
+                serverElementsFile.delete();
+            }
+        }
+    }
 
-                recursiveResponseFile = collectServerElementsRecursively(project, element, depth, progressStatus);
-                if (recursiveResponseFile != null) {
-                    responseFiles.add(recursiveResponseFile);
-                }
+    /**
+     * Exports the client elements and passes the server elements to the consumer, with the element cache open only while
+     * doing so.
+     *
+     * @return false if cancelled, true otherwise
+     */
+    private boolean collectElements(ProgressStatus progressStatus, List<Pair<Element, ObjectNode>> clientElements, Consumer<ObjectNode> serverElementConsumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        Set<String> clientElementIds = new LinkedHashSet<>();
+        // server requests are made in order on a separate thread, so that they overlap with the local export
+        ExecutorService fetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Manual Sync Fetch " + FETCH_THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Boolean>> fetches = new ArrayList<>();
+        MMSElementCache elementCache = null;
+        try {
+            elementCache = MMSElementCache.open(project, progressStatus);
+            if (elementCache == null) {
+                return false;
+            }
+            MMSElementCache cache = elementCache;
+            for (Element element : rootElements) {
+                String elementId = Converters.getElementToIdConverter().apply(element);
+                fetches.add(fetchExecutor.submit(() -> cache.getElementsRecursively(elementId, depth, progressStatus, serverElementConsumer)));
 
-                if (clientElementIds.size() > 1) {
-                    traversedResponseFile = MMSUtils.getElements(project, clientElementIds, progressStatus);
-                    if (traversedResponseFile != null) {
-                        responseFiles.add(traversedResponseFile);
+                List<Element> subtreeElements = new ArrayList<>();
+                List<Integer> subtreeParents = new ArrayList<>();
+                snapshotRecursively(project, element, depth, -1, subtreeElements, subtreeParents);
+                Set<String> subtreeElementIds = new LinkedHashSet<>(subtreeElements.size());
+                for (Element subtreeElement : subtreeElements) {
+                    String subtreeElementId = Converters.getElementToIdConverter().apply(subtreeElement);
+                    if (subtreeElementId != null && clientElementIds.add(subtreeElementId)) {
+                        subtreeElementIds.add(subtreeElementId);
                     }
                 }
+                if (clientElementIds.size() > 1 && !subtreeElementIds.isEmpty()) {
+                    fetches.add(fetchExecutor.submit(() -> cache.getElements(subtreeElementIds, progressStatus, serverElementConsumer)));
+                }
 
                 if (element == project.getPrimaryModel() && depth != 0) {
                     // scan of initial return for holding bin is expensive. assume it's not there and request anyway
-                    if (progressStatus.isCancel()) {
-                        return;
-                    }
-                    responseFile = collectServerHoldingBinElementsRecursively(project, depth - 1, progressStatus);
-                    if (responseFile != null) {
-                        responseFiles.add(responseFile);
-                    }
+                    String holdingBinId = MDKConstants.HOLDING_BIN_ID_PREFIX + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject());
+                    fetches.add(fetchExecutor.submit(() -> cache.getElementsRecursively(holdingBinId, depth - 1, progressStatus, serverElementConsumer)));
 
-                    if (progressStatus.isCancel()) {
-                        return;
-                    }
-                    responseFile = collectServerModuleElementsRecursively(project, 0, progressStatus);
-                    if (responseFile != null) {
-                        responseFiles.add(responseFile);
-                    }
+                    Collection<Element> attachedModels = new ArrayList<>(project.getModels());
+                    attachedModels.remove(project.getPrimaryModel());
+                    Collection<String> attachedModelIds = attachedModels.stream().map(Converters.getElementToIdConverter()).filter(amId -> amId != null).collect(Collectors.toList());
+                    fetches.add(fetchExecutor.submit(() -> cache.getElements(attachedModelIds, progressStatus, serverElementConsumer)));
                 }
-            } catch (ServerException | URISyntaxException | IOException | GeneralSecurityException e) {
-                Application.getInstance().getGUILog().log("[ERROR] An error occurred while getting elements from the server. Manual sync aborted. Reason: " + e.getMessage());
-                e.printStackTrace();
-                validationSuite = null;
-                return;
+
+                exportInParallel(project, subtreeElements, subtreeParents, progressStatus, clientElements);
+                if (progressStatus.isCancel()) {
+                    return false;
+                }
+                progressStatus.increase();
             }
-            if (responseFiles.isEmpty()) {
-                if (!progressStatus.isCancel()) {
-                    Application.getInstance().getGUILog().log("[ERROR] Failed to get elements from the server. Manual sync aborted.");
+            for (Future<Boolean> fetch : fetches) {
+                if (!getFetchResult(fetch)) {
+                    return false;
                 }
-                validationSuite = null;
-                return;
             }
-            progressStatus.increase();
-        }
-        if (progressStatus.isCancel()) {
-            return;
+            return true;
+        } finally {
+            fetches.forEach(fetch -> fetch.cancel(false));
+            fetchExecutor.shutdown();
+            if (elementCache != null) {
+                // the cache must not be closed while a request is still using it
+                try {
+                    fetchExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                elementCache.close();
+            }
         }
-        elementValidator = new ElementValidator("Element Validation", clientElements, null, project, responseFiles);
-        elementValidator.run(progressStatus);
     }
 
-    private static void collectClientElementsRecursively(Project project, Element element, int depth, List<Pair<Element, ObjectNode>> elements) {
-        ObjectNode jsonObject = Converters.getElementToJsonConverter().apply(element, project);
-        if (jsonObject == null) {
-            return;
-        }
-        elements.add(new Pair<>(element, jsonObject));
+    /**
+     * Lists the element and its owned elements down to the given depth, parents first, along with the index of each
+     * element's owner in the list. The model is not modified while Manual Sync runs, as it runs with a modal progress
+     * status, so the list can be exported concurrently.
+     */
+    private static void snapshotRecursively(Project project, Element element, int depth, int parentIndex, List<Element> elements, List<Integer> parents) {
+        int index = elements.size();
+        elements.add(element);
+        parents.add(parentIndex);
         if (depth-- != 0) {
             for (Element elementChild : element.getOwnedElement()) {
-                collectClientElementsRecursively(project, elementChild, depth, elements);
+                snapshotRecursively(project, elementChild, depth, index, elements, parents);
             }
         }
         if (element.equals(project.getPrimaryModel())) {
-            List<Package> attachedModels = project.getModels();
+            List<Package> attachedModels = new ArrayList<>(project.getModels());
             attachedModels.remove(project.getPrimaryModel());
-            attachedModels.forEach(attachedModel -> collectClientElementsRecursively(project, attachedModel, 0, elements));
+            attachedModels.forEach(attachedModel -> snapshotRecursively(project, attachedModel, 0, index, elements, parents));
         }
     }
 
-    private static File collectServerElementsRecursively(Project project, Element element, int depth, ProgressStatus progressStatus)
-            throws ServerException, IOException, URISyntaxException, GeneralSecurityException {
-        String id = Converters.getElementToIdConverter().apply(element);
-        Collection<String> elementIds = new ArrayList<>(1);
-        elementIds.add(id);
-        return MMSUtils.getElementsRecursively(project, elementIds, depth, progressStatus);
-    }
-
-    private static File collectServerModuleElementsRecursively(Project project, int depth, ProgressStatus progressStatus)
-            throws ServerException, IOException, URISyntaxException, GeneralSecurityException {
-        Collection<Element> attachedModels = new ArrayList<>(project.getModels());
-        attachedModels.remove(project.getPrimaryModel());
-        Collection<String> attachedModelIds = attachedModels.stream().map(Converters.getElementToIdConverter()).filter(amId -> amId != null).collect(Collectors.toList());
-        return MMSUtils.getElements(project, attachedModelIds, null);
+    /**
+     * Exports the listed elements concurrently and adds those that export, and whose owners in the list export, to the
+     * client elements in list order.
+     */
+    private static void exportInParallel(Project project, List<Element> elements, List<Integer> parents, ProgressStatus progressStatus, List<Pair<Element, ObjectNode>> clientElements) {
+        ObjectNode[] objectNodes = new ObjectNode[elements.size()];
+        try {
+            EXPORT_POOL.submit(() -> IntStream.range(0, objectNodes.length).parallel().forEach(i -> {
+                if (!progressStatus.isCancel()) {
+                    objectNodes[i] = Converters.getElementToJsonConverter().apply(elements.get(i), project);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        boolean[] included = new boolean[objectNodes.length];
+        for (int i = 0; i < objectNodes.length; i++) {
+            int parentIndex = parents.get(i);
+            included[i] = objectNodes[i] != null && (parentIndex < 0 || included[parentIndex]);
+            if (included[i]) {
+                clientElements.add(new Pair<>(elements.get(i), objectNodes[i]));
+            }
+        }
     }
 
-    private static File collectServerHoldingBinElementsRecursively(Project project, int depth, ProgressStatus progressStatus)
-            throws ServerException, IOException, URISyntaxException, GeneralSecurityException {
-        String holdingBinId = MDKConstants.HOLDING_BIN_ID_PREFIX + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject());
-        return MMSUtils.getElementRecursively(project, holdingBinId, depth, progressStatus);
+    private static boolean getFetchResult(Future<Boolean> fetch) throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ServerException) {
+                throw (ServerException) cause;
+            }
+            if (cause instanceof URISyntaxException) {
+                throw (URISyntaxException) cause;
+            }
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
     public ValidationSuite getValidationSuite() {
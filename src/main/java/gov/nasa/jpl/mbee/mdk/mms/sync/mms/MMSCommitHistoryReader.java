@@ -0,0 +1,314 @@
+package gov.nasa.jpl.mbee.mdk.mms.sync.mms;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nomagic.magicdraw.core.Project;
+import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
+import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
+import gov.nasa.jpl.mbee.mdk.http.ServerException;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
+import gov.nasa.jpl.mbee.mdk.options.MDKOptionsGroup;
+import gov.nasa.jpl.mbee.mdk.util.CacheUtils;
+import gov.nasa.jpl.mbee.mdk.util.Changelog;
+import gov.nasa.jpl.mbee.mdk.util.MDUtils;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the commit history of the project's branch on MMS incrementally.
+ * <p>
+ * New commits are found by paging backwards from the head of the branch until a commit the caller already knows about
+ * is reached, so every commit is requested and parsed at most once per poll. Pages are chained with the creation
+ * timestamp of the oldest commit of the previous page; servers that do not honor the timestamp are paged by widening the
+ * limit instead. The details of new commits are requested concurrently, and since commits are immutable the parsed
+ * element change-sets are cached on disk and never requested again, not even in later sessions.
+ */
+public class MMSCommitHistoryReader {
+    private static final int FIRST_PAGE_SIZE = 1;
+    private static final int PAGE_SIZE = 500;
+    private static final String CREATED_KEY = "_created";
+    private static final String SYNCING_KEY = "syncing";
+    private static final String COMMITS_CACHE_NAME = "commits";
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    static final Map<String, Changelog.ChangeType> CHANGE_MAPPING = new LinkedHashMap<>(3);
+
+    static {
+        CHANGE_MAPPING.put("added", Changelog.ChangeType.CREATED);
+        CHANGE_MAPPING.put("deleted", Changelog.ChangeType.DELETED);
+        CHANGE_MAPPING.put("updated", Changelog.ChangeType.UPDATED);
+    }
+
+    /**
+     * Gets the ids of the commits on the project's branch that are newer than the cursor.
+     *
+     * @param project  project to get the commits for
+     * @param isCursor tested against commit ids from newest to oldest; reading stops at the first commit it accepts
+     * @return ids of the commits newer than the cursor, oldest first
+     */
+    public static List<String> getCommitIdsSince(Project project, Predicate<String> isCursor)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        List<String> commitIds = new ArrayList<>();
+        Set<String> seenCommitIds = new HashSet<>();
+        boolean timestampPaging = true;
+        String maxTimestamp = null;
+        int limit = FIRST_PAGE_SIZE;
+        while (true) {
+            List<ObjectNode> page = requestCommitsPage(project, limit, maxTimestamp);
+            String oldestTimestamp = null;
+            int unseen = 0;
+            for (ObjectNode commit : page) {
+                JsonNode value;
+                if ((value = commit.get(MDKConstants.ID_KEY)) == null || !value.isTextual()) {
+                    continue;
+                }
+                String id = value.asText();
+                oldestTimestamp = (value = commit.get(CREATED_KEY)) != null && value.isTextual() ? value.asText() : null;
+                if (!seenCommitIds.add(id)) {
+                    continue;
+                }
+                unseen++;
+                if (isCursor.test(id)) {
+                    Collections.reverse(commitIds);
+                    return commitIds;
+                }
+                commitIds.add(id);
+            }
+            if (page.size() < limit) {
+                break;
+            }
+            if (maxTimestamp != null && unseen == 0 || oldestTimestamp == null) {
+                timestampPaging = false;
+            }
+            if (timestampPaging) {
+                maxTimestamp = oldestTimestamp;
+                limit = PAGE_SIZE;
+            }
+            else {
+                maxTimestamp = null;
+                limit = seenCommitIds.size() + PAGE_SIZE;
+            }
+        }
+        Collections.reverse(commitIds);
+        return commitIds;
+    }
+
+    /**
+     * Gets the element changes of the commits, from the disk cache where possible and with concurrent requests
+     * otherwise. The consumer is called on the calling thread, in the order of the given commit ids, as soon as the
+     * changes of each commit are available. If a commit cannot be read, the commits before it have been consumed and the
+     * exception is thrown.
+     *
+     * @param project   project the commits belong to
+     * @param commitIds ids of the commits to read
+     * @param consumer  consumer of each commit id and its changes
+     */
+    public static void getCommitChanges(Project project, List<String> commitIds, BiConsumer<String, CommitChanges> consumer)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        if (commitIds.isEmpty()) {
+            return;
+        }
+        File cacheDirectory = null;
+        try {
+            cacheDirectory = CacheUtils.getCacheDirectory(COMMITS_CACHE_NAME, Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        File finalCacheDirectory = cacheDirectory;
+
+        int concurrency = Math.max(Math.min(MDKOptionsGroup.getMDKOptions().getMmsFetchConcurrency(), commitIds.size()), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "MMS Commit Fetch " + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<CommitChanges>> futures = new ArrayList<>(commitIds.size());
+            for (String commitId : commitIds) {
+                futures.add(executor.submit(() -> getCommitChanges(project, commitId, finalCacheDirectory)));
+            }
+            for (int i = 0; i < commitIds.size(); i++) {
+                CommitChanges commitChanges;
+                try {
+                    commitChanges = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof ServerException) {
+                        throw (ServerException) cause;
+                    }
+                    if (cause instanceof URISyntaxException) {
+                        throw (URISyntaxException) cause;
+                    }
+                    if (cause instanceof GeneralSecurityException) {
+                        throw (GeneralSecurityException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+                consumer.accept(commitIds.get(i), commitChanges);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<ObjectNode> requestCommitsPage(Project project, int limit, String maxTimestamp)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        URIBuilder commitsUriBuilder = MMSUtils.getServiceProjectsRefsUri(project);
+        if (commitsUriBuilder == null) {
+            throw new IllegalStateException();
+        }
+        commitsUriBuilder.setPath(commitsUriBuilder.getPath() + "/" + MDUtils.getBranchId(project) + "/commits");
+        commitsUriBuilder.setParameter("limit", Integer.toString(limit));
+        if (maxTimestamp != null) {
+            commitsUriBuilder.setParameter("maxTimestamp", maxTimestamp);
+        }
+        List<ObjectNode> commits = new ArrayList<>(limit);
+        MMSUtils.sendMMSRequest(project, MMSUtils.buildRequest(MMSUtils.HttpRequestType.GET, commitsUriBuilder), null, "commits", commits::add);
+        return commits;
+    }
+
+    private static CommitChanges getCommitChanges(Project project, String commitId, File cacheDirectory)
+            throws IOException, ServerException, URISyntaxException, GeneralSecurityException {
+        File cacheFile = cacheDirectory != null ? new File(cacheDirectory, CacheUtils.toFileName(commitId) + ".json") : null;
+        if (cacheFile != null) {
+            JsonNode cachedJsonNode = CacheUtils.readJson(cacheFile);
+            if (cachedJsonNode != null && cachedJsonNode.isObject()) {
+                CommitChanges commitChanges = CommitChanges.fromJson((ObjectNode) cachedJsonNode);
+                if (commitChanges != null) {
+                    return commitChanges;
+                }
+            }
+        }
+
+        URIBuilder uriBuilder = MMSUtils.getServiceProjectsUri(project);
+        if (uriBuilder == null) {
+            throw new IllegalStateException();
+        }
+        uriBuilder.setPath(uriBuilder.getPath() + "/" + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()) + "/commits/" + commitId);
+        CommitChanges commitChanges = MMSUtils.sendMMSRequest(project, MMSUtils.buildRequest(MMSUtils.HttpRequestType.GET, uriBuilder), null, jsonParser -> {
+            ObjectNode objectNode = JacksonUtils.parseJsonObject(jsonParser);
+            JsonNode jsonNode;
+            if ((jsonNode = objectNode.get("commits")) == null || !jsonNode.isArray() || jsonNode.size() == 0) {
+                throw new IllegalStateException();
+            }
+            return CommitChanges.fromCommitJson(jsonNode.get(0));
+        });
+
+        if (cacheFile != null) {
+            try {
+                CacheUtils.writeJson(cacheFile, commitChanges.toJson());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return commitChanges;
+    }
+
+    /**
+     * Element changes of a single MMS commit.
+     */
+    public static class CommitChanges {
+        private final boolean syncingCommit;
+        private final Map<Changelog.ChangeType, List<String>> elementIds;
+
+        private CommitChanges(boolean syncingCommit, Map<Changelog.ChangeType, List<String>> elementIds) {
+            this.syncingCommit = syncingCommit;
+            this.elementIds = elementIds;
+        }
+
+        /**
+         * @return true if the commit was made by MDK syncing, in which case its changes are already reflected locally
+         */
+        public boolean isSyncingCommit() {
+            return syncingCommit;
+        }
+
+        /**
+         * @return ids of the changed elements by change type, in the order the change types are applied
+         */
+        public Map<Changelog.ChangeType, List<String>> getElementIds() {
+            return elementIds;
+        }
+
+        private static CommitChanges fromCommitJson(JsonNode commitJsonNode) {
+            JsonNode sourceJsonNode = commitJsonNode.get("source");
+            boolean isSyncingCommit = sourceJsonNode != null && sourceJsonNode.isTextual() && "magicdraw".equalsIgnoreCase(sourceJsonNode.asText());
+            Map<Changelog.ChangeType, List<String>> elementIds = new LinkedHashMap<>(CHANGE_MAPPING.size());
+            for (Map.Entry<String, Changelog.ChangeType> entry : CHANGE_MAPPING.entrySet()) {
+                JsonNode changesJsonArray = commitJsonNode.get(entry.getKey());
+                if (changesJsonArray == null || !changesJsonArray.isArray()) {
+                    throw new IllegalStateException();
+                }
+                List<String> ids = new ArrayList<>(changesJsonArray.size());
+                for (JsonNode changeJsonObject : changesJsonArray) {
+                    if (!changeJsonObject.isObject()) {
+                        throw new IllegalStateException();
+                    }
+                    JsonNode typeJsonNode = changeJsonObject.get(MDKConstants.TYPE_KEY);
+                    if (typeJsonNode != null && typeJsonNode.isTextual() && !"element".equalsIgnoreCase(typeJsonNode.asText())) {
+                        continue;
+                    }
+                    JsonNode idJsonNode = changeJsonObject.get(MDKConstants.ID_KEY);
+                    if (idJsonNode == null || !idJsonNode.isTextual() || idJsonNode.asText().isEmpty()) {
+                        continue;
+                    }
+                    ids.add(idJsonNode.asText());
+                }
+                elementIds.put(entry.getValue(), ids);
+            }
+            return new CommitChanges(isSyncingCommit, elementIds);
+        }
+
+        private static CommitChanges fromJson(ObjectNode objectNode) {
+            JsonNode syncingJsonNode = objectNode.get(SYNCING_KEY);
+            if (syncingJsonNode == null || !syncingJsonNode.isBoolean()) {
+                return null;
+            }
+            Map<Changelog.ChangeType, List<String>> elementIds = new LinkedHashMap<>(CHANGE_MAPPING.size());
+            for (Map.Entry<String, Changelog.ChangeType> entry : CHANGE_MAPPING.entrySet()) {
+                JsonNode idsJsonNode = objectNode.get(entry.getKey());
+                if (idsJsonNode == null || !idsJsonNode.isArray()) {
+                    return null;
+                }
+                List<String> ids = new ArrayList<>(idsJsonNode.size());
+                for (JsonNode idJsonNode : idsJsonNode) {
+                    if (idJsonNode.isTextual()) {
+                        ids.add(idJsonNode.asText());
+                    }
+                }
+                elementIds.put(entry.getValue(), ids);
+            }
+            return new CommitChanges(syncingJsonNode.asBoolean(), elementIds);
+        }
+
+        private ObjectNode toJson() {
+            ObjectNode objectNode = JacksonUtils.getObjectMapper().createObjectNode();
+            objectNode.put(SYNCING_KEY, syncingCommit);
+            for (Map.Entry<String, Changelog.ChangeType> entry : CHANGE_MAPPING.entrySet()) {
+                ArrayNode idsJsonNode = objectNode.putArray(entry.getKey());
+                elementIds.getOrDefault(entry.getValue(), Collections.emptyList()).forEach(idsJsonNode::add);
+            }
+            return objectNode;
+        }
+    }
+}
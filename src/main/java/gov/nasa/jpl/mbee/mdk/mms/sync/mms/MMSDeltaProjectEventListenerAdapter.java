@@ -1,7 +1,5 @@
 package gov.nasa.jpl.mbee.mdk.mms.sync.mms;
 
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nomagic.magicdraw.core.Application;
@@ -16,7 +14,6 @@ import gov.nasa.jpl.mbee.mdk.emf.EMFImporter;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.ImportException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
-import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.MMSLoginAction;
 import gov.nasa.jpl.mbee.mdk.mms.sync.delta.SyncElement;
 import gov.nasa.jpl.mbee.mdk.mms.sync.delta.SyncElements;
@@ -25,9 +22,7 @@ import gov.nasa.jpl.mbee.mdk.util.Changelog;
 import gov.nasa.jpl.mbee.mdk.util.MDUtils;
 import gov.nasa.jpl.mbee.mdk.util.TaskRunner;
 import gov.nasa.jpl.mbee.mdk.util.TicketUtils;
-import org.apache.http.client.utils.URIBuilder;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
@@ -100,14 +95,6 @@ public class MMSDeltaProjectEventListenerAdapter extends ProjectEventListenerAda
     }
 
     public static class MMSDeltaProjectMapping {
-        private static final Map<String, Changelog.ChangeType> CHANGE_MAPPING = new LinkedHashMap<>(3);
-
-        static {
-            CHANGE_MAPPING.put("added", Changelog.ChangeType.CREATED);
-            CHANGE_MAPPING.put("deleted", Changelog.ChangeType.DELETED);
-            CHANGE_MAPPING.put("updated", Changelog.ChangeType.UPDATED);
-        }
-
         private final Project project;
         private ScheduledFuture<?> scheduledFuture;
 
@@ -179,103 +166,26 @@ public class MMSDeltaProjectEventListenerAdapter extends ProjectEventListenerAda
                 e.printStackTrace();
                 return false;
             }
-            Deque<String> commitIdDeque = new ArrayDeque<>();
-            int exponent = 0;
-
-            doWhile:
-            do {
-                commitIdDeque.clear();
-                int limit = (int) Math.pow(10, exponent++);
-
-                URIBuilder commitsUriBuilder = MMSUtils.getServiceProjectsRefsUri(project);
-                commitsUriBuilder.setPath(commitsUriBuilder.getPath() + "/" + MDUtils.getBranchId(project) + "/commits");
-                commitsUriBuilder.setParameter("limit", Integer.toString(limit));
-                File responseFile = MMSUtils.sendMMSRequest(project, MMSUtils.buildRequest(MMSUtils.HttpRequestType.GET, commitsUriBuilder));
-
-                JsonToken current;
-                try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                    current = jsonParser.nextToken();
-                    if (current != JsonToken.START_OBJECT) {
-                        throw new IllegalStateException();
-                    }
-                    current = jsonParser.nextToken();
-                    if (current != JsonToken.FIELD_NAME || !jsonParser.getCurrentName().equals("commits")) {
-                        throw new IllegalStateException();
-                    }
-                    current = jsonParser.nextToken();
-                    if (current != JsonToken.START_ARRAY) {
-                        throw new IllegalStateException();
-                    }
-                    JsonNode value;
-                    int size = 0;
-                    while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
-                        String id;
-                        ObjectNode objectNode = JacksonUtils.parseJsonObject(jsonParser);
-                        if ((value = objectNode.get(MDKConstants.ID_KEY)) != null && value.isTextual()) {
-                            id = value.asText();
-                            if (lastSyncedCommitId == null) {
-                                lastSyncedCommitId = id;
-                            }
-                            if (lastSyncedCommitId.equals(id)) {
-                                break doWhile;
-                            }
-                            if (inMemoryCommits.contains(id)) {
-                                break doWhile;
-                            }
-                            commitIdDeque.addFirst(id);
-                        }
-                        size++;
-                    }
-                    if (size < limit) {
-                        break;
-                    }
+            List<String> commitIds = MMSCommitHistoryReader.getCommitIdsSince(project, id -> {
+                if (lastSyncedCommitId == null) {
+                    lastSyncedCommitId = id;
                 }
-            } while (true);
+                return lastSyncedCommitId.equals(id) || inMemoryCommits.contains(id);
+            });
 
-            if (commitIdDeque.isEmpty()) {
+            if (commitIds.isEmpty()) {
                 return true;
             }
 
             ILockProjectService lockService;
             Set<String> lockedElementIds = project.isRemote() && (lockService = EsiUtils.getLockService(project)) != null ? lockService.getLockedByMe().stream().map(Converters.getElementToIdConverter()).collect(Collectors.toSet()) : Collections.emptySet();
 
-            while (!commitIdDeque.isEmpty()) {
-                String commitId = commitIdDeque.removeFirst();
-                URIBuilder uriBuilder = MMSUtils.getServiceProjectsUri(project);
-                uriBuilder.setPath(uriBuilder.getPath() + "/" + Converters.getIProjectToIdConverter().apply(project.getPrimaryProject()) + "/commits/" + commitId);
-                File responseFile = MMSUtils.sendMMSRequest(project, MMSUtils.buildRequest(MMSUtils.HttpRequestType.GET, uriBuilder));
-
-                try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                    ObjectNode objectNode = JacksonUtils.parseJsonObject(jsonParser);
-                    if (objectNode == null) {
-                        throw new IllegalStateException();
-                    }
-                    JsonNode jsonNode;
-                    if ((jsonNode = objectNode.get("commits")) == null || !jsonNode.isArray() || jsonNode.size() == 0) {
-                        throw new IllegalStateException();
-                    }
-                    jsonNode = jsonNode.get(0);
-                    JsonNode sourceJsonNode = jsonNode.get("source");
-                    boolean isSyncingCommit = sourceJsonNode != null && sourceJsonNode.isTextual() && "magicdraw".equalsIgnoreCase(sourceJsonNode.asText());
+            try {
+                MMSCommitHistoryReader.getCommitChanges(project, commitIds, (commitId, commitChanges) -> {
+                    boolean isSyncingCommit = commitChanges.isSyncingCommit();
                     int size = 0;
-                    for (Map.Entry<String, Changelog.ChangeType> entry : CHANGE_MAPPING.entrySet()) {
-                        JsonNode changesJsonArray = jsonNode.get(entry.getKey());
-                        if (changesJsonArray == null || !changesJsonArray.isArray()) {
-                            throw new IllegalStateException();
-                        }
-                        for (JsonNode changeJsonObject : changesJsonArray) {
-                            if (!changeJsonObject.isObject()) {
-                                throw new IllegalStateException();
-                            }
-                            JsonNode typeJsonNode = changeJsonObject.get(MDKConstants.TYPE_KEY);
-                            if (typeJsonNode != null && typeJsonNode.isTextual() && !"element".equalsIgnoreCase(typeJsonNode.asText())) {
-                                continue;
-                            }
-                            JsonNode idJsonNode = changeJsonObject.get(MDKConstants.ID_KEY);
-                            if (!idJsonNode.isTextual() || idJsonNode.asText().isEmpty()) {
-                                continue;
-                            }
-                            String elementId = idJsonNode.asText();
+                    for (Map.Entry<Changelog.ChangeType, List<String>> entry : commitChanges.getElementIds().entrySet()) {
+                        for (String elementId : entry.getValue()) {
                             try {
                                 ObjectNode elementJsonNode = JacksonUtils.getObjectMapper().createObjectNode();
                                 elementJsonNode.put(MDKConstants.ID_KEY, elementId);
@@ -294,7 +204,7 @@ public class MMSDeltaProjectEventListenerAdapter extends ProjectEventListenerAda
                                 }
                             }
                             else {
-                                inMemoryChangelog.addChange(elementId, null, entry.getValue());
+                                inMemoryChangelog.addChange(elementId, null, entry.getKey());
                             }
                             size++;
                         }
@@ -302,10 +212,11 @@ public class MMSDeltaProjectEventListenerAdapter extends ProjectEventListenerAda
                     if (MDUtils.isDeveloperMode()) {
                         Application.getInstance().getGUILog().log("[INFO] " + project.getName() + " - " + (isSyncingCommit ? "Removed" : "Added") + " " + NumberFormat.getInstance().format(size) + " MMS element change" + (size != 1 ? "s" : "") + " for commit " + commitId + ".");
                     }
-                }
-                inMemoryCommits.add(commitId);
+                    inMemoryCommits.add(commitId);
+                });
+            } finally {
+                SyncStatusConfigurator.getSyncStatusAction().update();
             }
-            SyncStatusConfigurator.getSyncStatusAction().update();
             return true;
         }
     }
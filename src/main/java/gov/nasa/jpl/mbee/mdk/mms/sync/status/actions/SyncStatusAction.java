@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.text.NumberFormat;
+import java.util.Map;
 
 /**
  * Created by igomes on 8/16/16.
@@ -37,9 +38,6 @@ public class SyncStatusAction extends MDAction {
     }
 
     public void update() {
-        final Changelog<String, Void> localPersistedChangelog = new Changelog<>(),
-                mmsPersistedChangelog = new Changelog<>();
-
         final int[] inMemoryLocalCreatedCount = new int[]{0},
                 inMemoryLocalUpdatedCount = new int[]{0},
                 inMemoryLocalDeletedCount = new int[]{0},
@@ -84,12 +82,10 @@ public class SyncStatusAction extends MDAction {
             }
             totalInMemoryLocalChangedCount[0] = inMemoryLocalCreatedCount[0] + inMemoryLocalUpdatedCount[0] + inMemoryLocalDeletedCount[0];
 
-            for (SyncElement localSyncElement : SyncElements.getAllByType(project, SyncElement.Type.LOCAL)) {
-                SyncElements.buildChangelog(localPersistedChangelog, localSyncElement);
-            }
-            persistedLocalCreatedCount[0] += localPersistedChangelog.get(Changelog.ChangeType.CREATED).size();
-            persistedLocalUpdatedCount[0] += localPersistedChangelog.get(Changelog.ChangeType.UPDATED).size();
-            persistedLocalDeletedCount[0] += localPersistedChangelog.get(Changelog.ChangeType.DELETED).size();
+            Map<Changelog.ChangeType, Integer> persistedLocalCounts = SyncElements.getPersistedCounts(project, SyncElement.Type.LOCAL);
+            persistedLocalCreatedCount[0] += persistedLocalCounts.get(Changelog.ChangeType.CREATED);
+            persistedLocalUpdatedCount[0] += persistedLocalCounts.get(Changelog.ChangeType.UPDATED);
+            persistedLocalDeletedCount[0] += persistedLocalCounts.get(Changelog.ChangeType.DELETED);
 
             totalPersistedLocalChangedCount[0] = persistedLocalCreatedCount[0] + persistedLocalUpdatedCount[0] + persistedLocalDeletedCount[0];
             totalLocalChangedCount[0] = totalInMemoryLocalChangedCount[0] + totalPersistedLocalChangedCount[0];
@@ -99,12 +95,10 @@ public class SyncStatusAction extends MDAction {
             inMemoryMmsDeletedCount[0] = MMSDeltaProjectEventListenerAdapter.getProjectMapping(project).getInMemoryChangelog().get(Changelog.ChangeType.DELETED).size();
             totalInMemoryMmsChangedCount[0] = inMemoryMmsCreatedCount[0] + inMemoryMmsUpdatedCount[0] + inMemoryMmsDeletedCount[0];
 
-            for (SyncElement mmsSyncElement : SyncElements.getAllByType(project, SyncElement.Type.MMS)) {
-                SyncElements.buildChangelog(mmsPersistedChangelog, mmsSyncElement);
-            }
-            persistedMmsCreatedCount[0] += mmsPersistedChangelog.get(Changelog.ChangeType.CREATED).size();
-            persistedMmsUpdatedCount[0] += mmsPersistedChangelog.get(Changelog.ChangeType.UPDATED).size();
-            persistedMmsDeletedCount[0] += mmsPersistedChangelog.get(Changelog.ChangeType.DELETED).size();
+            Map<Changelog.ChangeType, Integer> persistedMmsCounts = SyncElements.getPersistedCounts(project, SyncElement.Type.MMS);
+            persistedMmsCreatedCount[0] += persistedMmsCounts.get(Changelog.ChangeType.CREATED);
+            persistedMmsUpdatedCount[0] += persistedMmsCounts.get(Changelog.ChangeType.UPDATED);
+            persistedMmsDeletedCount[0] += persistedMmsCounts.get(Changelog.ChangeType.DELETED);
 
             totalPersistedMmsChangedCount[0] = persistedMmsCreatedCount[0] + persistedMmsUpdatedCount[0] + persistedMmsDeletedCount[0];
             totalMmsChangedCount[0] = totalInMemoryMmsChangedCount[0] + totalPersistedMmsChangedCount[0];
@@ -12,14 +12,14 @@ import com.nomagic.task.RunnableWithProgress;
 import com.nomagic.uml2.ext.magicdraw.classes.mdkernel.Diagram;
 import gov.nasa.jpl.mbee.mdk.api.incubating.MDKConstants;
 import gov.nasa.jpl.mbee.mdk.api.incubating.convert.Converters;
-import gov.nasa.jpl.mbee.mdk.docgen.DocGenUtils;
+import gov.nasa.jpl.mbee.mdk.docgen.DiagramArtifactCache;
 import gov.nasa.jpl.mbee.mdk.http.ServerException;
 import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
 import gov.nasa.jpl.mbee.mdk.mms.MMSArtifact;
+import gov.nasa.jpl.mbee.mdk.mms.MMSElementFetcher;
 import gov.nasa.jpl.mbee.mdk.mms.MMSUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.CommitDiagramArtifactsAction;
 import gov.nasa.jpl.mbee.mdk.mms.actions.ValidateElementAction;
-import gov.nasa.jpl.mbee.mdk.util.MDUtils;
 import gov.nasa.jpl.mbee.mdk.util.Pair;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationRule;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationRuleViolation;
@@ -77,11 +77,10 @@ public class DiagramValidator implements RunnableWithProgress {
             Map<String, Set<String>> elementArtifactMap = new LinkedHashMap<>();
 
             if (!diagramIds.isEmpty()) {
-                ObjectNode diagramElementsResponse;
+                List<ObjectNode> diagramElementsArray = new ArrayList<>(diagramIds.size());
                 try {
-                    File responseFile = MMSUtils.getElements(project, diagramIds, progressStatus);
-                    try (JsonParser jsonParser = JacksonUtils.getJsonFactory().createParser(responseFile)) {
-                        diagramElementsResponse = JacksonUtils.parseJsonObject(jsonParser);
+                    if (!MMSElementFetcher.getElements(project, diagramIds, 0, progressStatus, diagramElementsArray::add)) {
+                        return;
                     }
                 } catch (IOException | ServerException | URISyntaxException | GeneralSecurityException e) {
                     e.printStackTrace();
@@ -89,11 +88,6 @@ public class DiagramValidator implements RunnableWithProgress {
                     return;
 
                 }
-                JsonNode diagramElementsArray;
-                if (diagramElementsResponse == null || (diagramElementsArray = diagramElementsResponse.get("elements")) == null || !diagramElementsArray.isArray()) {
-                    Application.getInstance().getGUILog().log("[ERROR] Response of request to get diagram elements is malformed. Skipping image validation.");
-                    return;
-                }
 
                 for (JsonNode jsonNode : diagramElementsArray) {
                     JsonNode idNode;
@@ -144,6 +138,11 @@ public class DiagramValidator implements RunnableWithProgress {
                 }
             }
 
+            // the PNG exports of all diagrams to validate are started up front, as rasterizing is the slowest part of the validation
+            DiagramArtifactCache diagramArtifactCache = DiagramArtifactCache.getCache(project);
+            long previousHitCount = diagramArtifactCache.getHitCount(), previousMissCount = diagramArtifactCache.getMissCount(), previousExportTimeMillis = diagramArtifactCache.getExportTimeMillis();
+            diagramArtifactCache.prefetch(diagrams.stream().filter(diagram -> diagramElementsMap.containsKey(Converters.getElementToIdConverter().apply(diagram))).map(project::getDiagram).filter(Objects::nonNull).collect(Collectors.toList()), ImageExporter.PNG);
+
             for (Diagram diagram : diagrams) {
                 String diagramId = Converters.getElementToIdConverter().apply(diagram);
                 if (diagramId == null) {
@@ -163,20 +162,12 @@ public class DiagramValidator implements RunnableWithProgress {
                 Set<MMSArtifact> disparateArtifacts = new LinkedHashSet<>(2);
 
                 for (Map.Entry<String, Pair<Integer, ContentType>> entry : EXPORT_FORMATS.entrySet()) {
-                    Path path;
+                    byte[] bytes;
                     String checksum;
 
                     try {
-                        path = Files.createTempFile(DiagramValidator.class.getSimpleName() + "-" + diagramId, "." + entry.getKey());
-                        if (entry.getValue().getKey() == ImageExporter.SVG) {
-                            MDUtils.exportSVG(path.toFile(), diagramPresentationElement);
-                        }
-                        else {
-                            ImageExporter.export(diagramPresentationElement, ImageExporter.PNG, path.toFile(), false, DocGenUtils.DOCGEN_DIAGRAM_DPI, DocGenUtils.DOCGEN_DIAGRAM_SCALE_PERCENT);
-                        }
-                        try (InputStream inputStream = new FileInputStream(path.toFile())) {
-                            checksum = DigestUtils.md5Hex(inputStream);
-                        }
+                        bytes = Files.readAllBytes(diagramArtifactCache.getArtifact(diagramPresentationElement, entry.getValue().getKey()).toPath());
+                        checksum = DigestUtils.md5Hex(bytes);
                     } catch (IOException | TransformerException e) {
                         e.printStackTrace();
                         Application.getInstance().getGUILog().log("[ERROR] An unexpected error occurred while generating diagrams. Skipping image validation for " + Converters.getElementToHumanNameConverter().apply(diagram) + ". Reason: " + e.getMessage());
@@ -188,6 +179,16 @@ public class DiagramValidator implements RunnableWithProgress {
                     }).findFirst().orElse(null);
                     JsonNode checksumNode;
                     if (existingArtifact == null || (checksumNode = existingArtifact.get(MDKConstants.CHECKSUM_KEY)) == null || !checksumNode.isTextual() || !checksumNode.asText().equals(checksum)) {
+                        // the cached artifact is deleted once the diagram is exported again after a change, so the violation keeps its own copy
+                        Path path;
+                        try {
+                            path = Files.createTempFile(DiagramValidator.class.getSimpleName() + "-" + diagramId, "." + entry.getKey());
+                            Files.write(path, bytes);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            Application.getInstance().getGUILog().log("[ERROR] An unexpected error occurred while generating diagrams. Skipping image validation for " + Converters.getElementToHumanNameConverter().apply(diagram) + ". Reason: " + e.getMessage());
+                            break;
+                        }
                         disparateArtifacts.add(new MMSArtifact() {
                             private final String id = existingArtifact != null ? existingArtifact.get(MDKConstants.ID_KEY).asText() : UUID.randomUUID().toString();
 
@@ -223,6 +224,7 @@ public class DiagramValidator implements RunnableWithProgress {
                     imageEquivalenceRule.addViolation(vrv);
                 }
             }
+            Application.getInstance().getGUILog().log(diagramArtifactCache.getSummary(previousHitCount, previousMissCount, previousExportTimeMillis));
         } finally {
             Application.getInstance().getEnvironmentOptions().getGeneralOptions().setUseSVGTextTag(initialUseSVGTestTag);
         }
@@ -20,6 +20,7 @@ import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
 import gov.nasa.jpl.mbee.mdk.mms.actions.CommitClientElementAction;
 import gov.nasa.jpl.mbee.mdk.mms.actions.ElementDiffAction;
 import gov.nasa.jpl.mbee.mdk.mms.actions.UpdateClientElementAction;
+import gov.nasa.jpl.mbee.mdk.mms.json.JsonEquivalencePredicate;
 import gov.nasa.jpl.mbee.mdk.mms.json.JsonPatchFunction;
 import gov.nasa.jpl.mbee.mdk.util.Pair;
 import gov.nasa.jpl.mbee.mdk.validation.ValidationRule;
@@ -194,18 +195,23 @@ public class ElementValidator implements RunnableWithProgress {
     }
 
     public void addElementEquivalenceViolation(Pair<Element, ObjectNode> clientElement, ObjectNode serverElement) {
-        JsonNode diff = JsonPatchFunction.getInstance().apply(clientElement.getValue(), serverElement);
-        if (diff != null && diff.size() != 0) {
-            notEquivalentCount++;
-            String name = "<>";
-            if (clientElement.getKey() instanceof NamedElement && ((NamedElement) clientElement.getKey()).getName() != null && !((NamedElement) clientElement.getKey()).getName().isEmpty()) {
-                name = ((NamedElement) clientElement.getKey()).getName();
-            }
-            finishViolation(new ValidationRuleViolation(clientElement.getKey(), "[NOT EQUIVALENT] " + clientElement.getKey().getHumanType() + " " + name), clientElement.getKey().getLocalID(), clientElement, serverElement, diff);
+        if (JsonEquivalencePredicate.getInstance().test(clientElement.getValue(), serverElement)) {
+            return;
+        }
+        notEquivalentCount++;
+        String name = "<>";
+        if (clientElement.getKey() instanceof NamedElement && ((NamedElement) clientElement.getKey()).getName() != null && !((NamedElement) clientElement.getKey()).getName().isEmpty()) {
+            name = ((NamedElement) clientElement.getKey()).getName();
         }
+        // the patch is only needed if the user asks to see or copy it, so it is not computed here
+        finishViolation(new ValidationRuleViolation(clientElement.getKey(), "[NOT EQUIVALENT] " + clientElement.getKey().getHumanType() + " " + name), clientElement.getKey().getLocalID(), clientElement, serverElement, true);
     }
 
     public void finishViolation(ValidationRuleViolation validationRuleViolation, String id, Pair<Element, ObjectNode> clientElement, ObjectNode serverElement, JsonNode diff) {
+        finishViolation(validationRuleViolation, id, clientElement, serverElement, diff != null);
+    }
+
+    private void finishViolation(ValidationRuleViolation validationRuleViolation, String id, Pair<Element, ObjectNode> clientElement, ObjectNode serverElement, boolean hasDiff) {
         validationRuleViolation.addAction(new CommitClientElementAction(id, clientElement != null ? clientElement.getKey() : null, clientElement != null ? clientElement.getValue() : null, project));
         validationRuleViolation.addAction(new UpdateClientElementAction(id, clientElement != null ? clientElement.getKey() : null, serverElement, project) {
             @Override
@@ -220,11 +226,8 @@ public class ElementValidator implements RunnableWithProgress {
                 return null;
             }
         });
-        if (clientElement != null && clientElement.getValue() != null && serverElement != null && diff != null) {
-            JsonNode client = clientElement.getValue().deepCopy();
-            JsonNode server = serverElement.deepCopy();
-            JsonPatchFunction.preProcess(client, server);
-            validationRuleViolation.addAction(new ElementDiffAction(client, server, diff, project));
+        if (clientElement != null && clientElement.getValue() != null && serverElement != null && hasDiff) {
+            validationRuleViolation.addAction(new ElementDiffAction(clientElement.getValue(), serverElement, project));
         }
 
         ActionsCategory copyActionsCategory = new ActionsCategory("COPY", "Copy...");
@@ -244,11 +247,15 @@ public class ElementValidator implements RunnableWithProgress {
             } catch (JsonProcessingException ignored) {
             }
         }
-        if (diff != null) {
-            try {
-                copyActionsCategory.addAction(new ClipboardAction("Diff", JacksonUtils.getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(diff)));
-            } catch (JsonProcessingException ignored) {
-            }
+        if (clientElement != null && clientElement.getValue() != null && serverElement != null && hasDiff) {
+            copyActionsCategory.addAction(new ClipboardAction("Diff", () -> {
+                try {
+                    return JacksonUtils.getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(JsonPatchFunction.getInstance().apply(clientElement.getValue(), serverElement));
+                } catch (JsonProcessingException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }));
         }
 
         elementEquivalenceValidationRule.addViolation(validationRuleViolation);
@@ -3,6 +3,7 @@ package gov.nasa.jpl.mbee.mdk.options;
 import com.nomagic.magicdraw.core.Application;
 import com.nomagic.magicdraw.core.options.AbstractPropertyOptionsGroup;
 import com.nomagic.magicdraw.properties.BooleanProperty;
+import com.nomagic.magicdraw.properties.NumberProperty;
 import com.nomagic.magicdraw.properties.Property;
 import com.nomagic.magicdraw.properties.PropertyResourceProvider;
 import com.nomagic.magicdraw.properties.StringProperty;
@@ -22,7 +23,21 @@ public class MDKOptionsGroup extends AbstractPropertyOptionsGroup {
             PERSIST_CHANGELOG_ID = "PERSIST_CHANGELOG_ID",
             ENABLE_CHANGE_LISTENER_ID = "ENABLE_CHANGE_LISTENER_ID",
             ENABLE_COORDINATED_SYNC_ID = "ENABLE_COORDINATED_SYNC_ID",
-            CUSTOM_USER_SCRIPT_DIRECTORIES_ID = "CUSTOM_USER_SCRIPT_DIRECTORIES_ID";
+            CUSTOM_USER_SCRIPT_DIRECTORIES_ID = "CUSTOM_USER_SCRIPT_DIRECTORIES_ID",
+            MMS_MAX_CONNECTIONS_PER_ROUTE_ID = "MMS_MAX_CONNECTIONS_PER_ROUTE_ID",
+            MMS_CONNECT_TIMEOUT_ID = "MMS_CONNECT_TIMEOUT_ID",
+            MMS_SOCKET_TIMEOUT_ID = "MMS_SOCKET_TIMEOUT_ID",
+            MMS_COMPRESS_REQUESTS_ID = "MMS_COMPRESS_REQUESTS_ID",
+            MMS_FETCH_CHUNK_SIZE_ID = "MMS_FETCH_CHUNK_SIZE_ID",
+            MMS_FETCH_CONCURRENCY_ID = "MMS_FETCH_CONCURRENCY_ID",
+            MMS_REQUEST_RETRIES_ID = "MMS_REQUEST_RETRIES_ID",
+            MMS_COMMIT_BATCH_SIZE_ID = "MMS_COMMIT_BATCH_SIZE_ID",
+            MMS_COMMIT_CONCURRENCY_ID = "MMS_COMMIT_CONCURRENCY_ID",
+            MMS_ELEMENT_CACHE_ID = "MMS_ELEMENT_CACHE_ID",
+            EXPORT_CACHE_SIZE_ID = "EXPORT_CACHE_SIZE_ID",
+            COORDINATED_SYNC_STAGING_INTERVAL_ID = "COORDINATED_SYNC_STAGING_INTERVAL_ID",
+            MMS_METRICS_DIRECTORY_ID = "MMS_METRICS_DIRECTORY_ID",
+            INCREMENTAL_VIEW_GENERATION_ID = "INCREMENTAL_VIEW_GENERATION_ID";
 
     public MDKOptionsGroup() {
         super(ID);
@@ -135,6 +150,174 @@ public class MDKOptionsGroup extends AbstractPropertyOptionsGroup {
         addProperty(property, true);
     }
 
+    public int getMmsMaxConnectionsPerRoute() {
+        Property p = getProperty(MMS_MAX_CONNECTIONS_PER_ROUTE_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsMaxConnectionsPerRoute(int value) {
+        NumberProperty property = new NumberProperty(MMS_MAX_CONNECTIONS_PER_ROUTE_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsConnectTimeout() {
+        Property p = getProperty(MMS_CONNECT_TIMEOUT_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsConnectTimeout(int value) {
+        NumberProperty property = new NumberProperty(MMS_CONNECT_TIMEOUT_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsSocketTimeout() {
+        Property p = getProperty(MMS_SOCKET_TIMEOUT_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsSocketTimeout(int value) {
+        NumberProperty property = new NumberProperty(MMS_SOCKET_TIMEOUT_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public boolean isMmsCompressRequests() {
+        Property p = getProperty(MMS_COMPRESS_REQUESTS_ID);
+        return (Boolean) p.getValue();
+    }
+
+    public void setMmsCompressRequests(boolean value) {
+        BooleanProperty property = new BooleanProperty(MMS_COMPRESS_REQUESTS_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsFetchChunkSize() {
+        Property p = getProperty(MMS_FETCH_CHUNK_SIZE_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsFetchChunkSize(int value) {
+        NumberProperty property = new NumberProperty(MMS_FETCH_CHUNK_SIZE_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsFetchConcurrency() {
+        Property p = getProperty(MMS_FETCH_CONCURRENCY_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsFetchConcurrency(int value) {
+        NumberProperty property = new NumberProperty(MMS_FETCH_CONCURRENCY_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsRequestRetries() {
+        Property p = getProperty(MMS_REQUEST_RETRIES_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsRequestRetries(int value) {
+        NumberProperty property = new NumberProperty(MMS_REQUEST_RETRIES_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsCommitBatchSize() {
+        Property p = getProperty(MMS_COMMIT_BATCH_SIZE_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsCommitBatchSize(int value) {
+        NumberProperty property = new NumberProperty(MMS_COMMIT_BATCH_SIZE_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getMmsCommitConcurrency() {
+        Property p = getProperty(MMS_COMMIT_CONCURRENCY_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setMmsCommitConcurrency(int value) {
+        NumberProperty property = new NumberProperty(MMS_COMMIT_CONCURRENCY_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public boolean isMmsElementCacheEnabled() {
+        Property p = getProperty(MMS_ELEMENT_CACHE_ID);
+        return (Boolean) p.getValue();
+    }
+
+    public void setMmsElementCacheEnabled(boolean value) {
+        BooleanProperty property = new BooleanProperty(MMS_ELEMENT_CACHE_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getExportCacheSize() {
+        Property p = getProperty(EXPORT_CACHE_SIZE_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setExportCacheSize(int value) {
+        NumberProperty property = new NumberProperty(EXPORT_CACHE_SIZE_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public int getCoordinatedSyncStagingInterval() {
+        Property p = getProperty(COORDINATED_SYNC_STAGING_INTERVAL_ID);
+        return ((Number) p.getValue()).intValue();
+    }
+
+    public void setCoordinatedSyncStagingInterval(int value) {
+        NumberProperty property = new NumberProperty(COORDINATED_SYNC_STAGING_INTERVAL_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public String getMmsMetricsDirectory() {
+        Property p = getProperty(MMS_METRICS_DIRECTORY_ID);
+        return p.getValueStringRepresentation();
+    }
+
+    public void setMmsMetricsDirectory(String path) {
+        StringProperty property = new StringProperty(MMS_METRICS_DIRECTORY_ID, path);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
+    public boolean isIncrementalViewGenerationEnabled() {
+        Property p = getProperty(INCREMENTAL_VIEW_GENERATION_ID);
+        return (Boolean) p.getValue();
+    }
+
+    public void setIncrementalViewGenerationEnabled(boolean value) {
+        BooleanProperty property = new BooleanProperty(INCREMENTAL_VIEW_GENERATION_ID, value);
+        property.setResourceProvider(PROPERTY_RESOURCE_PROVIDER);
+        property.setGroup(GROUP);
+        addProperty(property, true);
+    }
+
     public static final PropertyResourceProvider PROPERTY_RESOURCE_PROVIDER = (key, property) -> EnvironmentOptionsResources.getString(key);
 
     @Override
@@ -144,6 +327,20 @@ public class MDKOptionsGroup extends AbstractPropertyOptionsGroup {
         setChangeListenerEnabled(true);
         setCoordinatedSyncEnabled(true);
         setUserScriptDirectory("");
+        setMmsMaxConnectionsPerRoute(8);
+        setMmsConnectTimeout(60);
+        setMmsSocketTimeout(0);
+        setMmsCompressRequests(false);
+        setMmsFetchChunkSize(5000);
+        setMmsFetchConcurrency(4);
+        setMmsRequestRetries(2);
+        setMmsCommitBatchSize(4096);
+        setMmsCommitConcurrency(2);
+        setMmsElementCacheEnabled(true);
+        setExportCacheSize(50000);
+        setCoordinatedSyncStagingInterval(5);
+        setMmsMetricsDirectory("");
+        setIncrementalViewGenerationEnabled(false);
     }
 
     private static final String MDK_OPTIONS_NAME = "MDK_OPTIONS_NAME";
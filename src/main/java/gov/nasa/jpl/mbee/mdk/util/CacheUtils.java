@@ -0,0 +1,75 @@
+package gov.nasa.jpl.mbee.mdk.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Locations and helpers for data MDK caches on disk between sessions. Everything is stored under the user's home
+ * directory so that it survives MagicDraw and plugin upgrades, and can be deleted at any time to clear the caches.
+ */
+public class CacheUtils {
+    private static final String CACHE_DIRECTORY_NAME = ".mdk" + File.separator + "cache";
+
+    /**
+     * Returns the cache directory for the given path segments, creating it if it does not exist.
+     *
+     * @param path path segments below the MDK cache root, e.g. the cache name followed by a project id
+     * @return cache directory
+     * @throws IOException if the directory cannot be created
+     */
+    public static File getCacheDirectory(String... path) throws IOException {
+        String userHome = System.getProperty("user.home");
+        File directory = userHome != null ? new File(userHome, CACHE_DIRECTORY_NAME) : new File(CACHE_DIRECTORY_NAME);
+        for (String segment : path) {
+            directory = new File(directory, toFileName(segment));
+        }
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create cache directory " + directory.getPath() + ".");
+        }
+        return directory;
+    }
+
+    /**
+     * Converts an arbitrary key, such as an element or commit id, into a name that is safe to use as a file name.
+     */
+    public static String toFileName(String key) {
+        return key.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Reads a json file from the cache.
+     *
+     * @return the parsed json, or null if the file does not exist or cannot be parsed
+     */
+    public static JsonNode readJson(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return JacksonUtils.getObjectMapper().readTree(file);
+        } catch (IOException e) {
+            // corrupt entries are treated as misses and overwritten on the next write
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a json file to the cache. The json is written to a temporary file first and then moved in place, so that
+     * concurrent readers and interrupted writes never observe a partial file.
+     */
+    public static void writeJson(File file, JsonNode jsonNode) throws IOException {
+        File tempFile = File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+        try {
+            JacksonUtils.getObjectMapper().writeValue(tempFile, jsonNode);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+}
@@ -10,11 +10,28 @@ import java.util.function.BiPredicate;
 
 /**
  * Created by igomes on 6/30/16.
+ * <p>
+ * Changelogs that are only accessed by one thread at a time, e.g. those built and merged while syncing, can be created
+ * with {@link #Changelog(boolean)} to avoid synchronizing every access to their maps. Merging is done in place with
+ * {@link #addAll(Changelog)}, or on a copy with {@link #and(Changelog)}.
  */
 public class Changelog<K, V> extends ConcurrentHashMap<Changelog.ChangeType, Map<K, V>> implements Cloneable {
 
+    private final boolean threadSafe;
     private boolean shouldLogChanges;
 
+    public Changelog() {
+        this(true);
+    }
+
+    /**
+     * @param threadSafe whether the maps of each change type are synchronized
+     */
+    public Changelog(boolean threadSafe) {
+        super(ChangeType.values().length);
+        this.threadSafe = threadSafe;
+    }
+
     public boolean shouldLogChanges() {
         return shouldLogChanges;
     }
@@ -26,68 +43,102 @@ public class Changelog<K, V> extends ConcurrentHashMap<Changelog.ChangeType, Map
     // ConcurrentHashMap was decided against as it doesn't accept null values (or keys) and while we could fill it with junk we don't expect
     // too much concurrency with Changelogs, so just syncing it shouldn't be an issue.
     public Map<K, V> createMap() {
-        return Collections.synchronizedMap(new LinkedHashMap<K, V>());
+        return threadSafe ? Collections.synchronizedMap(new LinkedHashMap<K, V>()) : new LinkedHashMap<>();
     }
 
     @Override
     public Map<K, V> get(Object key) {
         Map<K, V> map = super.get(key);
         if (map == null && key instanceof ChangeType) {
-            super.put((ChangeType) key, map = createMap());
+            Map<K, V> existingMap = super.putIfAbsent((ChangeType) key, map = createMap());
+            if (existingMap != null) {
+                map = existingMap;
+            }
         }
         return map;
     }
 
     @Override
     public Changelog<K, V> clone() {
-        Changelog<K, V> clonedChangelog = new Changelog<>(); // lgtm [java/empty-container]
+        Changelog<K, V> clonedChangelog = new Changelog<>(threadSafe); // lgtm [java/empty-container]
         for (ChangeType changeType : ChangeType.values()) {
-            Map<K, V> map = clonedChangelog.get(changeType);
-            for (Map.Entry<K, V> entry : get(changeType).entrySet()) {
-                map.put(entry.getKey(), entry.getValue());
+            Map<K, V> map = get(changeType);
+            synchronized (map) {
+                clonedChangelog.get(changeType).putAll(map);
             }
         }
         return clonedChangelog;
     }
 
     public Changelog<K, V> and(Changelog<K, V> secondChangelog) {
-        Changelog<K, V> combinedChangelog = this.clone();
+        return this.clone().addAll(secondChangelog);
+    }
+
+    public <W> Changelog<K, V> and(Changelog<K, W> secondChangelog, BiFunction<K, W, V> converter) {
+        return this.clone().addAll(secondChangelog, converter);
+    }
+
+    /**
+     * Adds all changes of the second changelog to this one, in place.
+     *
+     * @return this changelog
+     */
+    public Changelog<K, V> addAll(Changelog<K, ? extends V> secondChangelog) {
+        return addAll(secondChangelog, (key, value) -> value);
+    }
+
+    /**
+     * Adds all changes of the second changelog to this one, in place, converting their values.
+     *
+     * @return this changelog
+     */
+    public <W> Changelog<K, V> addAll(Changelog<K, W> secondChangelog, BiFunction<K, ? super W, ? extends V> converter) {
         for (ChangeType changeType : ChangeType.values()) {
-            for (Map.Entry<K, V> entry : secondChangelog.get(changeType).entrySet()) {
-                combinedChangelog.addChange(entry.getKey(), entry.getValue(), changeType);
+            Map<K, W> map = secondChangelog.get(changeType);
+            synchronized (map) {
+                for (Map.Entry<K, W> entry : map.entrySet()) {
+                    addChange(entry.getKey(), converter.apply(entry.getKey(), entry.getValue()), changeType);
+                }
             }
         }
-        return combinedChangelog;
+        return this;
     }
 
-    public <W> Changelog<K, V> and(Changelog<K, W> secondChangelog, BiFunction<K, W, V> converter) {
-        Changelog<K, V> combinedChangelog = this.clone();
+    /**
+     * @return the change of the key, or null if the key has not changed
+     */
+    public Change<V> getChange(K key) {
         for (ChangeType changeType : ChangeType.values()) {
-            for (Map.Entry<K, W> entry : secondChangelog.get(changeType).entrySet()) {
-                combinedChangelog.addChange(entry.getKey(), converter.apply(entry.getKey(), entry.getValue()), changeType);
+            Map<K, V> map = get(changeType);
+            // must use containsKey instead of get, because null is an acceptable value in this paradigm
+            V value = map.get(key);
+            if (value != null || map.containsKey(key)) {
+                return new Change<>(value, changeType);
             }
         }
-        return combinedChangelog;
+        return null;
     }
 
+    /**
+     * Pairs the change of every key in either changelog with the change of the same key in the other, if any. Each
+     * entry of either changelog is visited once and looked up once in the other.
+     */
     public <W> void findConflicts(Changelog<K, W> changelog, BiPredicate<Change<V>, Change<W>> conflictCondition, Map<K, Pair<Change<V>, Change<W>>> conflictedChanges, Map<K, Pair<Change<V>, Change<W>>> unconflictedChanges) {
-        Set<K> keySet = new HashSet<>();
-        keySet.addAll(this.flattenedKeyset());
-        keySet.addAll(changelog.flattenedKeyset());
-
-        for (K key : keySet) {
-            Change<V> vChange = null;
-            Change<W> wChange = null;
-            for (ChangeType changeType : ChangeType.values()) {
-                // must use containsKey instead of get, because null is an acceptable value in this paradigm
-                if (vChange == null && this.get(changeType).containsKey(key)) {
-                    vChange = new Change<>(this.get(changeType).get(key), changeType);
-                }
-                if (wChange == null && changelog.get(changeType).containsKey(key)) {
-                    wChange = new Change<>(changelog.get(changeType).get(key), changeType);
+        for (ChangeType changeType : ChangeType.values()) {
+            for (Map.Entry<K, V> entry : get(changeType).entrySet()) {
+                Change<V> vChange = new Change<>(entry.getValue(), changeType);
+                Change<W> wChange = changelog.getChange(entry.getKey());
+                (conflictCondition.test(vChange, wChange) ? conflictedChanges : unconflictedChanges).put(entry.getKey(), new Pair<>(vChange, wChange));
+            }
+        }
+        for (ChangeType changeType : ChangeType.values()) {
+            for (Map.Entry<K, W> entry : changelog.get(changeType).entrySet()) {
+                if (getChange(entry.getKey()) != null) {
+                    continue;
                 }
+                Change<W> wChange = new Change<>(entry.getValue(), changeType);
+                (conflictCondition.test(null, wChange) ? conflictedChanges : unconflictedChanges).put(entry.getKey(), new Pair<>(null, wChange));
             }
-            (conflictCondition.test(vChange, wChange) ? conflictedChanges : unconflictedChanges).put(key, new Pair<>(vChange, wChange));
         }
     }
 
@@ -117,6 +117,8 @@ public class TaskRunner {
     private static class ProgressStatusProxy implements ProgressStatus {
         private final ProgressStatus progressStatus;
         private final String title;
+        // kept per task, as silent tasks all share the default empty progress status
+        private volatile boolean cancel;
 
         ProgressStatusProxy(ProgressStatus progressStatus, String title) {
             this.progressStatus = progressStatus;
@@ -221,12 +223,12 @@ public class TaskRunner {
 
         @Override
         public void setCancel(boolean b) {
-            progressStatus.setCancel(b);
+            cancel = b;
         }
 
         @Override
         public boolean isCancel() {
-            return progressStatus.isCancel();
+            return cancel || progressStatus.isCancel();
         }
     }
 
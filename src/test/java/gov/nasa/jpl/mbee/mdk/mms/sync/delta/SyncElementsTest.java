@@ -0,0 +1,83 @@
+package gov.nasa.jpl.mbee.mdk.mms.sync.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import gov.nasa.jpl.mbee.mdk.json.JacksonUtils;
+import gov.nasa.jpl.mbee.mdk.util.Changelog;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of the persisted changelog formats, as read by current and earlier MDK versions.
+ */
+public class SyncElementsTest {
+
+    @Test
+    public void singleChangelogIsRead() {
+        Changelog<String, Void> changelog = createChangelog(100);
+        assertSameChanges(changelog, SyncElements.buildChangelog(SyncElements.buildJson(changelog)));
+    }
+
+    @Test
+    public void segmentsAreRead() throws IOException {
+        Changelog<String, Void> changelog = createChangelog(20000);
+        List<String> segments = SyncElements.buildSegments(changelog);
+        assertTrue(segments.size() > 1);
+
+        Changelog<String, Void> readChangelog = new Changelog<>(false);
+        for (String segment : segments) {
+            SyncElements.buildChangelog(readChangelog, readObject(segment));
+        }
+        assertSameChanges(changelog, readChangelog);
+    }
+
+    @Test
+    public void segmentsAreReadAsIdsByEarlierVersions() throws IOException {
+        Changelog<String, Void> changelog = createChangelog(20000);
+        Map<Changelog.ChangeType, Set<String>> readIds = new EnumMap<>(Changelog.ChangeType.class);
+        for (String segment : SyncElements.buildSegments(changelog)) {
+            ObjectNode objectNode = readObject(segment);
+            assertFalse(objectNode.has("format"));
+            // earlier versions take every entry of every sync element as an id
+            for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
+                for (JsonNode jsonNode : objectNode.path(changeType.name().toLowerCase())) {
+                    readIds.computeIfAbsent(changeType, key -> new HashSet<>()).add(jsonNode.asText());
+                }
+            }
+        }
+        for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
+            assertEquals(changelog.get(changeType).keySet(), readIds.getOrDefault(changeType, Collections.emptySet()));
+        }
+    }
+
+    @Test
+    public void unchangedSegmentsAreStable() {
+        Changelog<String, Void> changelog = createChangelog(20000);
+        assertEquals(SyncElements.buildSegments(changelog), SyncElements.buildSegments(createChangelog(20000)));
+    }
+
+    private static Changelog<String, Void> createChangelog(int size) {
+        Changelog<String, Void> changelog = new Changelog<>(false);
+        Changelog.ChangeType[] changeTypes = Changelog.ChangeType.values();
+        for (int i = 0; i < size; i++) {
+            changelog.addChange("_19_0_" + Integer.toHexString(i * 7919) + "_" + i, (Void) null, changeTypes[i % changeTypes.length]);
+        }
+        return changelog;
+    }
+
+    private static ObjectNode readObject(String json) throws IOException {
+        JsonNode jsonNode = JacksonUtils.getObjectMapper().readTree(json);
+        assertTrue(jsonNode.isObject());
+        return (ObjectNode) jsonNode;
+    }
+
+    private static void assertSameChanges(Changelog<String, ?> expected, Changelog<String, ?> actual) {
+        for (Changelog.ChangeType changeType : Changelog.ChangeType.values()) {
+            assertEquals(changeType.name(), expected.get(changeType).keySet(), actual.get(changeType).keySet());
+        }
+    }
+}